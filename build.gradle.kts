@@ -36,3 +36,14 @@ testDependencies {
    api("us.ihmc:euclid-test:0.22.0")
    api("org.apache.commons:commons-math3:3.3")
 }
+
+benchmarksDependencies {
+   api(ihmc.sourceSetProject("main"))
+   api(ihmc.sourceSetProject("filters"))
+
+   api("org.openjdk.jmh:jmh-core:1.37")
+}
+
+ihmc.sourceSetProject("benchmarks").dependencies {
+   "annotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
@@ -0,0 +1,173 @@
+package us.ihmc.yoVariables.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.ihmc.yoVariables.filters.AlphaFilteredYoVariable;
+import us.ihmc.yoVariables.filters.BacklashCompensatingVelocityYoVariable;
+import us.ihmc.yoVariables.filters.ButterworthFilteredYoVariable;
+import us.ihmc.yoVariables.filters.ButterworthFilteredYoVariable.ButterworthFilterType;
+import us.ihmc.yoVariables.filters.FilteredFiniteDifferenceYoVariable;
+import us.ihmc.yoVariables.filters.GlitchFilteredYoBoolean;
+import us.ihmc.yoVariables.filters.MovingAverageYoDouble;
+import us.ihmc.yoVariables.filters.RateLimitedYoVariable;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+
+/**
+ * Measures the cost of calling {@code update()} on every filter of a registry, as a controller would
+ * do once per tick.
+ * <p>
+ * Filters of the selected type are created until the registry holds {@code numberOfVariables}
+ * variables, counting both the filters' internal variables and their inputs.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class FilterUpdateBenchmark
+{
+   private static final double DT = 0.001;
+
+   public enum FilterType
+   {
+      ALPHA, BUTTERWORTH, RATE_LIMITED, FINITE_DIFFERENCE, BACKLASH, MOVING_AVERAGE, GLITCH
+   }
+
+   @Param({"1000", "10000", "100000", "1000000"})
+   public int numberOfVariables;
+
+   @Param
+   public FilterType filterType;
+
+   private final List<Runnable> filterUpdates = new ArrayList<>();
+   private final List<YoDouble> doubleInputs = new ArrayList<>();
+   private final List<YoBoolean> booleanInputs = new ArrayList<>();
+   private final Random random = new Random(34536);
+
+   @Setup(Level.Trial)
+   public void setup()
+   {
+      YoRegistry root = new YoRegistry("root");
+      YoRegistry registry = null;
+      int filterIndex = 0;
+      int numberOfVariablesCreated = 0;
+
+      while (numberOfVariablesCreated < numberOfVariables)
+      {
+         if (filterIndex % YoBenchmarkTools.VARIABLES_PER_REGISTRY == 0)
+         {
+            registry = new YoRegistry("registry" + filterIndex);
+            root.addChild(registry);
+         }
+
+         int numberOfVariablesBefore = registry.getNumberOfVariables();
+         createFilter("filter" + filterIndex, registry);
+         numberOfVariablesCreated += registry.getNumberOfVariables() - numberOfVariablesBefore;
+         filterIndex++;
+      }
+   }
+
+   private void createFilter(String name, YoRegistry registry)
+   {
+      switch (filterType)
+      {
+         case ALPHA:
+         {
+            YoDouble input = newDoubleInput(name, registry);
+            AlphaFilteredYoVariable filter = new AlphaFilteredYoVariable(name, registry, 0.9, input);
+            filterUpdates.add(filter::update);
+            break;
+         }
+         case BUTTERWORTH:
+         {
+            YoDouble input = newDoubleInput(name, registry);
+            ButterworthFilteredYoVariable filter = new ButterworthFilteredYoVariable(name, registry, 0.9, input, ButterworthFilterType.LOW_PASS);
+            filterUpdates.add(filter::update);
+            break;
+         }
+         case RATE_LIMITED:
+         {
+            YoDouble input = newDoubleInput(name, registry);
+            RateLimitedYoVariable filter = new RateLimitedYoVariable(name, registry, 10.0, input, DT);
+            filterUpdates.add(filter::update);
+            break;
+         }
+         case FINITE_DIFFERENCE:
+         {
+            YoDouble input = newDoubleInput(name, registry);
+            FilteredFiniteDifferenceYoVariable filter = new FilteredFiniteDifferenceYoVariable(name, "", 0.9, input, DT, registry);
+            filterUpdates.add(filter::update);
+            break;
+         }
+         case BACKLASH:
+         {
+            YoDouble input = newDoubleInput(name, registry);
+            YoDouble alpha = new YoDouble(name + "Alpha", registry);
+            alpha.set(0.9);
+            YoDouble slopTime = new YoDouble(name + "SlopTime", registry);
+            slopTime.set(0.03);
+            BacklashCompensatingVelocityYoVariable filter = new BacklashCompensatingVelocityYoVariable(name, "", alpha, input, DT, slopTime, registry);
+            filterUpdates.add(filter::update);
+            break;
+         }
+         case MOVING_AVERAGE:
+         {
+            YoDouble input = newDoubleInput(name, registry);
+            MovingAverageYoDouble filter = new MovingAverageYoDouble(name, registry, 20, input);
+            filterUpdates.add(filter::update);
+            break;
+         }
+         case GLITCH:
+         {
+            YoBoolean input = new YoBoolean(name + "Input", registry);
+            booleanInputs.add(input);
+            GlitchFilteredYoBoolean filter = new GlitchFilteredYoBoolean(name, registry, input, 10);
+            filterUpdates.add(filter::update);
+            break;
+         }
+         default:
+            throw new IllegalStateException("Unexpected filter type: " + filterType);
+      }
+   }
+
+   private YoDouble newDoubleInput(String name, YoRegistry registry)
+   {
+      YoDouble input = new YoDouble(name + "Input", registry);
+      doubleInputs.add(input);
+      return input;
+   }
+
+   @Benchmark
+   public int updateAll()
+   {
+      for (int i = 0; i < doubleInputs.size(); i++)
+         doubleInputs.get(i).add(random.nextDouble() - 0.5);
+      for (int i = 0; i < booleanInputs.size(); i++)
+         booleanInputs.get(i).set(random.nextInt(8) != 0);
+
+      for (int i = 0; i < filterUpdates.size(); i++)
+         filterUpdates.get(i).run();
+
+      return filterUpdates.size();
+   }
+}
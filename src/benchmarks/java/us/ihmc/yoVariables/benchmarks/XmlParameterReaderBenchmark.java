@@ -0,0 +1,69 @@
+package us.ihmc.yoVariables.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.ihmc.yoVariables.parameters.XmlParameterReader;
+import us.ihmc.yoVariables.parameters.XmlParameterWriter;
+import us.ihmc.yoVariables.registry.YoRegistry;
+
+/**
+ * Measures the cost of parsing a parameter file with {@link XmlParameterReader} and of loading the
+ * parsed values into a registry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class XmlParameterReaderBenchmark
+{
+   @Param({"1000", "10000", "100000", "1000000"})
+   public int numberOfParameters;
+
+   private YoRegistry root;
+   private byte[] parameterFile;
+
+   @Setup(Level.Trial)
+   public void setup() throws IOException
+   {
+      root = YoBenchmarkTools.createParameterTree(numberOfParameters, new Random(8734));
+
+      XmlParameterWriter writer = new XmlParameterWriter();
+      writer.addParameters(root);
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      writer.write(outputStream);
+      parameterFile = outputStream.toByteArray();
+   }
+
+   @Benchmark
+   public XmlParameterReader construct() throws IOException
+   {
+      return new XmlParameterReader(new ByteArrayInputStream(parameterFile));
+   }
+
+   @Benchmark
+   public YoRegistry constructAndRead() throws IOException
+   {
+      XmlParameterReader reader = new XmlParameterReader(new ByteArrayInputStream(parameterFile));
+      reader.readParametersInRegistry(root);
+      return root;
+   }
+}
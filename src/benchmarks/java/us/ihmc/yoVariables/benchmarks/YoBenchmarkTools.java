@@ -0,0 +1,174 @@
+package us.ihmc.yoVariables.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ObjIntConsumer;
+
+import us.ihmc.yoVariables.parameters.BooleanParameter;
+import us.ihmc.yoVariables.parameters.DefaultParameterReader;
+import us.ihmc.yoVariables.parameters.DoubleParameter;
+import us.ihmc.yoVariables.parameters.IntegerParameter;
+import us.ihmc.yoVariables.parameters.YoParameter;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoInteger;
+import us.ihmc.yoVariables.variable.YoLong;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Tools shared by the benchmarks for creating registries that resemble the ones produced by a robot
+ * controller.
+ */
+public class YoBenchmarkTools
+{
+   /** Number of variables registered in each registry of the generated trees. */
+   public static final int VARIABLES_PER_REGISTRY = 100;
+   /** Number of children per registry of the generated trees. */
+   public static final int CHILDREN_PER_REGISTRY = 8;
+
+   public enum BenchmarkEnum
+   {
+      IDLE, STANCE, SWING, TRANSFER;
+   }
+
+   private YoBenchmarkTools()
+   {
+      // Tools class.
+   }
+
+   /**
+    * Creates a registry tree holding {@code numberOfVariables} variables.
+    * <p>
+    * The variables are spread over registries holding {@value #VARIABLES_PER_REGISTRY} variables each,
+    * and the registries are organized as a tree with {@value #CHILDREN_PER_REGISTRY} children per
+    * registry. The variable types are mixed with a distribution typical of controller logs: 60%
+    * {@code YoDouble}, 20% {@code YoBoolean}, 10% {@code YoEnum}, 5% {@code YoInteger}, and 5%
+    * {@code YoLong}.
+    * </p>
+    *
+    * @param numberOfVariables the total number of variables to create.
+    * @param random            the random generator used to initialize the variables.
+    * @return the root of the new registry tree.
+    */
+   public static YoRegistry createRegistryTree(int numberOfVariables, Random random)
+   {
+      return createTree(numberOfVariables, (registry, index) -> createVariable("var" + index, index, registry, random));
+   }
+
+   /**
+    * Creates a registry tree holding {@code numberOfParameters} parameters.
+    * <p>
+    * The tree is organized the same way as in {@link #createRegistryTree(int, Random)}. The parameter
+    * types are mixed: 70% {@code DoubleParameter}, 20% {@code BooleanParameter}, and 10%
+    * {@code IntegerParameter}. The parameters are loaded with their initial value.
+    * </p>
+    *
+    * @param numberOfParameters the total number of parameters to create.
+    * @param random             the random generator used to initialize the parameters.
+    * @return the root of the new registry tree.
+    */
+   public static YoRegistry createParameterTree(int numberOfParameters, Random random)
+   {
+      YoRegistry root = createTree(numberOfParameters, (registry, index) -> createParameter("param" + index, index, registry, random));
+      new DefaultParameterReader().readParametersInRegistry(root);
+      return root;
+   }
+
+   private static YoRegistry createTree(int numberOfElements, ObjIntConsumer<YoRegistry> elementFactory)
+   {
+      YoRegistry root = new YoRegistry("root");
+      List<YoRegistry> registries = new ArrayList<>();
+      registries.add(root);
+
+      int registryIndex = 0;
+      YoRegistry current = root;
+
+      for (int i = 0; i < numberOfElements; i++)
+      {
+         if (i > 0 && i % VARIABLES_PER_REGISTRY == 0)
+         {
+            YoRegistry parent = registries.get(registryIndex / CHILDREN_PER_REGISTRY);
+            registryIndex++;
+            current = new YoRegistry("registry" + registryIndex);
+            parent.addChild(current);
+            registries.add(current);
+         }
+
+         elementFactory.accept(current, i);
+      }
+
+      return root;
+   }
+
+   private static YoParameter createParameter(String name, int index, YoRegistry registry, Random random)
+   {
+      int selector = index % 10;
+
+      if (selector < 7)
+         return new DoubleParameter(name, registry, random.nextDouble());
+      else if (selector < 9)
+         return new BooleanParameter(name, registry, random.nextBoolean());
+      else
+         return new IntegerParameter(name, registry, random.nextInt());
+   }
+
+   private static YoVariable createVariable(String name, int index, YoRegistry registry, Random random)
+   {
+      int selector = index % 20;
+
+      if (selector < 12)
+      {
+         YoDouble variable = new YoDouble(name, registry);
+         variable.set(random.nextDouble());
+         return variable;
+      }
+      else if (selector < 16)
+      {
+         YoBoolean variable = new YoBoolean(name, registry);
+         variable.set(random.nextBoolean());
+         return variable;
+      }
+      else if (selector < 18)
+      {
+         YoEnum<BenchmarkEnum> variable = new YoEnum<>(name, registry, BenchmarkEnum.class);
+         variable.set(random.nextInt(BenchmarkEnum.values().length));
+         return variable;
+      }
+      else if (selector < 19)
+      {
+         YoInteger variable = new YoInteger(name, registry);
+         variable.set(random.nextInt());
+         return variable;
+      }
+      else
+      {
+         YoLong variable = new YoLong(name, registry);
+         variable.set(random.nextLong());
+         return variable;
+      }
+   }
+
+   /**
+    * Updates the value of a subset of the given variables, simulating a controller tick.
+    *
+    * @param variables      the variables to pick from.
+    * @param firstIndex     the index of the first variable to update.
+    * @param numberToUpdate the number of consecutive variables to update, wrapping around the list.
+    * @param random         the random generator used to draw the new values.
+    */
+   public static void perturbVariables(List<YoVariable> variables, int firstIndex, int numberToUpdate, Random random)
+   {
+      int index = firstIndex;
+
+      for (int i = 0; i < numberToUpdate; i++)
+      {
+         if (index >= variables.size())
+            index = 0;
+         YoVariable variable = variables.get(index++);
+         variable.setValueFromDouble(variable.getValueAsDouble() + random.nextInt(3) - 1.0, false);
+      }
+   }
+}
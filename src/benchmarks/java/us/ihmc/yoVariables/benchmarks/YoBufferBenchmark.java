@@ -0,0 +1,98 @@
+package us.ihmc.yoVariables.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.ihmc.yoVariables.buffer.YoBuffer;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorageFactory;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Measures the per-tick cost of recording into a {@link YoBuffer} and the cost of scrubbing through
+ * it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class YoBufferBenchmark
+{
+   @Param({"1000", "10000", "100000", "1000000"})
+   public int numberOfVariables;
+
+   @Param({"256"})
+   public int bufferSize;
+
+   /** Fraction of the variables that are modified in between two ticks. */
+   @Param({"0.01"})
+   public double changedFraction;
+
+   /** Where the buffer data is stored: {@code HEAP} or {@code OFF_HEAP}. */
+   @Param({"HEAP", "OFF_HEAP"})
+   public String storage;
+
+   /** Whether only the variables that changed since the last tick are written. */
+   @Param({"false", "true"})
+   public boolean changeTracking;
+
+   private final Random random = new Random(4563);
+   private YoBuffer buffer;
+   private List<YoVariable> variables;
+   private int numberOfChangedVariables;
+   private int changedOffset;
+   private int scrubIndex;
+
+   @Setup(Level.Trial)
+   public void setup()
+   {
+      YoRegistry root = YoBenchmarkTools.createRegistryTree(numberOfVariables, random);
+      variables = root.collectSubtreeVariables();
+      buffer = new YoBuffer(bufferSize, "OFF_HEAP".equals(storage) ? YoBufferStorageFactory.offHeap() : YoBufferStorageFactory.heap());
+      buffer.addVariables(variables);
+      buffer.setChangeTrackingEnabled(changeTracking);
+
+      for (int i = 0; i < bufferSize; i++)
+      {
+         YoBenchmarkTools.perturbVariables(variables, random.nextInt(numberOfVariables), numberOfVariables / 10, random);
+         buffer.tickAndWriteIntoBuffer();
+      }
+
+      numberOfChangedVariables = Math.max(1, (int) (changedFraction * numberOfVariables));
+   }
+
+   @Benchmark
+   public int tickAndWriteIntoBuffer()
+   {
+      YoBenchmarkTools.perturbVariables(variables, changedOffset, numberOfChangedVariables, random);
+      changedOffset = (changedOffset + numberOfChangedVariables) % numberOfVariables;
+      buffer.tickAndWriteIntoBuffer();
+      return buffer.getCurrentIndex();
+   }
+
+   @Benchmark
+   public int setCurrentIndex()
+   {
+      scrubIndex += 7;
+      if (scrubIndex >= bufferSize)
+         scrubIndex -= bufferSize;
+      buffer.setCurrentIndex(scrubIndex);
+      return buffer.getCurrentIndex();
+   }
+}
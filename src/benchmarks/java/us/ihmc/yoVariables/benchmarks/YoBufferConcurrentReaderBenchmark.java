@@ -0,0 +1,100 @@
+package us.ihmc.yoVariables.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.ihmc.yoVariables.buffer.YoBuffer;
+import us.ihmc.yoVariables.buffer.YoBufferConcurrentReader;
+import us.ihmc.yoVariables.buffer.YoBufferVariableEntry;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoDouble;
+
+/**
+ * Measures the distribution of the per-tick cost of recording into a {@link YoBuffer} while other
+ * threads read it with {@link YoBufferConcurrentReader}, the percentiles show the jitter the readers
+ * cause to the writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+public class YoBufferConcurrentReaderBenchmark
+{
+   @Param({"0", "1", "3"})
+   public int numberOfReaders;
+
+   @Param({"500"})
+   public int numberOfVariables;
+
+   @Param({"1000"})
+   public int bufferSize;
+
+   private YoBuffer buffer;
+   private final List<YoDouble> variables = new ArrayList<>();
+   private final List<Thread> readers = new ArrayList<>();
+   private volatile boolean running;
+   private long tick = 0;
+
+   @Setup(Level.Trial)
+   public void setup()
+   {
+      YoRegistry registry = new YoRegistry("root");
+      for (int i = 0; i < numberOfVariables; i++)
+         variables.add(new YoDouble("variable" + i, registry));
+
+      buffer = new YoBuffer(bufferSize);
+      buffer.addVariables(registry.collectSubtreeVariables());
+      running = true;
+
+      for (int i = 0; i < numberOfReaders; i++)
+      {
+         Thread reader = new Thread(() ->
+         {
+            YoBufferConcurrentReader concurrentReader = new YoBufferConcurrentReader(buffer);
+            List<YoBufferVariableEntry> entries = buffer.getEntries();
+            double[][] destinations = new double[entries.size()][bufferSize];
+
+            while (running)
+               concurrentReader.readInOutWindow(entries, destinations);
+         }, "reader" + i);
+         reader.setDaemon(true);
+         readers.add(reader);
+         reader.start();
+      }
+   }
+
+   @TearDown(Level.Trial)
+   public void tearDown() throws InterruptedException
+   {
+      running = false;
+      for (Thread reader : readers)
+         reader.join();
+      readers.clear();
+   }
+
+   @Benchmark
+   public int tickAndWriteIntoBuffer()
+   {
+      tick++;
+      variables.get((int) (tick % numberOfVariables)).add(1.0);
+      buffer.tickAndWriteIntoBuffer();
+      return buffer.getCurrentIndex();
+   }
+}
@@ -0,0 +1,97 @@
+package us.ihmc.yoVariables.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.ihmc.yoVariables.buffer.YoBufferBounds;
+import us.ihmc.yoVariables.buffer.YoBufferEnvelope;
+import us.ihmc.yoVariables.buffer.YoBufferVariableEntry;
+import us.ihmc.yoVariables.variable.YoDouble;
+
+/**
+ * Measures the cost of computing the bounds and the envelope of a moving window of a
+ * {@link YoBufferVariableEntry} while it is being recorded, as a plotter does at every frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1)
+public class YoBufferWindowBoundsBenchmark
+{
+   @Param({"10000", "1000000"})
+   public int bufferSize;
+
+   /** Number of values written in between two queries. */
+   @Param({"16"})
+   public int writesPerQuery;
+
+   /** Width in pixels of the plot for which the envelope is computed. */
+   @Param({"1000"})
+   public int numberOfPixels;
+
+   private final Random random = new Random(2385);
+   private YoDouble variable;
+   private YoBufferVariableEntry entry;
+   private final YoBufferEnvelope envelope = new YoBufferEnvelope();
+   private int writeIndex;
+
+   @Setup(Level.Trial)
+   public void setup()
+   {
+      variable = new YoDouble("variable", null);
+      entry = new YoBufferVariableEntry(variable, bufferSize);
+
+      for (int i = 0; i < bufferSize; i++)
+      {
+         variable.set(random.nextDouble());
+         entry.writeIntoBufferAt(i);
+      }
+   }
+
+   @Benchmark
+   public double writeAndGetWindowBounds()
+   {
+      write();
+
+      // Window covering the most recent half of the buffer, it wraps around half of the time.
+      int startIndex = (writeIndex + bufferSize / 2) % bufferSize;
+      YoBufferBounds bounds = entry.getWindowBounds(startIndex, writeIndex);
+      return bounds.getUpperBound() - bounds.getLowerBound();
+   }
+
+   @Benchmark
+   public double writeAndComputeEnvelope()
+   {
+      write();
+
+      // Envelope of the entire buffer, oldest value first.
+      int endIndex = writeIndex == 0 ? bufferSize - 1 : writeIndex - 1;
+      entry.computeEnvelope(writeIndex, endIndex, numberOfPixels, envelope);
+      return envelope.getUpperBound(numberOfPixels / 2);
+   }
+
+   private void write()
+   {
+      for (int i = 0; i < writesPerQuery; i++)
+      {
+         variable.set(random.nextDouble());
+         entry.writeIntoBufferAt(writeIndex);
+         writeIndex = (writeIndex + 1) % bufferSize;
+      }
+   }
+}
@@ -0,0 +1,90 @@
+package us.ihmc.yoVariables.benchmarks;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.tools.YoSearchTools;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Measures the cost of searching variables by name in a registry tree, either via
+ * {@link YoRegistry#findVariable(String, String)} or via
+ * {@link YoSearchTools#findVariables(String, String, java.util.function.Predicate, YoRegistry, List)}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class YoRegistrySearchBenchmark
+{
+   private static final int NUMBER_OF_QUERIES = 1024;
+
+   @Param({"1000", "10000", "100000", "1000000"})
+   public int numberOfVariables;
+
+   private YoRegistry root;
+   private final String[] queryNamespaces = new String[NUMBER_OF_QUERIES];
+   private final String[] queryNames = new String[NUMBER_OF_QUERIES];
+   private int queryIndex = 0;
+
+   @Setup(Level.Trial)
+   public void setup()
+   {
+      Random random = new Random(2346);
+      root = YoBenchmarkTools.createRegistryTree(numberOfVariables, random);
+      List<YoVariable> variables = root.collectSubtreeVariables();
+
+      for (int i = 0; i < NUMBER_OF_QUERIES; i++)
+      {
+         YoVariable query = variables.get(random.nextInt(variables.size()));
+         queryNamespaces[i] = query.getNamespace().getShortName();
+         queryNames[i] = query.getName();
+      }
+   }
+
+   private int nextQuery()
+   {
+      queryIndex++;
+      if (queryIndex >= NUMBER_OF_QUERIES)
+         queryIndex = 0;
+      return queryIndex;
+   }
+
+   @Benchmark
+   public YoVariable findVariableByName()
+   {
+      int query = nextQuery();
+      return root.findVariable(null, queryNames[query]);
+   }
+
+   @Benchmark
+   public YoVariable findVariableByNamespaceAndName()
+   {
+      int query = nextQuery();
+      return root.findVariable(queryNamespaces[query], queryNames[query]);
+   }
+
+   @Benchmark
+   public List<YoVariable> searchToolsFindVariables()
+   {
+      int query = nextQuery();
+      return YoSearchTools.findVariables(queryNamespaces[query], queryNames[query], null, root, null);
+   }
+}
@@ -15,9 +15,14 @@
  */
 package us.ihmc.yoVariables.buffer;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.RandomAccess;
 
 import us.ihmc.yoVariables.buffer.interfaces.KeyPointsChangedListener;
 import us.ihmc.yoVariables.buffer.interfaces.KeyPointsHolder;
@@ -33,6 +38,11 @@ import us.ihmc.yoVariables.buffer.interfaces.KeyPointsChangedListener.Change;
  * <p>
  * This class maintains an increasing order in index value when updating its key points.
  * </p>
+ * <p>
+ * Removing a key point, which happens at every tick when recording over previous data, only clears
+ * its index in a {@link BitSet} in constant time. The sorted array of key points is compacted lazily
+ * before it is next accessed.
+ * </p>
  */
 public class KeyPointsHandler implements KeyPointsHolder
 {
@@ -40,8 +50,19 @@ public class KeyPointsHandler implements KeyPointsHolder
     * Field for convenience, only used to store an "enable" that should be associated with this object.
     */
    private boolean enableKeyPoints = false;
-   /** The list of the buffer indices for each key point. */
-   private final List<Integer> keyPoints = new ArrayList<>();
+   /**
+    * The buffer indices of the key points, sorted in increasing order. It may hold the indices of
+    * removed key points until {@link #compactKeyPoints()} is called.
+    */
+   private int[] keyPoints = new int[16];
+   /** The number of indices in {@link #keyPoints}, including the removed key points. */
+   private int keyPointsLength = 0;
+   /** The number of key points. */
+   private int numberOfKeyPoints = 0;
+   /** The set of buffer indices holding a key point, this is the reference for the key points. */
+   private final BitSet keyPointSet = new BitSet();
+   /** Read-only view of {@link #keyPoints}. */
+   private final List<Integer> keyPointsView = new KeyPointsView();
    /** The list of listeners to be notified of changes on this object. */
    private final List<KeyPointsChangedListener> listeners = new ArrayList<>();
 
@@ -50,10 +71,34 @@ public class KeyPointsHandler implements KeyPointsHolder
     */
    public void clear()
    {
-      keyPoints.clear();
+      clearKeyPoints();
       listeners.clear();
    }
 
+   private void clearKeyPoints()
+   {
+      keyPointsLength = 0;
+      numberOfKeyPoints = 0;
+      keyPointSet.clear();
+   }
+
+   /** Discards the removed key points from {@link #keyPoints}. */
+   private void compactKeyPoints()
+   {
+      if (keyPointsLength == numberOfKeyPoints)
+         return;
+
+      int newLength = 0;
+
+      for (int i = 0; i < keyPointsLength; i++)
+      {
+         if (keyPointSet.get(keyPoints[i]))
+            keyPoints[newLength++] = keyPoints[i];
+      }
+
+      keyPointsLength = newLength;
+   }
+
    /**
     * Adds a listener to this key points handler.
     *
@@ -137,27 +182,14 @@ public class KeyPointsHandler implements KeyPointsHolder
     * 
     * @param bufferIndex the index in the buffer where the key point should be toggled.
     * @return {@code true} if a key point was added, {@code false} if a key point is removed.
+    * @throws IllegalArgumentException if {@code bufferIndex} is negative.
     */
    public boolean toggleKeyPoint(int bufferIndex)
    {
-      for (int i = 0; i < keyPoints.size(); i++)
-      {
-         if (keyPoints.get(i) == bufferIndex)
-         {
-            keyPoints.remove(i);
-            notifyRemovedKeyPoint(bufferIndex);
-            return false;
-         }
+      if (removeKeyPoint(bufferIndex))
+         return false;
 
-         if (keyPoints.get(i) > bufferIndex)
-         {
-            keyPoints.add(i, bufferIndex);
-            notifyAddedKeyPoint(bufferIndex);
-            return true;
-         }
-      }
-
-      keyPoints.add(bufferIndex);
+      addKeyPoint(bufferIndex);
       return true;
    }
 
@@ -170,27 +202,81 @@ public class KeyPointsHandler implements KeyPointsHolder
     * @param bufferIndex the index in the buffer where the key point should be added.
     * @return {@code true} if a key point was added, {@code false} if a key point already exists and
     *         nothing happened.
+    * @throws IllegalArgumentException if {@code bufferIndex} is negative.
     */
    public boolean addKeyPoint(int bufferIndex)
    {
-      for (int i = 0; i < keyPoints.size(); i++)
+      if (!insertKeyPoint(bufferIndex))
+         return false;
+
+      notifyAddedKeyPoint(bufferIndex);
+      return true;
+   }
+
+   private boolean insertKeyPoint(int bufferIndex)
+   {
+      if (bufferIndex < 0)
+         throw new IllegalArgumentException("The buffer index cannot be negative: " + bufferIndex);
+      if (keyPointSet.get(bufferIndex))
+         return false;
+
+      compactKeyPoints();
+      int insertionIndex = -Arrays.binarySearch(keyPoints, 0, keyPointsLength, bufferIndex) - 1;
+
+      if (keyPointsLength == keyPoints.length)
+         keyPoints = Arrays.copyOf(keyPoints, 2 * keyPoints.length);
+
+      System.arraycopy(keyPoints, insertionIndex, keyPoints, insertionIndex + 1, keyPointsLength - insertionIndex);
+      keyPoints[insertionIndex] = bufferIndex;
+      keyPointsLength++;
+      numberOfKeyPoints++;
+      keyPointSet.set(bufferIndex);
+      return true;
+   }
+
+   /**
+    * Adds a key point at each of the given indices, for instance as returned by
+    * {@link YoBuffer#query(YoBufferQuery)}.
+    * <p>
+    * The indices are merged with the existing key points in a single pass, indices at which a key
+    * point already exists are ignored. The listeners are notified once with all the added key points.
+    * </p>
+    *
+    * @param bufferIndices the indices in the buffer where key points should be added. Not modified.
+    * @return the number of key points that were added.
+    */
+   public int addKeyPoints(BitSet bufferIndices)
+   {
+      BitSet addedSet = (BitSet) bufferIndices.clone();
+      addedSet.andNot(keyPointSet);
+      int numberOfAddedKeyPoints = addedSet.cardinality();
+
+      if (numberOfAddedKeyPoints == 0)
+         return 0;
+
+      compactKeyPoints();
+      keyPointSet.or(addedSet);
+      int[] merged = new int[Math.max(keyPoints.length, Integer.highestOneBit(numberOfKeyPoints + numberOfAddedKeyPoints) << 1)];
+      List<Integer> addedKeyPoints = new ArrayList<>(numberOfAddedKeyPoints);
+      int i = 0;
+      int mergedSize = 0;
+
+      for (int bufferIndex = addedSet.nextSetBit(0); bufferIndex >= 0; bufferIndex = addedSet.nextSetBit(bufferIndex + 1))
       {
-         if (keyPoints.get(i) == bufferIndex)
-         {
-            return false;
-         }
+         while (i < numberOfKeyPoints && keyPoints[i] < bufferIndex)
+            merged[mergedSize++] = keyPoints[i++];
 
-         if (keyPoints.get(i) > bufferIndex)
-         {
-            keyPoints.add(i, bufferIndex);
-            notifyAddedKeyPoint(bufferIndex);
-            return true;
-         }
+         merged[mergedSize++] = bufferIndex;
+         addedKeyPoints.add(bufferIndex);
       }
 
-      keyPoints.add(bufferIndex);
-      notifyAddedKeyPoint(bufferIndex);
-      return true;
+      System.arraycopy(keyPoints, i, merged, mergedSize, numberOfKeyPoints - i);
+      keyPoints = merged;
+      numberOfKeyPoints += numberOfAddedKeyPoints;
+      keyPointsLength = numberOfKeyPoints;
+
+      notifyAddedKeyPoints(addedKeyPoints);
+      return numberOfAddedKeyPoints;
    }
 
    /**
@@ -205,19 +291,25 @@ public class KeyPointsHandler implements KeyPointsHolder
     */
    public boolean removeKeyPoint(int bufferIndex)
    {
-      for (int i = 0; i < keyPoints.size(); i++)
-      {
-         if (keyPoints.get(i) == bufferIndex)
-         {
-            keyPoints.remove(i);
-            notifyRemovedKeyPoint(bufferIndex);
-            return true;
-         }
+      if (!isKeyPoint(bufferIndex))
+         return false;
 
-         if (keyPoints.get(i) > bufferIndex)
-            return false;
-      }
-      return false;
+      // The index is left in the sorted array until it is next compacted.
+      keyPointSet.clear(bufferIndex);
+      numberOfKeyPoints--;
+      notifyRemovedKeyPoint(bufferIndex);
+      return true;
+   }
+
+   /**
+    * Tests whether there is a key point at the given index.
+    *
+    * @param bufferIndex the index in the buffer to test.
+    * @return {@code true} if there is a key point at the index.
+    */
+   public boolean isKeyPoint(int bufferIndex)
+   {
+      return bufferIndex >= 0 && keyPointSet.get(bufferIndex);
    }
 
    /**
@@ -233,20 +325,11 @@ public class KeyPointsHandler implements KeyPointsHolder
     */
    public int getNextKeyPoint(int bufferIndex)
    {
-      for (int i = 0; i < keyPoints.size(); i++)
-      {
-         if (keyPoints.get(i) > bufferIndex)
-         {
-            return keyPoints.get(i);
-         }
-      }
-
-      if (keyPoints.size() > 0)
-      {
-         return keyPoints.get(0);
-      }
+      if (numberOfKeyPoints == 0)
+         return bufferIndex;
 
-      return bufferIndex;
+      int next = bufferIndex < 0 ? -1 : keyPointSet.nextSetBit(bufferIndex + 1);
+      return next >= 0 ? next : keyPointSet.nextSetBit(0);
    }
 
    /**
@@ -262,20 +345,11 @@ public class KeyPointsHandler implements KeyPointsHolder
     */
    public int getPreviousKeyPoint(int bufferIndex)
    {
-      for (int i = keyPoints.size() - 1; i >= 0; i--)
-      {
-         if (keyPoints.get(i) < bufferIndex)
-         {
-            return keyPoints.get(i);
-         }
-      }
+      if (numberOfKeyPoints == 0)
+         return bufferIndex;
 
-      if (keyPoints.size() > 0)
-      {
-         return keyPoints.get(keyPoints.size() - 1);
-      }
-
-      return bufferIndex;
+      int previous = bufferIndex <= 0 ? -1 : keyPointSet.previousSetBit(bufferIndex - 1);
+      return previous >= 0 ? previous : keyPointSet.length() - 1;
    }
 
    /**
@@ -288,39 +362,65 @@ public class KeyPointsHandler implements KeyPointsHolder
     */
    public void trimKeyPoints(int startBufferIndex, int endBufferIndex)
    {
+      compactKeyPoints();
       List<Integer> removedKeyPoints = new ArrayList<>();
+      int newNumberOfKeyPoints = 0;
 
-      for (int i = 0; i < keyPoints.size(); i++)
+      for (int i = 0; i < keyPointsLength; i++)
       {
+         int keyPoint = keyPoints[i];
+         boolean remove;
+
          if (startBufferIndex < endBufferIndex)
+            remove = keyPoint < startBufferIndex || keyPoint > endBufferIndex;
+         else
+            remove = keyPoint < startBufferIndex && keyPoint > endBufferIndex;
+
+         if (remove)
          {
-            if (keyPoints.get(i) < startBufferIndex || keyPoints.get(i) > endBufferIndex)
-            {
-               removedKeyPoints.add(keyPoints.remove(i));
-               i--;
-            }
+            removedKeyPoints.add(keyPoint);
+            keyPointSet.clear(keyPoint);
          }
          else
          {
-            if (keyPoints.get(i) < startBufferIndex && keyPoints.get(i) > endBufferIndex)
-            {
-               removedKeyPoints.add(keyPoints.remove(i));
-               i--;
-            }
+            keyPoints[newNumberOfKeyPoints++] = keyPoint;
          }
       }
 
+      numberOfKeyPoints = newNumberOfKeyPoints;
+      keyPointsLength = newNumberOfKeyPoints;
       notifyRemovedKeyPoints(removedKeyPoints);
    }
 
+   /**
+    * Returns the number of key points.
+    *
+    * @return the number of key points.
+    */
+   public int getNumberOfKeyPoints()
+   {
+      return numberOfKeyPoints;
+   }
+
    /**
     * Returns the indices of every key point.
+    * <p>
+    * The returned list is a view backed by this handler and kept sorted in increasing order. Unlike
+    * the list returned by previous versions, which was the modifiable backing {@link ArrayList}:
+    * <ul>
+    * <li>adding an index adds a key point at its sorted position regardless of the position given,
+    * and does nothing if there is already a key point at this index.
+    * <li>replacing an element is not supported and throws an {@link UnsupportedOperationException}.
+    * </ul>
+    * Removing elements is supported. As before, modifying the key points through the list does not
+    * notify the listeners.
+    * </p>
     * 
     * @return the key point indices.
     */
    public List<Integer> getKeyPoints()
    {
-      return keyPoints;
+      return keyPointsView;
    }
 
    private void notifyAddedKeyPoint(int addedKeyPoint)
@@ -345,6 +445,52 @@ public class KeyPointsHandler implements KeyPointsHolder
       listeners.forEach(listener -> listener.changed(change));
    }
 
+   private class KeyPointsView extends AbstractList<Integer> implements RandomAccess
+   {
+      @Override
+      public Integer get(int index)
+      {
+         Objects.checkIndex(index, numberOfKeyPoints);
+         compactKeyPoints();
+         return keyPoints[index];
+      }
+
+      @Override
+      public void add(int index, Integer bufferIndex)
+      {
+         Objects.checkIndex(index, numberOfKeyPoints + 1);
+         if (insertKeyPoint(bufferIndex))
+            modCount++;
+      }
+
+      @Override
+      public Integer remove(int index)
+      {
+         Objects.checkIndex(index, numberOfKeyPoints);
+         modCount++;
+         compactKeyPoints();
+         int bufferIndex = keyPoints[index];
+         System.arraycopy(keyPoints, index + 1, keyPoints, index, keyPointsLength - index - 1);
+         keyPointsLength--;
+         numberOfKeyPoints--;
+         keyPointSet.clear(bufferIndex);
+         return bufferIndex;
+      }
+
+      @Override
+      public void clear()
+      {
+         modCount++;
+         clearKeyPoints();
+      }
+
+      @Override
+      public int size()
+      {
+         return numberOfKeyPoints;
+      }
+   }
+
    private static class KeyPointsChange implements Change
    {
       private final boolean wasToggled;
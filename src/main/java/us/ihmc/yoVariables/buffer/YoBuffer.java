@@ -15,25 +15,38 @@
  */
 package us.ihmc.yoVariables.buffer;
 
+import java.lang.invoke.VarHandle;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import us.ihmc.euclid.tools.EuclidCoreTools;
 import us.ihmc.log.LogTools;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferColumnProcessor;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferColumnReducer;
 import us.ihmc.yoVariables.buffer.interfaces.YoBufferIndexChangedListener;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferParallelProcessor;
 import us.ihmc.yoVariables.buffer.interfaces.YoBufferProcessor;
 import us.ihmc.yoVariables.buffer.interfaces.YoBufferReader;
 import us.ihmc.yoVariables.buffer.interfaces.YoBufferVariableEntryHolder;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferVariableEntryReader;
 import us.ihmc.yoVariables.buffer.interfaces.YoTimeBufferHolder;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorageFactory;
 import us.ihmc.yoVariables.registry.YoNamespace;
 import us.ihmc.yoVariables.registry.YoVariableHolder;
 import us.ihmc.yoVariables.tools.YoTools;
 import us.ihmc.yoVariables.variable.YoVariable;
+import us.ihmc.yoVariables.variable.YoVariableChangeTracker;
+import us.ihmc.yoVariables.variable.YoVariableType;
 
 /**
  * {@code YoBuffer} manages buffers to store history for a collection of {@link YoVariable}s.
@@ -52,11 +65,25 @@ import us.ihmc.yoVariables.variable.YoVariable;
  * buffer and updates the {@code YoVariable}s.
  * </ul>
  * </p>
+ * <p>
+ * A {@code YoBuffer} is meant to be modified by a single thread. Other threads can safely read the
+ * recorded data while the buffer is being written by using a {@link YoBufferConcurrentReader},
+ * which never blocks the writing thread.
+ * </p>
  */
 public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferHolder, YoBufferVariableEntryHolder
 {
+   /** Minimum number of buffer indices per chunk when processing a buffer in parallel. */
+   private static final int MIN_CHUNK_SIZE = 4096;
+   /** Minimum number of entries for reshaping the entries in parallel, e.g. when cropping. */
+   private static final int MIN_ENTRIES_FOR_PARALLEL_RESHAPE = 64;
+   /** Maximum buffer size when it is computed from a memory budget. */
+   private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
    /** Name for the the time variable. */
    private String timeVariableName = "t";
+   /** Cached entry for the time variable, {@code null} until it is first looked up. */
+   private YoBufferVariableEntry timeEntry = null;
 
    /**
     * The index of the current buffer's in-point.
@@ -86,6 +113,12 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
    private int currentIndex = 0;
    /** The current buffer size. */
    private int bufferSize;
+   /** The number of bytes the data of the entries may use, or {@code 0} if the buffer size is fixed. */
+   private long memoryBudget = 0;
+   /** The number of bits used by the entries to store one tick. */
+   private long bitsPerTick = 0;
+   /** The pool used to reshape the entries in parallel, or {@code null} to reshape them sequentially. */
+   private ForkJoinPool reshapePool = ForkJoinPool.commonPool();
    /** List of all the single variable buffers. */
    private final ArrayList<YoBufferVariableEntry> entries = new ArrayList<>();
    /**
@@ -101,6 +134,46 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
    private final List<YoBufferIndexChangedListener> indexChangedListeners = new ArrayList<>();
 
    private boolean lockIndex = false;
+   /** The factory used to create the storage of the new entries. */
+   private final YoBufferStorageFactory storageFactory;
+   /**
+    * When change tracking is enabled, keeps track of the variables that have changed since the last
+    * tick.
+    */
+   private YoVariableChangeTracker changeTracker = null;
+   /** When change tracking is enabled, the entries indexed by their variable's change bit. */
+   private final List<YoBufferVariableEntry> trackedEntries = new ArrayList<>();
+   /**
+    * When change tracking is enabled, the entries which variable is already tracked for another entry
+    * and that are written at every tick.
+    */
+   private final List<YoBufferVariableEntry> untrackedEntries = new ArrayList<>();
+   /**
+    * When not {@code null}, the entries that are read eagerly when the current index changes, the
+    * other entries are only read on demand, see {@link #setActiveVariables(List)}.
+    */
+   private List<YoBufferVariableEntry> activeEntries = null;
+   /** Whether the entries that are not active have yet to be read at the current index. */
+   private boolean readPending = false;
+   /**
+    * When active variables are defined, tracks the variables set since the last change of the current
+    * index, such that their new value is not overwritten by the pending read.
+    */
+   private YoVariableChangeTracker pendingReadTracker = null;
+   /** Counts the ticks written while change tracking is enabled. */
+   private final YoBufferTickCounter tickCounter = new YoBufferTickCounter();
+   /**
+    * Sequence lock incremented before and after writing a tick, see {@link YoBufferConcurrentReader}.
+    * It is odd while a tick is being written.
+    */
+   volatile long tickSequence = 0;
+   /**
+    * Sequence lock incremented before and after any other modification of the buffer, see
+    * {@link YoBufferConcurrentReader}. It is odd while a modification is in progress.
+    */
+   volatile long modificationSequence = 0;
+   /** Depth of nested modifications, only the outermost updates {@link #modificationSequence}. */
+   private int modificationDepth = 0;
 
    /**
     * Creates a new empty buffer.
@@ -111,12 +184,34 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     * @param bufferSize the initialize buffer size.
     */
    public YoBuffer(int bufferSize)
+   {
+      this(bufferSize, YoBufferStorageFactory.heap());
+   }
+
+   /**
+    * Creates a new empty buffer which data is stored using the given factory.
+    * <p>
+    * Variables can be registered to this buffer {@link #addVariable(YoVariable)}.
+    * </p>
+    *
+    * @param bufferSize     the initialize buffer size.
+    * @param storageFactory the factory used to create the storage of the entries of this buffer, for
+    *                       instance {@link YoBufferStorageFactory#offHeap()} to keep the data out of
+    *                       the Java heap.
+    */
+   public YoBuffer(int bufferSize, YoBufferStorageFactory storageFactory)
    {
       this.bufferSize = bufferSize;
+      this.storageFactory = storageFactory;
    }
 
    /**
     * Clone constructor.
+    * <p>
+    * When the buffer data is stored using {@link YoBufferStorageFactory#copyOnWrite(YoBufferStorageFactory)},
+    * the data is shared with {@code other} until either buffer modifies it, which makes this a cheap
+    * way to take a snapshot before a destructive operation.
+    * </p>
     *
     * @param other the other buffer to copy. Not modified.
     */
@@ -127,6 +222,9 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
       currentIndex = other.currentIndex;
       bufferSize = other.bufferSize;
       lockIndex = other.lockIndex;
+      storageFactory = other.storageFactory;
+      memoryBudget = other.memoryBudget;
+      reshapePool = other.reshapePool;
 
       for (YoBufferVariableEntry otherEntry : other.entries)
          addEntry(new YoBufferVariableEntry(otherEntry));
@@ -137,13 +235,36 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void clear()
    {
-      inPoint = 0;
-      outPoint = 0;
-      currentIndex = 0;
-      entries.clear();
-      simpleNameToEntriesMap.clear();
-      keyPointsHandler.clear();
-      indexChangedListeners.clear();
+      beginModification();
+      try
+      {
+         inPoint = 0;
+         outPoint = 0;
+         currentIndex = 0;
+         if (changeTracker != null)
+         {
+            changeTracker.untrackAll();
+            trackedEntries.clear();
+            untrackedEntries.clear();
+         }
+         entries.clear();
+         simpleNameToEntriesMap.clear();
+         bitsPerTick = 0;
+         timeEntry = null;
+         activeEntries = null;
+         readPending = false;
+         if (pendingReadTracker != null)
+         {
+            pendingReadTracker.untrackAll();
+            pendingReadTracker = null;
+         }
+         keyPointsHandler.clear();
+         indexChangedListeners.clear();
+      }
+      finally
+      {
+         endModification();
+      }
    }
 
    /**
@@ -153,8 +274,17 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void clearBuffers(int bufferSize)
    {
-      entries.forEach(entry -> entry.clearBuffer(bufferSize));
-      this.bufferSize = bufferSize;
+      beginModification();
+      try
+      {
+         forEachEntry(entry -> entry.clearBuffer(bufferSize));
+         this.bufferSize = bufferSize;
+         resetChangeTracking();
+      }
+      finally
+      {
+         endModification();
+      }
    }
 
    /**
@@ -172,26 +302,129 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void resizeBuffer(int newBufferSize)
    {
-      if (newBufferSize < bufferSize)
+      beginModification();
+      try
       {
-         cropBuffer(inPoint, (inPoint + newBufferSize - 1) % bufferSize);
+         if (newBufferSize < bufferSize)
+         {
+            cropBuffer(inPoint, (inPoint + newBufferSize - 1) % bufferSize);
+         }
+         else if (newBufferSize > bufferSize)
+         {
+            shiftBuffer();
+            enlargeBufferSize(newBufferSize);
+         }
       }
-      else if (newBufferSize > bufferSize)
+      finally
       {
-         shiftBuffer();
-         enlargeBufferSize(newBufferSize);
+         endModification();
       }
    }
 
-   private void enlargeBufferSize(int newBufferSize)
+   /**
+    * Sets the number of bytes the data of this buffer may use, such that the buffer size is computed
+    * from the variables registered rather than fixed.
+    * <p>
+    * The buffer is resized to the largest size that fits in the budget given the number of bits each
+    * entry uses per tick, see {@link YoBufferStorage#getBitsPerValue()}. It is resized again whenever
+    * variables are registered or removed with {@link #addVariable(YoVariable)},
+    * {@link #addVariables(List)}, and {@link #removeVariable(YoVariable)}. When variables are
+    * registered, the buffer is shrunk before creating their entries, using the number of bits per
+    * value given by the storage factory, see {@link YoBufferStorageFactory#getBitsPerValue(YoVariable)}.
+    * Resizing follows {@link #resizeBuffer(int)}.
+    * </p>
+    * <p>
+    * The budget is a target for the steady state rather than a hard limit. It only accounts for the
+    * values of the entries, leaving a word per entry for the padding of the storages, but not for
+    * their fixed overhead, e.g. the caches of the compressed storages. While the buffer is being
+    * resized, the old and new storages of an entry coexist such that the memory used temporarily
+    * exceeds the budget. The storages that compress their values, see
+    * {@link YoBufferStorageFactory#compressed()}, are accounted for as if they did not.
+    * </p>
+    *
+    * @param memoryBudget the number of bytes the data of this buffer may use, or {@code 0} to fix the
+    *                     buffer size to its current value.
+    * @see #getMemoryUsage()
+    */
+   public void setMemoryBudget(long memoryBudget)
    {
-      for (int i = 0; i < entries.size(); i++)
+      if (memoryBudget < 0)
+         throw new IllegalArgumentException("The memory budget cannot be negative: " + memoryBudget);
+
+      this.memoryBudget = memoryBudget;
+      applyMemoryBudget(0, 0);
+   }
+
+   /**
+    * Returns the number of bytes the data of this buffer may use.
+    *
+    * @return the memory budget in bytes, or {@code 0} if the buffer size is fixed.
+    * @see #setMemoryBudget(long)
+    */
+   public long getMemoryBudget()
+   {
+      return memoryBudget;
+   }
+
+   /**
+    * Returns the number of bytes used by the entries of this buffer to store one tick.
+    *
+    * @return the memory used per tick in bytes.
+    */
+   public double getMemoryUsagePerTick()
+   {
+      return bitsPerTick / (double) Byte.SIZE;
+   }
+
+   /**
+    * Resizes this buffer to fit in the memory budget, if any.
+    *
+    * @param additionalBitsPerTick the number of bits per tick of entries about to be added.
+    * @param additionalEntries    the number of entries about to be added.
+    */
+   private void applyMemoryBudget(long additionalBitsPerTick, int additionalEntries)
+   {
+      long totalBitsPerTick = bitsPerTick + additionalBitsPerTick;
+
+      if (memoryBudget == 0 || totalBitsPerTick == 0)
+         return;
+
+      long budgetBits = memoryBudget > Long.MAX_VALUE / Byte.SIZE ? Long.MAX_VALUE : memoryBudget * Byte.SIZE;
+      // Each storage may round its capacity up to a word.
+      budgetBits -= (long) Long.SIZE * (entries.size() + additionalEntries);
+      int newBufferSize = (int) Math.max(1L, Math.min(MAX_BUFFER_SIZE, budgetBits / totalBitsPerTick));
+
+      if (newBufferSize > bufferSize)
       {
-         YoBufferVariableEntry entry = entries.get(i);
-         entry.enlargeBufferSize(newBufferSize);
+         resizeBuffer(newBufferSize);
+      }
+      else if (newBufferSize < bufferSize)
+      {
+         beginModification();
+         try
+         {
+            resizeBuffer(newBufferSize);
+            // Cropping keeps the storages, their memory has to be released for the budget to hold.
+            forEachEntry(YoBufferVariableEntry::trimBufferData);
+         }
+         finally
+         {
+            endModification();
+         }
       }
+   }
+
+   private long estimateBitsPerValue(YoVariable variable)
+   {
+      return storageFactory.getBitsPerValue(variable);
+   }
+
+   private void enlargeBufferSize(int newBufferSize)
+   {
+      forEachEntry(entry -> entry.enlargeBufferSize(newBufferSize));
 
       bufferSize = newBufferSize;
+      resetChangeTracking();
    }
 
    /**
@@ -220,6 +453,45 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
       return lockIndex;
    }
 
+   /**
+    * Returns the factory used to create the storage of the entries of this buffer.
+    *
+    * @return the storage factory.
+    */
+   public YoBufferStorageFactory getStorageFactory()
+   {
+      return storageFactory;
+   }
+
+   /**
+    * Sets the pool used to reshape the entries in parallel, for instance when cropping or resizing
+    * this buffer.
+    * <p>
+    * The entries are reshaped in parallel only when there are enough of them and their data is stored
+    * on the Java heap, the entries stored outside the heap, see {@link YoBufferStorage#isDirect()},
+    * are always reshaped sequentially on the calling thread such that paging them in from the disk
+    * does not stall the pool. By default, the common {@link ForkJoinPool} is used.
+    * </p>
+    *
+    * @param reshapePool the pool used to reshape the entries in parallel, or {@code null} to always
+    *                    reshape them sequentially on the calling thread.
+    */
+   public void setReshapePool(ForkJoinPool reshapePool)
+   {
+      this.reshapePool = reshapePool;
+   }
+
+   /**
+    * Returns the pool used to reshape the entries in parallel.
+    *
+    * @return the reshape pool, or {@code null} if the entries are reshaped sequentially.
+    * @see #setReshapePool(ForkJoinPool)
+    */
+   public ForkJoinPool getReshapePool()
+   {
+      return reshapePool;
+   }
+
    /**
     * Adds the given entry to this buffer.
     * 
@@ -233,6 +505,7 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
          throw new IllegalArgumentException("The new entry size (" + entry.getBufferSize() + ") does not match the buffer size (" + bufferSize + ").");
 
       entries.add(entry);
+      bitsPerTick += entry.getBufferStorage().getBitsPerValue();
 
       String variableName = entry.getVariable().getName().toLowerCase();
       List<YoBufferVariableEntry> entryList = simpleNameToEntriesMap.get(variableName);
@@ -242,6 +515,12 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
          simpleNameToEntriesMap.put(variableName, entryList);
       }
       entryList.add(entry);
+
+      if (changeTracker != null)
+         trackEntry(entry);
+      // A new variable has not been read from this buffer, its current value is kept.
+      if (pendingReadTracker != null)
+         entry.setPendingReadIndex(pendingReadTracker.track(entry.getVariable()));
    }
 
    /**
@@ -267,12 +546,21 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
       }
       else
       {
-         entry = new YoBufferVariableEntry(variable, bufferSize);
-         addEntry(entry);
+         if (memoryBudget != 0)
+            applyMemoryBudget(estimateBitsPerValue(variable), 1);
+         entry = createEntry(variable);
+         applyMemoryBudget(0, 0);
          return entry;
       }
    }
 
+   private YoBufferVariableEntry createEntry(YoVariable variable)
+   {
+      YoBufferVariableEntry entry = new YoBufferVariableEntry(variable, bufferSize, storageFactory);
+      addEntry(entry);
+      return entry;
+   }
+
    /**
     * Registers a list of variables.
     * <p>
@@ -289,10 +577,28 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
       // do this first so that 'entries' will only have to grow once.
       entries.ensureCapacity(entries.size() + variables.size());
 
+      if (memoryBudget != 0)
+      { // Resizing once for all the new variables.
+         long additionalBitsPerTick = 0;
+         int additionalEntries = 0;
+         for (int i = 0; i < variables.size(); i++)
+         {
+            if (getEntry(variables.get(i)) == null)
+            {
+               additionalBitsPerTick += estimateBitsPerValue(variables.get(i));
+               additionalEntries++;
+            }
+         }
+         applyMemoryBudget(additionalBitsPerTick, additionalEntries);
+      }
+
       for (int i = 0; i < variables.size(); i++)
       {
-         addVariable(variables.get(i));
+         if (getEntry(variables.get(i)) == null)
+            createEntry(variables.get(i));
       }
+
+      applyMemoryBudget(0, 0);
    }
 
    /**
@@ -309,10 +615,125 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
          return null;
 
       entries.remove(entry);
+      bitsPerTick -= entry.getBufferStorage().getBitsPerValue();
       simpleNameToEntriesMap.get(variable.getName().toLowerCase()).remove(entry);
+      if (entry == timeEntry)
+         timeEntry = null;
+      if (activeEntries != null)
+         activeEntries.remove(entry);
+      if (pendingReadTracker != null)
+      { // The variable cannot be untracked individually, the pending reads are resolved before tracking from scratch.
+         readPendingFromBuffer();
+         entry.setPendingReadIndex(-1);
+         pendingReadTracker.untrackAll();
+         trackPendingReads();
+      }
+
+      if (changeTracker != null)
+      { // The change bits are indexed by entry, re-index from scratch.
+         beginModification();
+         try
+         {
+            entry.disableChangeTracking();
+            setChangeTrackingEnabled(false);
+            setChangeTrackingEnabled(true);
+         }
+         finally
+         {
+            endModification();
+         }
+      }
+
+      applyMemoryBudget(0, 0);
       return entry;
    }
 
+   /**
+    * Enables or disables the change tracking mode.
+    * <p>
+    * By default, {@link #tickAndWriteIntoBuffer()} writes the value of every variable at each tick.
+    * When change tracking is enabled, the variables report to this buffer when their value changes
+    * and only the variables that have changed since the last tick are written. The other entries
+    * carry forward their last written value, which is done lazily when an entry is next written.
+    * Reading an entry resolves the values yet to be carried forward without modifying it.
+    * </p>
+    * <p>
+    * This mode is best suited for recording a large number of variables when only a fraction of them
+    * is updated at each tick. Several buffers can track the same variables. The variables can be set
+    * from any thread, a change racing with {@link #tickAndWriteIntoBuffer()} is recorded either at the
+    * current tick or the next one.
+    * </p>
+    *
+    * @param enable {@code true} to enable change tracking, {@code false} to disable it.
+    * @see YoVariableChangeTracker
+    */
+   public void setChangeTrackingEnabled(boolean enable)
+   {
+      beginModification();
+      try
+      {
+         if (enable == isChangeTrackingEnabled())
+            return;
+
+         if (enable)
+         {
+            changeTracker = new YoVariableChangeTracker();
+
+            for (int i = 0; i < entries.size(); i++)
+               trackEntry(entries.get(i));
+         }
+         else
+         {
+            for (int i = 0; i < entries.size(); i++)
+               entries.get(i).disableChangeTracking();
+            changeTracker.untrackAll();
+            changeTracker = null;
+            trackedEntries.clear();
+            untrackedEntries.clear();
+         }
+      }
+      finally
+      {
+         endModification();
+      }
+   }
+
+   /**
+    * Returns whether the change tracking mode is enabled.
+    *
+    * @return {@code true} if change tracking is enabled, {@code false} otherwise.
+    * @see #setChangeTrackingEnabled(boolean)
+    */
+   public boolean isChangeTrackingEnabled()
+   {
+      return changeTracker != null;
+   }
+
+   private void trackEntry(YoBufferVariableEntry entry)
+   {
+      // A newly tracked variable is marked as changed, it'll be written at the next tick.
+      if (changeTracker.track(entry.getVariable()) == trackedEntries.size())
+         trackedEntries.add(entry);
+      else // The variable is shared with another entry.
+         untrackedEntries.add(entry);
+      entry.enableChangeTracking(tickCounter, currentIndex);
+   }
+
+   /**
+    * To be called when the buffer data or the current index were modified by an operation other than
+    * {@link #tickAndWriteIntoBuffer()}.
+    */
+   private void resetChangeTracking()
+   {
+      if (changeTracker == null)
+         return;
+
+      for (int i = 0; i < entries.size(); i++)
+         entries.get(i).resetLastWrite(currentIndex);
+      // The data at the current index may not match the variables anymore.
+      changeTracker.markAllChanged();
+   }
+
    /**
     * Sets the current in-point for this buffer.
     * <p>
@@ -327,8 +748,16 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void setInPoint(int index)
    {
-      inPoint = index;
-      keyPointsHandler.trimKeyPoints(inPoint, outPoint);
+      beginModification();
+      try
+      {
+         inPoint = index;
+         keyPointsHandler.trimKeyPoints(inPoint, outPoint);
+      }
+      finally
+      {
+         endModification();
+      }
    }
 
    /**
@@ -345,8 +774,16 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void setOutPoint(int index)
    {
-      outPoint = index;
-      keyPointsHandler.trimKeyPoints(inPoint, outPoint);
+      beginModification();
+      try
+      {
+         outPoint = index;
+         keyPointsHandler.trimKeyPoints(inPoint, outPoint);
+      }
+      finally
+      {
+         endModification();
+      }
    }
 
    /**
@@ -375,8 +812,16 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void setInOutPointFullBuffer()
    {
-      inPoint = 0;
-      outPoint = getBufferSize() - 1;
+      beginModification();
+      try
+      {
+         inPoint = 0;
+         outPoint = getBufferSize() - 1;
+      }
+      finally
+      {
+         endModification();
+      }
    }
 
    /**
@@ -419,12 +864,155 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
       {
          entries.get(i).readFromBufferAt(currentIndex);
       }
+
+      readPending = false;
+   }
+
+   /**
+    * Reads the buffer at the current index and updates the value of the given variable.
+    * <p>
+    * This is typically used when a set of active variables has been defined to pull the value of a
+    * variable that is not active, see {@link #setActiveVariables(List)}.
+    * </p>
+    *
+    * @param variable the variable to update.
+    * @return {@code true} if the variable is managed by this buffer and was updated, {@code false}
+    *         otherwise.
+    */
+   public boolean readFromBuffer(YoVariable variable)
+   {
+      YoBufferVariableEntry entry = getEntry(variable);
+      if (entry == null)
+         return false;
+      entry.readFromBufferAt(currentIndex);
+      return true;
+   }
+
+   /**
+    * Reads the buffer at the current index for the variables that are not active, if they have not
+    * been updated since the last change of the current index.
+    * <p>
+    * This is typically called once the user is done scrubbing through the buffer, see
+    * {@link #setActiveVariables(List)}. The variables which value was set since the last change of
+    * the current index, for instance edited by the user, keep their new value.
+    * </p>
+    */
+   public void readPendingFromBuffer()
+   {
+      if (!readPending)
+         return;
+
+      for (int i = 0; i < entries.size(); i++)
+      {
+         YoBufferVariableEntry entry = entries.get(i);
+         int pendingReadIndex = entry.getPendingReadIndex();
+         if (pendingReadIndex < 0 || !pendingReadTracker.hasChanged(pendingReadIndex))
+            entry.readFromBufferAt(currentIndex);
+      }
+
+      readPending = false;
+   }
+
+   /**
+    * Returns whether the variables that are not active have not been updated since the last change of
+    * the current index.
+    *
+    * @return {@code true} if a read is pending, {@code false} otherwise.
+    * @see #setActiveVariables(List)
+    * @see #readPendingFromBuffer()
+    */
+   public boolean isReadPending()
+   {
+      return readPending;
+   }
+
+   /**
+    * Sets the variables that are to be read eagerly when the current index changes.
+    * <p>
+    * By default, every variable is updated from the buffer when the current index changes, e.g. via
+    * {@link #setCurrentIndex(int)} or {@link #tickAndReadFromBuffer(int)}, which cost grows with the
+    * number of variables. When active variables are defined, only these are updated and the others
+    * are updated on demand via {@link #readFromBuffer(YoVariable)} or all at once via
+    * {@link #readPendingFromBuffer()}, for instance once the user is done scrubbing through the buffer.
+    * </p>
+    * <p>
+    * The pending variables are also updated before writing into the buffer and before applying a
+    * {@link YoBufferProcessor}. A variable which value is set after the current index changes is not
+    * pending anymore, such that its new value is the one written into the buffer.
+    * </p>
+    *
+    * @param activeVariables the variables to read eagerly, or {@code null} to read all the variables
+    *                        eagerly. Variables that are not managed by this buffer are ignored.
+    */
+   public void setActiveVariables(List<? extends YoVariable> activeVariables)
+   {
+      if (activeVariables == null)
+      {
+         readPendingFromBuffer();
+         activeEntries = null;
+         if (pendingReadTracker != null)
+         {
+            for (int i = 0; i < entries.size(); i++)
+               entries.get(i).setPendingReadIndex(-1);
+            pendingReadTracker.untrackAll();
+            pendingReadTracker = null;
+         }
+         return;
+      }
+
+      if (pendingReadTracker == null)
+      {
+         pendingReadTracker = new YoVariableChangeTracker();
+         trackPendingReads();
+      }
+
+      activeEntries = new ArrayList<>(activeVariables.size());
+
+      for (int i = 0; i < activeVariables.size(); i++)
+      {
+         YoBufferVariableEntry entry = getEntry(activeVariables.get(i));
+         if (entry != null)
+            activeEntries.add(entry);
+      }
+   }
+
+   private void trackPendingReads()
+   {
+      for (int i = 0; i < entries.size(); i++)
+         entries.get(i).setPendingReadIndex(pendingReadTracker.track(entries.get(i).getVariable()));
+   }
+
+   /**
+    * Returns the variables that are read eagerly when the current index changes.
+    *
+    * @return the active variables, or {@code null} if all the variables are read eagerly.
+    * @see #setActiveVariables(List)
+    */
+   public List<YoVariable> getActiveVariables()
+   {
+      if (activeEntries == null)
+         return null;
+      return activeEntries.stream().map(YoBufferVariableEntry::getVariable).collect(Collectors.toList());
    }
 
    /**
     * Write into the buffer at the current index the current values of the variables.
     */
    public void writeIntoBuffer()
+   {
+      beginModification();
+      try
+      {
+         readPendingFromBuffer();
+         writeAllIntoBuffer();
+      }
+      finally
+      {
+         endModification();
+      }
+   }
+
+   private void writeAllIntoBuffer()
    {
       for (int i = 0; i < entries.size(); i++)
       {
@@ -461,14 +1049,42 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
       if (lockIndex)
          return;
 
-      currentIndex = index;
+      beginModification();
+      try
+      {
+         currentIndex = index;
 
-      if (currentIndex >= bufferSize)
-         currentIndex = 0;
-      else if (currentIndex < 0)
-         currentIndex = bufferSize - 1;
+         if (currentIndex >= bufferSize)
+            currentIndex = 0;
+         else if (currentIndex < 0)
+            currentIndex = bufferSize - 1;
+
+         if (activeEntries == null)
+         {
+            readFromBuffer();
+         }
+         else
+         {
+            for (int i = 0; i < activeEntries.size(); i++)
+               activeEntries.get(i).readFromBufferAt(currentIndex);
+            // The variables set from now on keep their value when the pending variables are read.
+            pendingReadTracker.clear();
+            readPending = true;
+         }
+
+         if (changeTracker != null)
+         {
+            for (int i = 0; i < entries.size(); i++)
+               entries.get(i).resetLastWrite(currentIndex);
+            // The variables were just updated from the buffer at the current index.
+            changeTracker.clear();
+         }
+      }
+      finally
+      {
+         endModification();
+      }
 
-      readFromBuffer();
       notifyIndexChangedListeners();
    }
 
@@ -502,6 +1118,14 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
 //      if (lockIndex)
 //         return;
 
+      // The variables that were not read yet would otherwise be recorded with stale values.
+      readPendingFromBuffer();
+
+      // Odd sequence: concurrent readers know that a tick is being written.
+      long sequence = tickSequence;
+      tickSequence = sequence + 1;
+      VarHandle.storeStoreFence();
+
       currentIndex = currentIndex + 1;
 
       if (currentIndex >= bufferSize || currentIndex < 0)
@@ -518,11 +1142,66 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
             inPoint = 0;
       }
 
+      if (changeTracker == null)
+         writeAllIntoBuffer();
+      else
+         writeChangesIntoBuffer();
+
+      // Even sequence: publishes the new tick.
+      tickSequence = sequence + 2;
+
       keyPointsHandler.removeKeyPoint(currentIndex);
-      writeIntoBuffer();
       notifyIndexChangedListeners();
    }
 
+   private void writeChangesIntoBuffer()
+   {
+      tickCounter.tick++;
+
+      // The changes are cleared as they are polled, such that a variable set concurrently is not missed.
+      for (int wordIndex = 0; wordIndex < changeTracker.getNumberOfWords(); wordIndex++)
+      {
+         for (long word = changeTracker.pollChanges(wordIndex); word != 0L; word &= word - 1L)
+            trackedEntries.get((wordIndex << 6) + Long.numberOfTrailingZeros(word)).writeChangedValueAt(currentIndex);
+      }
+      for (int i = 0; i < untrackedEntries.size(); i++)
+         untrackedEntries.get(i).writeChangedValueAt(currentIndex);
+   }
+
+   void beginModification()
+   {
+      if (modificationDepth++ == 0)
+      {
+         modificationSequence++;
+         VarHandle.storeStoreFence();
+      }
+   }
+
+   void endModification()
+   {
+      if (--modificationDepth == 0)
+         modificationSequence++;
+   }
+
+   /**
+    * Returns the number of ticks written into this buffer via {@link #tickAndWriteIntoBuffer()} since
+    * its creation.
+    * <p>
+    * This method can be called from any thread.
+    * </p>
+    *
+    * @return the number of ticks written.
+    */
+   public long getNumberOfTicksWritten()
+   {
+      return tickSequence >>> 1;
+   }
+
+   YoBufferTickCounter getTickCounter()
+   {
+      return tickCounter;
+   }
+
    private void notifyIndexChangedListeners()
    {
       for (int i = 0; i < indexChangedListeners.size(); i++)
@@ -536,9 +1215,17 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void fillBuffer()
    {
-      for (int i = 0; i < entries.size(); i++)
+      beginModification();
+      try
+      {
+         for (int i = 0; i < entries.size(); i++)
+         {
+            entries.get(i).fillBuffer();
+         }
+      }
+      finally
       {
-         entries.get(i).fillBuffer();
+         endModification();
       }
    }
 
@@ -559,29 +1246,37 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void shiftBuffer(int shiftIndex)
    {
-      if (shiftIndex == 0)
-         return;
+      beginModification();
+      try
+      {
+         if (shiftIndex == 0)
+            return;
 
-      // If the start point is outside of the buffer abort.
-      if (shiftIndex <= 0 || shiftIndex >= bufferSize)
-         return;
+         // If the start point is outside of the buffer abort.
+         if (shiftIndex <= 0 || shiftIndex >= bufferSize)
+            return;
 
-      // Shift the data in each entry to begin with start.
-      for (int i = 0; i < entries.size(); i++)
-         entries.get(i).shiftBuffer(shiftIndex);
+         // Shift the data in each entry to begin with start.
+         forEachEntry(entry -> entry.shiftBuffer(shiftIndex));
 
-      // Move the current index to its relative position in the new data set, if the index is outside of the buffer move to zero
-      currentIndex = (currentIndex - shiftIndex + bufferSize) % bufferSize;
+         // Move the current index to its relative position in the new data set, if the index is outside of the buffer move to zero
+         currentIndex = (currentIndex - shiftIndex + bufferSize) % bufferSize;
 
-      if (currentIndex < 0)
-         currentIndex = 0;
+         if (currentIndex < 0)
+            currentIndex = 0;
 
-      // Move the inPoint to the new beginning and the outPoint to the end
-      inPoint = 0; // this.inPoint - start;
-      outPoint = (outPoint - shiftIndex + bufferSize) % bufferSize;
+         // Move the inPoint to the new beginning and the outPoint to the end
+         inPoint = 0; // this.inPoint - start;
+         outPoint = (outPoint - shiftIndex + bufferSize) % bufferSize;
+         resetChangeTracking();
 
-      // Move to the first tick
-      tickAndReadFromBuffer(0);
+         // Move to the first tick
+         tickAndReadFromBuffer(0);
+      }
+      finally
+      {
+         endModification();
+      }
    }
 
    /**
@@ -604,31 +1299,37 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void cropBuffer(int start, int end)
    {
-      // Abort if the start or end point is unreasonable
-      if (start < 0 || end > bufferSize)
-         return;
+      beginModification();
+      try
+      {
+         // Abort if the start or end point is unreasonable
+         if (start < 0 || end > bufferSize)
+            return;
 
-      bufferSize = YoBufferVariableEntry.computeBufferSizeAfterCrop(start, end, bufferSize);
+         bufferSize = YoBufferVariableEntry.computeBufferSizeAfterCrop(start, end, bufferSize);
 
-      // Step through the entries cropping and resizing the data set for each
-      for (int i = 0; i < entries.size(); i++)
-      {
-         entries.get(i).cropBuffer(start, end);
-      }
+         // Crop and resize the data set for each entry
+         forEachEntry(entry -> entry.cropBuffer(start, end));
 
-      // Move the current index to its relative position after the resize
-      currentIndex = (currentIndex - start + bufferSize) % bufferSize;
+         // Move the current index to its relative position after the resize
+         currentIndex = (currentIndex - start + bufferSize) % bufferSize;
 
-      // If the index is out of bounds move it to the beginning
-      if (currentIndex < 0 || currentIndex >= bufferSize)
-         currentIndex = 0;
+         // If the index is out of bounds move it to the beginning
+         if (currentIndex < 0 || currentIndex >= bufferSize)
+            currentIndex = 0;
 
-      // Set the in point to the beginning and the out point to the end
-      inPoint = 0;
-      outPoint = bufferSize - 1;
+         // Set the in point to the beginning and the out point to the end
+         inPoint = 0;
+         outPoint = bufferSize - 1;
+         resetChangeTracking();
 
-      // Move to the first tick
-      gotoInPoint();
+         // Move to the first tick
+         gotoInPoint();
+      }
+      finally
+      {
+         endModification();
+      }
    }
 
    /**
@@ -650,34 +1351,39 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void cutBuffer(int start, int end)
    {
-      // Abort if the start or end point is unreasonable
-      if (start < 0 || end > bufferSize || start > end)
-         return;
+      beginModification();
+      try
+      {
+         // Abort if the start or end point is unreasonable
+         if (start < 0 || end > bufferSize || start > end)
+            return;
 
-      bufferSize = YoBufferVariableEntry.computeBufferSizeAfterCut(start, end, bufferSize);
+         bufferSize = YoBufferVariableEntry.computeBufferSizeAfterCut(start, end, bufferSize);
 
-      // Step through the entries cutting and resizing the data set for each
-      for (int i = 0; i < entries.size(); i++)
-      {
-         YoBufferVariableEntry entry = entries.get(i);
-         int actualBufferSize = entry.cutBuffer(start, end);
-         if (actualBufferSize >= 0)
-            bufferSize = actualBufferSize;
-      }
+         // Cut and resize the data set for each entry
+         forEachEntry(entry -> entry.cutBuffer(start, end));
+         if (!entries.isEmpty())
+            bufferSize = entries.get(0).getBufferSize();
 
-      // Move the current index to its relative position after the resize
-      currentIndex = (currentIndex - start + bufferSize) % bufferSize;
+         // Move the current index to its relative position after the resize
+         currentIndex = (currentIndex - start + bufferSize) % bufferSize;
 
-      // If the index is out of bounds move it to the beginning
-      if (currentIndex < 0 || currentIndex >= bufferSize)
-         currentIndex = 0;
+         // If the index is out of bounds move it to the beginning
+         if (currentIndex < 0 || currentIndex >= bufferSize)
+            currentIndex = 0;
 
-      // Set the in point to the beginning and the out point to the end
-      inPoint = 0;
-      outPoint = start - 1;
+         // Set the in point to the beginning and the out point to the end
+         inPoint = 0;
+         outPoint = start - 1;
+         resetChangeTracking();
 
-      // Move to the first tick
-      gotoOutPoint();
+         // Move to the first tick
+         gotoOutPoint();
+      }
+      finally
+      {
+         endModification();
+      }
    }
 
    /**
@@ -685,33 +1391,95 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     * The size of this buffer is essentially being divided by {@code n}.
     * 
     * @param n the spacing between data points to preserve.
+    * @see YoBufferThinningMode#EVERY_NTH
     */
    public void thinData(int n)
    {
-      shiftBuffer();
+      thinData(n, YoBufferThinningMode.EVERY_NTH);
+   }
 
-      inPoint = 0;
-      currentIndex = 0;
+   /**
+    * Reduces the buffer size by a factor {@code n} using the given strategy to select or compute the
+    * data points to preserve.
+    * <p>
+    * The strategies depending on the data select the ticks to keep from the first entry of this
+    * buffer, see {@link #thinData(int, YoBufferThinningMode, YoVariable)} to choose the reference.
+    * </p>
+    * 
+    * @param n    the factor by which the buffer size is divided.
+    * @param mode the strategy used to thin the data of each entry.
+    */
+   public void thinData(int n, YoBufferThinningMode mode)
+   {
+      thinData(n, mode, entries.isEmpty() ? null : entries.get(0).getVariable());
+   }
 
-      if (bufferSize <= 2 * n)
-         return;
+   /**
+    * Reduces the buffer size by a factor {@code n} using the given strategy to select or compute the
+    * data points to preserve.
+    * <p>
+    * The data is first shifted such that the in-point is at {@code 0}, the ticks to keep are then
+    * selected from the history of {@code reference} and kept for every entry, such that the values
+    * at a given index still originate from the same tick. Finally, the in-point and out-point are set
+    * to cover the thinned data.
+    * </p>
+    * 
+    * @param n         the factor by which the buffer size is divided.
+    * @param mode      the strategy used to thin the data of each entry.
+    * @param reference the variable from which the ticks to keep are selected, ignored by the
+    *                  strategies that do not depend on the data.
+    * @throws IllegalArgumentException if the reference is not managed by this buffer.
+    */
+   public void thinData(int n, YoBufferThinningMode mode, YoVariable reference)
+   {
+      YoBufferVariableEntry referenceEntry = reference == null ? null : getEntry(reference);
+      if (reference != null && referenceEntry == null)
+         throw new IllegalArgumentException("The variable " + reference.getFullNameString() + " is not managed by this buffer.");
 
-      // Step through the entries cutting and resizing the data set for each
-      for (int i = 0; i < entries.size(); i++)
+      beginModification();
+      try
       {
-         YoBufferVariableEntry entry = entries.get(i);
-         int newBufferSize = entry.thinData(n);
+         shiftBuffer();
 
-         // If the result is a positive number store the new buffer size otherwise keep the original size
-         if (newBufferSize >= 0)
-         {
-            bufferSize = newBufferSize;
-         }
+         inPoint = 0;
+         currentIndex = 0;
+         resetChangeTracking();
+
+         if (bufferSize <= 2 * n)
+            return;
+
+         // Thin and resize the data set for each entry
+         int[] ticks = referenceEntry == null ? null : mode.selectTicks(referenceEntry.getResolvedStorage(), n);
+         forEachEntry(entry -> entry.thinData(n, mode, ticks));
+         if (!entries.isEmpty())
+            bufferSize = entries.get(0).getBufferSize();
+
+         outPoint = bufferSize - 1;
+         resetChangeTracking();
+
+         gotoInPoint();
+      }
+      finally
+      {
+         endModification();
       }
+   }
 
-      outPoint = bufferSize - 1;
+   /**
+    * Applies the given operation to each entry, the entries stored on the heap are processed in
+    * parallel using the reshape pool when there are enough of them.
+    */
+   private void forEachEntry(Consumer<YoBufferVariableEntry> operation)
+   {
+      ForkJoinPool pool = reshapePool;
+      // The entries are all created by the same storage factory.
 
-      gotoInPoint();
+      if (pool == null || entries.size() < MIN_ENTRIES_FOR_PARALLEL_RESHAPE || entries.get(0).getBufferStorage().isDirect())
+         entries.forEach(operation);
+      else if (pool == ForkJoinPool.commonPool())
+         entries.parallelStream().forEach(operation);
+      else // A parallel stream runs in the pool of the task it is started from.
+         pool.submit(() -> entries.parallelStream().forEach(operation)).join();
    }
 
    /**
@@ -729,6 +1497,25 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
          return entry.computeAverage();
    }
 
+   /**
+    * Computes the statistics of the given variable over [{@code inPoint}, {@code outPoint}].
+    *
+    * @param variable         the variable to compute the statistics of.
+    * @param statisticsToPack the statistics in which the result is stored. Modified.
+    * @return {@code true} if the statistics were computed, {@code false} if the variable is not
+    *         managed by this buffer.
+    * @see YoBufferVariableEntry#computeStatistics(int, int, YoBufferStatistics)
+    */
+   public boolean computeStatistics(YoVariable variable, YoBufferStatistics statisticsToPack)
+   {
+      YoBufferVariableEntry entry = getEntry(variable);
+      if (entry == null)
+         return false;
+
+      entry.computeStatistics(inPoint, getInOutLength(), statisticsToPack);
+      return true;
+   }
+
    /**
     * Applies a processor throughout the buffer to read and or modify this buffer.
     * 
@@ -737,38 +1524,236 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void applyProcessor(YoBufferProcessor processor)
    {
-      processor.initialize(this);
+      List<YoBufferVariableEntry> activeEntriesBackup = activeEntries;
+      // The processor may access any variable at each index.
+      activeEntries = null;
 
-      if (processor.goForward())
+      beginModification();
+      try
       {
-         gotoInPoint();
+         processor.initialize(this);
 
-         while (!isAtOutPoint())
+         if (processor.goForward())
          {
+            gotoInPoint();
+
+            while (!isAtOutPoint())
+            {
+               processor.process(inPoint, outPoint, currentIndex);
+               writeIntoBuffer();
+               tickAndReadFromBuffer(1);
+            }
+
             processor.process(inPoint, outPoint, currentIndex);
             writeIntoBuffer();
             tickAndReadFromBuffer(1);
          }
+         else
+         {
+            gotoOutPoint();
 
-         processor.process(inPoint, outPoint, currentIndex);
-         writeIntoBuffer();
-         tickAndReadFromBuffer(1);
-      }
-      else
-      {
-         gotoOutPoint();
+            while (!isAtInPoint())
+            {
+               processor.process(outPoint, inPoint, currentIndex);
+               writeIntoBuffer();
+               tickAndReadFromBuffer(-1);
+            }
 
-         while (!isAtInPoint())
-         {
             processor.process(outPoint, inPoint, currentIndex);
             writeIntoBuffer();
             tickAndReadFromBuffer(-1);
          }
+      }
+      finally
+      {
+         activeEntries = activeEntriesBackup;
+         endModification();
+      }
+   }
+
+   /**
+    * Applies a column processor over [{@code inPoint}, {@code outPoint}] to read and or modify the
+    * history of a few variables.
+    * <p>
+    * Only the entries of the variables declared by the processor are accessed. The current index does
+    * not change, the output variables are updated to their value at the current index and the index
+    * listeners are notified once the processor is done.
+    * </p>
+    * <p>
+    * When the processor is a {@link YoBufferParallelProcessor}, the interval is split into chunks which
+    * are processed concurrently using the common {@link ForkJoinPool}.
+    * </p>
+    *
+    * @param processor the processor to applied to this buffer data.
+    * @throws IllegalArgumentException if one of the processor's variables is not managed by this
+    *                                  buffer.
+    * @see YoBufferColumnProcessor
+    */
+   public void applyProcessor(YoBufferColumnProcessor processor)
+   {
+      beginModification();
+      try
+      {
+         processor.initialize(this);
+
+         List<YoBufferVariableEntry> inputEntries = getEntries(processor.getInputVariables());
+         List<YoBufferVariableEntry> outputEntries = getEntries(processor.getOutputVariables());
+         int length = getInOutLength();
+
+         double[][] inputColumns = readColumns(inputEntries, length);
+         double[][] outputColumns = readColumns(outputEntries, length);
+
+         if (processor instanceof YoBufferParallelProcessor)
+         {
+            YoBufferParallelProcessor parallelProcessor = (YoBufferParallelProcessor) processor;
+            int chunkSize = computeChunkSize(length);
+            IntStream.range(0, (length + chunkSize - 1) / chunkSize).parallel().forEach(chunk ->
+            {
+               int fromOffset = chunk * chunkSize;
+               parallelProcessor.process(inputColumns, outputColumns, fromOffset, Math.min(fromOffset + chunkSize, length));
+            });
+         }
+         else
+         {
+            processor.process(inputColumns, outputColumns, length);
+         }
 
-         processor.process(outPoint, inPoint, currentIndex);
-         writeIntoBuffer();
-         tickAndReadFromBuffer(-1);
+         for (int i = 0; i < outputEntries.size(); i++)
+         {
+            YoBufferVariableEntry outputEntry = outputEntries.get(i);
+            outputEntry.setBufferWindow(inPoint, length, outputColumns[i], 0);
+            outputEntry.resetLastWrite(currentIndex);
+            outputEntry.readFromBufferAt(currentIndex);
+         }
       }
+      finally
+      {
+         endModification();
+      }
+
+      notifyIndexChangedListeners();
+   }
+
+   /**
+    * Applies a column reducer over [{@code inPoint}, {@code outPoint}] to compute a result from the
+    * history of a few variables.
+    * <p>
+    * The interval is split into chunks which are reduced concurrently using the common
+    * {@link ForkJoinPool}. This buffer is not modified.
+    * </p>
+    *
+    * @param <T>     the type of the result.
+    * @param reducer the reducer to applied to this buffer data.
+    * @return the result for the entire interval [{@code inPoint}, {@code outPoint}].
+    * @throws IllegalArgumentException if one of the reducer's variables is not managed by this
+    *                                  buffer.
+    * @see YoBufferColumnReducer
+    */
+   public <T> T applyReducer(YoBufferColumnReducer<T> reducer)
+   {
+      reducer.initialize(this);
+
+      int length = getInOutLength();
+      double[][] inputColumns = readColumns(getEntries(reducer.getInputVariables()), length);
+      int chunkSize = computeChunkSize(length);
+
+      return IntStream.range(0, (length + chunkSize - 1) / chunkSize).parallel().mapToObj(chunk ->
+      {
+         int fromOffset = chunk * chunkSize;
+         return reducer.reduce(inputColumns, fromOffset, Math.min(fromOffset + chunkSize, length));
+      }).reduce(reducer::combine).get();
+   }
+
+   /**
+    * Searches [{@code inPoint}, {@code outPoint}] for the buffer indices at which the given query is
+    * satisfied.
+    * <p>
+    * The buffer is searched one block of consecutive indices at a time, the blocks which bounds
+    * cannot satisfy the query are skipped without reading their values.
+    * </p>
+    * <p>
+    * The data of this buffer is not modified, the values of the change-tracked entries that have yet
+    * to be carried forward are resolved as they are read. The block bounds are cached in the entries
+    * and brought up to date by this method, such that queries on the same buffer should be run from a
+    * single thread.
+    * </p>
+    * <p>
+    * The result can be registered as key points using
+    * {@link KeyPointsHandler#addKeyPoints(BitSet)}, possibly after keeping only the start of each
+    * range with {@link YoBufferQuery#toRangeStarts(BitSet)}.
+    * </p>
+    *
+    * @param query the query to search for.
+    * @return the buffer indices satisfying the query.
+    * @throws IllegalArgumentException if one of the query's variables is not managed by this buffer.
+    */
+   public BitSet query(YoBufferQuery query)
+   {
+      YoBufferQuery.Evaluator evaluator = query.compile(this);
+
+      long[] masks = new long[(bufferSize + YoBufferQuery.Evaluator.BLOCK_SIZE - 1) / YoBufferQuery.Evaluator.BLOCK_SIZE];
+      int firstBlock = inPoint / YoBufferQuery.Evaluator.BLOCK_SIZE;
+      int lastBlock = outPoint / YoBufferQuery.Evaluator.BLOCK_SIZE;
+
+      if (inPoint <= outPoint)
+      {
+         for (int block = firstBlock; block <= lastBlock; block++)
+            masks[block] = evaluator.evaluate(block);
+      }
+      else
+      {
+         for (int block = 0; block <= lastBlock; block++)
+            masks[block] = evaluator.evaluate(block);
+         for (int block = Math.max(firstBlock, lastBlock + 1); block < masks.length; block++)
+            masks[block] = evaluator.evaluate(block);
+      }
+
+      BitSet result = BitSet.valueOf(masks);
+
+      if (inPoint <= outPoint)
+      {
+         result.clear(0, inPoint);
+         result.clear(outPoint + 1, bufferSize);
+      }
+      else
+      {
+         result.clear(outPoint + 1, inPoint);
+      }
+
+      return result;
+   }
+
+   private double[][] readColumns(List<YoBufferVariableEntry> columnEntries, int length)
+   {
+      double[][] columns = new double[columnEntries.size()][];
+      for (int i = 0; i < columnEntries.size(); i++)
+         columns[i] = columnEntries.get(i).getBufferWindow(inPoint, length);
+      return columns;
+   }
+
+   /**
+    * Chunks are kept large enough for the processing to outweigh the scheduling, and there are a few
+    * chunks per core to balance the load.
+    */
+   private static int computeChunkSize(int length)
+   {
+      int numberOfChunks = 4 * ForkJoinPool.getCommonPoolParallelism();
+      return Math.max(MIN_CHUNK_SIZE, (length + numberOfChunks - 1) / numberOfChunks);
+   }
+
+   private List<YoBufferVariableEntry> getEntries(List<? extends YoVariable> variables)
+   {
+      List<YoBufferVariableEntry> variableEntries = new ArrayList<>(variables.size());
+
+      for (int i = 0; i < variables.size(); i++)
+      {
+         YoBufferVariableEntry entry = getEntry(variables.get(i));
+         if (entry == null)
+            throw new IllegalArgumentException("The variable " + variables.get(i).getFullNameString() + " is not managed by this buffer.");
+         variableEntries.add(entry);
+      }
+
+      return variableEntries;
    }
 
    /** {@inheritDoc} */
@@ -814,6 +1799,47 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
       return bufferSize;
    }
 
+   /**
+    * Returns an estimate of the number of bytes used by the data of all the entries of this buffer.
+    *
+    * @return the memory used by this buffer in bytes.
+    * @see YoBufferStorage#getMemoryUsage()
+    */
+   public long getMemoryUsage()
+   {
+      long memoryUsage = 0;
+      for (int i = 0; i < entries.size(); i++)
+         memoryUsage += entries.get(i).getBufferStorage().getMemoryUsage();
+      return memoryUsage;
+   }
+
+   /**
+    * Returns the ratio between the size of the data of this buffer in its uncompressed form, as
+    * exported, and the memory it actually uses.
+    * <p>
+    * The ratio is greater than {@code 1} when the entries are stored with
+    * {@link YoBufferStorageFactory#compressed()}.
+    * </p>
+    *
+    * @return the compression ratio, or {@code 1} if this buffer is empty.
+    */
+   public double getCompressionRatio()
+   {
+      long uncompressedSize = 0;
+      long memoryUsage = 0;
+
+      for (int i = 0; i < entries.size(); i++)
+      {
+         YoBufferStorage storage = entries.get(i).getBufferStorage();
+         uncompressedSize += storage.getExportSize(storage.getSize());
+         memoryUsage += storage.getMemoryUsage();
+      }
+
+      if (memoryUsage == 0)
+         return 1.0;
+      return (double) uncompressedSize / (double) memoryUsage;
+   }
+
    /** {@inheritDoc} */
    @Override
    public YoBufferVariableEntry getEntry(YoVariable variable)
@@ -959,10 +1985,17 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
     */
    public void setTimeVariableName(String timeVariableName)
    {
-      if (findVariableEntry(timeVariableName) == null)
+      YoBufferVariableEntry newTimeEntry = findVariableEntry(timeVariableName);
+
+      if (newTimeEntry == null)
+      {
          LogTools.error("The requested timeVariableName does not exist, change not successful");
+      }
       else
+      {
          this.timeVariableName = timeVariableName;
+         timeEntry = newTimeEntry;
+      }
    }
 
    /**
@@ -986,11 +2019,166 @@ public class YoBuffer implements YoVariableHolder, YoBufferReader, YoTimeBufferH
       return keyPointsHandler;
    }
 
+   /**
+    * Returns the buffer entry for the time variable.
+    * <p>
+    * The entry is looked up by name on the first call and then cached.
+    * </p>
+    *
+    * @return the entry for the time variable, or {@code null} if it could not be found.
+    * @see #setTimeVariableName(String)
+    */
+   public YoBufferVariableEntry getTimeEntry()
+   {
+      if (timeEntry == null)
+         timeEntry = findVariableEntry(timeVariableName);
+      return timeEntry;
+   }
+
+   /**
+    * Finds the index of the last tick in [{@code inPoint}, {@code outPoint}] which time is less than
+    * or equal to the given time.
+    * <p>
+    * The time is assumed to be non-decreasing from the in-point to the out-point, such that a binary
+    * search is performed in O(log n).
+    * </p>
+    *
+    * @param time the query.
+    * @return the buffer index of the tick, or {@code -1} if the time precedes the in-point.
+    * @throws IllegalStateException if the time variable could not be found.
+    * @see #setTimeVariableName(String)
+    */
+   public int findIndexAtTime(double time)
+   {
+      int offset = searchTime(getTimeEntryOrThrow(), time, true) - 1;
+      return offset < 0 ? -1 : inOutOffsetToIndex(offset);
+   }
+
+   /**
+    * Finds the range of ticks in [{@code inPoint}, {@code outPoint}] which time is in
+    * [{@code startTime}, {@code endTime}].
+    * <p>
+    * The time is assumed to be non-decreasing from the in-point to the out-point, such that a binary
+    * search is performed in O(log n).
+    * </p>
+    *
+    * @param startTime the lower bound of the time range.
+    * @param endTime   the upper bound of the time range.
+    * @return the buffer indices of the first and last ticks of the range, the range wraps around the
+    *         end of the buffer when the first is greater than the last. {@code null} if no tick is in
+    *         the time range.
+    * @throws IllegalStateException if the time variable could not be found.
+    */
+   public int[] findIndexRange(double startTime, double endTime)
+   {
+      YoBufferVariableEntry timeEntry = getTimeEntryOrThrow();
+      int firstOffset = searchTime(timeEntry, startTime, false);
+      int lastOffset = searchTime(timeEntry, endTime, true) - 1;
+
+      if (firstOffset > lastOffset)
+         return null;
+      else
+         return new int[] {inOutOffsetToIndex(firstOffset), inOutOffsetToIndex(lastOffset)};
+   }
+
+   /**
+    * Reads the value of a buffer entry at the given time.
+    * <p>
+    * When the time falls in between two ticks, the value of a {@code YoDouble} is linearly
+    * interpolated while the value at the earlier tick is returned for other types of variables.
+    * </p>
+    *
+    * @param entry the entry to read the value of.
+    * @param time  the query.
+    * @return the value at the given time, or {@link Double#NaN} if the time is outside the time range
+    *         of [{@code inPoint}, {@code outPoint}].
+    * @throws IllegalStateException if the time variable could not be found.
+    * @see #findIndexAtTime(double)
+    */
+   public double readValueAtTime(YoBufferVariableEntryReader entry, double time)
+   {
+      YoBufferVariableEntry timeEntry = getTimeEntryOrThrow();
+      int nextOffset = searchTime(timeEntry, time, true);
+
+      if (nextOffset == 0)
+         return Double.NaN;
+
+      int previousIndex = inOutOffsetToIndex(nextOffset - 1);
+      double previousTime = timeEntry.readBufferAt(previousIndex);
+      double previousValue = entry.readBufferAt(previousIndex);
+
+      if (previousTime == time)
+         return previousValue;
+      if (nextOffset == getInOutLength())
+         return Double.NaN;
+      if (entry.getVariable().getType() != YoVariableType.DOUBLE)
+         return previousValue;
+
+      int nextIndex = inOutOffsetToIndex(nextOffset);
+      double nextTime = timeEntry.readBufferAt(nextIndex);
+      double alpha = (time - previousTime) / (nextTime - previousTime);
+      return EuclidCoreTools.interpolate(previousValue, entry.readBufferAt(nextIndex), alpha);
+   }
+
+   /**
+    * Binary search over the time of the ticks in [{@code inPoint}, {@code outPoint}].
+    *
+    * @param timeEntry the entry for the time variable.
+    * @param time      the query.
+    * @param inclusive whether ticks which time equals the query should be counted as preceding it.
+    * @return the offset from the in-point of the first tick which time is greater than the query, or
+    *         greater or equal if {@code inclusive} is {@code false}.
+    */
+   private int searchTime(YoBufferVariableEntry timeEntry, double time, boolean inclusive)
+   {
+      int low = 0;
+      int high = getInOutLength();
+
+      while (low < high)
+      {
+         int mid = (low + high) >>> 1;
+         double midTime = timeEntry.readBufferAt(inOutOffsetToIndex(mid));
+
+         if (midTime < time || inclusive && midTime == time)
+            low = mid + 1;
+         else
+            high = mid;
+      }
+
+      return low;
+   }
+
+   private int getInOutLength()
+   {
+      return YoBufferEnvelope.computeWindowLength(inPoint, outPoint, bufferSize);
+   }
+
+   private int inOutOffsetToIndex(int offset)
+   {
+      int index = inPoint + offset;
+      return index >= bufferSize ? index - bufferSize : index;
+   }
+
+   private YoBufferVariableEntry getTimeEntryOrThrow()
+   {
+      YoBufferVariableEntry timeEntry = getTimeEntry();
+      if (timeEntry == null)
+         throw new IllegalStateException("The time variable could not be found: " + timeVariableName);
+      return timeEntry;
+   }
+
    /** {@inheritDoc} */
    @Override
    public double[] getTimeBuffer()
    {
-      return findVariableEntry(timeVariableName).getBuffer();
+      return getTimeEntry().getBuffer();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void getTimeBuffer(double[] timeBufferToPack)
+   {
+      getTimeEntry().getBuffer(timeBufferToPack);
    }
 
    /** {@inheritDoc} */
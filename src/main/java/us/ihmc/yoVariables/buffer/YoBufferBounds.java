@@ -15,6 +15,8 @@
  */
 package us.ihmc.yoVariables.buffer;
 
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+
 /**
  * This class is used to store the lower and upper bounds to a series of double values typically
  * from an indexed buffer.
@@ -170,6 +172,37 @@ public class YoBufferBounds
       return changed;
    }
 
+   /**
+    * Computes and update the bounds of the given {@code storage} within the interval
+    * [{@code startIndex}, {@code endIndex}].
+    * <p>
+    * This is the equivalent of {@link #compute(double[])} for a buffer which values are held in a
+    * {@link YoBufferStorage}.
+    * </p>
+    *
+    * @param storage the series of values to compute the lower and upper bounds of. Not modified.
+    * @return {@code true} if the bounds have changed, {@code false} otherwise.
+    */
+   public boolean compute(YoBufferStorage storage)
+   {
+      double previousLowerBound = lowerBound;
+      double previousUpperBound = upperBound;
+      lowerBound = Double.POSITIVE_INFINITY;
+      upperBound = Double.NEGATIVE_INFINITY;
+
+      if (startIndex < endIndex)
+      {
+         storage.updateBounds(startIndex, endIndex, this);
+      }
+      else
+      {
+         storage.updateBounds(startIndex, storage.getSize(), this);
+         storage.updateBounds(0, endIndex, this);
+      }
+
+      return lowerBound != previousLowerBound || upperBound != previousUpperBound;
+   }
+
    /**
     * Updates the current bounds to contain the given {@code value}.
     * 
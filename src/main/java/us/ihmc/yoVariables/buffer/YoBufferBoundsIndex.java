@@ -0,0 +1,394 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.util.Arrays;
+
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+
+/**
+ * Multi-resolution index of the minimum and maximum values of a {@link YoBufferStorage}.
+ * <p>
+ * The storage is divided into blocks of {@value #BLOCK_SIZE} values which bounds are kept in the
+ * first level of a pyramid. Each following level halves the resolution, such that a bucket of the
+ * level {@code k} covers the {@code BLOCK_SIZE << k} values starting at index
+ * {@code bucket * (BLOCK_SIZE << k)}. The bounds of any interval are obtained by combining
+ * {@code O(log n)} buckets and scanning at most two partial blocks, which is used to compute window
+ * bounds and pixel envelopes for plotting without touching every value.
+ * </p>
+ * <p>
+ * Writing into the storage only marks the corresponding block as dirty, dirty blocks are summarized
+ * again lazily before the next query, such that the cost of maintaining the index is amortized over
+ * the written values.
+ * </p>
+ * <p>
+ * As for {@link YoBufferBounds}, {@code NaN}s are ignored.
+ * </p>
+ */
+final class YoBufferBoundsIndex
+{
+   private static final int BLOCK_SHIFT = 6;
+   /** Number of values summarized by each bucket of the first level. */
+   static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+   /** The storage this index summarizes. */
+   private final YoBufferStorage storage;
+   /** The size of {@link #storage}. */
+   private final int size;
+   /** The minimum value of each bucket, indexed by level then bucket. */
+   private final double[][] lowerBounds;
+   /** The maximum value of each bucket, indexed by level then bucket. */
+   private final double[][] upperBounds;
+   /** One bit per block indicating whether the block has been written since it was last summarized. */
+   private final long[] dirtyBlocks;
+   /** First word in {@link #dirtyBlocks} that may be non-zero. */
+   private int firstDirtyWord = Integer.MAX_VALUE;
+   /** Last word in {@link #dirtyBlocks} that may be non-zero. */
+   private int lastDirtyWord = -1;
+
+   private double queryLowerBound, queryUpperBound;
+
+   /**
+    * Creates and builds the index for the given storage.
+    *
+    * @param storage the storage to summarize. The storage is not copied, any later modification of
+    *                its values has to be reported with {@link #markDirty(int)} or
+    *                {@link #markDirty(int, int)}.
+    */
+   YoBufferBoundsIndex(YoBufferStorage storage)
+   {
+      this.storage = storage;
+      size = storage.getSize();
+
+      int numberOfBlocks = Math.max(1, (size + BLOCK_SIZE - 1) >> BLOCK_SHIFT);
+      int numberOfLevels = 1;
+      while ((numberOfBlocks - 1) >> (numberOfLevels - 1) > 0)
+         numberOfLevels++;
+
+      lowerBounds = new double[numberOfLevels][];
+      upperBounds = new double[numberOfLevels][];
+      for (int level = 0; level < numberOfLevels; level++)
+      {
+         int numberOfBuckets = ((numberOfBlocks - 1) >> level) + 1;
+         lowerBounds[level] = new double[numberOfBuckets];
+         upperBounds[level] = new double[numberOfBuckets];
+      }
+
+      dirtyBlocks = new long[(numberOfBlocks + 63) >> 6];
+      rebuild();
+   }
+
+   /**
+    * Indicates that the value at the given index has been modified.
+    *
+    * @param index the index of the modified value.
+    */
+   void markDirty(int index)
+   {
+      int block = index >>> BLOCK_SHIFT;
+      int word = block >>> 6;
+      dirtyBlocks[word] |= 1L << block;
+      if (word < firstDirtyWord)
+         firstDirtyWord = word;
+      if (word > lastDirtyWord)
+         lastDirtyWord = word;
+   }
+
+   /**
+    * Indicates that the values in [{@code fromIndex}, {@code toIndex}[ have been modified.
+    *
+    * @param fromIndex the first index (inclusive) of the modified values.
+    * @param toIndex   the last index (exclusive) of the modified values.
+    */
+   void markDirty(int fromIndex, int toIndex)
+   {
+      if (fromIndex >= toIndex)
+         return;
+
+      int lastBlock = (toIndex - 1) >>> BLOCK_SHIFT;
+      for (int block = fromIndex >>> BLOCK_SHIFT; block <= lastBlock; block++)
+         markDirty(block << BLOCK_SHIFT);
+   }
+
+   /**
+    * Whether values have been modified since the last query.
+    *
+    * @return {@code true} if at least one block has to be summarized again before the next query.
+    */
+   boolean hasDirtyBlocks()
+   {
+      return lastDirtyWord >= 0;
+   }
+
+   /**
+    * Summarizes the blocks that have been modified since the last query.
+    */
+   void update()
+   {
+      if (hasDirtyBlocks())
+         cleanDirtyBlocks();
+   }
+
+   /**
+    * Returns the number of blocks the storage is divided into.
+    *
+    * @return the number of blocks.
+    */
+   int getNumberOfBlocks()
+   {
+      return lowerBounds[0].length;
+   }
+
+   /**
+    * Returns the minimum value in the given block, as of the last call to {@link #update()} or query.
+    *
+    * @param block the index of the block, it covers the values starting at
+    *              {@code block * BLOCK_SIZE}.
+    * @return the minimum value in the block, or {@link Double#POSITIVE_INFINITY} if the block only
+    *         contains {@code NaN}s.
+    */
+   double getBlockLowerBound(int block)
+   {
+      return lowerBounds[0][block];
+   }
+
+   /**
+    * Returns the maximum value in the given block, as of the last call to {@link #update()} or query.
+    *
+    * @param block the index of the block, it covers the values starting at
+    *              {@code block * BLOCK_SIZE}.
+    * @return the maximum value in the block, or {@link Double#NEGATIVE_INFINITY} if the block only
+    *         contains {@code NaN}s.
+    */
+   double getBlockUpperBound(int block)
+   {
+      return upperBounds[0][block];
+   }
+
+   /**
+    * Computes the bounds of the storage values within the interval of the given bounds.
+    * <p>
+    * The interval is interpreted the same way as in {@link YoBufferBounds#compute(YoBufferStorage)}:
+    * when {@code startIndex < endIndex} the values in [{@code startIndex}, {@code endIndex}[ are
+    * considered, otherwise the interval wraps around the end of the storage and the values in
+    * [{@code startIndex}, {@code size}[ and [{@code 0}, {@code endIndex}[ are considered.
+    * </p>
+    *
+    * @param bounds the bounds to compute, holds the interval to consider. Modified.
+    * @return {@code true} if the bounds have changed, {@code false} otherwise.
+    */
+   boolean compute(YoBufferBounds bounds)
+   {
+      int startIndex = bounds.getStartIndex();
+      int endIndex = bounds.getEndIndex();
+
+      if (hasDirtyBlocks())
+         cleanDirtyBlocks();
+
+      queryLowerBound = Double.POSITIVE_INFINITY;
+      queryUpperBound = Double.NEGATIVE_INFINITY;
+
+      if (startIndex < endIndex)
+      {
+         accumulate(startIndex, endIndex);
+      }
+      else
+      {
+         accumulate(startIndex, size);
+         accumulate(0, endIndex);
+      }
+
+      boolean changed = queryLowerBound != bounds.getLowerBound() || queryUpperBound != bounds.getUpperBound();
+      bounds.setBounds(queryLowerBound, queryUpperBound);
+      return changed;
+   }
+
+   /**
+    * Computes the envelope of the storage values over the window [{@code startIndex},
+    * {@code endIndex}].
+    * <p>
+    * The window wraps around the end of the storage when {@code startIndex > endIndex}. The cost of
+    * this method is proportional to the number of pixels and logarithmic in the window length.
+    * </p>
+    *
+    * @param startIndex     the first index (inclusive) of the window.
+    * @param endIndex       the last index (inclusive) of the window.
+    * @param numberOfPixels the desired number of pixels.
+    * @param envelopeToPack the envelope in which the result is stored. Modified.
+    */
+   void computeEnvelope(int startIndex, int endIndex, int numberOfPixels, YoBufferEnvelope envelopeToPack)
+   {
+      if (hasDirtyBlocks())
+         cleanDirtyBlocks();
+
+      int windowLength = YoBufferEnvelope.computeWindowLength(startIndex, endIndex, size);
+      envelopeToPack.reset(windowLength, numberOfPixels);
+      numberOfPixels = envelopeToPack.getNumberOfPixels();
+
+      int fromIndex = startIndex;
+
+      for (int pixel = 0; pixel < numberOfPixels; pixel++)
+      {
+         int length = envelopeToPack.getPixelStartOffset(pixel + 1) - envelopeToPack.getPixelStartOffset(pixel);
+         int lastIndex = fromIndex + length - 1;
+
+         queryLowerBound = Double.POSITIVE_INFINITY;
+         queryUpperBound = Double.NEGATIVE_INFINITY;
+
+         if (lastIndex < size)
+         {
+            accumulate(fromIndex, lastIndex + 1);
+         }
+         else
+         {
+            lastIndex -= size;
+            accumulate(fromIndex, size);
+            accumulate(0, lastIndex + 1);
+         }
+
+         envelopeToPack.set(pixel, queryLowerBound, queryUpperBound, storage.read(fromIndex), storage.read(lastIndex));
+
+         fromIndex = lastIndex + 1;
+         if (fromIndex == size)
+            fromIndex = 0;
+      }
+   }
+
+   private void accumulate(int fromIndex, int toIndex)
+   {
+      if (fromIndex >= toIndex)
+         return;
+
+      int index = Math.min(toIndex, (fromIndex + BLOCK_SIZE - 1) & -BLOCK_SIZE);
+      scan(fromIndex, index);
+
+      while (index < toIndex && bucketEnd(0, index >> BLOCK_SHIFT) <= toIndex)
+      {
+         // Use the coarsest bucket that starts at index and fits in the interval.
+         int level = 0;
+         int bucket = index >> BLOCK_SHIFT;
+
+         while (level + 1 < lowerBounds.length && (bucket & 1) == 0 && bucketEnd(level + 1, bucket >> 1) <= toIndex)
+         {
+            level++;
+            bucket >>= 1;
+         }
+
+         if (lowerBounds[level][bucket] < queryLowerBound)
+            queryLowerBound = lowerBounds[level][bucket];
+         if (upperBounds[level][bucket] > queryUpperBound)
+            queryUpperBound = upperBounds[level][bucket];
+
+         index = bucketEnd(level, bucket);
+      }
+
+      scan(index, toIndex);
+   }
+
+   private int bucketEnd(int level, int bucket)
+   {
+      return (int) Math.min((long) (bucket + 1) << (BLOCK_SHIFT + level), size);
+   }
+
+   private void scan(int fromIndex, int toIndex)
+   {
+      for (int i = fromIndex; i < toIndex; i++)
+      {
+         double value = storage.read(i);
+         if (value < queryLowerBound)
+            queryLowerBound = value;
+         if (value > queryUpperBound)
+            queryUpperBound = value;
+      }
+   }
+
+   private void cleanDirtyBlocks()
+   {
+      int numberOfDirtyBlocks = 0;
+      for (int word = firstDirtyWord; word <= lastDirtyWord; word++)
+         numberOfDirtyBlocks += Long.bitCount(dirtyBlocks[word]);
+
+      if (numberOfDirtyBlocks > lowerBounds[0].length / 8)
+      { // Cheaper to rebuild the entire pyramid than updating the buckets above each dirty block.
+         rebuild();
+         return;
+      }
+
+      for (int word = firstDirtyWord; word <= lastDirtyWord; word++)
+      {
+         long bits = dirtyBlocks[word];
+
+         while (bits != 0)
+         {
+            int block = (word << 6) + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            updateBlock(block);
+
+            for (int level = 1; level < lowerBounds.length; level++)
+               updateBucket(level, block >> level);
+         }
+
+         dirtyBlocks[word] = 0L;
+      }
+
+      firstDirtyWord = Integer.MAX_VALUE;
+      lastDirtyWord = -1;
+   }
+
+   private void rebuild()
+   {
+      for (int block = 0; block < lowerBounds[0].length; block++)
+         updateBlock(block);
+
+      for (int level = 1; level < lowerBounds.length; level++)
+      {
+         for (int bucket = 0; bucket < lowerBounds[level].length; bucket++)
+            updateBucket(level, bucket);
+      }
+
+      Arrays.fill(dirtyBlocks, 0L);
+      firstDirtyWord = Integer.MAX_VALUE;
+      lastDirtyWord = -1;
+   }
+
+   private void updateBlock(int block)
+   {
+      queryLowerBound = Double.POSITIVE_INFINITY;
+      queryUpperBound = Double.NEGATIVE_INFINITY;
+      scan(block << BLOCK_SHIFT, bucketEnd(0, block));
+      lowerBounds[0][block] = queryLowerBound;
+      upperBounds[0][block] = queryUpperBound;
+   }
+
+   private void updateBucket(int level, int bucket)
+   {
+      double[] childLowerBounds = lowerBounds[level - 1];
+      double[] childUpperBounds = upperBounds[level - 1];
+      int left = 2 * bucket;
+      int right = left + 1;
+
+      if (right < childLowerBounds.length)
+      {
+         lowerBounds[level][bucket] = childLowerBounds[right] < childLowerBounds[left] ? childLowerBounds[right] : childLowerBounds[left];
+         upperBounds[level][bucket] = childUpperBounds[right] > childUpperBounds[left] ? childUpperBounds[right] : childUpperBounds[left];
+      }
+      else
+      {
+         lowerBounds[level][bucket] = childLowerBounds[left];
+         upperBounds[level][bucket] = childUpperBounds[left];
+      }
+   }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferCaptureListener;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * A window of ticks captured around a trigger by a {@link YoBufferTriggerRecorder}.
+ * <p>
+ * The capture holds the values of each recorded variable over {@link #getLength()} consecutive ticks,
+ * the trigger being the tick at {@link #getTriggerOffset()}. The values are held in one storage
+ * per variable, of the same implementation as the buffer's, which the recorder fills a few ticks at
+ * a time while the post-trigger ticks are being written.
+ * </p>
+ * <p>
+ * Captures are recycled by the recorder, see {@link YoBufferCaptureListener#captureCompleted(YoBufferCapture)}.
+ * </p>
+ */
+public class YoBufferCapture
+{
+   private final List<YoVariable> variables;
+   private final YoBufferStorage[] storages;
+
+   private int length;
+   private int triggerOffset;
+   private long triggerTick;
+
+   /**
+    * Creates a new capture that can hold up to {@code capacity} ticks of the given entries.
+    *
+    * @param columns  the entries which values are to be captured.
+    * @param capacity the maximum number of ticks.
+    */
+   YoBufferCapture(YoBufferVariableEntry[] columns, int capacity)
+   {
+      List<YoVariable> variables = new ArrayList<>(columns.length);
+      storages = new YoBufferStorage[columns.length];
+
+      for (int i = 0; i < columns.length; i++)
+      {
+         variables.add(columns[i].getVariable());
+         storages[i] = columns[i].getBufferStorage().newStorage(capacity);
+      }
+
+      this.variables = Collections.unmodifiableList(variables);
+   }
+
+   /**
+    * Starts a new capture, the ticks are then copied with
+    * {@link #record(YoBufferVariableEntry[], int, int, int)}.
+    *
+    * @param length        the number of ticks.
+    * @param triggerOffset the offset of the trigger tick.
+    * @param triggerTick   the number of ticks written into the buffer at the trigger.
+    */
+   void start(int length, int triggerOffset, long triggerTick)
+   {
+      this.length = length;
+      this.triggerOffset = triggerOffset;
+      this.triggerTick = triggerTick;
+   }
+
+   /**
+    * Copies the values of the given entries for a series of ticks into this capture.
+    *
+    * @param columns       the entries to copy, same as the ones this capture was created with.
+    * @param startIndex    the buffer index of the first tick, the series wraps around the end of the
+    *                      buffer if needed.
+    * @param offset        the offset in this capture of the first tick.
+    * @param numberOfTicks the number of ticks to copy.
+    */
+   void record(YoBufferVariableEntry[] columns, int startIndex, int offset, int numberOfTicks)
+   {
+      for (int i = 0; i < columns.length; i++)
+         columns[i].copyBufferWindow(startIndex, numberOfTicks, storages[i], offset);
+   }
+
+   /**
+    * Returns the variables which values were captured, in column order.
+    *
+    * @return the captured variables.
+    */
+   public List<YoVariable> getVariables()
+   {
+      return variables;
+   }
+
+   /**
+    * Returns the number of ticks in this capture.
+    *
+    * @return the capture length.
+    */
+   public int getLength()
+   {
+      return length;
+   }
+
+   /**
+    * Returns the offset of the trigger tick in this capture, which is also the number of ticks
+    * captured before the trigger.
+    *
+    * @return the trigger offset.
+    */
+   public int getTriggerOffset()
+   {
+      return triggerOffset;
+   }
+
+   /**
+    * Returns the value of {@link YoBuffer#getNumberOfTicksWritten()} at the trigger tick.
+    *
+    * @return the trigger tick.
+    */
+   public long getTriggerTick()
+   {
+      return triggerTick;
+   }
+
+   /**
+    * Decodes the captured values of the given column.
+    *
+    * @param column       the index of the column, see {@link #getVariables()}.
+    * @param valuesToPack the array in which the {@link #getLength()} values are stored. Modified.
+    */
+   public void getValues(int column, double[] valuesToPack)
+   {
+      if (valuesToPack.length < length)
+         throw new IllegalArgumentException("valuesToPack is too small: " + valuesToPack.length + ", expected: " + length);
+
+      storages[column].read(0, length, valuesToPack, 0);
+   }
+
+   /**
+    * Decodes the captured values of the given variable.
+    *
+    * @param variable the captured variable.
+    * @return the {@link #getLength()} values.
+    * @throws IllegalArgumentException if the variable was not captured.
+    */
+   public double[] getValues(YoVariable variable)
+   {
+      int column = variables.indexOf(variable);
+      if (column < 0)
+         throw new IllegalArgumentException("The variable " + variable.getFullNameString() + " was not captured.");
+
+      double[] values = new double[length];
+      getValues(column, values);
+      return values;
+   }
+}
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.List;
+
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+
+/**
+ * {@code YoBufferConcurrentReader} allows a thread to read the data from a {@link YoBuffer} while
+ * another thread is writing into it, without the writer ever being blocked.
+ * <p>
+ * The buffer is expected to be modified by a single thread, typically calling
+ * {@link YoBuffer#tickAndWriteIntoBuffer()}. The buffer publishes its state via two sequence locks:
+ * one is updated when writing a tick and the other when the buffer is modified in any other way, for
+ * instance when cropping or resizing. A reader takes a snapshot of the buffer's in-point and
+ * out-point, copies the data, and then checks the sequence locks:
+ * <ul>
+ * <li>if no tick was written in the meantime, the copy is consistent.
+ * <li>if {@code n} ticks were written in the meantime, the writer may have overwritten the {@code n}
+ * oldest values of the window: these are discarded and the rest of the copy is consistent.
+ * <li>if the buffer was modified in any other way, the copy is discarded and the read is attempted
+ * again.
+ * </ul>
+ * </p>
+ * <p>
+ * A reader instance is not thread-safe, each reading thread should use its own reader. Once
+ * created, a reader does not allocate memory as long as the number of entries read at once does not
+ * grow.
+ * </p>
+ */
+public class YoBufferConcurrentReader
+{
+   /** Default number of attempts made at reading a consistent window before giving up. */
+   public static final int DEFAULT_MAX_ATTEMPTS = 16;
+
+   private final YoBuffer buffer;
+   private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+
+   private int inPoint;
+   private int outPoint;
+   private int bufferSize;
+   private long numberOfTicksWritten;
+   private int numberOfFailedAttempts;
+
+   private YoBufferStorage[] storages = new YoBufferStorage[0];
+   private boolean[] changeTracked = new boolean[0];
+   private int[] lastWriteIndices = new int[0];
+   private long[] carryForwardLengths = new long[0];
+   private final double[] lastWriteValue = new double[1];
+
+   /**
+    * Creates a new reader for the given buffer.
+    *
+    * @param buffer the buffer to read from.
+    */
+   public YoBufferConcurrentReader(YoBuffer buffer)
+   {
+      this.buffer = buffer;
+   }
+
+   /**
+    * Sets the number of attempts made at reading a consistent window before giving up.
+    * <p>
+    * A read attempt fails when the buffer is being modified, other than by writing ticks, during the
+    * read.
+    * </p>
+    *
+    * @param maxAttempts the maximum number of attempts, must be at least {@code 1}.
+    */
+   public void setMaxAttempts(int maxAttempts)
+   {
+      if (maxAttempts < 1)
+         throw new IllegalArgumentException("The number of attempts should be at least 1, was: " + maxAttempts);
+      this.maxAttempts = maxAttempts;
+   }
+
+   /**
+    * Copies the data of the given entries in the interval [{@code inPoint}, {@code outPoint}].
+    * <p>
+    * The data is copied in chronological order, such that after this method returns {@code n},
+    * {@code destinations[i][0]} holds the oldest value of the {@code i}<sup>th</sup> entry and
+    * {@code destinations[i][n - 1]} the newest. The data of all the entries covers the same ticks.
+    * </p>
+    * <p>
+    * If the destination arrays are shorter than the interval, only the newest values are copied.
+    * </p>
+    *
+    * @param entries      the entries to read. Each entry should belong to the buffer this reader was
+    *                     created for.
+    * @param destinations the arrays in which the data of each entry is to be stored. Modified.
+    * @return the number of values copied per entry, or {@code -1} if a consistent copy could not be
+    *         obtained within the maximum number of attempts.
+    */
+   public int readInOutWindow(List<? extends YoBufferVariableEntry> entries, double[][] destinations)
+   {
+      int numberOfEntries = entries.size();
+      if (destinations.length < numberOfEntries)
+         throw new IllegalArgumentException("Not enough destinations: " + destinations.length + ", expected: " + numberOfEntries);
+
+      int maxLength = Integer.MAX_VALUE;
+      for (int i = 0; i < numberOfEntries; i++)
+         maxLength = Math.min(maxLength, destinations[i].length);
+
+      ensureCapacity(numberOfEntries);
+      numberOfFailedAttempts = 0;
+
+      for (int attempt = 0; attempt < maxAttempts; attempt++)
+      {
+         int length = tryReadInOutWindow(entries, destinations, maxLength);
+         if (length >= 0)
+            return length;
+         numberOfFailedAttempts++;
+         Thread.onSpinWait();
+      }
+
+      return -1;
+   }
+
+   private int tryReadInOutWindow(List<? extends YoBufferVariableEntry> entries, double[][] destinations, int maxLength)
+   {
+      long modificationSequence = buffer.modificationSequence;
+      if ((modificationSequence & 1L) != 0L)
+         return -1;
+      long tickSequence = buffer.tickSequence;
+      if ((tickSequence & 1L) != 0L)
+         return -1;
+
+      // Snapshot of the buffer state.
+      inPoint = buffer.getInPoint();
+      outPoint = buffer.getOutPoint();
+      bufferSize = buffer.getBufferSize();
+      long tick = buffer.getTickCounter().tick;
+
+      for (int i = 0; i < entries.size(); i++)
+      {
+         YoBufferVariableEntry entry = entries.get(i);
+         storages[i] = entry.getBufferStorage();
+         changeTracked[i] = entry.isChangeTracked();
+         lastWriteIndices[i] = entry.getLastWriteIndex();
+         carryForwardLengths[i] = tick - entry.getLastWriteTick();
+      }
+
+      VarHandle.loadLoadFence();
+      if (buffer.tickSequence != tickSequence || buffer.modificationSequence != modificationSequence)
+         return -1;
+      if (inPoint < 0 || inPoint >= bufferSize || outPoint < 0 || outPoint >= bufferSize)
+         return -1;
+
+      int inOutLength = inPoint <= outPoint ? outPoint - inPoint + 1 : bufferSize - inPoint + outPoint + 1;
+      int length = Math.min(inOutLength, maxLength);
+      int startIndex = Math.floorMod(outPoint - length + 1, bufferSize);
+      inPoint = startIndex;
+
+      for (int i = 0; i < entries.size(); i++)
+      {
+         /*
+          * The storages may be reshaped in place by the writer, the bounds are checked against the
+          * snapshot right before reading such that a storage being reshaped is never read past its end.
+          */
+         YoBufferStorage storage = storages[i];
+         if (buffer.modificationSequence != modificationSequence || storage.getSize() != bufferSize)
+            return -1;
+         if (changeTracked[i] && (lastWriteIndices[i] < 0 || lastWriteIndices[i] >= bufferSize))
+            return -1;
+
+         double[] destination = destinations[i];
+         int firstLength = Math.min(length, bufferSize - startIndex);
+         storage.read(startIndex, firstLength, destination, 0);
+         storage.read(0, length - firstLength, destination, firstLength);
+
+         if (changeTracked[i] && carryForwardLengths[i] > 0)
+         { // Mimics the carry forward without modifying the entry.
+            int lastWriteIndex = lastWriteIndices[i];
+            int pendingLength = YoBufferVariableEntry.getPendingLength(carryForwardLengths[i], bufferSize);
+            storage.read(lastWriteIndex, 1, lastWriteValue, 0);
+            YoBufferVariableEntry.resolvePending(lastWriteValue[0], lastWriteIndex, pendingLength, bufferSize, startIndex, length, destination, 0);
+         }
+      }
+
+      VarHandle.loadLoadFence();
+      if (buffer.modificationSequence != modificationSequence)
+         return -1;
+
+      // Each tick written in the meantime may have overwritten the oldest value of the window.
+      long numberOfNewTicks = (buffer.tickSequence - tickSequence + 1) >>> 1;
+      numberOfTicksWritten = tickSequence >>> 1;
+
+      if (numberOfNewTicks > 0)
+      {
+         long numberOfOverwrittenValues = numberOfNewTicks - (bufferSize - length);
+
+         if (numberOfOverwrittenValues >= length)
+            return -1;
+
+         if (numberOfOverwrittenValues > 0)
+         {
+            int discard = (int) numberOfOverwrittenValues;
+            length -= discard;
+            for (int i = 0; i < entries.size(); i++)
+               System.arraycopy(destinations[i], discard, destinations[i], 0, length);
+            inPoint = (startIndex + discard) % bufferSize;
+         }
+      }
+
+      return length;
+   }
+
+   private void ensureCapacity(int numberOfEntries)
+   {
+      if (storages.length >= numberOfEntries)
+         return;
+
+      storages = Arrays.copyOf(storages, numberOfEntries);
+      changeTracked = Arrays.copyOf(changeTracked, numberOfEntries);
+      lastWriteIndices = Arrays.copyOf(lastWriteIndices, numberOfEntries);
+      carryForwardLengths = Arrays.copyOf(carryForwardLengths, numberOfEntries);
+   }
+
+   /**
+    * Returns the buffer this reader reads from.
+    *
+    * @return the buffer.
+    */
+   public YoBuffer getBuffer()
+   {
+      return buffer;
+   }
+
+   /**
+    * Returns the buffer index of the first value copied during the last successful read.
+    *
+    * @return the index of the oldest value read.
+    */
+   public int getInPoint()
+   {
+      return inPoint;
+   }
+
+   /**
+    * Returns the buffer index of the last value copied during the last successful read.
+    *
+    * @return the index of the newest value read.
+    */
+   public int getOutPoint()
+   {
+      return outPoint;
+   }
+
+   /**
+    * Returns the size of the buffer at the time of the last successful read.
+    *
+    * @return the buffer size.
+    */
+   public int getBufferSize()
+   {
+      return bufferSize;
+   }
+
+   /**
+    * Returns the number of ticks that had been written into the buffer at the time of the last
+    * successful read, such that the newest value read corresponds to that tick.
+    *
+    * @return the number of ticks written.
+    * @see YoBuffer#getNumberOfTicksWritten()
+    */
+   public long getNumberOfTicksWritten()
+   {
+      return numberOfTicksWritten;
+   }
+
+   /**
+    * Returns the number of attempts that failed during the last read.
+    *
+    * @return the number of failed attempts.
+    */
+   public int getNumberOfFailedAttempts()
+   {
+      return numberOfFailedAttempts;
+   }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferVariableEntryReader;
+
+/**
+ * This class holds a decimated view of a window of buffer values meant for plotting.
+ * <p>
+ * The window is divided into a given number of pixels, each pixel summarizing the values it covers
+ * with their lower and upper bounds, and the first and last values. Drawing a vertical line from
+ * the lower to the upper bound of each pixel and connecting the last value of a pixel to the first
+ * value of the next one renders the same image as plotting every value of the window.
+ * </p>
+ * <p>
+ * An envelope can be reused to avoid generating garbage, see
+ * {@link YoBufferVariableEntryReader#computeEnvelope(int, int, int, YoBufferEnvelope)}.
+ * </p>
+ * <p>
+ * It is part of the {@link YoBuffer} framework.
+ * </p>
+ */
+public class YoBufferEnvelope
+{
+   /** The number of values in the window this envelope represents. */
+   private int windowLength = 0;
+   /** The number of pixels this envelope holds. */
+   private int numberOfPixels = 0;
+   /** The minimum value of each pixel, {@code NaN}s are ignored. */
+   private double[] lowerBounds = new double[0];
+   /** The maximum value of each pixel, {@code NaN}s are ignored. */
+   private double[] upperBounds = new double[0];
+   /** The first value of each pixel. */
+   private double[] firstValues = new double[0];
+   /** The last value of each pixel. */
+   private double[] lastValues = new double[0];
+
+   /**
+    * Creates a new empty envelope.
+    */
+   public YoBufferEnvelope()
+   {
+   }
+
+   /**
+    * Computes the number of values in the buffer window [{@code startIndex}, {@code endIndex}].
+    *
+    * @param startIndex the first index (inclusive) of the window. Should be in [0,
+    *                   {@code bufferSize}[.
+    * @param endIndex   the last index (inclusive) of the window. Should be in [0,
+    *                   {@code bufferSize}[. The window wraps around the end of the buffer when
+    *                   {@code startIndex > endIndex}.
+    * @param bufferSize the size of the buffer.
+    * @return the number of values in the window.
+    * @throws IndexOutOfBoundsException if either index is outside the buffer.
+    */
+   public static int computeWindowLength(int startIndex, int endIndex, int bufferSize)
+   {
+      if (startIndex < 0 || startIndex >= bufferSize)
+         throw new IndexOutOfBoundsException("startIndex should be in [0, " + bufferSize + "[, but was: " + startIndex);
+      if (endIndex < 0 || endIndex >= bufferSize)
+         throw new IndexOutOfBoundsException("endIndex should be in [0, " + bufferSize + "[, but was: " + endIndex);
+
+      if (startIndex <= endIndex)
+         return endIndex - startIndex + 1;
+      else
+         return bufferSize - startIndex + endIndex + 1;
+   }
+
+   /**
+    * Clears this envelope and prepares it to hold the given number of pixels.
+    * <p>
+    * The number of pixels is limited to the window length such that each pixel covers at least one
+    * value.
+    * </p>
+    *
+    * @param windowLength   the number of values in the window.
+    * @param numberOfPixels the desired number of pixels.
+    * @throws IllegalArgumentException if {@code numberOfPixels} is not strictly positive.
+    */
+   public void reset(int windowLength, int numberOfPixels)
+   {
+      if (numberOfPixels <= 0)
+         throw new IllegalArgumentException("numberOfPixels should be strictly positive, but was: " + numberOfPixels);
+
+      this.windowLength = windowLength;
+      this.numberOfPixels = Math.min(numberOfPixels, windowLength);
+
+      if (lowerBounds.length < this.numberOfPixels)
+      {
+         lowerBounds = new double[this.numberOfPixels];
+         upperBounds = new double[this.numberOfPixels];
+         firstValues = new double[this.numberOfPixels];
+         lastValues = new double[this.numberOfPixels];
+      }
+   }
+
+   /**
+    * Sets the summary of a pixel.
+    *
+    * @param pixel      the index of the pixel.
+    * @param lowerBound the minimum value of the pixel.
+    * @param upperBound the maximum value of the pixel.
+    * @param firstValue the first value of the pixel.
+    * @param lastValue  the last value of the pixel.
+    */
+   public void set(int pixel, double lowerBound, double upperBound, double firstValue, double lastValue)
+   {
+      lowerBounds[pixel] = lowerBound;
+      upperBounds[pixel] = upperBound;
+      firstValues[pixel] = firstValue;
+      lastValues[pixel] = lastValue;
+   }
+
+   /**
+    * Returns the number of values in the window this envelope represents.
+    *
+    * @return the window length.
+    */
+   public int getWindowLength()
+   {
+      return windowLength;
+   }
+
+   /**
+    * Returns the number of pixels this envelope holds.
+    *
+    * @return the number of pixels, at most equal to the window length.
+    */
+   public int getNumberOfPixels()
+   {
+      return numberOfPixels;
+   }
+
+   /**
+    * Returns the offset with respect to the start of the window of the first value covered by the
+    * given pixel.
+    *
+    * @param pixel the index of the pixel. Passing {@code getNumberOfPixels()} returns the window
+    *              length.
+    * @return the offset of the pixel's first value.
+    */
+   public int getPixelStartOffset(int pixel)
+   {
+      return (int) ((long) pixel * windowLength / numberOfPixels);
+   }
+
+   /**
+    * Returns the minimum value covered by the given pixel.
+    *
+    * @param pixel the index of the pixel.
+    * @return the pixel's lower bound, or {@link Double#POSITIVE_INFINITY} if the pixel only covers
+    *         {@code NaN}s.
+    */
+   public double getLowerBound(int pixel)
+   {
+      return lowerBounds[pixel];
+   }
+
+   /**
+    * Returns the maximum value covered by the given pixel.
+    *
+    * @param pixel the index of the pixel.
+    * @return the pixel's upper bound, or {@link Double#NEGATIVE_INFINITY} if the pixel only covers
+    *         {@code NaN}s.
+    */
+   public double getUpperBound(int pixel)
+   {
+      return upperBounds[pixel];
+   }
+
+   /**
+    * Returns the first value covered by the given pixel.
+    *
+    * @param pixel the index of the pixel.
+    * @return the pixel's first value.
+    */
+   public double getFirstValue(int pixel)
+   {
+      return firstValues[pixel];
+   }
+
+   /**
+    * Returns the last value covered by the given pixel.
+    *
+    * @param pixel the index of the pixel.
+    * @return the pixel's last value.
+    */
+   public double getLastValue(int pixel)
+   {
+      return lastValues[pixel];
+   }
+}
@@ -0,0 +1,636 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+
+import us.ihmc.yoVariables.buffer.storage.YoBufferByteStorage;
+import us.ihmc.yoVariables.buffer.storage.YoBufferIntStorage;
+import us.ihmc.yoVariables.buffer.storage.YoBufferShortStorage;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+import us.ihmc.yoVariables.registry.YoNamespace;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoInteger;
+import us.ihmc.yoVariables.variable.YoLong;
+import us.ihmc.yoVariables.variable.YoVariable;
+import us.ihmc.yoVariables.variable.YoVariableType;
+
+/**
+ * Self-describing binary file holding the data of a {@link YoBuffer}.
+ * <p>
+ * The file starts with a header describing the buffer, i.e. its length, in-point, out-point, and
+ * current index, and its columns, i.e. for each variable its full name, type, and enum constants if
+ * any. The header is followed by blocks of {@value #BLOCK_LENGTH} consecutive values, the last block
+ * may be shorter. Within a block the data is stored column by column, each column being the values
+ * of one variable encoded with
+ * {@link us.ihmc.yoVariables.buffer.storage.YoBufferStorage#exportValues(int, int, ByteBuffer)}: one
+ * bit per boolean and the natural width of the type otherwise, little-endian.
+ * </p>
+ * <p>
+ * A buffer is written with {@link #export(YoBuffer, boolean, Path)}, block by block such that the
+ * memory used does not depend on the length of the buffer. The columns of a block are written at
+ * once using a gathering write. A file is read with {@link #open(Path)} and
+ * {@link #loadIntoBuffer(YoBuffer)}, which only reads the columns of the variables managed by the
+ * destination buffer.
+ * </p>
+ */
+public class YoBufferFile implements Closeable
+{
+   static final int FILE_MAGIC = 0x46554259; // "YBUF" once encoded.
+   static final int FILE_VERSION = 1;
+   /**
+    * Magic number, version, size of the header, number of columns, length, in-point, out-point, and
+    * current index.
+    */
+   static final int FILE_HEADER_PREFIX_SIZE = 8 * Integer.BYTES;
+   /** The number of values per block, a multiple of 8 such that boolean columns are byte aligned. */
+   public static final int BLOCK_LENGTH = 1024;
+   static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+   private final FileChannel channel;
+   private final int headerSize;
+   private final int length;
+   private final int inPoint;
+   private final int outPoint;
+   private final int currentIndex;
+   private final String[] columnNames;
+   private final YoVariableType[] columnTypes;
+   private final int[] columnBitsPerValue;
+   /** The enum constants of each column, {@code null} for columns that are not enums. */
+   private final String[][] columnEnumConstants;
+   private final boolean[] columnNullAllowed;
+
+   private YoBufferFile(FileChannel channel, ByteBuffer header) throws IOException
+   {
+      this.channel = channel;
+
+      int numberOfColumns = header.getInt();
+      headerSize = header.getInt();
+      length = header.getInt();
+      inPoint = header.getInt();
+      outPoint = header.getInt();
+      currentIndex = header.getInt();
+
+      columnNames = new String[numberOfColumns];
+      columnTypes = new YoVariableType[numberOfColumns];
+      columnBitsPerValue = new int[numberOfColumns];
+      columnEnumConstants = new String[numberOfColumns][];
+      columnNullAllowed = new boolean[numberOfColumns];
+
+      header = YoBufferSpillFile.read(channel, FILE_HEADER_PREFIX_SIZE, headerSize - FILE_HEADER_PREFIX_SIZE, null);
+
+      for (int i = 0; i < numberOfColumns; i++)
+      {
+         columnNames[i] = getString(header);
+         int type = header.get();
+         if (type < 0 || type >= YoVariableType.values().length)
+            throw new IOException("Unknown variable type " + type + " for " + columnNames[i]);
+         columnTypes[i] = YoVariableType.values()[type];
+         columnBitsPerValue[i] = header.get();
+
+         if (columnTypes[i] == YoVariableType.ENUM)
+         {
+            columnNullAllowed[i] = header.get() != 0;
+            columnEnumConstants[i] = new String[header.getShort() & 0xFFFF];
+            for (int j = 0; j < columnEnumConstants[i].length; j++)
+               columnEnumConstants[i][j] = getString(header);
+         }
+      }
+   }
+
+   /**
+    * Writes the data of the given buffer into a new file.
+    * <p>
+    * The file is replaced if it already exists.
+    * </p>
+    *
+    * @param buffer          the buffer to export. Not modified, the values of the change-tracked
+    *                        entries that have yet to be carried forward are resolved in the exported
+    *                        data.
+    * @param inOutPointsOnly whether to only export the data in [{@code inPoint}, {@code outPoint}] or
+    *                        the entire buffer.
+    * @param file            the path to the file to write.
+    * @throws IOException if the file could not be written.
+    */
+   public static void export(YoBuffer buffer, boolean inOutPointsOnly, Path file) throws IOException
+   {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+      {
+         export(buffer, inOutPointsOnly, channel);
+      }
+   }
+
+   /**
+    * Writes the data of the given buffer into the given channel.
+    * <p>
+    * When exporting only [{@code inPoint}, {@code outPoint}], the exported window starts at index 0 in
+    * the file and the current index is preserved when it is inside the window.
+    * </p>
+    *
+    * @param buffer          the buffer to export. Not modified, the values of the change-tracked
+    *                        entries that have yet to be carried forward are resolved in the exported
+    *                        data.
+    * @param inOutPointsOnly whether to only export the data in [{@code inPoint}, {@code outPoint}] or
+    *                        the entire buffer.
+    * @param channel         the channel to write to, the data is written from its current position.
+    * @throws IOException if the data could not be written.
+    */
+   public static void export(YoBuffer buffer, boolean inOutPointsOnly, GatheringByteChannel channel) throws IOException
+   {
+      int bufferSize = buffer.getBufferSize();
+      int startIndex, length, inPoint, outPoint;
+
+      if (inOutPointsOnly)
+      {
+         startIndex = buffer.getInPoint();
+         length = YoBufferEnvelope.computeWindowLength(buffer.getInPoint(), buffer.getOutPoint(), bufferSize);
+         inPoint = 0;
+         outPoint = length - 1;
+      }
+      else
+      {
+         startIndex = 0;
+         length = bufferSize;
+         inPoint = buffer.getInPoint();
+         outPoint = buffer.getOutPoint();
+      }
+
+      int currentIndex = buffer.getCurrentIndex() - startIndex;
+      if (currentIndex < 0)
+         currentIndex += bufferSize;
+      if (currentIndex >= length)
+         currentIndex = 0;
+
+      YoBufferVariableEntry[] columns = buffer.getEntries().toArray(new YoBufferVariableEntry[0]);
+      writeFully(channel, new ByteBuffer[] {encodeHeader(columns, length, inPoint, outPoint, currentIndex)});
+
+      if (columns.length == 0)
+         return;
+
+      ByteBuffer[] blocks = new ByteBuffer[columns.length];
+      for (int i = 0; i < columns.length; i++)
+         blocks[i] = ByteBuffer.allocateDirect(columns[i].getBufferStorage().getExportSize(Math.min(BLOCK_LENGTH, length))).order(BYTE_ORDER);
+
+      for (int blockStart = 0; blockStart < length; blockStart += BLOCK_LENGTH)
+      {
+         int blockLength = Math.min(BLOCK_LENGTH, length - blockStart);
+         int blockStartIndex = (startIndex + blockStart) % bufferSize;
+
+         for (int i = 0; i < columns.length; i++)
+         {
+            blocks[i].clear();
+            columns[i].exportBufferWindow(blockStartIndex, blockLength, blocks[i]);
+            blocks[i].flip();
+         }
+
+         writeFully(channel, blocks);
+      }
+   }
+
+   /**
+    * Encodes the header of a file for the given columns.
+    */
+   static ByteBuffer encodeHeader(YoBufferVariableEntry[] columns, int length, int inPoint, int outPoint, int currentIndex)
+   {
+      byte[][][] strings = new byte[columns.length][][];
+      int headerSize = FILE_HEADER_PREFIX_SIZE;
+
+      for (int i = 0; i < columns.length; i++)
+      {
+         YoVariable variable = columns[i].getVariable();
+         String[] constants = variable instanceof YoEnum ? ((YoEnum<?>) variable).getEnumValuesAsString() : new String[0];
+         strings[i] = new byte[constants.length + 1][];
+         strings[i][0] = variable.getFullNameString().getBytes(StandardCharsets.UTF_8);
+         for (int j = 0; j < constants.length; j++)
+            strings[i][j + 1] = constants[j].getBytes(StandardCharsets.UTF_8);
+
+         // Type and bits per value.
+         headerSize += 2 * Byte.BYTES;
+         if (variable instanceof YoEnum)
+            headerSize += Byte.BYTES + Short.BYTES;
+         for (byte[] string : strings[i])
+            headerSize += Short.BYTES + string.length;
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(headerSize).order(BYTE_ORDER);
+      header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(columns.length).putInt(headerSize);
+      header.putInt(length).putInt(inPoint).putInt(outPoint).putInt(currentIndex);
+
+      for (int i = 0; i < columns.length; i++)
+      {
+         YoVariable variable = columns[i].getVariable();
+         putString(header, strings[i][0]);
+         header.put((byte) variable.getType().ordinal());
+         header.put((byte) columns[i].getBufferStorage().getExportBitsPerValue());
+
+         if (variable instanceof YoEnum)
+         {
+            header.put((byte) (((YoEnum<?>) variable).isNullAllowed() ? 1 : 0));
+            header.putShort((short) (strings[i].length - 1));
+            for (int j = 1; j < strings[i].length; j++)
+               putString(header, strings[i][j]);
+         }
+      }
+
+      return header.flip();
+   }
+
+   private static void putString(ByteBuffer buffer, byte[] string)
+   {
+      buffer.putShort((short) string.length);
+      buffer.put(string);
+   }
+
+   private static String getString(ByteBuffer buffer)
+   {
+      byte[] string = new byte[buffer.getShort() & 0xFFFF];
+      buffer.get(string);
+      return new String(string, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Opens an existing file for reading.
+    *
+    * @param file the path to the file.
+    * @return the file.
+    * @throws IOException if the file could not be read or is not a buffer file.
+    */
+   public static YoBufferFile open(Path file) throws IOException
+   {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+      try
+      {
+         ByteBuffer prefix = YoBufferSpillFile.read(channel, 0, FILE_HEADER_PREFIX_SIZE, null);
+         if (prefix.getInt() != FILE_MAGIC)
+            throw new IOException("Not a buffer file: " + file);
+         int version = prefix.getInt();
+         if (version != FILE_VERSION)
+            throw new IOException("Unsupported buffer file version: " + version);
+         return new YoBufferFile(channel, prefix);
+      }
+      catch (IOException | RuntimeException e)
+      {
+         channel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Returns the full name of the variable stored in each column.
+    *
+    * @return the column names.
+    */
+   public List<String> getColumnNames()
+   {
+      return Collections.unmodifiableList(Arrays.asList(columnNames));
+   }
+
+   /**
+    * Returns the type of the variable stored in the given column.
+    *
+    * @param column the index of the column.
+    * @return the variable type.
+    */
+   public YoVariableType getColumnType(int column)
+   {
+      return columnTypes[column];
+   }
+
+   /**
+    * Returns the enum constants of the variable stored in the given column.
+    *
+    * @param column the index of the column.
+    * @return the enum constants, or {@code null} if the variable is not a {@link YoEnum}.
+    */
+   public String[] getColumnEnumConstants(int column)
+   {
+      return columnEnumConstants[column] == null ? null : columnEnumConstants[column].clone();
+   }
+
+   /**
+    * Returns the number of values per column.
+    *
+    * @return the length of the buffer stored in this file.
+    */
+   public int getLength()
+   {
+      return length;
+   }
+
+   /**
+    * Returns the in-point of the buffer stored in this file.
+    *
+    * @return the in-point.
+    */
+   public int getInPoint()
+   {
+      return inPoint;
+   }
+
+   /**
+    * Returns the out-point of the buffer stored in this file.
+    *
+    * @return the out-point.
+    */
+   public int getOutPoint()
+   {
+      return outPoint;
+   }
+
+   /**
+    * Returns the current index of the buffer stored in this file.
+    *
+    * @return the current index.
+    */
+   public int getCurrentIndex()
+   {
+      return currentIndex;
+   }
+
+   /**
+    * Creates the variables stored in this file which full name passes the given filter.
+    * <p>
+    * The variables are created in a tree of registries matching their namespace and rooted at the
+    * given registry, missing registries are created and existing variables are reused. The returned
+    * variables can then be added to a buffer to load their data with {@link #loadIntoBuffer(YoBuffer)}.
+    * </p>
+    *
+    * @param registry the registry in which the root registries of the variables are to be created.
+    *                 Modified.
+    * @param filter   the filter on the variable full names to select the variables to create.
+    * @return the selected variables, in the order of the columns.
+    */
+   public List<YoVariable> createVariables(YoRegistry registry, Predicate<String> filter)
+   {
+      List<YoVariable> variables = new ArrayList<>();
+
+      for (int i = 0; i < columnNames.length; i++)
+      {
+         if (!filter.test(columnNames[i]))
+            continue;
+
+         YoNamespace namespace = new YoNamespace(columnNames[i]);
+         YoRegistry parent = registry;
+
+         for (String subName : namespace.getParent().getSubNames())
+         {
+            YoRegistry child = parent.getChild(subName);
+
+            if (child == null)
+            {
+               child = new YoRegistry(subName);
+               parent.addChild(child);
+            }
+
+            parent = child;
+         }
+
+         YoVariable variable = parent.getVariable(namespace.getShortName());
+         if (variable == null)
+            variable = newVariable(i, namespace.getShortName(), parent);
+         variables.add(variable);
+      }
+
+      return variables;
+   }
+
+   private YoVariable newVariable(int column, String name, YoRegistry registry)
+   {
+      switch (columnTypes[column])
+      {
+         case BOOLEAN:
+            return new YoBoolean(name, registry);
+         case ENUM:
+            return new YoEnum<>(name, "", registry, columnNullAllowed[column], columnEnumConstants[column]);
+         case INTEGER:
+            return new YoInteger(name, registry);
+         case LONG:
+            return new YoLong(name, registry);
+         default:
+            return new YoDouble(name, registry);
+      }
+   }
+
+   /**
+    * Loads the data of this file into the given buffer.
+    * <p>
+    * The buffer is cleared and resized to {@link #getLength()}, then the columns are matched to the
+    * entries of the buffer by the full name and type of their variable. Only the matching columns are
+    * read from the file, the entries without a matching column are left filled with zeros. The values
+    * of enums are matched by name when the constants of the column differ from the constants of the
+    * variable. Finally, the in-point, out-point, and current index are set to those of this file.
+    * </p>
+    *
+    * @param destination the buffer to load the data into. Modified.
+    * @return the number of columns loaded.
+    * @throws IOException if the file could not be read.
+    */
+   public synchronized int loadIntoBuffer(YoBuffer destination) throws IOException
+   {
+      int numberOfColumns = columnNames.length;
+      YoBufferVariableEntry[] targets = new YoBufferVariableEntry[numberOfColumns];
+      int[][] enumMaps = new int[numberOfColumns][];
+      int numberOfLoadedColumns = 0;
+
+      for (int i = 0; i < numberOfColumns; i++)
+      {
+         YoBufferVariableEntry entry = destination.findVariableEntry(columnNames[i]);
+         if (entry == null || entry.getVariable().getType() != columnTypes[i])
+            continue;
+
+         if (columnTypes[i] == YoVariableType.ENUM)
+         {
+            String[] constants = ((YoEnum<?>) entry.getVariable()).getEnumValuesAsString();
+            if (!Arrays.equals(constants, columnEnumConstants[i]))
+               enumMaps[i] = mapEnumConstants(columnEnumConstants[i], constants);
+         }
+         else if (entry.getBufferStorage().getExportBitsPerValue() != columnBitsPerValue[i])
+         {
+            continue;
+         }
+
+         targets[i] = entry;
+         numberOfLoadedColumns++;
+      }
+
+      ByteBuffer[] blocks = new ByteBuffer[numberOfColumns];
+      for (int i = 0; i < numberOfColumns; i++)
+      {
+         if (targets[i] != null)
+            blocks[i] = ByteBuffer.allocateDirect((int) computeColumnSize(i, Math.min(BLOCK_LENGTH, length))).order(BYTE_ORDER);
+      }
+
+      YoBufferStorage remapStorage = null;
+      double[] remapValues = null;
+
+      destination.beginModification();
+      try
+      {
+         destination.clearBuffers(length);
+         long blockPosition = headerSize;
+
+         for (int blockStart = 0; blockStart < length; blockStart += BLOCK_LENGTH)
+         {
+            int blockLength = Math.min(BLOCK_LENGTH, length - blockStart);
+            long columnPosition = blockPosition;
+            int column = 0;
+
+            while (column < numberOfColumns)
+            {
+               if (targets[column] == null)
+               {
+                  columnPosition += computeColumnSize(column, blockLength);
+                  column++;
+                  continue;
+               }
+
+               // Scatter the consecutive columns to load in a single read.
+               int end = column;
+               while (end < numberOfColumns && targets[end] != null)
+               {
+                  blocks[end].clear().limit((int) computeColumnSize(end, blockLength));
+                  end++;
+               }
+
+               channel.position(columnPosition);
+               readFully(channel, blocks, column, end - column);
+
+               for (; column < end; column++)
+               {
+                  blocks[column].flip();
+
+                  if (enumMaps[column] == null)
+                  {
+                     targets[column].importBufferWindow(blocks[column], 0, blockStart, blockLength);
+                  }
+                  else
+                  {
+                     if (remapStorage == null || remapStorage.getExportBitsPerValue() != columnBitsPerValue[column])
+                        remapStorage = newOrdinalStorage(columnBitsPerValue[column]);
+                     if (remapValues == null)
+                        remapValues = new double[BLOCK_LENGTH];
+
+                     remapStorage.importValues(blocks[column], 0, 0, blockLength);
+                     remapStorage.read(0, blockLength, remapValues, 0);
+                     int[] enumMap = enumMaps[column];
+                     for (int i = 0; i < blockLength; i++)
+                     {
+                        int ordinal = (int) remapValues[i];
+                        remapValues[i] = ordinal < 0 || ordinal >= enumMap.length ? YoEnum.NULL_VALUE : enumMap[ordinal];
+                     }
+                     targets[column].setBufferWindow(blockStart, blockLength, remapValues, 0);
+                  }
+
+                  columnPosition += computeColumnSize(column, blockLength);
+               }
+            }
+
+            blockPosition = columnPosition;
+         }
+
+         destination.setInPoint(inPoint);
+         destination.setOutPoint(outPoint);
+         destination.setCurrentIndex(currentIndex);
+      }
+      finally
+      {
+         destination.endModification();
+      }
+
+      return numberOfLoadedColumns;
+   }
+
+   private long computeColumnSize(int column, int blockLength)
+   {
+      return ((long) blockLength * columnBitsPerValue[column] + 7) >>> 3;
+   }
+
+   private static int[] mapEnumConstants(String[] fileConstants, String[] variableConstants)
+   {
+      int[] enumMap = new int[fileConstants.length];
+
+      for (int i = 0; i < fileConstants.length; i++)
+      {
+         enumMap[i] = YoEnum.NULL_VALUE;
+
+         for (int j = 0; j < variableConstants.length; j++)
+         {
+            if (fileConstants[i].equals(variableConstants[j]))
+            {
+               enumMap[i] = j;
+               break;
+            }
+         }
+      }
+
+      return enumMap;
+   }
+
+   private static YoBufferStorage newOrdinalStorage(int bitsPerValue)
+   {
+      switch (bitsPerValue)
+      {
+         case Byte.SIZE:
+            return new YoBufferByteStorage(BLOCK_LENGTH);
+         case Short.SIZE:
+            return new YoBufferShortStorage(BLOCK_LENGTH);
+         default:
+            return new YoBufferIntStorage(BLOCK_LENGTH);
+      }
+   }
+
+   private static void writeFully(GatheringByteChannel channel, ByteBuffer[] buffers) throws IOException
+   {
+      while (buffers[buffers.length - 1].hasRemaining())
+         channel.write(buffers);
+   }
+
+   private static void readFully(FileChannel channel, ByteBuffer[] buffers, int offset, int length) throws IOException
+   {
+      while (buffers[offset + length - 1].hasRemaining())
+      {
+         if (channel.read(buffers, offset, length) < 0)
+            throw new EOFException("Reached the end of the file at: " + channel.position());
+      }
+   }
+
+   /**
+    * Closes the underlying file.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      channel.close();
+   }
+}
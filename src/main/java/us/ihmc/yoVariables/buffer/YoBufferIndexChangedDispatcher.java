@@ -0,0 +1,246 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import us.ihmc.log.LogTools;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferIndexChangedListener;
+
+/**
+ * Hands the index changes of a {@link YoBuffer} off to a listener running on another thread.
+ * <p>
+ * A {@link YoBuffer} notifies its listeners synchronously from the thread changing its index, for
+ * instance the thread calling {@link YoBuffer#tickAndWriteIntoBuffer()}, such that a slow listener
+ * stalls that thread. Registering this dispatcher instead of the slow listener:
+ * 
+ * <pre>
+ * buffer.addListener(new YoBufferIndexChangedDispatcher(slowListener));
+ * </pre>
+ * 
+ * reduces the cost of a notification for the buffer thread to a few atomic operations and never
+ * blocks it.
+ * </p>
+ * <p>
+ * The notifications are coalesced: while the listener is busy, only the latest index is kept and
+ * delivered once the listener is done, the intermediate indices are skipped and counted, see
+ * {@link #getNumberOfCoalescedNotifications()}. The listener is never called concurrently, even when
+ * the executor runs several tasks at once, e.g. a virtual-thread-per-task executor.
+ * </p>
+ */
+public class YoBufferIndexChangedDispatcher implements YoBufferIndexChangedListener, Closeable
+{
+   /** Value of the pending index when there is no notification to deliver. */
+   private static final int NO_INDEX = Integer.MIN_VALUE;
+
+   private final YoBufferIndexChangedListener listener;
+   private final Executor executor;
+   /** The executor created by this dispatcher and shut down on {@link #close()}, or {@code null}. */
+   private final ExecutorService ownedExecutor;
+
+   private final AtomicInteger pendingIndex = new AtomicInteger(NO_INDEX);
+   /** Whether a task delivering the pending index is scheduled or running. */
+   private final AtomicBoolean scheduled = new AtomicBoolean(false);
+   private final Runnable deliveryTask = this::deliverPendingIndices;
+   private volatile boolean closed = false;
+
+   private final LongAdder numberOfNotifications = new LongAdder();
+   private final LongAdder numberOfDeliveredNotifications = new LongAdder();
+   private final LongAdder numberOfCoalescedNotifications = new LongAdder();
+   private final LongAdder numberOfDroppedNotifications = new LongAdder();
+
+   /**
+    * Creates a new dispatcher delivering the notifications on a dedicated daemon thread.
+    *
+    * @param listener the listener to notify.
+    */
+   public YoBufferIndexChangedDispatcher(YoBufferIndexChangedListener listener)
+   {
+      this.listener = listener;
+
+      ownedExecutor = Executors.newSingleThreadExecutor(runnable ->
+      {
+         Thread thread = new Thread(runnable, getClass().getSimpleName());
+         thread.setDaemon(true);
+         return thread;
+      });
+      executor = ownedExecutor;
+   }
+
+   /**
+    * Creates a new dispatcher delivering the notifications using the given executor.
+    * <p>
+    * The executor is not shut down by {@link #close()}.
+    * </p>
+    *
+    * @param listener the listener to notify.
+    * @param executor the executor running the deliveries, for instance a virtual-thread executor.
+    */
+   public YoBufferIndexChangedDispatcher(YoBufferIndexChangedListener listener, Executor executor)
+   {
+      this.listener = listener;
+      this.executor = executor;
+      ownedExecutor = null;
+   }
+
+   /**
+    * Called by the buffer whenever its index changes, schedules the delivery of the new index.
+    */
+   @Override
+   public void indexChanged(int newIndex)
+   {
+      numberOfNotifications.increment();
+
+      if (closed)
+      {
+         numberOfDroppedNotifications.increment();
+         return;
+      }
+
+      if (pendingIndex.getAndSet(newIndex) != NO_INDEX)
+         numberOfCoalescedNotifications.increment();
+
+      schedule();
+   }
+
+   private void schedule()
+   {
+      if (!scheduled.compareAndSet(false, true))
+         return;
+
+      try
+      {
+         executor.execute(deliveryTask);
+      }
+      catch (RejectedExecutionException e)
+      {
+         scheduled.set(false);
+         if (pendingIndex.getAndSet(NO_INDEX) != NO_INDEX)
+            numberOfDroppedNotifications.increment();
+      }
+   }
+
+   private void deliverPendingIndices()
+   {
+      while (true)
+      {
+         int index = pendingIndex.getAndSet(NO_INDEX);
+
+         if (index != NO_INDEX)
+         {
+            try
+            {
+               listener.indexChanged(index);
+            }
+            catch (RuntimeException e)
+            {
+               LogTools.error("The index changed listener failed.", e);
+            }
+
+            numberOfDeliveredNotifications.increment();
+         }
+
+         scheduled.set(false);
+
+         // A notification may have arrived after reading the pending index but before releasing the flag.
+         if (pendingIndex.get() == NO_INDEX || !scheduled.compareAndSet(false, true))
+            return;
+      }
+   }
+
+   /**
+    * Returns the number of notifications received from the buffer.
+    *
+    * @return the number of notifications.
+    */
+   public long getNumberOfNotifications()
+   {
+      return numberOfNotifications.sum();
+   }
+
+   /**
+    * Returns the number of notifications delivered to the listener.
+    *
+    * @return the number of delivered notifications.
+    */
+   public long getNumberOfDeliveredNotifications()
+   {
+      return numberOfDeliveredNotifications.sum();
+   }
+
+   /**
+    * Returns the number of notifications that were replaced by a more recent one before being
+    * delivered.
+    *
+    * @return the number of coalesced notifications.
+    */
+   public long getNumberOfCoalescedNotifications()
+   {
+      return numberOfCoalescedNotifications.sum();
+   }
+
+   /**
+    * Returns the number of notifications that were discarded because this dispatcher was closed or
+    * its executor rejected the delivery.
+    *
+    * @return the number of dropped notifications.
+    */
+   public long getNumberOfDroppedNotifications()
+   {
+      return numberOfDroppedNotifications.sum();
+   }
+
+   /**
+    * Stops delivering notifications, the notification being delivered, if any, is completed.
+    * <p>
+    * This dispatcher should also be removed from the buffer with
+    * {@link YoBuffer#removeListener(YoBufferIndexChangedListener)}.
+    * </p>
+    */
+   @Override
+   public void close()
+   {
+      if (closed)
+         return;
+
+      closed = true;
+
+      if (pendingIndex.getAndSet(NO_INDEX) != NO_INDEX)
+         numberOfDroppedNotifications.increment();
+
+      if (ownedExecutor != null)
+      {
+         ownedExecutor.shutdown();
+
+         try
+         {
+            ownedExecutor.awaitTermination(1, TimeUnit.MINUTES);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+      }
+   }
+}
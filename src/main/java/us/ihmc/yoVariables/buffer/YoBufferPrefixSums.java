@@ -0,0 +1,293 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.util.BitSet;
+
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+
+/**
+ * Prefix sums of the values and squared values of a {@link YoBufferStorage}, used to compute the
+ * mean and variance of any window in logarithmic time.
+ * <p>
+ * {@code NaN}s are ignored, the number of {@code NaN}s in each window is kept such that the
+ * statistics only consider the other values. To limit the loss of precision when subtracting two
+ * large sums, the values are accumulated relative to a constant offset taken from the storage when
+ * the prefix sums are created.
+ * </p>
+ * <p>
+ * The storage is split into blocks of {@value #BLOCK_SIZE} values. The sums of each block are kept
+ * in Fenwick trees, such that the sum of the blocks preceding an index is obtained in logarithmic
+ * time and the rest of the prefix is read from the storage. Writing into the storage marks the
+ * blocks dirty, the sums of a dirty block are recomputed before the next query and the trees are
+ * updated with their change. Maintaining the prefix sums therefore costs a constant time per written
+ * value wherever it is written, including when a ring buffer wraps around. The trees are rebuilt from
+ * the block sums once they have been updated as many times as there are blocks, such that the
+ * rounding errors of the updates do not accumulate.
+ * </p>
+ */
+final class YoBufferPrefixSums
+{
+   private static final int BLOCK_SHIFT = 6;
+   /** The number of values per block. */
+   static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+   private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+   /** The storage this index summarizes. */
+   private final YoBufferStorage storage;
+   /** The size of {@link #storage}. */
+   private final int size;
+   /** The value subtracted from each value before being accumulated. */
+   private final double offset;
+   private final int numberOfBlocks;
+   /** The sum of the values of each block. */
+   private final double[] blockSums;
+   /** The sum of the squared values of each block. */
+   private final double[] blockSumsOfSquares;
+   /** The number of {@code NaN}s in each block. */
+   private final int[] blockNanCounts;
+   /** Fenwick trees over the block sums, indexed from 1. */
+   private final double[] treeSums, treeSumsOfSquares;
+   private final int[] treeNanCounts;
+   /** The blocks which sums have to be recomputed. */
+   private final BitSet dirtyBlocks;
+   /** Whether the trees are to be rebuilt from the block sums. */
+   private boolean rebuildTrees = true;
+   /** The number of times the trees have been updated since they were last rebuilt. */
+   private int numberOfTreeUpdates = 0;
+   /** Values read from the storage to complete a prefix. */
+   private final double[] values = new double[BLOCK_SIZE];
+
+   private double prefixSum, prefixSumOfSquares;
+   private int prefixNanCount;
+
+   /**
+    * Creates the prefix sums for the given storage.
+    *
+    * @param storage the storage to summarize. The storage is not copied, any later modification of
+    *                its values has to be reported with {@link #markDirty(int, int)}.
+    */
+   YoBufferPrefixSums(YoBufferStorage storage)
+   {
+      this.storage = storage;
+      size = storage.getSize();
+
+      double firstValue = size > 0 ? storage.read(0) : 0.0;
+      offset = Double.isFinite(firstValue) ? firstValue : 0.0;
+
+      numberOfBlocks = (size + BLOCK_MASK) >>> BLOCK_SHIFT;
+      blockSums = new double[numberOfBlocks];
+      blockSumsOfSquares = new double[numberOfBlocks];
+      blockNanCounts = new int[numberOfBlocks];
+      treeSums = new double[numberOfBlocks + 1];
+      treeSumsOfSquares = new double[numberOfBlocks + 1];
+      treeNanCounts = new int[numberOfBlocks + 1];
+      dirtyBlocks = new BitSet(numberOfBlocks);
+      dirtyBlocks.set(0, numberOfBlocks);
+   }
+
+   /**
+    * Indicates that the values in [{@code fromIndex}, {@code toIndex}[ have been modified.
+    *
+    * @param fromIndex the first index (inclusive) of the modified values.
+    * @param toIndex   the last index (exclusive) of the modified values.
+    */
+   void markDirty(int fromIndex, int toIndex)
+   {
+      if (fromIndex < toIndex)
+         dirtyBlocks.set(fromIndex >>> BLOCK_SHIFT, ((toIndex - 1) >>> BLOCK_SHIFT) + 1);
+   }
+
+   private void update()
+   {
+      for (int block = dirtyBlocks.nextSetBit(0); block >= 0; block = dirtyBlocks.nextSetBit(block + 1))
+      {
+         double previousSum = blockSums[block];
+         double previousSumOfSquares = blockSumsOfSquares[block];
+         int previousNanCount = blockNanCounts[block];
+         computeBlock(block);
+
+         if (!rebuildTrees)
+         {
+            addToTrees(block, blockSums[block] - previousSum, blockSumsOfSquares[block] - previousSumOfSquares, blockNanCounts[block] - previousNanCount);
+            rebuildTrees = ++numberOfTreeUpdates >= numberOfBlocks;
+         }
+      }
+
+      dirtyBlocks.clear();
+
+      if (rebuildTrees)
+         rebuildTrees();
+   }
+
+   private void computeBlock(int block)
+   {
+      int fromIndex = block << BLOCK_SHIFT;
+      int length = Math.min(BLOCK_SIZE, size - fromIndex);
+      storage.read(fromIndex, length, values, 0);
+
+      double sum = 0.0;
+      double sumOfSquares = 0.0;
+      int nanCount = 0;
+
+      for (int i = 0; i < length; i++)
+      {
+         double value = values[i] - offset;
+
+         if (Double.isNaN(value))
+         {
+            nanCount++;
+         }
+         else
+         {
+            sum += value;
+            sumOfSquares += value * value;
+         }
+      }
+
+      blockSums[block] = sum;
+      blockSumsOfSquares[block] = sumOfSquares;
+      blockNanCounts[block] = nanCount;
+   }
+
+   private void addToTrees(int block, double sum, double sumOfSquares, int nanCount)
+   {
+      for (int node = block + 1; node <= numberOfBlocks; node += node & -node)
+      {
+         treeSums[node] += sum;
+         treeSumsOfSquares[node] += sumOfSquares;
+         treeNanCounts[node] += nanCount;
+      }
+   }
+
+   private void rebuildTrees()
+   {
+      System.arraycopy(blockSums, 0, treeSums, 1, numberOfBlocks);
+      System.arraycopy(blockSumsOfSquares, 0, treeSumsOfSquares, 1, numberOfBlocks);
+      System.arraycopy(blockNanCounts, 0, treeNanCounts, 1, numberOfBlocks);
+
+      for (int node = 1; node <= numberOfBlocks; node++)
+      {
+         int parent = node + (node & -node);
+
+         if (parent <= numberOfBlocks)
+         {
+            treeSums[parent] += treeSums[node];
+            treeSumsOfSquares[parent] += treeSumsOfSquares[node];
+            treeNanCounts[parent] += treeNanCounts[node];
+         }
+      }
+
+      rebuildTrees = false;
+      numberOfTreeUpdates = 0;
+   }
+
+   /**
+    * Computes the sums of the values in [{@code 0}, {@code index}[ and stores them in
+    * {@link #prefixSum}, {@link #prefixSumOfSquares}, and {@link #prefixNanCount}.
+    */
+   private void computePrefix(int index)
+   {
+      int block = index >>> BLOCK_SHIFT;
+      double sum = 0.0;
+      double sumOfSquares = 0.0;
+      int nanCount = 0;
+
+      for (int node = block; node > 0; node -= node & -node)
+      {
+         sum += treeSums[node];
+         sumOfSquares += treeSumsOfSquares[node];
+         nanCount += treeNanCounts[node];
+      }
+
+      int length = index & BLOCK_MASK;
+
+      if (length > 0)
+      {
+         storage.read(block << BLOCK_SHIFT, length, values, 0);
+
+         for (int i = 0; i < length; i++)
+         {
+            double value = values[i] - offset;
+
+            if (Double.isNaN(value))
+            {
+               nanCount++;
+            }
+            else
+            {
+               sum += value;
+               sumOfSquares += value * value;
+            }
+         }
+      }
+
+      prefixSum = sum;
+      prefixSumOfSquares = sumOfSquares;
+      prefixNanCount = nanCount;
+   }
+
+   /**
+    * Computes the mean and variance of the values in a window of the storage.
+    * <p>
+    * The minimum and maximum of the window are not computed.
+    * </p>
+    *
+    * @param startIndex       the index of the first value of the window.
+    * @param length           the number of values in the window, the window wraps around the end of
+    *                         the storage if needed.
+    * @param statisticsToPack the statistics in which the window length, {@code NaN} count, mean, and
+    *                         variance are stored. Modified.
+    */
+   void compute(int startIndex, int length, YoBufferStatistics statisticsToPack)
+   {
+      update();
+
+      int endIndex = startIndex + length;
+      double sum, sumOfSquares;
+      int nanCount;
+
+      if (endIndex <= size)
+      {
+         computePrefix(endIndex);
+         sum = prefixSum;
+         sumOfSquares = prefixSumOfSquares;
+         nanCount = prefixNanCount;
+      }
+      else
+      {
+         computePrefix(endIndex - size);
+         sum = prefixSum;
+         sumOfSquares = prefixSumOfSquares;
+         nanCount = prefixNanCount;
+         computePrefix(size);
+         sum += prefixSum;
+         sumOfSquares += prefixSumOfSquares;
+         nanCount += prefixNanCount;
+      }
+
+      computePrefix(startIndex);
+      sum -= prefixSum;
+      sumOfSquares -= prefixSumOfSquares;
+      nanCount -= prefixNanCount;
+
+      int count = length - nanCount;
+      double mean = sum / count;
+      double variance = Math.max(0.0, sumOfSquares / count - mean * mean);
+
+      statisticsToPack.set(length, nanCount, mean + offset, variance, Double.POSITIVE_INFINITY, -1, Double.NEGATIVE_INFINITY, -1);
+   }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.util.BitSet;
+
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * A {@code YoBufferQuery} is a predicate on the values of a few variables at a given buffer index,
+ * it is used to search the history of a {@link YoBuffer} with {@link YoBuffer#query(YoBufferQuery)}.
+ * <p>
+ * A query is built by combining conditions on single variables, for instance:
+ *
+ * <pre>
+ * YoBufferQuery query = YoBufferQuery.greaterThan(footForce, 800.0).and(YoBufferQuery.equalTo(state, State.SWING));
+ * </pre>
+ * </p>
+ * <p>
+ * The condition on a variable is tested against the values stored in the buffer, i.e. as returned
+ * by {@link YoVariable#getValueAsDouble()}. A {@code NaN} value never satisfies a condition. When
+ * searching, the blocks of buffer indices that cannot satisfy a condition are skipped using the
+ * bounds of each block kept by the buffer entries.
+ * </p>
+ */
+public abstract class YoBufferQuery
+{
+   YoBufferQuery()
+   {
+   }
+
+   /**
+    * Creates a query satisfied when {@code variable > value}.
+    *
+    * @param variable the variable to test.
+    * @param value    the exclusive lower bound.
+    * @return the new query.
+    */
+   public static YoBufferQuery greaterThan(YoVariable variable, double value)
+   {
+      return new Condition(variable, value, false, Double.POSITIVE_INFINITY, true);
+   }
+
+   /**
+    * Creates a query satisfied when {@code variable >= value}.
+    *
+    * @param variable the variable to test.
+    * @param value    the inclusive lower bound.
+    * @return the new query.
+    */
+   public static YoBufferQuery greaterThanOrEqualTo(YoVariable variable, double value)
+   {
+      return new Condition(variable, value, true, Double.POSITIVE_INFINITY, true);
+   }
+
+   /**
+    * Creates a query satisfied when {@code variable < value}.
+    *
+    * @param variable the variable to test.
+    * @param value    the exclusive upper bound.
+    * @return the new query.
+    */
+   public static YoBufferQuery lessThan(YoVariable variable, double value)
+   {
+      return new Condition(variable, Double.NEGATIVE_INFINITY, true, value, false);
+   }
+
+   /**
+    * Creates a query satisfied when {@code variable <= value}.
+    *
+    * @param variable the variable to test.
+    * @param value    the inclusive upper bound.
+    * @return the new query.
+    */
+   public static YoBufferQuery lessThanOrEqualTo(YoVariable variable, double value)
+   {
+      return new Condition(variable, Double.NEGATIVE_INFINITY, true, value, true);
+   }
+
+   /**
+    * Creates a query satisfied when {@code lowerBound <= variable <= upperBound}.
+    *
+    * @param variable   the variable to test.
+    * @param lowerBound the inclusive lower bound.
+    * @param upperBound the inclusive upper bound.
+    * @return the new query.
+    */
+   public static YoBufferQuery between(YoVariable variable, double lowerBound, double upperBound)
+   {
+      return new Condition(variable, lowerBound, true, upperBound, true);
+   }
+
+   /**
+    * Creates a query satisfied when {@code variable == value}.
+    *
+    * @param variable the variable to test.
+    * @param value    the value to search for.
+    * @return the new query.
+    */
+   public static YoBufferQuery equalTo(YoVariable variable, double value)
+   {
+      return new Condition(variable, value, true, value, true);
+   }
+
+   /**
+    * Creates a query satisfied when the given enum variable is equal to {@code value}.
+    *
+    * @param <E>      the enum type.
+    * @param variable the variable to test.
+    * @param value    the value to search for, can be {@code null}.
+    * @return the new query.
+    */
+   public static <E extends Enum<E>> YoBufferQuery equalTo(YoEnum<E> variable, E value)
+   {
+      return equalTo(variable, value == null ? YoEnum.NULL_VALUE : value.ordinal());
+   }
+
+   /**
+    * Creates a query satisfied when the given boolean variable is equal to {@code value}.
+    *
+    * @param variable the variable to test.
+    * @param value    the value to search for.
+    * @return the new query.
+    */
+   public static YoBufferQuery equalTo(YoBoolean variable, boolean value)
+   {
+      return equalTo(variable, value ? 1.0 : 0.0);
+   }
+
+   /**
+    * Creates a query satisfied when both {@code this} and {@code other} are satisfied.
+    *
+    * @param other the other query.
+    * @return the new query.
+    */
+   public YoBufferQuery and(YoBufferQuery other)
+   {
+      return new Conjunction(this, other);
+   }
+
+   /**
+    * Creates a query satisfied when {@code this} or {@code other} is satisfied.
+    *
+    * @param other the other query.
+    * @return the new query.
+    */
+   public YoBufferQuery or(YoBufferQuery other)
+   {
+      return new Disjunction(this, other);
+   }
+
+   /**
+    * Converts a set of buffer indices into the set of indices starting each of its ranges, i.e. the
+    * indices {@code i} such that {@code i} is in the set but {@code i - 1} is not.
+    * <p>
+    * This is typically used to register a single key point per range of indices matching a query.
+    * </p>
+    *
+    * @param indices the indices, for instance as returned by {@link YoBuffer#query(YoBufferQuery)}.
+    *                Not modified.
+    * @return the first index of each range.
+    */
+   public static BitSet toRangeStarts(BitSet indices)
+   {
+      BitSet starts = (BitSet) indices.clone();
+      // Shifting by one sets the bit i + 1 for every index i, which removes the indices preceded by another one.
+      starts.andNot(shiftLeftByOne(indices));
+      return starts;
+   }
+
+   private static BitSet shiftLeftByOne(BitSet indices)
+   {
+      long[] words = indices.toLongArray();
+      long carry = 0L;
+      for (int i = 0; i < words.length; i++)
+      {
+         long word = words[i];
+         words[i] = (word << 1) | carry;
+         carry = word >>> 63;
+      }
+      BitSet shifted = BitSet.valueOf(words);
+      if (carry != 0L)
+         shifted.set(words.length << 6);
+      return shifted;
+   }
+
+   /**
+    * Resolves the variables of this query against the given buffer.
+    *
+    * @param buffer the buffer to search.
+    * @return the evaluator for this query.
+    * @throws IllegalArgumentException if one of the variables is not managed by the buffer.
+    */
+   abstract Evaluator compile(YoBuffer buffer);
+
+   /**
+    * A query compiled for a given buffer, which is evaluated one block of {@value #BLOCK_SIZE}
+    * consecutive buffer indices at a time.
+    */
+   interface Evaluator
+   {
+      /** Number of buffer indices per block, matches the number of bits of a {@code long}. */
+      int BLOCK_SIZE = YoBufferBoundsIndex.BLOCK_SIZE;
+
+      /**
+       * Evaluates the query for the buffer indices in the given block.
+       *
+       * @param block the index of the block, it covers the buffer indices starting at
+       *              {@code block * BLOCK_SIZE}.
+       * @return the bit mask of the indices satisfying the query, the bit {@code i} is set when the
+       *         buffer index {@code block * BLOCK_SIZE + i} satisfies the query.
+       */
+      long evaluate(int block);
+   }
+
+   private static class Condition extends YoBufferQuery
+   {
+      private final YoVariable variable;
+      private final double lowerBound, upperBound;
+      private final boolean lowerInclusive, upperInclusive;
+
+      private Condition(YoVariable variable, double lowerBound, boolean lowerInclusive, double upperBound, boolean upperInclusive)
+      {
+         this.variable = variable;
+         this.lowerBound = lowerBound;
+         this.lowerInclusive = lowerInclusive;
+         this.upperBound = upperBound;
+         this.upperInclusive = upperInclusive;
+      }
+
+      private boolean test(double value)
+      {
+         boolean aboveLowerBound = lowerInclusive ? value >= lowerBound : value > lowerBound;
+         boolean belowUpperBound = upperInclusive ? value <= upperBound : value < upperBound;
+         return aboveLowerBound && belowUpperBound;
+      }
+
+      private boolean mayMatch(double blockLowerBound, double blockUpperBound)
+      {
+         if (blockLowerBound > blockUpperBound) // Block only made of NaNs
+            return false;
+         boolean aboveLowerBound = lowerInclusive ? blockUpperBound >= lowerBound : blockUpperBound > lowerBound;
+         boolean belowUpperBound = upperInclusive ? blockLowerBound <= upperBound : blockLowerBound < upperBound;
+         return aboveLowerBound && belowUpperBound;
+      }
+
+      @Override
+      Evaluator compile(YoBuffer buffer)
+      {
+         YoBufferVariableEntry entry = buffer.getEntry(variable);
+         if (entry == null)
+            throw new IllegalArgumentException("The variable " + variable.getFullNameString() + " is not managed by the buffer.");
+
+         YoBufferBoundsIndex zoneMap = entry.getUpdatedBoundsIndex();
+         YoBufferStorage storage = entry.getResolvedStorage();
+         int size = storage.getSize();
+
+         return block ->
+         {
+            if (!mayMatch(zoneMap.getBlockLowerBound(block), zoneMap.getBlockUpperBound(block)))
+               return 0L;
+
+            int fromIndex = block * Evaluator.BLOCK_SIZE;
+            int toIndex = Math.min(fromIndex + Evaluator.BLOCK_SIZE, size);
+            long mask = 0L;
+
+            for (int i = fromIndex; i < toIndex; i++)
+            {
+               if (test(storage.read(i)))
+                  mask |= 1L << (i - fromIndex);
+            }
+
+            return mask;
+         };
+      }
+   }
+
+   private static class Conjunction extends YoBufferQuery
+   {
+      private final YoBufferQuery left, right;
+
+      private Conjunction(YoBufferQuery left, YoBufferQuery right)
+      {
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      Evaluator compile(YoBuffer buffer)
+      {
+         Evaluator leftEvaluator = left.compile(buffer);
+         Evaluator rightEvaluator = right.compile(buffer);
+
+         return block ->
+         {
+            long mask = leftEvaluator.evaluate(block);
+            return mask == 0L ? 0L : mask & rightEvaluator.evaluate(block);
+         };
+      }
+   }
+
+   private static class Disjunction extends YoBufferQuery
+   {
+      private final YoBufferQuery left, right;
+
+      private Disjunction(YoBufferQuery left, YoBufferQuery right)
+      {
+         this.left = left;
+         this.right = right;
+      }
+
+      @Override
+      Evaluator compile(YoBuffer buffer)
+      {
+         Evaluator leftEvaluator = left.compile(buffer);
+         Evaluator rightEvaluator = right.compile(buffer);
+
+         return block ->
+         {
+            long mask = leftEvaluator.evaluate(block);
+            return mask == -1L ? mask : mask | rightEvaluator.evaluate(block);
+         };
+      }
+   }
+}
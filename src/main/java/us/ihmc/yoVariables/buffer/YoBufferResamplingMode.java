@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import us.ihmc.yoVariables.variable.YoVariableType;
+
+/**
+ * Strategies for reading the value of a variable in between the ticks of its buffer, see
+ * {@link YoBufferTimeAligner}.
+ */
+public enum YoBufferResamplingMode
+{
+   /** Holds the value of the last tick at or before the query time. */
+   ZERO_ORDER_HOLD,
+   /**
+    * Linearly interpolates between the ticks surrounding the query time. Only the values of
+    * {@link YoVariableType#DOUBLE} variables are interpolated, the other types are held as with
+    * {@link #ZERO_ORDER_HOLD}.
+    */
+   LINEAR;
+
+   /**
+    * Tests whether the values of a variable of the given type are interpolated with this mode.
+    *
+    * @param type the type of the variable.
+    * @return {@code true} if the values are interpolated, {@code false} if they are held.
+    */
+   boolean isInterpolated(YoVariableType type)
+   {
+      return this == LINEAR && type == YoVariableType.DOUBLE;
+   }
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Append-only file of {@link YoBuffer} data spilled to disk by a {@link YoBufferSpillRecorder}.
+ * <p>
+ * The file starts with a header listing the recorded variables, the columns, and is followed by
+ * segments of consecutive ticks. Within a segment the data is stored column by column, each column
+ * being the values of one variable encoded with
+ * {@link us.ihmc.yoVariables.buffer.storage.YoBufferStorage#exportValues(int, int, ByteBuffer)}:
+ * one bit per boolean and the natural width of the type otherwise, little-endian.
+ * </p>
+ * <p>
+ * The ticks of the file are numbered from 0 in the order they were recorded and any range of them
+ * can be paged back into a {@link YoBuffer} with {@link #loadIntoBuffer(long, YoBuffer)}. A file can
+ * be read while it is being recorded, or afterwards using {@link #open(Path)}.
+ * </p>
+ */
+public class YoBufferSpillFile implements Closeable
+{
+   static final int FILE_MAGIC = 0x46534259; // "YBSF" once encoded.
+   static final int FILE_VERSION = 1;
+   /** Magic number, version, number of columns, and size of the header. */
+   static final int FILE_HEADER_PREFIX_SIZE = 4 * Integer.BYTES;
+   static final int SEGMENT_MAGIC = 0x4D474553; // "SEGM" once encoded.
+   /** Magic number and number of ticks. */
+   static final int SEGMENT_HEADER_SIZE = 2 * Integer.BYTES;
+   static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+   private final FileChannel channel;
+   private final String[] columnNames;
+   private final int[] columnBitsPerValue;
+
+   private long[] segmentPositions = new long[16];
+   private long[] segmentFirstTicks = new long[16];
+   private int[] segmentLengths = new int[16];
+   private int numberOfSegments = 0;
+   private long numberOfTicks = 0;
+
+   YoBufferSpillFile(FileChannel channel, String[] columnNames, int[] columnBitsPerValue)
+   {
+      this.channel = channel;
+      this.columnNames = columnNames;
+      this.columnBitsPerValue = columnBitsPerValue;
+   }
+
+   /**
+    * Opens an existing spill file for reading.
+    * <p>
+    * An incomplete segment at the end of the file, for instance when the recording process was
+    * interrupted, is ignored.
+    * </p>
+    *
+    * @param file the path to the spill file.
+    * @return the spill file.
+    * @throws IOException if the file could not be read or is not a spill file.
+    */
+   public static YoBufferSpillFile open(Path file) throws IOException
+   {
+      FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+      try
+      {
+         ByteBuffer prefix = read(channel, 0, FILE_HEADER_PREFIX_SIZE, null);
+         if (prefix.getInt() != FILE_MAGIC)
+            throw new IOException("Not a spill file: " + file);
+         int version = prefix.getInt();
+         if (version != FILE_VERSION)
+            throw new IOException("Unsupported spill file version: " + version);
+         int numberOfColumns = prefix.getInt();
+         int headerSize = prefix.getInt();
+
+         ByteBuffer header = read(channel, FILE_HEADER_PREFIX_SIZE, headerSize - FILE_HEADER_PREFIX_SIZE, null);
+         String[] columnNames = new String[numberOfColumns];
+         int[] columnBitsPerValue = new int[numberOfColumns];
+
+         for (int i = 0; i < numberOfColumns; i++)
+         {
+            byte[] name = new byte[header.getShort() & 0xFFFF];
+            header.get(name);
+            columnNames[i] = new String(name, StandardCharsets.UTF_8);
+            columnBitsPerValue[i] = header.get();
+         }
+
+         YoBufferSpillFile spillFile = new YoBufferSpillFile(channel, columnNames, columnBitsPerValue);
+         long position = headerSize;
+         long fileSize = channel.size();
+         ByteBuffer segmentHeader = ByteBuffer.allocate(SEGMENT_HEADER_SIZE).order(BYTE_ORDER);
+
+         while (position + SEGMENT_HEADER_SIZE <= fileSize)
+         {
+            read(channel, position, SEGMENT_HEADER_SIZE, segmentHeader);
+            if (segmentHeader.getInt() != SEGMENT_MAGIC)
+               break;
+            int length = segmentHeader.getInt();
+            long segmentSize = spillFile.computeSegmentSize(length);
+            if (position + segmentSize > fileSize)
+               break;
+
+            spillFile.addSegment(position, length);
+            position += segmentSize;
+         }
+
+         return spillFile;
+      }
+      catch (IOException | RuntimeException e)
+      {
+         channel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Encodes the header of a spill file for the given columns.
+    *
+    * @param columnNames        the full name of the variable of each column.
+    * @param columnBitsPerValue the number of bits per encoded value of each column.
+    * @return the header ready to be written at the beginning of the file.
+    */
+   static ByteBuffer encodeHeader(String[] columnNames, int[] columnBitsPerValue)
+   {
+      byte[][] names = new byte[columnNames.length][];
+      int headerSize = FILE_HEADER_PREFIX_SIZE;
+
+      for (int i = 0; i < columnNames.length; i++)
+      {
+         names[i] = columnNames[i].getBytes(StandardCharsets.UTF_8);
+         headerSize += Short.BYTES + names[i].length + Byte.BYTES;
+      }
+
+      ByteBuffer header = ByteBuffer.allocate(headerSize).order(BYTE_ORDER);
+      header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(columnNames.length).putInt(headerSize);
+
+      for (int i = 0; i < columnNames.length; i++)
+      {
+         header.putShort((short) names[i].length);
+         header.put(names[i]);
+         header.put((byte) columnBitsPerValue[i]);
+      }
+
+      return header.flip();
+   }
+
+   /**
+    * Computes the size in bytes of a segment, header included.
+    *
+    * @param length the number of ticks in the segment.
+    * @return the size of the segment.
+    */
+   long computeSegmentSize(int length)
+   {
+      long size = SEGMENT_HEADER_SIZE;
+      for (int i = 0; i < columnBitsPerValue.length; i++)
+         size += computeColumnSize(i, length);
+      return size;
+   }
+
+   private long computeColumnSize(int column, int length)
+   {
+      return ((long) length * columnBitsPerValue[column] + 7) >>> 3;
+   }
+
+   /**
+    * Registers a segment that has been entirely written to the file.
+    *
+    * @param position the position in the file of the segment header.
+    * @param length   the number of ticks in the segment.
+    */
+   synchronized void addSegment(long position, int length)
+   {
+      if (numberOfSegments == segmentPositions.length)
+      {
+         int newCapacity = 2 * numberOfSegments;
+         segmentPositions = Arrays.copyOf(segmentPositions, newCapacity);
+         segmentFirstTicks = Arrays.copyOf(segmentFirstTicks, newCapacity);
+         segmentLengths = Arrays.copyOf(segmentLengths, newCapacity);
+      }
+
+      segmentPositions[numberOfSegments] = position;
+      segmentFirstTicks[numberOfSegments] = numberOfTicks;
+      segmentLengths[numberOfSegments] = length;
+      numberOfSegments++;
+      numberOfTicks += length;
+   }
+
+   /**
+    * Returns the full name of the variable recorded in each column.
+    *
+    * @return the column names.
+    */
+   public List<String> getColumnNames()
+   {
+      return Collections.unmodifiableList(Arrays.asList(columnNames));
+   }
+
+   /**
+    * Returns the number of ticks available in this file.
+    *
+    * @return the number of ticks.
+    */
+   public synchronized long getNumberOfTicks()
+   {
+      return numberOfTicks;
+   }
+
+   /**
+    * Returns the number of segments available in this file.
+    *
+    * @return the number of segments.
+    */
+   public synchronized int getNumberOfSegments()
+   {
+      return numberOfSegments;
+   }
+
+   /**
+    * Pages a range of ticks of this file into the given buffer.
+    * <p>
+    * The ticks in [{@code fromTick}, {@code fromTick + n}[ are stored at the beginning of the buffer,
+    * where {@code n} is the minimum of the buffer size and the number of ticks available from
+    * {@code fromTick}. Then the in-point is set to 0, the out-point to {@code n - 1}, and the current
+    * index to 0.
+    * </p>
+    * <p>
+    * The columns are matched to the entries of the buffer by the full name of their variable, entries
+    * without a matching column are left untouched.
+    * </p>
+    *
+    * @param fromTick    the first tick to load.
+    * @param destination the buffer to load the ticks into. Modified.
+    * @return the number of ticks loaded.
+    * @throws IOException if the file could not be read.
+    */
+   public int loadIntoBuffer(long fromTick, YoBuffer destination) throws IOException
+   {
+      long[] positions, firstTicks;
+      int[] lengths;
+      int segmentCount;
+      long tickCount;
+
+      synchronized (this)
+      {
+         positions = segmentPositions;
+         firstTicks = segmentFirstTicks;
+         lengths = segmentLengths;
+         segmentCount = numberOfSegments;
+         tickCount = numberOfTicks;
+      }
+
+      if (fromTick < 0 || fromTick > tickCount)
+         throw new IndexOutOfBoundsException("fromTick should be in [0, " + tickCount + "], but was: " + fromTick);
+
+      int length = (int) Math.min(destination.getBufferSize(), tickCount - fromTick);
+      if (length == 0)
+         return 0;
+
+      YoBufferVariableEntry[] targets = new YoBufferVariableEntry[columnNames.length];
+
+      for (int i = 0; i < columnNames.length; i++)
+      {
+         YoBufferVariableEntry entry = destination.findVariableEntry(columnNames[i]);
+         if (entry != null && entry.getBufferStorage().getExportBitsPerValue() == columnBitsPerValue[i])
+            targets[i] = entry;
+      }
+
+      int segment = Arrays.binarySearch(firstTicks, 0, segmentCount, fromTick);
+      if (segment < 0)
+         segment = -segment - 2;
+
+      ByteBuffer column = null;
+
+      destination.beginModification();
+      try
+      {
+         for (int loaded = 0; loaded < length; segment++)
+         {
+            int sourceIndex = (int) (fromTick + loaded - firstTicks[segment]);
+            int count = Math.min(lengths[segment] - sourceIndex, length - loaded);
+            long columnPosition = positions[segment] + SEGMENT_HEADER_SIZE;
+
+            for (int i = 0; i < columnNames.length; i++)
+            {
+               if (targets[i] != null)
+               { // Only read the bytes holding the values needed.
+                  int bitsPerValue = columnBitsPerValue[i];
+                  long firstByte = ((long) sourceIndex * bitsPerValue) >>> 3;
+                  long lastByte = ((long) (sourceIndex + count) * bitsPerValue + 7) >>> 3;
+                  column = read(channel, columnPosition + firstByte, (int) (lastByte - firstByte), column);
+                  targets[i].importBufferWindow(column, sourceIndex - (int) ((firstByte << 3) / bitsPerValue), loaded, count);
+               }
+
+               columnPosition += computeColumnSize(i, lengths[segment]);
+            }
+
+            loaded += count;
+         }
+
+         destination.setInPoint(0);
+         destination.setOutPoint(length - 1);
+         destination.setCurrentIndex(0);
+      }
+      finally
+      {
+         destination.endModification();
+      }
+
+      return length;
+   }
+
+   /**
+    * Reads bytes from the given channel.
+    *
+    * @param channel     the channel to read from.
+    * @param position    the position of the first byte in the channel.
+    * @param size        the number of bytes to read.
+    * @param bufferToUse the buffer to read into, a new one is created if {@code null} or too small.
+    * @return the buffer containing the bytes read between its position and limit.
+    * @throws IOException if the bytes could not be read or the end of the channel was reached.
+    */
+   static ByteBuffer read(FileChannel channel, long position, int size, ByteBuffer bufferToUse) throws IOException
+   {
+      if (bufferToUse == null || bufferToUse.capacity() < size)
+         bufferToUse = ByteBuffer.allocate(size).order(BYTE_ORDER);
+
+      bufferToUse.clear().limit(size);
+
+      while (bufferToUse.hasRemaining())
+      {
+         if (channel.read(bufferToUse, position + bufferToUse.position()) < 0)
+            throw new EOFException("Reached the end of the file at: " + (position + bufferToUse.position()));
+      }
+
+      return bufferToUse.flip();
+   }
+
+   /**
+    * Closes the underlying file.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      channel.close();
+   }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import us.ihmc.log.LogTools;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferIndexChangedListener;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+
+/**
+ * Records every tick written into a {@link YoBuffer} to a {@link YoBufferSpillFile} such that no
+ * data is lost when the buffer wraps around.
+ * <p>
+ * The ticks are grouped into segments of a fixed number of ticks. Each tick is copied out of the
+ * buffer into the pending segment right after being written, by the thread calling
+ * {@link YoBuffer#tickAndWriteIntoBuffer()}, such that the copy of a segment is spread over its
+ * ticks. Once a segment is complete, it is encoded and appended to the file asynchronously by a
+ * dedicated thread. The segment length is at most the buffer size.
+ * </p>
+ * <p>
+ * The recording thread never waits for the file. The segments are recycled, when the writing thread
+ * falls behind and no segment is available, the ticks of the new segment are dropped and counted,
+ * see {@link #getNumberOfDroppedSegments()}, such that they are missing from the spill file. A
+ * larger number of segment buffers can be given to absorb slow writes.
+ * </p>
+ * <p>
+ * The variables recorded are the ones registered in the buffer when the recorder is created. When
+ * the buffer is modified in a way that breaks the sequence of ticks, for instance by moving the
+ * current index before writing, the ticks of the current segment are discarded and a new segment is
+ * started.
+ * </p>
+ * <p>
+ * This recorder is meant to be used from the thread modifying the buffer, while
+ * {@link #getSpillFile()} can be used from any thread to page the data spilled to disk back into a
+ * different buffer.
+ * </p>
+ */
+public class YoBufferSpillRecorder implements YoBufferIndexChangedListener, Closeable
+{
+   /** Size in bytes targeted by {@link #YoBufferSpillRecorder(YoBuffer, Path)} for each segment. */
+   public static final int DEFAULT_SEGMENT_SIZE = 4 << 20;
+   /** Number of segments used by default, i.e. that can be recorded or waiting to be written at any time. */
+   public static final int DEFAULT_NUMBER_OF_SEGMENT_BUFFERS = 4;
+
+   private final YoBuffer buffer;
+   private final YoBufferVariableEntry[] columns;
+   private final int segmentLength;
+   private final FileChannel channel;
+   private final YoBufferSpillFile spillFile;
+
+   private final ExecutorService writerExecutor;
+   private final int maximumNumberOfSegments;
+   private final BlockingQueue<SegmentWrite> availableSegments;
+   private int numberOfSegments = 0;
+   private long numberOfDroppedSegments = 0;
+   private final AtomicReference<IOException> writeError = new AtomicReference<>();
+   /** Buffer in which the segments are encoded, only used by the writer thread. */
+   private final ByteBuffer segmentBuffer;
+   /** Position in the file where the next segment is written, only used by the writer thread. */
+   private long writePosition;
+
+   private long lastTick;
+   private int segmentBufferSize;
+   private int segmentStartIndex;
+   private int pendingTicks = 0;
+   /** The segment being recorded, {@code null} if it was dropped. */
+   private SegmentWrite pendingSegment;
+   private boolean closed = false;
+
+   /**
+    * Creates a new recorder which segments are about {@link #DEFAULT_SEGMENT_SIZE} bytes.
+    *
+    * @param buffer the buffer to record.
+    * @param file   the file to record into, it is overwritten if it exists.
+    * @throws IOException if the file could not be created.
+    */
+   public YoBufferSpillRecorder(YoBuffer buffer, Path file) throws IOException
+   {
+      this(buffer, file, computeSegmentLength(buffer, DEFAULT_SEGMENT_SIZE));
+   }
+
+   /**
+    * Creates a new recorder.
+    *
+    * @param buffer        the buffer to record.
+    * @param file          the file to record into, it is overwritten if it exists.
+    * @param segmentLength the number of ticks per segment, it cannot exceed the buffer size.
+    * @throws IOException if the file could not be created.
+    */
+   public YoBufferSpillRecorder(YoBuffer buffer, Path file, int segmentLength) throws IOException
+   {
+      this(buffer, file, segmentLength, DEFAULT_NUMBER_OF_SEGMENT_BUFFERS);
+   }
+
+   /**
+    * Creates a new recorder.
+    *
+    * @param buffer                 the buffer to record.
+    * @param file                   the file to record into, it is overwritten if it exists.
+    * @param segmentLength          the number of ticks per segment, it cannot exceed the buffer size.
+    * @param numberOfSegmentBuffers the maximum number of segments that can be recorded or waiting to
+    *                               be written at any time, the segments are allocated as needed.
+    * @throws IOException if the file could not be created.
+    */
+   public YoBufferSpillRecorder(YoBuffer buffer, Path file, int segmentLength, int numberOfSegmentBuffers) throws IOException
+   {
+      if (segmentLength < 1 || segmentLength > buffer.getBufferSize())
+         throw new IllegalArgumentException("segmentLength should be in [1, " + buffer.getBufferSize() + "], but was: " + segmentLength);
+      if (numberOfSegmentBuffers < 1)
+         throw new IllegalArgumentException("numberOfSegmentBuffers should be at least 1, but was: " + numberOfSegmentBuffers);
+
+      this.buffer = buffer;
+      this.segmentLength = segmentLength;
+      maximumNumberOfSegments = numberOfSegmentBuffers;
+      availableSegments = new ArrayBlockingQueue<>(numberOfSegmentBuffers);
+
+      List<YoBufferVariableEntry> entries = buffer.getEntries();
+      columns = entries.toArray(new YoBufferVariableEntry[entries.size()]);
+      String[] columnNames = new String[columns.length];
+      int[] columnBitsPerValue = new int[columns.length];
+
+      for (int i = 0; i < columns.length; i++)
+      {
+         columnNames[i] = columns[i].getVariable().getFullNameString();
+         columnBitsPerValue[i] = columns[i].getBufferStorage().getExportBitsPerValue();
+      }
+
+      channel = FileChannel.open(file,
+                                 StandardOpenOption.CREATE,
+                                 StandardOpenOption.TRUNCATE_EXISTING,
+                                 StandardOpenOption.READ,
+                                 StandardOpenOption.WRITE);
+
+      try
+      {
+         ByteBuffer header = YoBufferSpillFile.encodeHeader(columnNames, columnBitsPerValue);
+         while (header.hasRemaining())
+            writePosition += channel.write(header, writePosition);
+      }
+      catch (IOException e)
+      {
+         channel.close();
+         throw e;
+      }
+
+      spillFile = new YoBufferSpillFile(channel, columnNames, columnBitsPerValue);
+      segmentBuffer = ByteBuffer.allocateDirect((int) spillFile.computeSegmentSize(segmentLength)).order(YoBufferSpillFile.BYTE_ORDER);
+      writerExecutor = Executors.newSingleThreadExecutor(runnable ->
+      {
+         Thread thread = new Thread(runnable, getClass().getSimpleName() + "-" + file.getFileName());
+         thread.setDaemon(true);
+         return thread;
+      });
+
+      lastTick = buffer.getNumberOfTicksWritten();
+      buffer.addListener(this);
+   }
+
+   /**
+    * Computes the number of ticks per segment such that segments are about the given size.
+    *
+    * @param buffer      the buffer to be recorded.
+    * @param segmentSize the targeted size in bytes of a segment.
+    * @return the number of ticks per segment, in [1, buffer size].
+    */
+   public static int computeSegmentLength(YoBuffer buffer, int segmentSize)
+   {
+      long bitsPerTick = 0;
+      for (YoBufferVariableEntry entry : buffer.getEntries())
+         bitsPerTick += entry.getBufferStorage().getExportBitsPerValue();
+      long segmentLength = bitsPerTick == 0 ? buffer.getBufferSize() : 8L * segmentSize / bitsPerTick;
+      return (int) Math.max(1, Math.min(segmentLength, buffer.getBufferSize()));
+   }
+
+   /**
+    * Called by the buffer whenever its index changes, a new segment is spilled once enough ticks have
+    * been written.
+    *
+    * @param newIndex the new buffer index.
+    */
+   @Override
+   public void indexChanged(int newIndex)
+   {
+      long tick = buffer.getNumberOfTicksWritten();
+
+      if (closed || tick == lastTick)
+         return; // Not a new tick, the buffer is being read.
+
+      int bufferSize = buffer.getBufferSize();
+      boolean continuous = tick == lastTick + 1 && bufferSize == segmentBufferSize
+            && newIndex == (segmentStartIndex + pendingTicks) % segmentBufferSize;
+      lastTick = tick;
+
+      if (!continuous)
+      {
+         if (pendingTicks > 0)
+            LogTools.warn("The buffer was modified while recording, discarding the last {} ticks.", pendingTicks);
+         segmentBufferSize = bufferSize;
+         segmentStartIndex = newIndex;
+         pendingTicks = 0;
+      }
+
+      if (pendingTicks == 0)
+         startSegment();
+
+      // Copied right away such that the copy of a segment is spread over its ticks.
+      if (pendingSegment != null)
+         pendingSegment.record(newIndex, pendingTicks);
+      pendingTicks++;
+
+      if (pendingTicks >= Math.min(segmentLength, segmentBufferSize))
+         spillSegment();
+   }
+
+   private void startSegment()
+   {
+      if (pendingSegment != null || writeError.get() != null)
+         return; // Reusing the segment which ticks were discarded, or the recording stopped.
+
+      pendingSegment = takeSegment();
+      if (pendingSegment == null)
+         numberOfDroppedSegments++;
+   }
+
+   private void spillSegment()
+   {
+      SegmentWrite segment = pendingSegment;
+      int length = pendingTicks;
+      segmentStartIndex = (segmentStartIndex + length) % segmentBufferSize;
+      pendingTicks = 0;
+      pendingSegment = null;
+
+      if (segment == null)
+         return; // The segment was dropped.
+
+      if (writeError.get() != null)
+      { // Keep going, the error is reported in flush() and close().
+         availableSegments.offer(segment);
+         return;
+      }
+
+      segment.length = length;
+      writerExecutor.execute(segment);
+   }
+
+   private SegmentWrite takeSegment()
+   {
+      SegmentWrite segment = availableSegments.poll();
+      if (segment != null)
+         return segment;
+
+      if (numberOfSegments < maximumNumberOfSegments)
+      {
+         numberOfSegments++;
+         return new SegmentWrite();
+      }
+
+      return null;
+   }
+
+   private void writeSegment(int length)
+   {
+      try
+      {
+         long position = writePosition;
+         while (segmentBuffer.hasRemaining())
+            position += channel.write(segmentBuffer, position);
+         spillFile.addSegment(writePosition, length);
+         writePosition = position;
+      }
+      catch (IOException e)
+      {
+         if (writeError.compareAndSet(null, e))
+            LogTools.error("Could not write a segment, the recording is stopped.", e);
+      }
+   }
+
+   /**
+    * Returns the segment length, i.e. the number of ticks per segment.
+    *
+    * @return the segment length.
+    */
+   public int getSegmentLength()
+   {
+      return segmentLength;
+   }
+
+   /**
+    * Returns the number of segments that were dropped because the previous ones were still being
+    * written, the ticks of these segments are missing from the spill file.
+    *
+    * @return the number of dropped segments.
+    */
+   public long getNumberOfDroppedSegments()
+   {
+      return numberOfDroppedSegments;
+   }
+
+   /**
+    * Returns the file this recorder writes to, it can be used to read back the data spilled so far.
+    *
+    * @return the spill file.
+    */
+   public YoBufferSpillFile getSpillFile()
+   {
+      return spillFile;
+   }
+
+   /**
+    * Spills the ticks of the current segment even if it is incomplete and waits for all segments to
+    * be written to the file.
+    *
+    * @throws IOException if a segment could not be written.
+    */
+   public void flush() throws IOException
+   {
+      if (closed)
+         return;
+
+      if (pendingTicks > 0)
+         spillSegment();
+
+      try
+      {
+         writerExecutor.submit(() -> null).get();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new InterruptedIOException("Interrupted while waiting for the segments to be written.");
+      }
+      catch (ExecutionException e)
+      {
+         throw new IOException(e.getCause());
+      }
+
+      IOException error = writeError.get();
+      if (error != null)
+         throw error;
+      channel.force(false);
+   }
+
+   /**
+    * Stops recording, flushes the remaining ticks, and closes the file.
+    *
+    * @throws IOException if a segment could not be written.
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (closed)
+         return;
+
+      buffer.removeListener(this);
+
+      try
+      {
+         flush();
+      }
+      finally
+      {
+         closed = true;
+         writerExecutor.shutdown();
+         try
+         {
+            writerExecutor.awaitTermination(1, TimeUnit.MINUTES);
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+         channel.close();
+      }
+   }
+
+   /**
+    * Holds the values of a segment while it is recorded, then encodes and writes them to the file.
+    * Allocated once per segment buffer such that no memory is allocated when recording.
+    */
+   private class SegmentWrite implements Runnable
+   {
+      private final YoBufferStorage[] storages = new YoBufferStorage[columns.length];
+      private int length;
+
+      private SegmentWrite()
+      {
+         for (int i = 0; i < columns.length; i++)
+            storages[i] = columns[i].getBufferStorage().newStorage(segmentLength);
+      }
+
+      private void record(int index, int offset)
+      {
+         for (int i = 0; i < columns.length; i++)
+            columns[i].copyBufferWindow(index, 1, storages[i], offset);
+      }
+
+      @Override
+      public void run()
+      {
+         try
+         {
+            segmentBuffer.clear();
+            segmentBuffer.putInt(YoBufferSpillFile.SEGMENT_MAGIC).putInt(length);
+            for (YoBufferStorage storage : storages)
+               storage.exportValues(0, length, segmentBuffer);
+            segmentBuffer.flip();
+         }
+         finally
+         {
+            availableSegments.offer(this);
+         }
+
+         writeSegment(length);
+      }
+   }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+/**
+ * This class holds the statistics of a window of buffer values.
+ * <p>
+ * {@code NaN}s are ignored, they are only counted. When the window only contains {@code NaN}s, the
+ * mean, variance, standard deviation, and root mean square are {@code NaN}, the minimum and maximum
+ * are respectively {@link Double#POSITIVE_INFINITY} and {@link Double#NEGATIVE_INFINITY}, and their
+ * indices are {@code -1}.
+ * </p>
+ * <p>
+ * A statistics object can be reused to avoid generating garbage, see
+ * {@link YoBufferVariableEntry#computeStatistics(int, int, YoBufferStatistics)}.
+ * </p>
+ * <p>
+ * It is part of the {@link YoBuffer} framework.
+ * </p>
+ */
+public class YoBufferStatistics
+{
+   /** The number of values in the window, including {@code NaN}s. */
+   private int windowLength = 0;
+   /** The number of {@code NaN}s in the window. */
+   private int nanCount = 0;
+   /** The mean of the values. */
+   private double mean = Double.NaN;
+   /** The population variance of the values. */
+   private double variance = Double.NaN;
+   /** The minimum value. */
+   private double minimum = Double.POSITIVE_INFINITY;
+   /** The maximum value. */
+   private double maximum = Double.NEGATIVE_INFINITY;
+   /** The buffer index of the first occurrence of the minimum value. */
+   private int minimumIndex = -1;
+   /** The buffer index of the first occurrence of the maximum value. */
+   private int maximumIndex = -1;
+
+   /**
+    * Creates a new statistics object for an empty window.
+    */
+   public YoBufferStatistics()
+   {
+   }
+
+   /**
+    * Sets the statistics of a window.
+    *
+    * @param windowLength the number of values in the window, including {@code NaN}s.
+    * @param nanCount     the number of {@code NaN}s in the window.
+    * @param mean         the mean of the values.
+    * @param variance     the population variance of the values.
+    * @param minimum      the minimum value.
+    * @param minimumIndex the buffer index of the minimum value.
+    * @param maximum      the maximum value.
+    * @param maximumIndex the buffer index of the maximum value.
+    */
+   public void set(int windowLength, int nanCount, double mean, double variance, double minimum, int minimumIndex, double maximum, int maximumIndex)
+   {
+      this.windowLength = windowLength;
+      this.nanCount = nanCount;
+      this.mean = mean;
+      this.variance = variance;
+      this.minimum = minimum;
+      this.minimumIndex = minimumIndex;
+      this.maximum = maximum;
+      this.maximumIndex = maximumIndex;
+   }
+
+   /**
+    * Returns the number of values in the window, including {@code NaN}s.
+    *
+    * @return the window length.
+    */
+   public int getWindowLength()
+   {
+      return windowLength;
+   }
+
+   /**
+    * Returns the number of values in the window that are not {@code NaN}.
+    *
+    * @return the number of values the statistics are computed from.
+    */
+   public int getCount()
+   {
+      return windowLength - nanCount;
+   }
+
+   /**
+    * Returns the number of {@code NaN}s in the window.
+    *
+    * @return the number of {@code NaN}s.
+    */
+   public int getNaNCount()
+   {
+      return nanCount;
+   }
+
+   /**
+    * Returns the mean of the values.
+    *
+    * @return the mean.
+    */
+   public double getMean()
+   {
+      return mean;
+   }
+
+   /**
+    * Returns the population variance of the values.
+    *
+    * @return the variance.
+    */
+   public double getVariance()
+   {
+      return variance;
+   }
+
+   /**
+    * Returns the population standard deviation of the values.
+    *
+    * @return the standard deviation.
+    */
+   public double getStandardDeviation()
+   {
+      return Math.sqrt(variance);
+   }
+
+   /**
+    * Returns the root mean square of the values.
+    *
+    * @return the root mean square.
+    */
+   public double getRootMeanSquare()
+   {
+      return Math.sqrt(variance + mean * mean);
+   }
+
+   /**
+    * Returns the minimum value.
+    *
+    * @return the minimum value, or {@link Double#POSITIVE_INFINITY} if the window only contains
+    *         {@code NaN}s.
+    */
+   public double getMinimum()
+   {
+      return minimum;
+   }
+
+   /**
+    * Returns the buffer index of the first occurrence of the minimum value.
+    *
+    * @return the index of the minimum value, or {@code -1} if the window only contains {@code NaN}s.
+    */
+   public int getMinimumIndex()
+   {
+      return minimumIndex;
+   }
+
+   /**
+    * Returns the maximum value.
+    *
+    * @return the maximum value, or {@link Double#NEGATIVE_INFINITY} if the window only contains
+    *         {@code NaN}s.
+    */
+   public double getMaximum()
+   {
+      return maximum;
+   }
+
+   /**
+    * Returns the buffer index of the first occurrence of the maximum value.
+    *
+    * @return the index of the maximum value, or {@code -1} if the window only contains {@code NaN}s.
+    */
+   public int getMaximumIndex()
+   {
+      return maximumIndex;
+   }
+
+   @Override
+   public String toString()
+   {
+      return "[count=" + getCount() + ", NaNs=" + nanCount + ", mean=" + mean + ", std=" + getStandardDeviation() + ", min=" + minimum + " at "
+            + minimumIndex + ", max=" + maximum + " at " + maximumIndex + "]";
+   }
+}
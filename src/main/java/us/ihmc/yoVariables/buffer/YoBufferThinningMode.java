@@ -0,0 +1,225 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+import us.ihmc.yoVariables.variable.YoVariableType;
+
+/**
+ * Strategies for reducing the number of values stored in a buffer, see
+ * {@link YoBuffer#thinData(int, YoBufferThinningMode, us.ihmc.yoVariables.variable.YoVariable)}.
+ * <p>
+ * Given a factor {@code n}, every strategy reduces a buffer of size {@code size} to
+ * {@code size / n} values in a single pass, reusing the storage of the buffer. The ticks to keep are
+ * selected once, from a reference entry when the strategy depends on the data, and the same ticks
+ * are kept for all entries such that the entries remain aligned after thinning.
+ * </p>
+ */
+public enum YoBufferThinningMode
+{
+   /**
+    * Keeps every {@code n}<sup>th</sup> value. This aliases and may drop short events such as spikes.
+    */
+   EVERY_NTH,
+   /**
+    * Splits the buffer into buckets of {@code 2 n} values and keeps the ticks of the minimum and
+    * maximum of the reference entry in each bucket, in their chronological order, such that the
+    * envelope of the reference signal and its spikes are preserved. {@code NaN}s are ignored unless a
+    * bucket only contains {@code NaN}s.
+    */
+   MIN_MAX
+   {
+      @Override
+      int[] selectTicks(YoBufferStorage reference, int n)
+      {
+         int size = reference.getSize();
+         int newSize = size / n;
+         int numberOfBuckets = newSize / 2;
+         int[] ticks = new int[newSize];
+
+         for (int bucket = 0; bucket < numberOfBuckets; bucket++)
+         {
+            int from = bucketStart(bucket, numberOfBuckets, size);
+            int to = bucketStart(bucket + 1, numberOfBuckets, size);
+            int minIndex = from;
+            int maxIndex = from;
+            double min = reference.read(from);
+            double max = min;
+
+            for (int i = from + 1; i < to; i++)
+            {
+               double value = reference.read(i);
+               if (value < min || Double.isNaN(min))
+               {
+                  min = value;
+                  minIndex = i;
+               }
+               if (value > max || Double.isNaN(max))
+               {
+                  max = value;
+                  maxIndex = i;
+               }
+            }
+
+            if (minIndex == maxIndex) // Keep two distinct ticks, the ticks have to be increasing.
+               maxIndex = minIndex == from ? from + 1 : from;
+
+            ticks[2 * bucket] = Math.min(minIndex, maxIndex);
+            ticks[2 * bucket + 1] = Math.max(minIndex, maxIndex);
+         }
+
+         if (newSize % 2 != 0) // Keep the last value to complete the buffer.
+            ticks[newSize - 1] = size - 1;
+         return ticks;
+      }
+   },
+   /**
+    * Largest-triangle-three-buckets: keeps the first and last ticks and, for each bucket in between,
+    * the tick at which the reference entry forms the largest triangle with the previously kept value
+    * and the average of the next bucket. This preserves the visual shape of the reference signal when
+    * plotted.
+    */
+   LTTB
+   {
+      @Override
+      int[] selectTicks(YoBufferStorage reference, int n)
+      {
+         int size = reference.getSize();
+         int newSize = size / n;
+
+         if (newSize <= 2 || newSize >= size)
+            return null;
+
+         // The first and last ticks are kept as is, the others are distributed in buckets.
+         int numberOfBuckets = newSize - 2;
+         int[] ticks = new int[newSize];
+         int previousIndex = 0;
+         double previousValue = reference.read(0);
+
+         for (int bucket = 0; bucket < numberOfBuckets; bucket++)
+         {
+            int from = 1 + bucketStart(bucket, numberOfBuckets, size - 2);
+            int to = 1 + bucketStart(bucket + 1, numberOfBuckets, size - 2);
+            int nextFrom = to;
+            int nextTo = 1 + bucketStart(bucket + 2, numberOfBuckets, size - 2);
+            if (bucket == numberOfBuckets - 1)
+               nextTo = size; // Only the last value.
+
+            double nextAverageIndex = 0.5 * (nextFrom + nextTo - 1);
+            double nextAverageValue = 0.0;
+            for (int i = nextFrom; i < nextTo; i++)
+               nextAverageValue += reference.read(i);
+            nextAverageValue /= nextTo - nextFrom;
+
+            int selectedIndex = from;
+            double selectedValue = reference.read(from);
+            double maxArea = -1.0;
+
+            for (int i = from; i < to; i++)
+            {
+               double value = reference.read(i);
+               // Twice the area of the triangle, the factor does not affect the selection.
+               double area = Math.abs((previousIndex - nextAverageIndex) * (value - previousValue)
+                     - (previousIndex - i) * (nextAverageValue - previousValue));
+               if (area > maxArea)
+               {
+                  maxArea = area;
+                  selectedIndex = i;
+                  selectedValue = value;
+               }
+            }
+
+            ticks[bucket + 1] = selectedIndex;
+            previousIndex = selectedIndex;
+            previousValue = selectedValue;
+         }
+
+         ticks[newSize - 1] = size - 1;
+         return ticks;
+      }
+   },
+   /**
+    * Replaces each group of {@code n} consecutive values with their average, acting as a low-pass
+    * filter that prevents aliasing. Only applies to {@link YoVariableType#DOUBLE} variables, the other
+    * types represent discrete values which are thinned as with {@link #EVERY_NTH}.
+    */
+   MEAN
+   {
+      @Override
+      int thin(YoBufferStorage storage, int n, YoVariableType type, int[] ticks)
+      {
+         if (type != YoVariableType.DOUBLE)
+            return super.thin(storage, n, type, ticks);
+
+         int newSize = storage.getSize() / n;
+
+         for (int index = 0; index < newSize; index++)
+         {
+            double sum = 0.0;
+            for (int i = index * n; i < (index + 1) * n; i++)
+               sum += storage.read(i);
+            storage.write(index, sum / n);
+         }
+
+         return newSize;
+      }
+   };
+
+   /**
+    * Selects the ticks to keep when thinning by a factor {@code n}.
+    *
+    * @param reference the storage of the entry from which the ticks are selected. Not modified.
+    * @param n         the thinning factor.
+    * @return the increasing indices of the ticks to keep, or {@code null} to keep every
+    *         {@code n}<sup>th</sup> tick.
+    */
+   int[] selectTicks(YoBufferStorage reference, int n)
+   {
+      return null;
+   }
+
+   /**
+    * Thins the given storage in place.
+    * <p>
+    * The thinned values are stored in [{@code 0}, {@code size / n}[, the storage is not resized.
+    * </p>
+    *
+    * @param storage the storage to thin. Modified.
+    * @param n       the thinning factor.
+    * @param type    the type of the variable which history is held by the storage.
+    * @param ticks   the ticks to keep as returned by {@link #selectTicks(YoBufferStorage, int)}.
+    * @return the number of values after thinning.
+    */
+   int thin(YoBufferStorage storage, int n, YoVariableType type, int[] ticks)
+   {
+      if (ticks == null)
+      {
+         int newSize = storage.getSize() / n;
+         storage.decimate(n, newSize);
+         return newSize;
+      }
+
+      // The ticks are increasing and ticks[i] >= i, such that no value is overwritten before being moved.
+      for (int i = 0; i < ticks.length; i++)
+         storage.copy(storage, ticks[i], i, 1);
+      return ticks.length;
+   }
+
+   private static int bucketStart(int bucket, int numberOfBuckets, int size)
+   {
+      return (int) ((long) bucket * size / numberOfBuckets);
+   }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+/**
+ * Counts the number of ticks written into a {@link YoBuffer} when change tracking is enabled.
+ * <p>
+ * It is shared by the buffer with its entries, such that an entry which variable has not changed
+ * for a number of ticks can carry forward its last value when needed.
+ * </p>
+ */
+final class YoBufferTickCounter
+{
+   /** The number of ticks written since change tracking was enabled. */
+   long tick = 0;
+}
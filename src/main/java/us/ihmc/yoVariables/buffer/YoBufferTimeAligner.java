@@ -0,0 +1,524 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import us.ihmc.yoVariables.buffer.interfaces.YoTimeBufferHolder;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorageFactory;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Aligns several buffers recorded at different rates on a common timeline using their time
+ * variable, see {@link YoBuffer#setTimeVariableName(String)}.
+ * <p>
+ * The timeline is either the ticks of a reference buffer, see
+ * {@link #join(YoBufferResamplingMode, YoBuffer, YoBuffer...)}, or the union of the ticks of all the
+ * buffers, see {@link #merge(YoBufferResamplingMode, YoBuffer...)}. Only the ticks in
+ * [{@code inPoint}, {@code outPoint}] of each buffer are considered and their time is assumed to be
+ * non-decreasing.
+ * </p>
+ * <p>
+ * The aligner is a lazy view: the value of a variable at a tick of the timeline is only computed
+ * when read with {@link #read(YoVariable, int, int, double[], int)}. The timeline is processed in
+ * chunks of {@value #CHUNK_LENGTH} ticks: the position of each tick in a source buffer is found once
+ * per chunk by walking the source time forward and is shared by all the variables of that buffer,
+ * such that the values are then resampled in a branch-free loop. {@link #toBuffer()} materializes
+ * the aligned data chunk by chunk into a new buffer.
+ * </p>
+ * <p>
+ * The value of a variable at a time outside the time range of its buffer is {@link Double#NaN}. The
+ * in-point and out-point of the buffers are captured on creation, the aligner should be created
+ * again after the buffers have been modified. It is not thread-safe.
+ * </p>
+ */
+public class YoBufferTimeAligner implements YoTimeBufferHolder
+{
+   /** The number of ticks of the timeline resampled at once. */
+   public static final int CHUNK_LENGTH = 1024;
+
+   /** A source buffer and the position of the ticks of the timeline in its time. */
+   private static final class Source
+   {
+      private final YoBufferVariableEntry timeEntry;
+      private final int inPoint;
+      private final int length;
+      private final int bufferSize;
+
+      /** Window of the source time read in bulk. */
+      private final double[] times = new double[CHUNK_LENGTH];
+      private int timesOffset = 0;
+      private int timesLength = 0;
+
+      /** The first tick of the timeline of the last chunk resampled, or -1. */
+      private int chunkFromTick = -1;
+      private int chunkLength = 0;
+      /**
+       * For each tick of the chunk, the offset from the in-point of the last source tick at or before
+       * it, or -1 if it is outside the time range of the source.
+       */
+      private final int[] lowerOffsets = new int[CHUNK_LENGTH];
+      /** For each tick of the chunk, the interpolation factor between the lower and next source ticks. */
+      private final double[] alphas = new double[CHUNK_LENGTH];
+      private int minLowerOffset;
+      private int maxLowerOffset;
+
+      private Source(YoBuffer buffer)
+      {
+         timeEntry = buffer.getTimeEntry();
+         if (timeEntry == null)
+            throw new IllegalStateException("The time variable could not be found: " + buffer.getTimeVariableName());
+
+         inPoint = buffer.getInPoint();
+         bufferSize = buffer.getBufferSize();
+         length = YoBufferEnvelope.computeWindowLength(inPoint, buffer.getOutPoint(), bufferSize);
+      }
+
+      private int toIndex(int offset)
+      {
+         int index = inPoint + offset;
+         return index >= bufferSize ? index - bufferSize : index;
+      }
+
+      private double time(int offset)
+      {
+         if (offset < timesOffset || offset >= timesOffset + timesLength)
+         { // Keeping the previous tick such that the cursor does not reload when looking back once.
+            timesOffset = Math.max(0, offset - 1);
+            timesLength = Math.min(CHUNK_LENGTH, length - timesOffset);
+            timeEntry.getBufferWindow(toIndex(timesOffset), timesLength, times, 0);
+         }
+
+         return times[offset - timesOffset];
+      }
+
+      /**
+       * Returns the number of ticks which time is less than or equal to the given time.
+       */
+      private int countTicksUntil(double time)
+      {
+         int low = 0;
+         int high = length;
+
+         while (low < high)
+         {
+            int mid = (low + high) >>> 1;
+
+            if (timeEntry.readBufferAt(toIndex(mid)) <= time)
+               low = mid + 1;
+            else
+               high = mid;
+         }
+
+         return low;
+      }
+
+      /**
+       * Locates the ticks of the timeline in [{@code fromTick}, {@code fromTick + chunkLength}[ in the
+       * time of this source.
+       */
+      private void locate(double[] timeline, int fromTick, int chunkLength)
+      {
+         if (fromTick == chunkFromTick && chunkLength == this.chunkLength)
+            return;
+
+         int lower = countTicksUntil(timeline[fromTick]) - 1;
+         minLowerOffset = Integer.MAX_VALUE;
+         maxLowerOffset = -1;
+
+         for (int i = 0; i < chunkLength; i++)
+         {
+            double time = timeline[fromTick + i];
+
+            while (lower + 1 < length && time(lower + 1) <= time)
+               lower++;
+
+            if (lower < 0 || lower == length - 1 && time(lower) != time)
+            {
+               lowerOffsets[i] = -1;
+               alphas[i] = 0.0;
+               continue;
+            }
+
+            lowerOffsets[i] = lower;
+            minLowerOffset = Math.min(minLowerOffset, lower);
+            maxLowerOffset = Math.max(maxLowerOffset, lower);
+
+            if (lower == length - 1)
+            {
+               alphas[i] = 0.0;
+            }
+            else
+            {
+               double lowerTime = time(lower);
+               alphas[i] = (time - lowerTime) / (time(lower + 1) - lowerTime);
+            }
+         }
+
+         chunkFromTick = fromTick;
+         this.chunkLength = chunkLength;
+      }
+   }
+
+   /** A variable of a source buffer. */
+   private static final class Column
+   {
+      private final Source source;
+      private final YoBufferVariableEntry entry;
+      private final boolean interpolated;
+
+      private Column(Source source, YoBufferVariableEntry entry, boolean interpolated)
+      {
+         this.source = source;
+         this.entry = entry;
+         this.interpolated = interpolated;
+      }
+   }
+
+   private final double[] timeline;
+   private final Source[] sources;
+   private final List<YoVariable> variables = new ArrayList<>();
+   private final Map<YoVariable, Column> columns = new HashMap<>();
+
+   private final double[] lowerValues = new double[CHUNK_LENGTH];
+   private final double[] upperValues = new double[CHUNK_LENGTH];
+   /**
+    * The consecutive source ticks spanned by a chunk, read at once. Its initial length is estimated
+    * from the ratio between the rate of the sources and the one of the timeline, it grows when a
+    * chunk spans more ticks, which costs as much as locating the chunk in the source time anyway.
+    */
+   private double[] spanValues;
+
+   private YoBufferTimeAligner(YoBufferResamplingMode mode, YoBuffer[] buffers, Source[] sources, double[] timeline)
+   {
+      this.sources = sources;
+      this.timeline = timeline;
+
+      int spanLength = 0;
+      for (Source source : sources)
+      {
+         double rateRatio = (double) source.length / Math.max(1, timeline.length);
+         spanLength = Math.max(spanLength, (int) Math.min(source.length, Math.ceil(rateRatio * CHUNK_LENGTH)) + 1);
+      }
+      spanValues = new double[spanLength];
+
+      for (int i = 0; i < buffers.length; i++)
+      {
+         for (YoBufferVariableEntry entry : buffers[i].getEntries())
+         {
+            YoVariable variable = entry.getVariable();
+
+            if (!columns.containsKey(variable))
+            {
+               variables.add(variable);
+               columns.put(variable, new Column(sources[i], entry, mode.isInterpolated(variable.getType())));
+            }
+         }
+      }
+   }
+
+   /**
+    * Aligns the given buffers on the ticks of a reference buffer.
+    * <p>
+    * A variable managed by several buffers is read from the first of them, starting with the
+    * reference.
+    * </p>
+    *
+    * @param mode      the strategy for reading the values in between ticks of the other buffers.
+    * @param reference the buffer which ticks in [{@code inPoint}, {@code outPoint}] define the
+    *                  timeline.
+    * @param others    the buffers to align on the reference.
+    * @return the aligner.
+    * @throws IllegalStateException if the time variable of a buffer could not be found.
+    */
+   public static YoBufferTimeAligner join(YoBufferResamplingMode mode, YoBuffer reference, YoBuffer... others)
+   {
+      YoBuffer[] buffers = new YoBuffer[others.length + 1];
+      buffers[0] = reference;
+      System.arraycopy(others, 0, buffers, 1, others.length);
+      Source[] sources = newSources(buffers);
+
+      Source referenceSource = sources[0];
+      double[] timeline = new double[referenceSource.length];
+      referenceSource.timeEntry.getBufferWindow(referenceSource.inPoint, referenceSource.length, timeline, 0);
+
+      return new YoBufferTimeAligner(mode, buffers, sources, timeline);
+   }
+
+   /**
+    * Aligns the given buffers on the union of their ticks.
+    * <p>
+    * The timeline holds each distinct time of the ticks in [{@code inPoint}, {@code outPoint}] of the
+    * buffers, in increasing order. A variable managed by several buffers is read from the first of
+    * them.
+    * </p>
+    *
+    * @param mode    the strategy for reading the values in between ticks of each buffer.
+    * @param buffers the buffers to merge.
+    * @return the aligner.
+    * @throws IllegalStateException if the time variable of a buffer could not be found.
+    */
+   public static YoBufferTimeAligner merge(YoBufferResamplingMode mode, YoBuffer... buffers)
+   {
+      Source[] sources = newSources(buffers);
+      int maxLength = 0;
+      for (Source source : sources)
+         maxLength += source.length;
+
+      double[] timeline = new double[maxLength];
+      int[] cursors = new int[sources.length];
+      int length = 0;
+
+      while (true)
+      {
+         double time = Double.POSITIVE_INFINITY;
+         boolean isDone = true;
+
+         for (int i = 0; i < sources.length; i++)
+         {
+            if (cursors[i] < sources[i].length)
+            {
+               time = Math.min(time, sources[i].time(cursors[i]));
+               isDone = false;
+            }
+         }
+
+         if (isDone)
+            break;
+
+         for (int i = 0; i < sources.length; i++)
+         {
+            while (cursors[i] < sources[i].length && sources[i].time(cursors[i]) <= time)
+               cursors[i]++;
+         }
+
+         timeline[length++] = time;
+      }
+
+      return new YoBufferTimeAligner(mode, buffers, sources, Arrays.copyOf(timeline, length));
+   }
+
+   private static Source[] newSources(YoBuffer[] buffers)
+   {
+      Source[] sources = new Source[buffers.length];
+      for (int i = 0; i < buffers.length; i++)
+         sources[i] = new Source(buffers[i]);
+      return sources;
+   }
+
+   /**
+    * Returns the number of ticks of the timeline.
+    *
+    * @return the length of the timeline.
+    */
+   public int getLength()
+   {
+      return timeline.length;
+   }
+
+   /**
+    * Returns the time of the given tick of the timeline.
+    *
+    * @param tick the index of the tick.
+    * @return the time.
+    */
+   public double getTime(int tick)
+   {
+      return timeline[tick];
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public double[] getTimeBuffer()
+   {
+      return timeline.clone();
+   }
+
+   /**
+    * Returns the variables that can be read from this aligner, in the order of the buffers.
+    *
+    * @return the variables.
+    */
+   public List<YoVariable> getVariables()
+   {
+      return variables;
+   }
+
+   /**
+    * Reads the value of a variable at the given tick of the timeline.
+    * <p>
+    * Prefer {@link #read(YoVariable, int, int, double[], int)} to read consecutive ticks.
+    * </p>
+    *
+    * @param variable the variable to read.
+    * @param tick     the index of the tick.
+    * @return the value, or {@link Double#NaN} if the tick is outside the time range of the buffer of
+    *         the variable.
+    */
+   public double read(YoVariable variable, int tick)
+   {
+      double[] value = new double[1];
+      read(variable, tick, 1, value, 0);
+      return value[0];
+   }
+
+   /**
+    * Reads the values of a variable at consecutive ticks of the timeline.
+    *
+    * @param variable          the variable to read.
+    * @param fromTick          the index of the first tick to read.
+    * @param length            the number of ticks to read.
+    * @param destination       the array in which the values are stored. Modified.
+    * @param destinationOffset the index in {@code destination} where the first value is stored.
+    * @throws IllegalArgumentException  if the variable is not managed by any of the buffers.
+    * @throws IndexOutOfBoundsException if the ticks are outside the timeline.
+    */
+   public void read(YoVariable variable, int fromTick, int length, double[] destination, int destinationOffset)
+   {
+      Column column = columns.get(variable);
+      if (column == null)
+         throw new IllegalArgumentException("The variable " + variable.getFullNameString() + " is not managed by any of the buffers.");
+      if (fromTick < 0 || length < 0 || fromTick + length > timeline.length)
+         throw new IndexOutOfBoundsException("The ticks [" + fromTick + ", " + (fromTick + length) + "[ are outside the timeline of length "
+               + timeline.length);
+
+      while (length > 0)
+      {
+         int chunkLength = Math.min(CHUNK_LENGTH, length);
+         readChunk(column, fromTick, chunkLength, destination, destinationOffset);
+         fromTick += chunkLength;
+         destinationOffset += chunkLength;
+         length -= chunkLength;
+      }
+   }
+
+   private void readChunk(Column column, int fromTick, int length, double[] destination, int destinationOffset)
+   {
+      Source source = column.source;
+      source.locate(timeline, fromTick, length);
+      int[] lowerOffsets = source.lowerOffsets;
+
+      if (source.maxLowerOffset < 0)
+      {
+         Arrays.fill(destination, destinationOffset, destinationOffset + length, Double.NaN);
+         return;
+      }
+
+      // Gathering the values surrounding each tick.
+      int spanStart = source.minLowerOffset;
+      int spanLength = Math.min(source.maxLowerOffset + 2, source.length) - spanStart;
+      if (spanLength > spanValues.length)
+         spanValues = new double[spanLength];
+      column.entry.getBufferWindow(source.toIndex(spanStart), spanLength, spanValues, 0);
+
+      for (int i = 0; i < length; i++)
+      {
+         int lower = lowerOffsets[i];
+
+         if (lower < 0)
+         {
+            lowerValues[i] = Double.NaN;
+            upperValues[i] = Double.NaN;
+            continue;
+         }
+
+         int upper = Math.min(lower + 1, source.length - 1);
+         lowerValues[i] = spanValues[lower - spanStart];
+         upperValues[i] = spanValues[upper - spanStart];
+      }
+
+      if (column.interpolated)
+      {
+         double[] alphas = source.alphas;
+         for (int i = 0; i < length; i++)
+            destination[destinationOffset + i] = lowerValues[i] + alphas[i] * (upperValues[i] - lowerValues[i]);
+      }
+      else
+      {
+         System.arraycopy(lowerValues, 0, destination, destinationOffset, length);
+      }
+   }
+
+   /**
+    * Materializes the aligned data into a new buffer stored in Java arrays.
+    *
+    * @return the new buffer.
+    * @throws IllegalStateException if the timeline is empty, i.e. no buffers were merged.
+    * @see #toBuffer(YoBufferStorageFactory)
+    */
+   public YoBuffer toBuffer()
+   {
+      return toBuffer(YoBufferStorageFactory.heap());
+   }
+
+   /**
+    * Materializes the aligned data into a new buffer.
+    * <p>
+    * The new buffer manages the same variables as the aligned buffers and has one tick per tick of
+    * the timeline, its in-point and out-point are set to its first and last ticks. The time variable
+    * of the first buffer holds the timeline and is used as the time variable of the new buffer.
+    * </p>
+    * <p>
+    * The ticks outside the time range of a buffer hold {@link Double#NaN} for its {@code YoDouble}s,
+    * the values of the other types of variables are undefined for these ticks.
+    * </p>
+    *
+    * @param storageFactory the factory used to create the storage of the new buffer.
+    * @return the new buffer.
+    * @throws IllegalStateException if the timeline is empty, i.e. no buffers were merged.
+    */
+   public YoBuffer toBuffer(YoBufferStorageFactory storageFactory)
+   {
+      if (timeline.length == 0)
+         throw new IllegalStateException("The timeline is empty, a buffer cannot be created.");
+
+      YoBuffer buffer = new YoBuffer(timeline.length, storageFactory);
+      YoBufferVariableEntry[] entries = new YoBufferVariableEntry[variables.size()];
+      for (int i = 0; i < variables.size(); i++)
+         entries[i] = buffer.addVariable(variables.get(i));
+
+      YoVariable timeVariable = sources[0].timeEntry.getVariable();
+      double[] values = new double[CHUNK_LENGTH];
+
+      for (int fromTick = 0; fromTick < timeline.length; fromTick += CHUNK_LENGTH)
+      {
+         int chunkLength = Math.min(CHUNK_LENGTH, timeline.length - fromTick);
+
+         for (int i = 0; i < entries.length; i++)
+         {
+            if (variables.get(i) == timeVariable)
+            {
+               entries[i].setBufferWindow(fromTick, chunkLength, timeline, fromTick);
+            }
+            else
+            {
+               readChunk(columns.get(variables.get(i)), fromTick, chunkLength, values, 0);
+               entries[i].setBufferWindow(fromTick, chunkLength, values, 0);
+            }
+         }
+      }
+
+      buffer.setTimeVariableName(timeVariable.getFullNameString());
+      buffer.setInPoint(0);
+      buffer.setOutPoint(timeline.length - 1);
+      buffer.setCurrentIndex(0);
+      return buffer;
+   }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import us.ihmc.log.LogTools;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferCaptureListener;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferIndexChangedListener;
+
+/**
+ * Captures windows of ticks around events in a {@link YoBuffer}, in the manner of an oscilloscope
+ * trigger.
+ * <p>
+ * Every tick written with {@link YoBuffer#tickAndWriteIntoBuffer()}, the trigger condition is
+ * evaluated against the current values of the variables. When the recorder is armed and the
+ * condition goes from {@code false} to {@code true}, the recorder copies the pre-trigger ticks, the
+ * trigger tick, and the post-trigger ticks out of the buffer into a {@link YoBufferCapture}. The
+ * copy is spread over the ticks written until the end of the capture, such that each tick only
+ * copies {@code ceil(captureLength / (postTriggerLength + 1))} ticks. The capture is then handed off
+ * to a {@link YoBufferCaptureListener} on a dedicated thread, while the buffer keeps running. The
+ * capture length is at most the buffer size such that the capture is copied before any of its ticks
+ * get overwritten.
+ * </p>
+ * <p>
+ * Evaluating the trigger does not allocate memory on the thread writing into the buffer as long as
+ * the condition does not. The captures are recycled, when the listener falls behind and no capture
+ * is available, the new capture is dropped and counted, see {@link #getNumberOfDroppedCaptures()}.
+ * </p>
+ * <p>
+ * The variables recorded are the ones registered in the buffer when the recorder is created. When
+ * the buffer is modified in a way that breaks the sequence of ticks, the pending capture is
+ * discarded and the pre-trigger window starts again from the next tick.
+ * </p>
+ * <p>
+ * This recorder is meant to be used from the thread modifying the buffer.
+ * </p>
+ */
+public class YoBufferTriggerRecorder implements YoBufferIndexChangedListener, Closeable
+{
+   /** Number of captures that can be waiting to be handed off at any time. */
+   private static final int NUMBER_OF_CAPTURES = 2;
+
+   private final YoBuffer buffer;
+   private final YoBufferVariableEntry[] columns;
+   private final BooleanSupplier condition;
+   private final int preTriggerLength;
+   private final int postTriggerLength;
+   private final YoBufferCaptureListener listener;
+
+   private final ExecutorService deliveryExecutor;
+   private final BlockingQueue<CaptureDelivery> availableCaptures = new ArrayBlockingQueue<>(NUMBER_OF_CAPTURES);
+   private int numberOfCaptures = 0;
+   private long numberOfDroppedCaptures = 0;
+
+   private boolean armed = true;
+   private boolean autoRearm = true;
+   private boolean triggered = false;
+   private boolean previousCondition = false;
+
+   private long lastTick;
+   private int lastIndex = -1;
+   private int lastBufferSize = -1;
+   /** Number of consecutive ticks recorded in the buffer up to the last tick, at most the buffer size. */
+   private int continuousTicks = 0;
+
+   private long triggerTick;
+   private int triggerIndex;
+   private int triggerPreTicks;
+   private int remainingPostTicks;
+   /** The capture being recorded, {@code null} if it was dropped. */
+   private CaptureDelivery pendingCapture;
+   private int captureStartIndex;
+   private int captureLength;
+   private int copiedTicks;
+   private int ticksPerWrite;
+   private boolean closed = false;
+
+   /**
+    * Creates a new recorder, armed and re-armed automatically after each capture.
+    *
+    * @param buffer            the buffer to record.
+    * @param condition         the trigger condition, evaluated on every tick from the thread writing
+    *                          into the buffer. It should not allocate memory.
+    * @param preTriggerLength  the number of ticks to capture before the trigger.
+    * @param postTriggerLength the number of ticks to capture after the trigger.
+    * @param listener          the listener to hand off the captures to.
+    * @throws IllegalArgumentException if a window length is negative or if the capture does not fit
+    *                                  in the buffer.
+    */
+   public YoBufferTriggerRecorder(YoBuffer buffer, BooleanSupplier condition, int preTriggerLength, int postTriggerLength,
+                                  YoBufferCaptureListener listener)
+   {
+      if (preTriggerLength < 0 || postTriggerLength < 0)
+         throw new IllegalArgumentException("The window lengths cannot be negative, pre: " + preTriggerLength + ", post: " + postTriggerLength);
+      if (preTriggerLength + postTriggerLength + 1 > buffer.getBufferSize())
+         throw new IllegalArgumentException("The capture of " + (preTriggerLength + postTriggerLength + 1) + " ticks does not fit in the buffer of size "
+               + buffer.getBufferSize());
+
+      this.buffer = buffer;
+      this.condition = condition;
+      this.preTriggerLength = preTriggerLength;
+      this.postTriggerLength = postTriggerLength;
+      this.listener = listener;
+
+      List<YoBufferVariableEntry> entries = buffer.getEntries();
+      columns = entries.toArray(new YoBufferVariableEntry[entries.size()]);
+
+      deliveryExecutor = Executors.newSingleThreadExecutor(runnable ->
+      {
+         Thread thread = new Thread(runnable, getClass().getSimpleName());
+         thread.setDaemon(true);
+         return thread;
+      });
+
+      lastTick = buffer.getNumberOfTicksWritten();
+      buffer.addListener(this);
+   }
+
+   /**
+    * Called by the buffer whenever its index changes, evaluates the trigger condition and completes
+    * the pending capture once enough ticks have been written.
+    *
+    * @param newIndex the new buffer index.
+    */
+   @Override
+   public void indexChanged(int newIndex)
+   {
+      long tick = buffer.getNumberOfTicksWritten();
+
+      if (closed || tick == lastTick)
+         return; // Not a new tick, the buffer is being read.
+
+      int bufferSize = buffer.getBufferSize();
+      boolean continuous = tick == lastTick + 1 && bufferSize == lastBufferSize && newIndex == (lastIndex + 1) % bufferSize;
+      lastTick = tick;
+      lastIndex = newIndex;
+      lastBufferSize = bufferSize;
+
+      if (!continuous)
+      {
+         if (triggered)
+         {
+            LogTools.warn("The buffer was modified while capturing, discarding the capture.");
+            triggered = false;
+            if (pendingCapture != null)
+            {
+               availableCaptures.offer(pendingCapture);
+               pendingCapture = null;
+            }
+         }
+         continuousTicks = 0;
+      }
+
+      if (continuousTicks < bufferSize)
+         continuousTicks++;
+
+      boolean currentCondition = condition.getAsBoolean();
+      boolean risingEdge = currentCondition && !previousCondition;
+      previousCondition = currentCondition;
+
+      if (triggered)
+      {
+         remainingPostTicks--;
+      }
+      else if (armed && risingEdge)
+      {
+         triggered = true;
+         triggerTick = tick;
+         triggerIndex = newIndex;
+         triggerPreTicks = Math.min(preTriggerLength, continuousTicks - 1);
+         remainingPostTicks = postTriggerLength;
+         startCapture(bufferSize);
+      }
+
+      if (triggered)
+         recordCapture(bufferSize);
+   }
+
+   private void startCapture(int bufferSize)
+   {
+      pendingCapture = takeCapture();
+
+      if (pendingCapture == null)
+      {
+         numberOfDroppedCaptures++;
+         return;
+      }
+
+      captureStartIndex = Math.floorMod(triggerIndex - triggerPreTicks, bufferSize);
+      captureLength = triggerPreTicks + 1 + postTriggerLength;
+      copiedTicks = 0;
+      // Rounded up such that the capture is complete after the last post-trigger tick.
+      ticksPerWrite = (captureLength + postTriggerLength) / (postTriggerLength + 1);
+      pendingCapture.capture.start(captureLength, triggerPreTicks, triggerTick);
+   }
+
+   private void recordCapture(int bufferSize)
+   {
+      if (pendingCapture != null)
+      {
+         int availableTicks = triggerPreTicks + 1 + postTriggerLength - remainingPostTicks;
+         int numberOfTicks = Math.min(ticksPerWrite, availableTicks - copiedTicks);
+
+         if (numberOfTicks > 0)
+         {
+            pendingCapture.capture.record(columns, (captureStartIndex + copiedTicks) % bufferSize, copiedTicks, numberOfTicks);
+            copiedTicks += numberOfTicks;
+         }
+      }
+
+      if (remainingPostTicks > 0)
+         return;
+
+      triggered = false;
+      armed = autoRearm;
+
+      if (pendingCapture != null)
+      {
+         deliveryExecutor.execute(pendingCapture);
+         pendingCapture = null;
+      }
+   }
+
+   private CaptureDelivery takeCapture()
+   {
+      CaptureDelivery capture = availableCaptures.poll();
+      if (capture != null)
+         return capture;
+
+      if (numberOfCaptures < NUMBER_OF_CAPTURES)
+      {
+         numberOfCaptures++;
+         return new CaptureDelivery(new YoBufferCapture(columns, preTriggerLength + 1 + postTriggerLength));
+      }
+
+      return null;
+   }
+
+   /**
+    * Arms the trigger such that the next rising edge of the condition starts a capture.
+    */
+   public void arm()
+   {
+      armed = true;
+   }
+
+   /**
+    * Disarms the trigger, a capture in progress is still completed.
+    */
+   public void disarm()
+   {
+      armed = false;
+   }
+
+   /**
+    * Whether the trigger is armed.
+    *
+    * @return {@code true} if the next rising edge of the condition starts a capture.
+    */
+   public boolean isArmed()
+   {
+      return armed;
+   }
+
+   /**
+    * Whether a capture is in progress, i.e. the trigger fired and the post-trigger ticks are being
+    * recorded.
+    *
+    * @return {@code true} if a capture is in progress.
+    */
+   public boolean isTriggered()
+   {
+      return triggered;
+   }
+
+   /**
+    * Sets whether the trigger is armed again after each capture, the default is {@code true}.
+    * Otherwise, the trigger operates in single-shot mode and has to be armed with {@link #arm()}.
+    *
+    * @param autoRearm whether to re-arm the trigger after each capture.
+    */
+   public void setAutoRearm(boolean autoRearm)
+   {
+      this.autoRearm = autoRearm;
+   }
+
+   /**
+    * Returns the number of captures that were dropped because the listener was still processing the
+    * previous ones.
+    *
+    * @return the number of dropped captures.
+    */
+   public long getNumberOfDroppedCaptures()
+   {
+      return numberOfDroppedCaptures;
+   }
+
+   /**
+    * Stops recording and waits for the pending captures to be handed off.
+    */
+   @Override
+   public void close()
+   {
+      if (closed)
+         return;
+
+      closed = true;
+      buffer.removeListener(this);
+      deliveryExecutor.shutdown();
+
+      try
+      {
+         deliveryExecutor.awaitTermination(1, TimeUnit.MINUTES);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+
+   /**
+    * Hands off a capture to the listener and makes it available again, allocated once per capture
+    * such that no memory is allocated when delivering.
+    */
+   private class CaptureDelivery implements Runnable
+   {
+      private final YoBufferCapture capture;
+
+      private CaptureDelivery(YoBufferCapture capture)
+      {
+         this.capture = capture;
+      }
+
+      @Override
+      public void run()
+      {
+         try
+         {
+            listener.captureCompleted(capture);
+         }
+         catch (RuntimeException e)
+         {
+            LogTools.error("The capture listener failed.", e);
+         }
+         finally
+         {
+            availableCaptures.offer(this);
+         }
+      }
+   }
+}
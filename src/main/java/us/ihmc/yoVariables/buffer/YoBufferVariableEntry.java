@@ -15,26 +15,68 @@
  */
 package us.ihmc.yoVariables.buffer;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import us.ihmc.euclid.tools.EuclidCoreTools;
 import us.ihmc.yoVariables.buffer.interfaces.YoBufferVariableEntryReader;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorage;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorageFactory;
 import us.ihmc.yoVariables.variable.YoVariable;
 
 /**
  * {@code YoBufferVariableEntry} manages the buffer to store history for a single
  * {@code YoVariable}.
+ * <p>
+ * The history is held in a {@link YoBufferStorage} that is specialized for the type of the
+ * variable, such that for instance the history of a {@code YoBoolean} only uses one bit per buffer
+ * index. The storage is created by a {@link YoBufferStorageFactory} which determines where the data
+ * lives, e.g. on the heap, off-heap, or in a memory-mapped file.
+ * </p>
+ * <p>
+ * The storage is only modified by the methods writing or reshaping the buffer, which are to be
+ * called from a single thread. The read methods do not modify the storage, such that they can be
+ * called from another thread, see {@link YoBufferConcurrentReader} for reading consistent windows
+ * while the buffer is being written.
+ * </p>
  */
 public class YoBufferVariableEntry implements YoBufferVariableEntryReader
 {
+   /** Number of values read at once from the storage when computing statistics. */
+   private static final int STATISTICS_CHUNK_SIZE = 1024;
+
    /** The variable this buffer is managing. */
    private final YoVariable variable;
+   /** The factory used to create {@link #bufferData}. */
+   private final YoBufferStorageFactory storageFactory;
    /** The buffer in which the history of the variable's values are stored. */
-   private double[] bufferData;
+   private YoBufferStorage bufferData;
+   /**
+    * Index used to speed up the computation of the bounds and envelopes, created on the first query
+    * and discarded when the buffer is reshaped.
+    */
+   private YoBufferBoundsIndex boundsIndex = null;
+   /** Whether {@link #prefixSums} should be maintained to compute windowed statistics in logarithmic time. */
+   private boolean prefixSumsEnabled = false;
+   /**
+    * Prefix sums used to speed up windowed statistics, created on the first query when enabled and
+    * discarded when the buffer is reshaped.
+    */
+   private YoBufferPrefixSums prefixSums = null;
+   /** Scratch array used to read values in bulk when computing statistics. */
+   private double[] statisticsChunk = null;
+   /** Statistics used to compute averages without generating garbage. */
+   private YoBufferStatistics averageStatistics = null;
    /** The latest computed bounds on the variable values. */
    private final YoBufferBounds currentBounds = new YoBufferBounds();
-   /** Flag for user convenience to keep track of when bounds have been modified. */
-   private boolean boundsChanged = true;
+   /**
+    * Flag for user convenience to keep track of when bounds have been modified.
+    * <p>
+    * Volatile as it is typically raised by the thread writing into the buffer and reset by a thread
+    * reading the buffer.
+    * </p>
+    */
+   private volatile boolean boundsChanged = true;
    /**
     * Internal used to indicate whether {@link #currentBounds} should be updated when the user calls
     * {@link #getBounds()}.
@@ -46,6 +88,27 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
    private final YoBufferBounds customBounds = new YoBufferBounds();
    /** Flag for user convenience. */
    private boolean inverted = false;
+   /**
+    * When change tracking is enabled, the buffer's tick counter which is used to determine how many
+    * ticks the last written value has to be carried forward.
+    */
+   private YoBufferTickCounter tickCounter = null;
+   /** When change tracking is enabled, the index at which the last value was written. */
+   private int lastWriteIndex = -1;
+   /** When change tracking is enabled, the value of the tick counter when the last value was written. */
+   private long lastWriteTick = 0;
+   /**
+    * When change tracking is enabled, the value of the tick counter when the values yet to be carried
+    * forward were last reported to the indices.
+    */
+   private long indexedTick = 0;
+   /** View of the storage used by the indices, see {@link #getResolvedStorage()}. */
+   private final YoBufferStorage resolvedStorage = new ResolvedStorage();
+   /**
+    * When the buffer has active variables, the index of the variable in the tracker used to skip the
+    * pending reads of the variables set since the last change of the current index.
+    */
+   private int pendingReadIndex = -1;
 
    /**
     * Creates a new buffer of the given size for the given variable.
@@ -54,8 +117,21 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
     * @param bufferSize the initial size of this buffer.
     */
    public YoBufferVariableEntry(YoVariable variable, int bufferSize)
+   {
+      this(variable, bufferSize, YoBufferStorageFactory.heap());
+   }
+
+   /**
+    * Creates a new buffer of the given size for the given variable.
+    * 
+    * @param variable       the variable this buffer is dedicated to.
+    * @param bufferSize     the initial size of this buffer.
+    * @param storageFactory the factory used to create the storage for this buffer.
+    */
+   public YoBufferVariableEntry(YoVariable variable, int bufferSize, YoBufferStorageFactory storageFactory)
    {
       this.variable = variable;
+      this.storageFactory = storageFactory;
       clearBuffer(bufferSize);
    }
 
@@ -67,20 +143,67 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
    public YoBufferVariableEntry(YoBufferVariableEntry other)
    {
       variable = other.getVariable();
-      bufferData = Arrays.copyOf(other.bufferData, other.getBufferSize());
+      storageFactory = other.storageFactory;
+      setBufferData(other.bufferData.duplicate());
+
+      if (other.tickCounter != null)
+      { // The values yet to be carried forward are resolved in the copy only.
+         int lastIndex = other.lastWriteIndex;
+         carryForward(bufferData, lastIndex, getPendingLength(other.tickCounter.tick - other.lastWriteTick, bufferData.getSize()));
+      }
+
       currentBounds.set(other.currentBounds);
       boundsChanged = other.boundsChanged;
       boundsDirty = other.boundsDirty;
       useCustomBounds = other.useCustomBounds;
       customBounds.set(other.customBounds);
       inverted = other.inverted;
+      prefixSumsEnabled = other.prefixSumsEnabled;
+   }
+
+   private void setBufferData(YoBufferStorage bufferData)
+   {
+      this.bufferData = bufferData;
+      discardIndices();
+   }
+
+   /**
+    * Discards the indices summarizing the buffer values, they are created again on the next query.
+    */
+   private void discardIndices()
+   {
+      boundsIndex = null;
+      prefixSums = null;
+   }
+
+   /**
+    * Reports to the indices summarizing the buffer values that the values in [{@code fromIndex},
+    * {@code toIndex}[ have been modified.
+    */
+   private void markDirty(int fromIndex, int toIndex)
+   {
+      if (fromIndex >= toIndex)
+         return;
+
+      if (boundsIndex != null)
+         boundsIndex.markDirty(fromIndex, toIndex);
+      if (prefixSums != null)
+         prefixSums.markDirty(fromIndex, toIndex);
    }
 
    protected void clearBuffer(int bufferSize)
    {
-      bufferData = new double[bufferSize];
+      if (bufferData != null)
+         bufferData.release();
+      setBufferData(storageFactory.newStorage(variable, bufferSize));
       currentBounds.clear();
       boundsDirty = true;
+
+      if (tickCounter != null)
+      { // The previous data is discarded, nothing left to carry forward.
+         lastWriteIndex = 0;
+         lastWriteTick = tickCounter.tick;
+      }
    }
 
    /** {@inheritDoc} */
@@ -101,19 +224,251 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
    @Override
    public int getBufferSize()
    {
-      return bufferData.length;
+      return bufferData.getSize();
    }
 
    /**
     * Writes the current variable value into the buffer at the given index.
+    * <p>
+    * This method is not synchronized, only one thread should be writing into a buffer. Other threads
+    * can read the buffer concurrently using a {@link YoBufferConcurrentReader}.
+    * </p>
     * 
     * @param index the index to write in the buffer.
     */
-   public synchronized void writeIntoBufferAt(int index)
+   public void writeIntoBufferAt(int index)
    {
+      carryForward();
       writeBufferAt(variable.getValueAsDouble(), index);
    }
 
+   /**
+    * Enables the change tracking mode in which values are only written when the variable has changed.
+    * <p>
+    * The value stored at {@code index} is considered to be the last written value.
+    * </p>
+    * 
+    * @param tickCounter the counter of the ticks written by the buffer.
+    * @param index       the index at which the last value was written.
+    */
+   void enableChangeTracking(YoBufferTickCounter tickCounter, int index)
+   {
+      this.tickCounter = tickCounter;
+      lastWriteIndex = Math.min(index, getBufferSize() - 1);
+      lastWriteTick = tickCounter.tick;
+   }
+
+   void setPendingReadIndex(int pendingReadIndex)
+   {
+      this.pendingReadIndex = pendingReadIndex;
+   }
+
+   int getPendingReadIndex()
+   {
+      return pendingReadIndex;
+   }
+
+   /**
+    * Disables the change tracking mode after carrying forward the last written value.
+    */
+   void disableChangeTracking()
+   {
+      carryForward();
+      tickCounter = null;
+   }
+
+   /**
+    * When change tracking is enabled, carries forward the last written value and then considers that
+    * the last value was written at the given index.
+    * <p>
+    * This is used when the buffer's current index moves for a reason other than writing a new tick.
+    * </p>
+    * 
+    * @param index the index to consider as the last write.
+    */
+   void resetLastWrite(int index)
+   {
+      if (tickCounter == null)
+         return;
+
+      carryForward();
+      lastWriteIndex = Math.min(index, getBufferSize() - 1);
+      lastWriteTick = tickCounter.tick;
+   }
+
+   /**
+    * Writes the current variable value into the buffer at the given index, after carrying forward the
+    * last written value over the ticks during which the variable did not change.
+    * <p>
+    * This is used in the change tracking mode and expects the buffer's tick counter to have been
+    * incremented, such that {@code index} corresponds to the current tick.
+    * </p>
+    * 
+    * @param index the index to write in the buffer.
+    */
+   void writeChangedValueAt(int index)
+   {
+      carryForward(tickCounter.tick - 1);
+      writeBufferAt(variable.getValueAsDouble(), index);
+      lastWriteIndex = index;
+      lastWriteTick = tickCounter.tick;
+   }
+
+   /**
+    * When change tracking is enabled, fills the buffer with the last written value over the ticks
+    * during which the variable did not change.
+    */
+   private void carryForward()
+   {
+      if (tickCounter != null)
+         carryForward(tickCounter.tick);
+   }
+
+   private void carryForward(long untilTick)
+   {
+      long numberOfTicks = untilTick - lastWriteTick;
+      if (numberOfTicks <= 0)
+         return;
+
+      int size = getBufferSize();
+      int length = getPendingLength(numberOfTicks, size);
+      int fromIndex = lastWriteIndex + 1;
+      int firstLength = Math.min(length, size - fromIndex);
+
+      carryForward(bufferData, lastWriteIndex, length);
+      markDirty(fromIndex, fromIndex + firstLength);
+      markDirty(0, length - firstLength);
+
+      lastWriteIndex = (int) ((lastWriteIndex + numberOfTicks) % size);
+      lastWriteTick = untilTick;
+   }
+
+   /**
+    * Copies the value at {@code lastWriteIndex} over the {@code length} following indices, wrapping
+    * around the end of the storage.
+    */
+   private static void carryForward(YoBufferStorage storage, int lastWriteIndex, int length)
+   {
+      int fromIndex = lastWriteIndex + 1;
+      int firstLength = Math.min(length, storage.getSize() - fromIndex);
+
+      storage.fillWithValueAt(lastWriteIndex, fromIndex, fromIndex + firstLength);
+      storage.fillWithValueAt(lastWriteIndex, 0, length - firstLength);
+   }
+
+   /**
+    * Returns the number of values following the last written value that have yet to be carried
+    * forward.
+    *
+    * @param numberOfTicks the number of ticks since the last value was written.
+    * @param size          the buffer size.
+    * @return the number of values to carry forward, in [0, {@code size - 1}].
+    */
+   static int getPendingLength(long numberOfTicks, int size)
+   {
+      return numberOfTicks <= 0 ? 0 : (int) Math.min(numberOfTicks, size - 1);
+   }
+
+   /**
+    * When change tracking is enabled, returns the index at which the value recorded at the given index
+    * is actually stored, i.e. the index of the last written value when the value has yet to be carried
+    * forward.
+    */
+   private int resolveIndex(int index)
+   {
+      YoBufferTickCounter counter = tickCounter;
+      if (counter == null)
+         return index;
+
+      int lastIndex = lastWriteIndex;
+      int size = bufferData.getSize();
+      if (index < 0 || index >= size)
+         return index;
+
+      int pendingLength = getPendingLength(counter.tick - lastWriteTick, size);
+      int distance = Math.floorMod(index - lastIndex, size);
+      return distance > 0 && distance <= pendingLength ? lastIndex : index;
+   }
+
+   /**
+    * When change tracking is enabled, overwrites the values of a window read from the storage that
+    * have yet to be carried forward with the last written value.
+    */
+   private void resolvePending(int startIndex, int length, double[] windowToPack, int offset)
+   {
+      YoBufferTickCounter counter = tickCounter;
+      if (counter == null)
+         return;
+
+      int lastIndex = lastWriteIndex;
+      int size = bufferData.getSize();
+      int pendingLength = getPendingLength(counter.tick - lastWriteTick, size);
+      if (pendingLength > 0)
+         resolvePending(bufferData.read(lastIndex), lastIndex, pendingLength, size, startIndex, length, windowToPack, offset);
+   }
+
+   /**
+    * Overwrites the values of a window that have yet to be carried forward with the last written
+    * value.
+    *
+    * @param value          the last written value.
+    * @param lastWriteIndex the buffer index of the last written value.
+    * @param pendingLength  the number of values following {@code lastWriteIndex} that have yet to be
+    *                       carried forward, see {@link #getPendingLength(long, int)}.
+    * @param size           the buffer size.
+    * @param startIndex     the buffer index of the first value of the window.
+    * @param length         the number of values in the window.
+    * @param windowToPack   the array holding the window. Modified.
+    * @param offset         the index in {@code windowToPack} of the first value.
+    */
+   static void resolvePending(double value,
+                              int lastWriteIndex,
+                              int pendingLength,
+                              int size,
+                              int startIndex,
+                              int length,
+                              double[] windowToPack,
+                              int offset)
+   {
+      // Position of the first value to carry forward relative to the start of the window.
+      int pendingStart = Math.floorMod(lastWriteIndex + 1 - startIndex, size);
+      int firstEnd = Math.min(Math.min(pendingStart + pendingLength, size), length);
+      int secondEnd = Math.min(pendingStart + pendingLength - size, length);
+
+      if (pendingStart < firstEnd)
+         Arrays.fill(windowToPack, offset + pendingStart, offset + firstEnd, value);
+      if (secondEnd > 0)
+         Arrays.fill(windowToPack, offset, offset + secondEnd, value);
+   }
+
+   /**
+    * When change tracking is enabled, reports to the indices the values that have become pending since
+    * the last query, such that they are summarized with the last written value.
+    */
+   private void markPendingDirty()
+   {
+      YoBufferTickCounter counter = tickCounter;
+      if (counter == null)
+         return;
+
+      long tick = counter.tick;
+      long lastTick = lastWriteTick;
+      int lastIndex = lastWriteIndex;
+      int size = bufferData.getSize();
+      // The values carried forward over the ticks in ]lastTick, indexedTick] were already reported.
+      int from = getPendingLength(indexedTick - lastTick, size);
+      int to = getPendingLength(tick - lastTick, size);
+      indexedTick = tick;
+
+      if (from >= to)
+         return;
+
+      int fromIndex = (lastIndex + 1 + from) % size;
+      int firstLength = Math.min(to - from, size - fromIndex);
+      markDirty(fromIndex, fromIndex + firstLength);
+      markDirty(0, to - from - firstLength);
+   }
+
    /**
     * Writes the given value into this buffer at the given index.
     * 
@@ -122,12 +477,15 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
     */
    public void writeBufferAt(double value, int index)
    {
-      if (bufferData[index] == value)
+      if (!bufferData.write(index, value))
          return;
 
-      bufferData[index] = value;
+      if (boundsIndex != null)
+         boundsIndex.markDirty(index);
+      if (prefixSums != null)
+         prefixSums.markDirty(index, index + 1);
 
-      if (currentBounds.update(value))
+      if (currentBounds.update(bufferData.read(index)))
          boundsChanged = true;
    }
 
@@ -138,21 +496,21 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
     */
    protected void readFromBufferAt(int index)
    {
-      variable.setValueFromDouble(bufferData[index]);
+      variable.setValueFromDouble(readBufferAt(index));
    }
 
    /** {@inheritDoc} */
    @Override
    public double readBufferAt(int index)
    {
-      return bufferData[index];
+      return bufferData.read(resolveIndex(index));
    }
 
    /** {@inheritDoc} */
    @Override
    public double[] getBuffer()
    {
-      return getBufferWindow(0, bufferData.length);
+      return getBufferWindow(0, bufferData.getSize());
    }
 
    /** {@inheritDoc} */
@@ -160,17 +518,63 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
    public double[] getBufferWindow(int startIndex, int length)
    {
       double[] sample = new double[length];
-      int n = startIndex;
+      getBufferWindow(startIndex, length, sample, 0);
+      return sample;
+   }
 
-      for (int i = 0; i < length; i++)
-      {
-         sample[i] = bufferData[n];
-         n++;
-         if (n >= bufferData.length)
-            n = 0;
-      }
+   /**
+    * {@inheritDoc}
+    * <p>
+    * The values are copied in at most two bulk reads from the underlying storage, which for a
+    * {@code double} storage are two {@link System#arraycopy(Object, int, Object, int, int)}.
+    * </p>
+    */
+   @Override
+   public void getBufferWindow(int startIndex, int length, double[] windowToPack, int offset)
+   {
+      if (startIndex < 0 || startIndex >= bufferData.getSize())
+         throw new IndexOutOfBoundsException("startIndex should be in [0, " + bufferData.getSize() + "[, but was: " + startIndex);
+      if (length < 0 || length > bufferData.getSize())
+         throw new IndexOutOfBoundsException("length should be in [0, " + bufferData.getSize() + "], but was: " + length);
+      if (offset < 0 || offset + length > windowToPack.length)
+         throw new IndexOutOfBoundsException("The window [" + offset + ", " + (offset + length) + "[ does not fit in an array of length "
+               + windowToPack.length);
+
+      int firstLength = Math.min(length, bufferData.getSize() - startIndex);
+
+      bufferData.read(startIndex, firstLength, windowToPack, offset);
+      if (firstLength < length)
+         bufferData.read(0, length - firstLength, windowToPack, offset + firstLength);
+      resolvePending(startIndex, length, windowToPack, offset);
+   }
 
-      return sample;
+   /**
+    * Writes a sample into this buffer.
+    * <p>
+    * The sample wraps around the end of the buffer when {@code startIndex + length} exceeds the buffer
+    * size.
+    * </p>
+    *
+    * @param startIndex the buffer index where the first value is written.
+    * @param length     the sample length.
+    * @param window     the array holding the sample. Not modified.
+    * @param offset     the index in {@code window} of the first value.
+    */
+   public void setBufferWindow(int startIndex, int length, double[] window, int offset)
+   {
+      if (startIndex < 0 || startIndex >= bufferData.getSize())
+         throw new IndexOutOfBoundsException("startIndex should be in [0, " + bufferData.getSize() + "[, but was: " + startIndex);
+      if (length < 0 || length > bufferData.getSize())
+         throw new IndexOutOfBoundsException("length should be in [0, " + bufferData.getSize() + "], but was: " + length);
+      if (offset < 0 || offset + length > window.length)
+         throw new IndexOutOfBoundsException("The window [" + offset + ", " + (offset + length) + "[ does not fit in an array of length "
+               + window.length);
+
+      carryForward();
+      int bufferSize = bufferData.getSize();
+
+      for (int i = 0; i < length; i++)
+         writeBufferAt(window[offset + i], (startIndex + i) % bufferSize);
    }
 
    /** {@inheritDoc} */
@@ -187,6 +591,153 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
       return !useCustomBounds;
    }
 
+   YoBufferStorage getBufferStorage()
+   {
+      return bufferData;
+   }
+
+   /**
+    * Returns a read-only view of the storage in which the values that have yet to be carried forward
+    * in change tracking mode are resolved, such that it reads the values as recorded.
+    *
+    * @return the resolved view of the storage.
+    */
+   YoBufferStorage getResolvedStorage()
+   {
+      return resolvedStorage;
+   }
+
+   boolean isChangeTracked()
+   {
+      return tickCounter != null;
+   }
+
+   int getLastWriteIndex()
+   {
+      return lastWriteIndex;
+   }
+
+   long getLastWriteTick()
+   {
+      return lastWriteTick;
+   }
+
+   /**
+    * Encodes the values of a window of this buffer, see
+    * {@link YoBufferStorage#exportValues(int, int, ByteBuffer)}.
+    *
+    * @param startIndex  the buffer index of the first value, the window wraps around the end of the
+    *                    buffer if needed.
+    * @param length      the number of values.
+    * @param destination the buffer in which the values are encoded. Modified.
+    */
+   void exportBufferWindow(int startIndex, int length, ByteBuffer destination)
+   {
+      YoBufferTickCounter counter = tickCounter;
+      int size = bufferData.getSize();
+      int lastIndex = lastWriteIndex;
+      int pendingLength = counter == null ? 0 : getPendingLength(counter.tick - lastWriteTick, size);
+      // Positions of the values to carry forward relative to the start of the window.
+      int pendingStart = Math.floorMod(lastIndex + 1 - startIndex, size);
+      int firstEnd = Math.min(Math.min(pendingStart + pendingLength, size), length);
+      int secondEnd = Math.min(pendingStart + pendingLength - size, length);
+
+      if (pendingStart >= firstEnd && secondEnd <= 0)
+      {
+         bufferData.exportValues(startIndex, length, destination);
+         return;
+      }
+
+      // The values to carry forward are resolved in a copy of the window, the storage is left untouched.
+      YoBufferStorage window = bufferData.newStorage(length);
+      int firstLength = Math.min(length, size - startIndex);
+      window.copy(bufferData, startIndex, 0, firstLength);
+      window.copy(bufferData, 0, firstLength, length - firstLength);
+
+      boolean hasFirstRange = pendingStart < firstEnd;
+      int valueIndex = hasFirstRange ? pendingStart : 0;
+      window.copy(bufferData, lastIndex, valueIndex, 1);
+      if (hasFirstRange)
+         window.fillWithValueAt(valueIndex, valueIndex + 1, firstEnd);
+      if (secondEnd > 0)
+         window.fillWithValueAt(valueIndex, hasFirstRange ? 0 : 1, secondEnd);
+      window.exportValues(0, length, destination);
+      window.release();
+   }
+
+   /**
+    * Copies the values of a window of this buffer into the given storage, resolving the values that
+    * are carried forward without modifying this buffer and without allocating memory.
+    *
+    * @param startIndex       the buffer index of the first value, the window wraps around the end of
+    *                         the buffer if needed.
+    * @param length           the number of values.
+    * @param destination      the storage to copy the values to, created with
+    *                         {@link YoBufferStorage#newStorage(int)} from the storage of this buffer.
+    *                         Modified.
+    * @param destinationIndex the index in {@code destination} of the first value.
+    */
+   void copyBufferWindow(int startIndex, int length, YoBufferStorage destination, int destinationIndex)
+   {
+      YoBufferTickCounter counter = tickCounter;
+      int size = bufferData.getSize();
+      int lastIndex = lastWriteIndex;
+      int pendingLength = counter == null ? 0 : getPendingLength(counter.tick - lastWriteTick, size);
+
+      int firstLength = Math.min(length, size - startIndex);
+      destination.copy(bufferData, startIndex, destinationIndex, firstLength);
+      if (length > firstLength)
+         destination.copy(bufferData, 0, destinationIndex + firstLength, length - firstLength);
+
+      if (pendingLength == 0)
+         return;
+
+      // Positions of the values to carry forward relative to the start of the window.
+      int pendingStart = Math.floorMod(lastIndex + 1 - startIndex, size);
+      int firstEnd = Math.min(Math.min(pendingStart + pendingLength, size), length);
+      int secondEnd = Math.min(pendingStart + pendingLength - size, length);
+
+      if (pendingStart < firstEnd)
+      {
+         destination.copy(bufferData, lastIndex, destinationIndex + pendingStart, 1);
+         destination.fillWithValueAt(destinationIndex + pendingStart, destinationIndex + pendingStart + 1, destinationIndex + firstEnd);
+      }
+      if (secondEnd > 0)
+      {
+         destination.copy(bufferData, lastIndex, destinationIndex, 1);
+         destination.fillWithValueAt(destinationIndex, destinationIndex + 1, destinationIndex + secondEnd);
+      }
+   }
+
+   /**
+    * Decodes values into a window of this buffer, see
+    * {@link YoBufferStorage#importValues(ByteBuffer, int, int, int)}.
+    *
+    * @param source      the buffer holding the encoded values. Not modified.
+    * @param sourceIndex the index in the encoded series of the first value.
+    * @param startIndex  the buffer index of the first value, the window wraps around the end of the
+    *                    buffer if needed.
+    * @param length      the number of values.
+    */
+   void importBufferWindow(ByteBuffer source, int sourceIndex, int startIndex, int length)
+   {
+      carryForward();
+      bufferData.importValues(source, sourceIndex, startIndex, length);
+      discardIndices();
+      boundsDirty = true;
+      boundsChanged = true;
+   }
+
+   /**
+    * Returns the factory used to create the storage of this buffer.
+    *
+    * @return the storage factory.
+    */
+   public YoBufferStorageFactory getStorageFactory()
+   {
+      return storageFactory;
+   }
+
    /** {@inheritDoc} */
    @Override
    public YoVariable getVariable()
@@ -196,117 +747,158 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
 
    protected void fillBuffer()
    {
-      double value = variable.getValueAsDouble();
-      for (int i = 0; i < bufferData.length; i++)
-         bufferData[i] = value;
+      carryForward();
+      bufferData.fill(0, bufferData.getSize(), variable.getValueAsDouble());
       currentBounds.clear();
+      discardIndices();
    }
 
    protected void enlargeBufferSize(int newSize)
    {
-      double[] oldData = bufferData;
-      int oldNPoints = oldData.length;
-
-      bufferData = new double[newSize];
+      carryForward();
+      int oldNPoints = bufferData.getSize();
 
-      for (int i = 0; i < oldNPoints; i++)
-      {
-         bufferData[i] = oldData[i];
-      }
-
-      for (int i = oldNPoints; i < bufferData.length; i++)
-      {
-         bufferData[i] = oldData[oldNPoints - 1];
-      }
+      resizeBufferData(newSize);
+      bufferData.fillWithValueAt(oldNPoints - 1, oldNPoints, newSize);
 
       boundsDirty = true;
    }
 
    protected int cropBuffer(int start, int end)
    {
+      carryForward();
+
       // If the endpoints are unreasonable indicate failure
-      if (start < 0 || end > bufferData.length)
+      if (start < 0 || end > bufferData.getSize())
          return -1;
 
-      // Create a temporary variable to hold the old data
-      double[] oldData = bufferData;
-      int oldNPoints = oldData.length;
+      int oldNPoints = bufferData.getSize();
 
       // Calculate the total number of points after the crop
       int nPoints = computeBufferSizeAfterCrop(start, end, oldNPoints);
 
-      bufferData = new double[nPoints];
-
-      // Transfer the data into the new array beginning with start.
-      for (int i = 0; i < bufferData.length; i++)
-      {
-         bufferData[i] = oldData[(i + start) % oldNPoints];
-      }
+      // Move the data to the beginning of the storage, wrapping around if needed.
+      if (start + nPoints <= oldNPoints)
+         bufferData.copy(bufferData, start, 0, nPoints);
+      else
+         bufferData.rotate(start);
+      resizeBufferData(nPoints);
 
       boundsDirty = true;
 
       // Indicate the data length
-      return bufferData.length;
+      return nPoints;
    }
 
    protected int cutBuffer(int start, int end)
    {
+      carryForward();
+
       if (start > end)
          return -1;
 
       // If the endpoints are unreasonable indicate failure
-      if (start < 0 || end > bufferData.length)
+      if (start < 0 || end > bufferData.getSize())
          return -1;
 
-      // Create a temporary variable to hold the old data
-      double[] oldData = bufferData;
-      int oldNPoints = oldData.length;
+      int oldNPoints = bufferData.getSize();
 
       // Calculate the total number of points after the cut
       int nPoints = computeBufferSizeAfterCut(start, end, oldNPoints);
 
       // If the result is 0 the size will remain the same
       if (nPoints == 0)
-         nPoints = oldNPoints;
-      bufferData = new double[nPoints];
-
-      // Transfer the data into the new array beginning with start.
-      int difference = end - start + 1;
-      for (int i = 0; i < start; i++)
       {
-         bufferData[i] = oldData[i];
+         bufferData.fill(0, oldNPoints, 0.0);
+         discardIndices();
+         boundsDirty = true;
+         return oldNPoints;
       }
 
-      for (int i = end + 1; i < oldData.length; i++)
-      {
-         bufferData[i - difference] = oldData[i];
-      }
+      // Move the data after end right after the data before start.
+      if (end + 1 < oldNPoints)
+         bufferData.copy(bufferData, end + 1, start, oldNPoints - end - 1);
+      resizeBufferData(nPoints);
 
       boundsDirty = true;
 
       // Indicate the data length
-      return bufferData.length;
+      return nPoints;
    }
 
    protected int thinData(int keepEveryNthPoint)
    {
-      double[] oldData = bufferData;
-      int oldNPoints = oldData.length;
+      return thinData(keepEveryNthPoint, YoBufferThinningMode.EVERY_NTH);
+   }
 
-      int newNumberOfPoints = oldNPoints / keepEveryNthPoint;
-      bufferData = new double[newNumberOfPoints];
+   protected int thinData(int n, YoBufferThinningMode mode)
+   {
+      carryForward();
+      return thinData(n, mode, mode.selectTicks(bufferData, n));
+   }
 
-      int oldDataIndex = 0;
-      for (int index = 0; index < newNumberOfPoints; index++)
-      {
-         bufferData[index] = oldData[oldDataIndex];
+   /**
+    * Thins this entry by a factor {@code n}, keeping the given ticks.
+    *
+    * @param n     the thinning factor.
+    * @param mode  the strategy used to thin the data.
+    * @param ticks the ticks to keep as selected by the mode from the reference entry, or {@code null}
+    *              to keep every {@code n}<sup>th</sup> tick.
+    * @return the number of values after thinning.
+    */
+   int thinData(int n, YoBufferThinningMode mode, int[] ticks)
+   {
+      carryForward();
 
-         oldDataIndex = oldDataIndex + keepEveryNthPoint;
-      }
+      int newNumberOfPoints = mode.thin(bufferData, n, variable.getType(), ticks);
+      resizeBufferData(newNumberOfPoints);
+      boundsDirty = true;
 
       return newNumberOfPoints;
    }
 
+   /**
+    * Resizes the storage, reusing it when it supports the new size and reallocating it otherwise.
+    *
+    * @param newSize the new number of values, the values in [{@code 0}, {@code newSize}[ are preserved
+    *                when shrinking.
+    */
+   private void resizeBufferData(int newSize)
+   {
+      if (bufferData.resize(newSize))
+      {
+         discardIndices();
+      }
+      else
+      {
+         YoBufferStorage oldData = bufferData;
+         setBufferData(oldData.newStorage(newSize));
+         bufferData.copy(oldData, 0, 0, Math.min(oldData.getSize(), newSize));
+         oldData.release();
+      }
+   }
+
+   /**
+    * Releases the memory kept by the storage beyond the buffer size, e.g. after cropping the buffer.
+    */
+   protected void trimBufferData()
+   {
+      int size = bufferData.getSize();
+
+      if (bufferData.getCapacity() == size)
+         return;
+
+      YoBufferStorage newData = bufferData.newStorage(size);
+
+      // Storages may pad their capacity, in which case there is nothing to release.
+      if (newData.getCapacity() < bufferData.getCapacity())
+      {
+         newData.copy(bufferData, 0, 0, size);
+         bufferData.release();
+         setBufferData(newData);
+      }
+   }
+
    protected static int computeBufferSizeAfterCrop(int start, int end, int previousBufferSize)
    {
       int newBufferSize = (end - start + 1 + previousBufferSize) % previousBufferSize;
@@ -323,47 +915,43 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
 
    protected void shiftBuffer(int shiftIndex)
    {
+      carryForward();
+
       // If the start point is outside of the data set abort
-      if (shiftIndex <= 0 || shiftIndex >= bufferData.length)
+      if (shiftIndex <= 0 || shiftIndex >= bufferData.getSize())
          return;
 
-      // Create a temporary array to carry out the shift
-      double[] oldData = bufferData;
-      int nPoints = bufferData.length;
-      bufferData = new double[nPoints];
-
-      // Repopulate the array using the new order
-      for (int i = 0; i < nPoints; i++)
-      {
-         bufferData[i] = oldData[(i + shiftIndex) % nPoints];
-      }
+      bufferData.rotate(shiftIndex);
+      discardIndices();
 
       boundsDirty = true;
    }
 
    /** {@inheritDoc} */
    @Override
-   public synchronized void resetBoundsChangedFlag()
+   public void resetBoundsChangedFlag()
    {
       boundsChanged = false;
    }
 
    /** {@inheritDoc} */
    @Override
-   public synchronized boolean haveBoundsChanged()
+   public boolean haveBoundsChanged()
    {
       return boundsChanged;
    }
 
-   private synchronized boolean updateBounds()
+   private boolean updateBounds()
    {
       boundsChanged = false;
 
       if (bufferData == null)
          return false;
 
+      markPendingDirty();
+
       currentBounds.setInterval(0, getBufferSize() - 1);
-      boundsChanged = currentBounds.compute(bufferData);
+      boundsChanged = getBoundsIndex().compute(currentBounds);
 
       return boundsChanged;
    }
@@ -399,35 +987,226 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
 
    /**
     * Calculates and returns the value average of the variable over a portion of the buffer.
+    * <p>
+    * {@code NaN}s are ignored. The average is computed in logarithmic time when the prefix sums are
+    * enabled, see {@link #setPrefixSumsEnabled(boolean)}.
+    * </p>
     * 
     * @param start  the first buffer index to include in the calculation of the average. Should be in
     *               [0, {@code this.getBufferSize()}[.
     * @param length the number of elements to include in the calculation of the average. Should be in
-    *               ]0, {@code this.getBufferSize()}].
+    *               ]0, {@code this.getBufferSize()}]. The portion wraps around the end of the buffer
+    *               if needed.
     * @return the average value.
     */
    public double computeAverage(int start, int length)
    {
-      if (start < 0 || start >= getBufferSize())
-         throw new IndexOutOfBoundsException("start should be in [0, " + getBufferSize() + "[, but was: " + length);
-      if (length <= 0 || length > getBufferSize())
-         throw new IndexOutOfBoundsException("length should be in ]0, " + getBufferSize() + "], but was: " + length);
+      if (averageStatistics == null)
+         averageStatistics = new YoBufferStatistics();
+      computeMeanAndVariance(start, length, averageStatistics);
+      return averageStatistics.getMean();
+   }
 
-      double total = 0.0;
-      int count = 0;
-      int index = 0;
+   /**
+    * Enables the maintenance of prefix sums over this buffer such that
+    * {@link #computeMeanAndVariance(int, int, YoBufferStatistics)} and
+    * {@link #computeAverage(int, int)} run in logarithmic time.
+    * <p>
+    * The prefix sums use about half a byte per buffer index. They are built on the first query and
+    * then updated lazily, their maintenance cost is constant per written value.
+    * </p>
+    *
+    * @param enable whether the prefix sums should be maintained.
+    */
+   public void setPrefixSumsEnabled(boolean enable)
+   {
+      prefixSumsEnabled = enable;
+      if (!enable)
+         prefixSums = null;
+   }
 
-      while (count < length)
+   /**
+    * Whether prefix sums are maintained over this buffer.
+    *
+    * @return {@code true} if the prefix sums are enabled.
+    * @see #setPrefixSumsEnabled(boolean)
+    */
+   public boolean arePrefixSumsEnabled()
+   {
+      return prefixSumsEnabled;
+   }
+
+   /**
+    * Computes the count, mean, variance, minimum, and maximum of the values over a portion of the
+    * buffer in a single pass.
+    * <p>
+    * The values are read in bulk from the storage and accumulated without any per-value index
+    * wrapping. {@code NaN}s are ignored, see {@link YoBufferStatistics}.
+    * </p>
+    *
+    * @param start            the first buffer index to include in the statistics. Should be in [0,
+    *                         {@code this.getBufferSize()}[.
+    * @param length           the number of values to include in the statistics. Should be in ]0,
+    *                         {@code this.getBufferSize()}]. The portion wraps around the end of the
+    *                         buffer if needed.
+    * @param statisticsToPack the statistics in which the result is stored. Modified.
+    */
+   public void computeStatistics(int start, int length, YoBufferStatistics statisticsToPack)
+   {
+      checkStatisticsWindow(start, length);
+
+      if (statisticsChunk == null)
+         statisticsChunk = new double[STATISTICS_CHUNK_SIZE];
+
+      int size = bufferData.getSize();
+      double offset = 0.0;
+      double sum = 0.0;
+      double sumOfSquares = 0.0;
+      int nanCount = 0;
+      double minimum = Double.POSITIVE_INFINITY;
+      double maximum = Double.NEGATIVE_INFINITY;
+      int minimumIndex = -1;
+      int maximumIndex = -1;
+
+      int index = start;
+      int remaining = length;
+
+      while (remaining > 0)
       {
-         total += bufferData[index];
+         int chunkLength = Math.min(Math.min(remaining, STATISTICS_CHUNK_SIZE), size - index);
+         bufferData.read(index, chunkLength, statisticsChunk, 0);
+         resolvePending(index, chunkLength, statisticsChunk, 0);
+
+         // The values are accumulated relative to the first value to limit the loss of precision.
+         if (index == start && Double.isFinite(statisticsChunk[0]))
+            offset = statisticsChunk[0];
 
-         count++;
-         index++;
-         if (index >= getBufferSize())
+         for (int i = 0; i < chunkLength; i++)
+         {
+            double value = statisticsChunk[i];
+
+            if (Double.isNaN(value))
+            {
+               nanCount++;
+               continue;
+            }
+
+            double delta = value - offset;
+            sum += delta;
+            sumOfSquares += delta * delta;
+
+            if (value < minimum)
+            {
+               minimum = value;
+               minimumIndex = index + i;
+            }
+            if (value > maximum)
+            {
+               maximum = value;
+               maximumIndex = index + i;
+            }
+         }
+
+         remaining -= chunkLength;
+         index += chunkLength;
+         if (index == size)
             index = 0;
       }
 
-      return total / length;
+      int count = length - nanCount;
+      double mean = sum / count;
+      double variance = Math.max(0.0, sumOfSquares / count - mean * mean);
+      statisticsToPack.set(length, nanCount, mean + offset, variance, minimum, minimumIndex, maximum, maximumIndex);
+   }
+
+   /**
+    * Computes the count, mean, and variance of the values over a portion of the buffer.
+    * <p>
+    * When the prefix sums are enabled, see {@link #setPrefixSumsEnabled(boolean)}, the statistics are
+    * obtained in logarithmic time and the minimum and maximum are not computed. Otherwise, this is
+    * equivalent to {@link #computeStatistics(int, int, YoBufferStatistics)}.
+    * </p>
+    *
+    * @param start            the first buffer index to include in the statistics. Should be in [0,
+    *                         {@code this.getBufferSize()}[.
+    * @param length           the number of values to include in the statistics. Should be in ]0,
+    *                         {@code this.getBufferSize()}]. The portion wraps around the end of the
+    *                         buffer if needed.
+    * @param statisticsToPack the statistics in which the result is stored. Modified.
+    */
+   public void computeMeanAndVariance(int start, int length, YoBufferStatistics statisticsToPack)
+   {
+      if (!prefixSumsEnabled)
+      {
+         computeStatistics(start, length, statisticsToPack);
+         return;
+      }
+
+      checkStatisticsWindow(start, length);
+      markPendingDirty();
+
+      if (prefixSums == null)
+         prefixSums = new YoBufferPrefixSums(resolvedStorage);
+      prefixSums.compute(start, length, statisticsToPack);
+   }
+
+   /**
+    * Computes percentiles of the values over a portion of the buffer.
+    * <p>
+    * {@code NaN}s are ignored. The percentiles are interpolated linearly between the closest ranks.
+    * </p>
+    *
+    * @param start        the first buffer index to include. Should be in [0,
+    *                     {@code this.getBufferSize()}[.
+    * @param length       the number of values to include. Should be in ]0,
+    *                     {@code this.getBufferSize()}]. The portion wraps around the end of the buffer
+    *                     if needed.
+    * @param percentiles  the percentiles to compute, each in [0, 100]. Not modified.
+    * @param valuesToPack the array in which the value of each percentile is stored, or {@code NaN} if
+    *                     the portion only contains {@code NaN}s. Modified.
+    */
+   public void computePercentiles(int start, int length, double[] percentiles, double[] valuesToPack)
+   {
+      checkStatisticsWindow(start, length);
+      if (valuesToPack.length < percentiles.length)
+         throw new IllegalArgumentException("valuesToPack is too small: " + valuesToPack.length + ", expected: " + percentiles.length);
+
+      double[] sortedValues = getBufferWindow(start, length);
+      int count = 0;
+
+      for (int i = 0; i < length; i++)
+      {
+         if (!Double.isNaN(sortedValues[i]))
+            sortedValues[count++] = sortedValues[i];
+      }
+
+      Arrays.sort(sortedValues, 0, count);
+
+      for (int i = 0; i < percentiles.length; i++)
+      {
+         double percentile = percentiles[i];
+         if (percentile < 0.0 || percentile > 100.0)
+            throw new IllegalArgumentException("percentile should be in [0, 100], but was: " + percentile);
+
+         if (count == 0)
+         {
+            valuesToPack[i] = Double.NaN;
+            continue;
+         }
+
+         double rank = percentile / 100.0 * (count - 1);
+         int lowerRank = (int) rank;
+         int upperRank = Math.min(lowerRank + 1, count - 1);
+         valuesToPack[i] = EuclidCoreTools.interpolate(sortedValues[lowerRank], sortedValues[upperRank], rank - lowerRank);
+      }
+   }
+
+   private void checkStatisticsWindow(int start, int length)
+   {
+      if (start < 0 || start >= getBufferSize())
+         throw new IndexOutOfBoundsException("start should be in [0, " + getBufferSize() + "[, but was: " + start);
+      if (length <= 0 || length > getBufferSize())
+         throw new IndexOutOfBoundsException("length should be in ]0, " + getBufferSize() + "], but was: " + length);
    }
 
    /** {@inheritDoc} */
@@ -436,16 +1215,56 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
    {
       if (bufferData != null)
       {
-         if (boundsDirty || startIndex != currentBounds.getStartIndex() || endIndex != currentBounds.getEndIndex())
+         markPendingDirty();
+
+         YoBufferBoundsIndex index = getBoundsIndex();
+
+         if (boundsDirty || index.hasDirtyBlocks() || startIndex != currentBounds.getStartIndex() || endIndex != currentBounds.getEndIndex())
          {
             currentBounds.setInterval(startIndex, endIndex);
-            boundsChanged = currentBounds.compute(bufferData);
+            boundsChanged = index.compute(currentBounds);
             boundsDirty = false;
          }
       }
       return currentBounds;
    }
 
+   /**
+    * {@inheritDoc}
+    * <p>
+    * The envelope is computed from a multi-resolution index of the buffer values which is built on
+    * the first call and then maintained as values are written. The computation is proportional to
+    * the number of pixels and logarithmic in the window length.
+    * </p>
+    */
+   @Override
+   public void computeEnvelope(int startIndex, int endIndex, int numberOfPixels, YoBufferEnvelope envelopeToPack)
+   {
+      markPendingDirty();
+      getBoundsIndex().computeEnvelope(startIndex, endIndex, numberOfPixels, envelopeToPack);
+   }
+
+   private YoBufferBoundsIndex getBoundsIndex()
+   {
+      if (boundsIndex == null)
+         boundsIndex = new YoBufferBoundsIndex(resolvedStorage);
+      return boundsIndex;
+   }
+
+   /**
+    * Returns the up-to-date index of the bounds of each block of this buffer, which can be used as a
+    * zone map to skip blocks when searching for values.
+    *
+    * @return the bounds index.
+    */
+   YoBufferBoundsIndex getUpdatedBoundsIndex()
+   {
+      markPendingDirty();
+      YoBufferBoundsIndex index = getBoundsIndex();
+      index.update();
+      return index;
+   }
+
    /**
     * Tests whether this buffer and {@code other} are equal to an {@code epsilon}.
     * <p>
@@ -470,8 +1289,8 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
 
       for (int i = 0; i < getBufferSize(); i++)
       {
-         double thisDataPoint = bufferData[i];
-         double otherDataPoint = other.bufferData[i];
+         double thisDataPoint = readBufferAt(i);
+         double otherDataPoint = other.readBufferAt(i);
 
          if (Double.compare(thisDataPoint, otherDataPoint) != 0 && !EuclidCoreTools.epsilonEquals(thisDataPoint, otherDataPoint, epsilon))
          {
@@ -487,4 +1306,77 @@ public class YoBufferVariableEntry implements YoBufferVariableEntryReader
    {
       return "variable: " + variable.getName() + ", buffer size: " + getBufferSize();
    }
+
+   /**
+    * Read-only view of {@link #bufferData} in which the values that have yet to be carried forward
+    * are resolved, such that the indices summarize the values as recorded without modifying the
+    * storage.
+    */
+   private class ResolvedStorage extends YoBufferStorage
+   {
+      @Override
+      public int getSize()
+      {
+         return bufferData.getSize();
+      }
+
+      @Override
+      public double read(int index)
+      {
+         return readBufferAt(index);
+      }
+
+      @Override
+      public void read(int startIndex, int length, double[] destination, int destinationOffset)
+      {
+         bufferData.read(startIndex, length, destination, destinationOffset);
+         resolvePending(startIndex, length, destination, destinationOffset);
+      }
+
+      @Override
+      public boolean write(int index, double value)
+      {
+         throw new UnsupportedOperationException("The resolved storage is read-only.");
+      }
+
+      @Override
+      public void copy(YoBufferStorage source, int sourceIndex, int destinationIndex, int length)
+      {
+         throw new UnsupportedOperationException("The resolved storage is read-only.");
+      }
+
+      @Override
+      public YoBufferStorage newStorage(int size)
+      {
+         return bufferData.newStorage(size);
+      }
+
+      @Override
+      public YoBufferStorage duplicate()
+      {
+         YoBufferStorage duplicate = bufferData.duplicate();
+         YoBufferTickCounter counter = tickCounter;
+         if (counter != null)
+            carryForward(duplicate, lastWriteIndex, getPendingLength(counter.tick - lastWriteTick, duplicate.getSize()));
+         return duplicate;
+      }
+
+      @Override
+      public int getBitsPerValue()
+      {
+         return bufferData.getBitsPerValue();
+      }
+
+      @Override
+      protected void exportRange(int fromIndex, int length, ByteBuffer destination, int destinationIndex)
+      {
+         throw new UnsupportedOperationException("Use YoBufferVariableEntry.exportBufferWindow(int, int, ByteBuffer) instead.");
+      }
+
+      @Override
+      protected void importRange(ByteBuffer source, int sourceIndex, int toIndex, int length)
+      {
+         throw new UnsupportedOperationException("The resolved storage is read-only.");
+      }
+   }
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer;
+
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferVariableEntryReader;
+
+/**
+ * Read-only view of a window of a buffer entry.
+ * <p>
+ * The view does not copy the buffer data, it translates the offsets within the window into buffer
+ * indices, handling the wrap-around at the end of the buffer. The view reflects any change made to
+ * the underlying entry, it should be set again after the entry has been resized.
+ * </p>
+ * <p>
+ * A view can be reused for different windows or entries via
+ * {@link #set(YoBufferVariableEntryReader, int, int)} to avoid generating garbage.
+ * </p>
+ * <p>
+ * It is part of the {@link YoBuffer} framework.
+ * </p>
+ */
+public class YoBufferWindowView
+{
+   /** The entry this view reads from. */
+   private YoBufferVariableEntryReader entry;
+   /** The buffer index of the first value of the window. */
+   private int startIndex;
+   /** The number of values in the window. */
+   private int length;
+
+   /**
+    * Creates a new view that is not associated with any entry yet.
+    */
+   public YoBufferWindowView()
+   {
+   }
+
+   /**
+    * Creates a new view of the given window.
+    *
+    * @param entry      the entry to read from.
+    * @param startIndex the buffer index of the first value of the window.
+    * @param length     the number of values in the window.
+    * @see #set(YoBufferVariableEntryReader, int, int)
+    */
+   public YoBufferWindowView(YoBufferVariableEntryReader entry, int startIndex, int length)
+   {
+      set(entry, startIndex, length);
+   }
+
+   /**
+    * Sets the window this view represents.
+    * <p>
+    * The window wraps around the end of the buffer when {@code startIndex + length} exceeds the buffer
+    * size.
+    * </p>
+    *
+    * @param entry      the entry to read from.
+    * @param startIndex the buffer index of the first value of the window. Should be in [0,
+    *                   {@code entry.getBufferSize()}[.
+    * @param length     the number of values in the window. Should be in [0,
+    *                   {@code entry.getBufferSize()}].
+    * @throws IndexOutOfBoundsException if the window does not fit in the entry's buffer.
+    */
+   public void set(YoBufferVariableEntryReader entry, int startIndex, int length)
+   {
+      int bufferSize = entry.getBufferSize();
+
+      if (startIndex < 0 || startIndex >= bufferSize)
+         throw new IndexOutOfBoundsException("startIndex should be in [0, " + bufferSize + "[, but was: " + startIndex);
+      if (length < 0 || length > bufferSize)
+         throw new IndexOutOfBoundsException("length should be in [0, " + bufferSize + "], but was: " + length);
+
+      this.entry = entry;
+      this.startIndex = startIndex;
+      this.length = length;
+   }
+
+   /**
+    * Returns the entry this view reads from.
+    *
+    * @return the entry.
+    */
+   public YoBufferVariableEntryReader getEntry()
+   {
+      return entry;
+   }
+
+   /**
+    * Returns the buffer index of the first value of the window.
+    *
+    * @return the start index of the window.
+    */
+   public int getStartIndex()
+   {
+      return startIndex;
+   }
+
+   /**
+    * Returns the number of values in the window.
+    *
+    * @return the window length.
+    */
+   public int getLength()
+   {
+      return length;
+   }
+
+   /**
+    * Converts an offset within the window into an index in the buffer.
+    *
+    * @param offset the offset with respect to the start of the window. Should be in [0,
+    *               {@code getLength()}[.
+    * @return the corresponding buffer index.
+    * @throws IndexOutOfBoundsException if {@code offset} is outside the window.
+    */
+   public int toBufferIndex(int offset)
+   {
+      if (offset < 0 || offset >= length)
+         throw new IndexOutOfBoundsException("offset should be in [0, " + length + "[, but was: " + offset);
+
+      int index = startIndex + offset;
+      int bufferSize = entry.getBufferSize();
+      return index >= bufferSize ? index - bufferSize : index;
+   }
+
+   /**
+    * Reads the value at the given offset within the window.
+    *
+    * @param offset the offset with respect to the start of the window. Should be in [0,
+    *               {@code getLength()}[.
+    * @return the value stored in the buffer.
+    * @throws IndexOutOfBoundsException if {@code offset} is outside the window.
+    */
+   public double get(int offset)
+   {
+      return entry.readBufferAt(toBufferIndex(offset));
+   }
+
+   /**
+    * Copies a series of consecutive values of the window into the given array.
+    *
+    * @param offset            the offset within the window of the first value to copy.
+    * @param length            the number of values to copy.
+    * @param destination       the array in which the values are copied. Modified.
+    * @param destinationOffset the index in {@code destination} where the first value is stored.
+    * @throws IndexOutOfBoundsException if the values to copy are not all in the window.
+    */
+   public void get(int offset, int length, double[] destination, int destinationOffset)
+   {
+      if (length == 0)
+         return;
+      if (offset < 0 || length < 0 || offset + length > this.length)
+         throw new IndexOutOfBoundsException("The range [" + offset + ", " + (offset + length) + "[ is outside the window [0, " + this.length + "[");
+
+      entry.getBufferWindow(toBufferIndex(offset), length, destination, destinationOffset);
+   }
+}
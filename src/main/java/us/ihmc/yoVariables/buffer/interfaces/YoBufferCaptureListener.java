@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.interfaces;
+
+import us.ihmc.yoVariables.buffer.YoBufferCapture;
+import us.ihmc.yoVariables.buffer.YoBufferTriggerRecorder;
+
+/**
+ * Interface that receives the captures completed by a {@link YoBufferTriggerRecorder}.
+ */
+public interface YoBufferCaptureListener
+{
+   /**
+    * Called from the recorder's delivery thread once a capture is complete.
+    * <p>
+    * The capture is recycled once this method returns, its data should be copied if it is needed
+    * afterwards.
+    * </p>
+    *
+    * @param capture the completed capture.
+    */
+   void captureCompleted(YoBufferCapture capture);
+}
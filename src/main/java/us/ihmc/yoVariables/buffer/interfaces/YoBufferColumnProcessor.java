@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.interfaces;
+
+import java.util.List;
+
+import us.ihmc.yoVariables.buffer.YoBuffer;
+import us.ihmc.yoVariables.registry.YoVariableHolder;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * A column processor is a function that can be used to read and/or modify the data in a
+ * {@link YoBuffer} by accessing directly the history of a few variables.
+ * <p>
+ * Unlike a {@link YoBufferProcessor}, a column processor does not go through the
+ * {@code YoVariable}s at each buffer index. Instead, it declares the variables it reads from and
+ * writes into, and it is given their history over the interval [in-point, out-point] as arrays. The
+ * other variables of the buffer are not touched.
+ * </p>
+ * <p>
+ * Column processor is applied to a buffer as follows:
+ * <ol>
+ * <li>The processor is first initialized once via {@link #initialize(YoVariableHolder)}.
+ * <li>The history of the input and output variables over [in-point, out-point] are copied into
+ * arrays.
+ * <li>The processor is called once via {@link #process(double[][], double[][], int)}.
+ * <li>The output arrays are written back into the buffer, the output variables are updated to their
+ * value at the current buffer index and the index listeners are notified once.
+ * </ol>
+ * </p>
+ */
+public interface YoBufferColumnProcessor
+{
+   /**
+    * Invoked before starting the operation providing the opportunity to perform an initialization,
+    * for instance to find the variables to be processed.
+    *
+    * @param yoVariableHolder its contains the {@code YoVariable}s that the buffer manages.
+    */
+   default void initialize(YoVariableHolder yoVariableHolder)
+   {
+   }
+
+   /**
+    * Returns the variables which history is read by this processor.
+    * <p>
+    * This method is called after {@link #initialize(YoVariableHolder)}.
+    * </p>
+    *
+    * @return the input variables, each has to be managed by the buffer.
+    */
+   List<? extends YoVariable> getInputVariables();
+
+   /**
+    * Returns the variables which history is modified by this processor.
+    * <p>
+    * This method is called after {@link #initialize(YoVariableHolder)}. A variable can be both an input
+    * and an output.
+    * </p>
+    *
+    * @return the output variables, each has to be managed by the buffer.
+    */
+   List<? extends YoVariable> getOutputVariables();
+
+   /**
+    * Defines the function to be applied to the history of the variables.
+    * <p>
+    * The columns hold the values over [in-point, out-point], such that {@code column[0]} is the value
+    * at the in-point and {@code column[length - 1]} the value at the out-point. The output columns are
+    * initialized with the current history of the output variables such that the processor only needs
+    * to modify the values it wants to change.
+    * </p>
+    *
+    * @param inputColumns  the history of each input variable, in the order of
+    *                      {@link #getInputVariables()}. Should not be modified.
+    * @param outputColumns the history of each output variable, in the order of
+    *                      {@link #getOutputVariables()}. Modified.
+    * @param length        the number of values in each column.
+    */
+   void process(double[][] inputColumns, double[][] outputColumns, int length);
+}
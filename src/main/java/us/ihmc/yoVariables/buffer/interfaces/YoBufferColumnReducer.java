@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.interfaces;
+
+import java.util.List;
+
+import us.ihmc.yoVariables.buffer.YoBuffer;
+import us.ihmc.yoVariables.registry.YoVariableHolder;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * A column reducer computes a result from the history of a few variables of a {@link YoBuffer}, for
+ * instance a statistic, without modifying the buffer.
+ * <p>
+ * The interval [in-point, out-point] is split into chunks, each chunk is reduced via
+ * {@link #reduce(double[][], int, int)}, possibly concurrently, and the results of consecutive
+ * chunks are merged via {@link #combine(Object, Object)}. Implementations should therefore be
+ * stateless or only use thread-safe state, and {@code combine} should be associative.
+ * </p>
+ *
+ * @param <T> the type of the result.
+ */
+public interface YoBufferColumnReducer<T>
+{
+   /**
+    * Invoked before starting the operation providing the opportunity to perform an initialization,
+    * for instance to find the variables to be processed.
+    *
+    * @param yoVariableHolder its contains the {@code YoVariable}s that the buffer manages.
+    */
+   default void initialize(YoVariableHolder yoVariableHolder)
+   {
+   }
+
+   /**
+    * Returns the variables which history is read by this reducer.
+    * <p>
+    * This method is called after {@link #initialize(YoVariableHolder)}.
+    * </p>
+    *
+    * @return the input variables, each has to be managed by the buffer.
+    */
+   List<? extends YoVariable> getInputVariables();
+
+   /**
+    * Reduces a chunk of the history of the input variables.
+    * <p>
+    * The columns hold the values over [in-point, out-point], such that {@code column[0]} is the value
+    * at the in-point. This method may be called concurrently from different threads for disjoint
+    * chunks.
+    * </p>
+    *
+    * @param inputColumns the history of each input variable, in the order of
+    *                     {@link #getInputVariables()}. Should not be modified.
+    * @param fromOffset   the offset (inclusive) in the columns of the first value to reduce.
+    * @param toOffset     the offset (exclusive) in the columns of the last value to reduce.
+    * @return the result for the chunk.
+    */
+   T reduce(double[][] inputColumns, int fromOffset, int toOffset);
+
+   /**
+    * Merges the results of two consecutive chunks.
+    *
+    * @param first  the result of the chunk that comes first.
+    * @param second the result of the chunk that immediately follows {@code first}.
+    * @return the result for the union of the two chunks.
+    */
+   T combine(T first, T second);
+}
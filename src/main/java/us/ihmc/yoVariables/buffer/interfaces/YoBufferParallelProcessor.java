@@ -0,0 +1,59 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.interfaces;
+
+import us.ihmc.yoVariables.buffer.YoBuffer;
+
+/**
+ * A parallel processor is a {@link YoBufferColumnProcessor} which output at each buffer index only
+ * depends on the input values at the same index.
+ * <p>
+ * This allows a {@link YoBuffer} to split the interval [in-point, out-point] into chunks that are
+ * processed concurrently via {@link #process(double[][], double[][], int, int)}. Implementations
+ * should therefore be stateless or only use thread-safe state.
+ * </p>
+ */
+public interface YoBufferParallelProcessor extends YoBufferColumnProcessor
+{
+   /**
+    * Processes the entire columns at once.
+    *
+    * @param inputColumns  the history of each input variable. Should not be modified.
+    * @param outputColumns the history of each output variable. Modified.
+    * @param length        the number of values in each column.
+    */
+   @Override
+   default void process(double[][] inputColumns, double[][] outputColumns, int length)
+   {
+      process(inputColumns, outputColumns, 0, length);
+   }
+
+   /**
+    * Defines the function to be applied to a chunk of the history of the variables.
+    * <p>
+    * This method may be called concurrently from different threads for disjoint chunks. Only the
+    * values of the output columns in [{@code fromOffset}, {@code toOffset}[ should be modified.
+    * </p>
+    *
+    * @param inputColumns  the history of each input variable, in the order of
+    *                      {@link #getInputVariables()}. Should not be modified.
+    * @param outputColumns the history of each output variable, in the order of
+    *                      {@link #getOutputVariables()}. Modified.
+    * @param fromOffset    the offset (inclusive) in the columns of the first value to process.
+    * @param toOffset      the offset (exclusive) in the columns of the last value to process.
+    */
+   void process(double[][] inputColumns, double[][] outputColumns, int fromOffset, int toOffset);
+}
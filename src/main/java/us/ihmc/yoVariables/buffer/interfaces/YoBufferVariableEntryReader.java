@@ -16,6 +16,7 @@
 package us.ihmc.yoVariables.buffer.interfaces;
 
 import us.ihmc.yoVariables.buffer.YoBufferBounds;
+import us.ihmc.yoVariables.buffer.YoBufferEnvelope;
 import us.ihmc.yoVariables.buffer.YoBufferVariableEntry;
 import us.ihmc.yoVariables.variable.YoVariable;
 
@@ -87,6 +88,37 @@ public interface YoBufferVariableEntryReader
     */
    double[] getBufferWindow(int startIndex, int length);
 
+   /**
+    * Copies this entire buffer into the given array.
+    * 
+    * @param bufferToPack the array in which the buffer is copied. Its length should be at least equal
+    *                     to the buffer size. Modified.
+    */
+   default void getBuffer(double[] bufferToPack)
+   {
+      getBufferWindow(0, getBufferSize(), bufferToPack, 0);
+   }
+
+   /**
+    * Copies a sample of this buffer into the given array.
+    * <p>
+    * The sample wraps around the end of the buffer when {@code startIndex + length} exceeds the buffer
+    * size.
+    * </p>
+    * 
+    * @param startIndex   the first index to be stored in the sample.
+    * @param length       the sample length.
+    * @param windowToPack the array in which the sample is copied. Modified.
+    * @param offset       the index in {@code windowToPack} where the first value is stored.
+    */
+   default void getBufferWindow(int startIndex, int length, double[] windowToPack, int offset)
+   {
+      int bufferSize = getBufferSize();
+
+      for (int i = 0; i < length; i++)
+         windowToPack[offset + i] = readBufferAt((startIndex + i) % bufferSize);
+   }
+
    /**
     * Marks an internal flag, next call to {@link #haveBoundsChanged()} is guaranteed to return
     * {@code false}.
@@ -185,6 +217,51 @@ public interface YoBufferVariableEntryReader
       return getWindowBounds(startIndex, endIndex).getUpperBound();
    }
 
+   /**
+    * Computes the envelope of the buffer values over the index interval [{@code startIndex},
+    * {@code endIndex}] decimated to the given number of pixels.
+    * <p>
+    * The interval wraps around the end of the buffer when {@code startIndex > endIndex}. The envelope
+    * is meant for plotting, see {@link YoBufferEnvelope}.
+    * </p>
+    * <p>
+    * The default implementation reads every value of the interval, implementations are encouraged
+    * to compute the envelope in a time proportional to the number of pixels.
+    * </p>
+    *
+    * @param startIndex     first index (inclusive) of the interval.
+    * @param endIndex       last index (inclusive) of the interval.
+    * @param numberOfPixels the desired number of pixels. The envelope will have less pixels if the
+    *                       interval has less values.
+    * @param envelopeToPack the envelope used to store the result. Modified.
+    */
+   default void computeEnvelope(int startIndex, int endIndex, int numberOfPixels, YoBufferEnvelope envelopeToPack)
+   {
+      int bufferSize = getBufferSize();
+      envelopeToPack.reset(YoBufferEnvelope.computeWindowLength(startIndex, endIndex, bufferSize), numberOfPixels);
+
+      for (int pixel = 0; pixel < envelopeToPack.getNumberOfPixels(); pixel++)
+      {
+         int fromOffset = envelopeToPack.getPixelStartOffset(pixel);
+         int toOffset = envelopeToPack.getPixelStartOffset(pixel + 1);
+         double lowerBound = Double.POSITIVE_INFINITY;
+         double upperBound = Double.NEGATIVE_INFINITY;
+
+         for (int offset = fromOffset; offset < toOffset; offset++)
+         {
+            double value = readBufferAt((startIndex + offset) % bufferSize);
+            if (value < lowerBound)
+               lowerBound = value;
+            if (value > upperBound)
+               upperBound = value;
+         }
+
+         double firstValue = readBufferAt((startIndex + fromOffset) % bufferSize);
+         double lastValue = readBufferAt((startIndex + toOffset - 1) % bufferSize);
+         envelopeToPack.set(pixel, lowerBound, upperBound, firstValue, lastValue);
+      }
+   }
+
    /**
     * Sets the internal flag "useCustomBounds" associated to this entry.
     * <p>
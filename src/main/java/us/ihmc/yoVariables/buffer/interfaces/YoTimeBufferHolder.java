@@ -26,4 +26,19 @@ public interface YoTimeBufferHolder
     * @return the copy of the buffer for the time variable.
     */
    double[] getTimeBuffer();
+
+   /**
+    * Copies the buffer for the time variable into the given array.
+    * <p>
+    * Unlike {@link #getTimeBuffer()}, implementations should not allocate memory in this method.
+    * </p>
+    *
+    * @param timeBufferToPack the array in which the time buffer is copied. Its length should be at
+    *                         least equal to the buffer size. Modified.
+    */
+   default void getTimeBuffer(double[] timeBufferToPack)
+   {
+      double[] timeBuffer = getTimeBuffer();
+      System.arraycopy(timeBuffer, 0, timeBufferToPack, 0, timeBuffer.length);
+   }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Storage packing one value per bit, used for {@code YoBoolean}s.
+ * <p>
+ * A value is stored as {@code true} if it is greater or equal to {@code 0.5}, as done in
+ * {@code YoBoolean.setValueFromDouble(double)}, and is read back as either {@code 1.0} or
+ * {@code 0.0}.
+ * </p>
+ */
+public class YoBufferBitStorage extends YoBufferStorage
+{
+   /** The number of values in use, at most the number of bits in {@link #words}. */
+   private int size;
+   private final long[] words;
+
+   /**
+    * Creates a new storage.
+    *
+    * @param size the number of values the new storage can hold.
+    */
+   public YoBufferBitStorage(int size)
+   {
+      this(size, new long[numberOfWords(size)]);
+   }
+
+   private YoBufferBitStorage(int size, long[] words)
+   {
+      this.size = size;
+      this.words = words;
+   }
+
+   private static int numberOfWords(int size)
+   {
+      return (size + Long.SIZE - 1) >>> 6;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getSize()
+   {
+      return size;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getCapacity()
+   {
+      return (int) Math.min(Integer.MAX_VALUE, (long) words.length << 6);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean resize(int newSize)
+   {
+      if (newSize < 0 || newSize > getCapacity())
+         return false;
+      size = newSize;
+      return true;
+   }
+
+   /**
+    * Reads the bit stored at the given index.
+    *
+    * @param index the index to read at.
+    * @return the bit stored at {@code index}.
+    */
+   public boolean get(int index)
+   {
+      checkIndex(index, size);
+      return (words[index >>> 6] & (1L << index)) != 0L;
+   }
+
+   /**
+    * Sets the bit stored at the given index.
+    *
+    * @param index the index to write at.
+    * @param value the new bit value.
+    * @return {@code true} if the bit changed, {@code false} otherwise.
+    */
+   public boolean set(int index, boolean value)
+   {
+      if (get(index) == value)
+         return false;
+
+      words[index >>> 6] ^= 1L << index;
+      return true;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public double read(int index)
+   {
+      return get(index) ? 1.0 : 0.0;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void read(int startIndex, int length, double[] destination, int destinationOffset)
+   {
+      for (int i = 0; i < length; i++)
+      {
+         int index = startIndex + i;
+         destination[destinationOffset + i] = (words[index >>> 6] & (1L << index)) != 0L ? 1.0 : 0.0;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean write(int index, double value)
+   {
+      return set(index, value >= 0.5);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fill(int fromIndex, int toIndex, double value)
+   {
+      if (fromIndex >= toIndex)
+         return;
+
+      boolean bit = value >= 0.5;
+      int firstWord = fromIndex >>> 6;
+      int lastWord = (toIndex - 1) >>> 6;
+      long firstMask = -1L << fromIndex;
+      long lastMask = -1L >>> -toIndex;
+
+      if (firstWord == lastWord)
+      {
+         setBits(firstWord, firstMask & lastMask, bit);
+      }
+      else
+      {
+         setBits(firstWord, firstMask, bit);
+         Arrays.fill(words, firstWord + 1, lastWord, bit ? -1L : 0L);
+         setBits(lastWord, lastMask, bit);
+      }
+   }
+
+   private void setBits(int wordIndex, long mask, boolean bit)
+   {
+      if (bit)
+         words[wordIndex] |= mask;
+      else
+         words[wordIndex] &= ~mask;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void copy(YoBufferStorage source, int sourceIndex, int destinationIndex, int length)
+   {
+      YoBufferBitStorage other = (YoBufferBitStorage) source;
+
+      if (((sourceIndex | destinationIndex) & 63) == 0 && (length & 63) == 0)
+      { // Word aligned, can copy whole words.
+         System.arraycopy(other.words, sourceIndex >>> 6, words, destinationIndex >>> 6, length >>> 6);
+      }
+      else if (other == this && sourceIndex < destinationIndex)
+      { // Overlapping, copy backward.
+         for (int i = length - 1; i >= 0; i--)
+            set(destinationIndex + i, other.get(sourceIndex + i));
+      }
+      else
+      {
+         for (int i = 0; i < length; i++)
+            set(destinationIndex + i, other.get(sourceIndex + i));
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void exportRange(int fromIndex, int length, ByteBuffer destination, int destinationIndex)
+   {
+      for (int i = 0; i < length; i++)
+         putBit(destination, destinationIndex + i, get(fromIndex + i));
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void importRange(ByteBuffer source, int sourceIndex, int toIndex, int length)
+   {
+      for (int i = 0; i < length; i++)
+         set(toIndex + i, getBit(source, sourceIndex + i));
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferBitStorage newStorage(int size)
+   {
+      return new YoBufferBitStorage(size);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferBitStorage duplicate()
+   {
+      return new YoBufferBitStorage(size, Arrays.copyOf(words, numberOfWords(size)));
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getBitsPerValue()
+   {
+      return 1;
+   }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import us.ihmc.yoVariables.buffer.YoBufferBounds;
+
+/**
+ * Storage split into fixed-size chunks that are shared between duplicates until one of them is
+ * modified.
+ * <p>
+ * Each chunk is a storage created by another factory, e.g. a {@link YoBufferDoubleStorage}, and
+ * holds {@value #CHUNK_SIZE} values, except for the last chunk which is only as large as needed.
+ * {@link #duplicate()} only copies the references to the chunks such that its cost is proportional
+ * to the number of chunks rather than the number of values. Each chunk counts the storages it is
+ * shared with, the first write into a shared chunk replaces it with a private copy, such that a
+ * storage and its duplicates only pay for the chunks that diverge.
+ * </p>
+ * <p>
+ * Reading and writing the values of a chunk that is not shared is done directly on the chunk's
+ * storage. A storage and its duplicates can be modified by different threads, however a single
+ * storage should not be modified by more than one thread.
+ * </p>
+ * <p>
+ * A storage stops sharing its chunks when it is released with {@link #release()} or garbage
+ * collected, such that the storages it shared them with modify them in place again.
+ * </p>
+ *
+ * @see YoBufferStorageFactory#copyOnWrite(YoBufferStorageFactory)
+ */
+public class YoBufferChunkedStorage extends YoBufferStorage
+{
+   private static final int CHUNK_SHIFT = 12;
+   /** The number of values held by each chunk but the last. */
+   public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+   private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+   private static final Cleaner CLEANER = Cleaner.create();
+
+   /** A chunk of values and the number of storages sharing it. */
+   private static final class Chunk
+   {
+      private final YoBufferStorage values;
+      private final AtomicInteger references = new AtomicInteger(1);
+
+      private Chunk(YoBufferStorage values)
+      {
+         this.values = values;
+      }
+   }
+
+   /** The function used to create new chunks given their size. */
+   private final IntFunction<YoBufferStorage> chunkFactory;
+   /** The chunks, each covering {@value #CHUNK_SIZE} values. */
+   private final Chunk[] chunks;
+   /** The number of values in use, at most {@link #getCapacity()}. */
+   private int size;
+   /** Releases the chunks when this storage is released or garbage collected. */
+   private final Cleaner.Cleanable cleanable;
+
+   /**
+    * Releases the chunks of a storage. It only refers to the chunk array, which is updated in place
+    * when a chunk is copied, such that the storage can be garbage collected.
+    */
+   private static final class ChunksRelease implements Runnable
+   {
+      private final Chunk[] chunks;
+
+      private ChunksRelease(Chunk[] chunks)
+      {
+         this.chunks = chunks;
+      }
+
+      @Override
+      public void run()
+      {
+         for (Chunk chunk : chunks)
+            chunk.references.decrementAndGet();
+      }
+   }
+
+   /**
+    * Creates a new storage which chunks are of the same implementation as the given storage.
+    *
+    * @param prototype a storage used to create the chunks with {@link YoBufferStorage#newStorage(int)}.
+    *                  Not modified.
+    * @param size      the number of values the new storage can hold.
+    */
+   public YoBufferChunkedStorage(YoBufferStorage prototype, int size)
+   {
+      this(prototype::newStorage, size);
+   }
+
+   /**
+    * Creates a new storage.
+    *
+    * @param chunkFactory the function used to create the chunks given their size.
+    * @param size         the number of values the new storage can hold.
+    */
+   public YoBufferChunkedStorage(IntFunction<YoBufferStorage> chunkFactory, int size)
+   {
+      this.chunkFactory = chunkFactory;
+
+      int numberOfChunks = Math.max(1, (size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT);
+      chunks = new Chunk[numberOfChunks];
+
+      for (int i = 0; i < numberOfChunks; i++)
+         chunks[i] = new Chunk(chunkFactory.apply(Math.min(CHUNK_SIZE, size - (i << CHUNK_SHIFT))));
+
+      this.size = size;
+      cleanable = CLEANER.register(this, new ChunksRelease(chunks));
+   }
+
+   private YoBufferChunkedStorage(YoBufferChunkedStorage other)
+   {
+      chunkFactory = other.chunkFactory;
+      chunks = other.chunks.clone();
+      for (Chunk chunk : chunks)
+         chunk.references.incrementAndGet();
+      size = other.size;
+      cleanable = CLEANER.register(this, new ChunksRelease(chunks));
+   }
+
+   /**
+    * Returns the chunk at the given index, replacing it first with a private copy if it is shared
+    * with other storages.
+    */
+   private YoBufferStorage writableChunk(int chunkIndex)
+   {
+      Chunk chunk = chunks[chunkIndex];
+
+      if (chunk.references.get() > 1)
+      {
+         Chunk copy = new Chunk(chunk.values.duplicate());
+         chunks[chunkIndex] = copy;
+         // Released only once copied such that the other storages keep copying until then.
+         chunk.references.decrementAndGet();
+         return copy.values;
+      }
+
+      return chunk.values;
+   }
+
+   /**
+    * Returns the number of chunks that are currently shared with other storages.
+    *
+    * @return the number of shared chunks.
+    */
+   public int getNumberOfSharedChunks()
+   {
+      int count = 0;
+      for (Chunk chunk : chunks)
+      {
+         if (chunk.references.get() > 1)
+            count++;
+      }
+      return count;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getSize()
+   {
+      return size;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getCapacity()
+   {
+      return ((chunks.length - 1) << CHUNK_SHIFT) + chunks[chunks.length - 1].values.getSize();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean resize(int newSize)
+   {
+      if (newSize < 0 || newSize > getCapacity())
+         return false;
+      size = newSize;
+      return true;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public double read(int index)
+   {
+      checkIndex(index, size);
+      return chunks[index >>> CHUNK_SHIFT].values.read(index & CHUNK_MASK);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void read(int startIndex, int length, double[] destination, int destinationOffset)
+   {
+      while (length > 0)
+      {
+         int segmentLength = Math.min(length, CHUNK_SIZE - (startIndex & CHUNK_MASK));
+         chunks[startIndex >>> CHUNK_SHIFT].values.read(startIndex & CHUNK_MASK, segmentLength, destination, destinationOffset);
+         startIndex += segmentLength;
+         destinationOffset += segmentLength;
+         length -= segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean write(int index, double value)
+   {
+      checkIndex(index, size);
+      return writableChunk(index >>> CHUNK_SHIFT).write(index & CHUNK_MASK, value);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fill(int fromIndex, int toIndex, double value)
+   {
+      while (fromIndex < toIndex)
+      {
+         int segmentLength = Math.min(toIndex - fromIndex, CHUNK_SIZE - (fromIndex & CHUNK_MASK));
+         int localIndex = fromIndex & CHUNK_MASK;
+         writableChunk(fromIndex >>> CHUNK_SHIFT).fill(localIndex, localIndex + segmentLength, value);
+         fromIndex += segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fillWithValueAt(int valueIndex, int fromIndex, int toIndex)
+   {
+      while (fromIndex < toIndex)
+      {
+         int segmentLength = Math.min(toIndex - fromIndex, CHUNK_SIZE - (fromIndex & CHUNK_MASK));
+         int localIndex = fromIndex & CHUNK_MASK;
+
+         if (valueIndex >>> CHUNK_SHIFT != fromIndex >>> CHUNK_SHIFT)
+         {
+            // Bring the value into the chunk first such that it is copied without conversion.
+            copy(this, valueIndex, fromIndex, 1);
+            writableChunk(fromIndex >>> CHUNK_SHIFT).fillWithValueAt(localIndex, localIndex + 1, localIndex + segmentLength);
+         }
+         else
+         {
+            writableChunk(fromIndex >>> CHUNK_SHIFT).fillWithValueAt(valueIndex & CHUNK_MASK, localIndex, localIndex + segmentLength);
+         }
+
+         fromIndex += segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void copy(YoBufferStorage source, int sourceIndex, int destinationIndex, int length)
+   {
+      if (!(source instanceof YoBufferChunkedStorage))
+      {
+         copyValues(source, sourceIndex, destinationIndex, length);
+         return;
+      }
+
+      YoBufferChunkedStorage other = (YoBufferChunkedStorage) source;
+
+      if (other == this && sourceIndex < destinationIndex && sourceIndex + length > destinationIndex)
+      {
+         // Overlapping regions, copying backward such that the values are read before being overwritten.
+         int sourceEnd = sourceIndex + length;
+         int destinationEnd = destinationIndex + length;
+
+         while (length > 0)
+         {
+            int segmentLength = Math.min(length, Math.min(((sourceEnd - 1) & CHUNK_MASK) + 1, ((destinationEnd - 1) & CHUNK_MASK) + 1));
+            sourceEnd -= segmentLength;
+            destinationEnd -= segmentLength;
+            copySegment(other, sourceEnd, destinationEnd, segmentLength);
+            length -= segmentLength;
+         }
+      }
+      else
+      {
+         while (length > 0)
+         {
+            int segmentLength = Math.min(length,
+                                         Math.min(CHUNK_SIZE - (sourceIndex & CHUNK_MASK), CHUNK_SIZE - (destinationIndex & CHUNK_MASK)));
+            copySegment(other, sourceIndex, destinationIndex, segmentLength);
+            sourceIndex += segmentLength;
+            destinationIndex += segmentLength;
+            length -= segmentLength;
+         }
+      }
+   }
+
+   private void copySegment(YoBufferChunkedStorage source, int sourceIndex, int destinationIndex, int length)
+   {
+      YoBufferStorage destinationChunk = writableChunk(destinationIndex >>> CHUNK_SHIFT);
+      // Fetched after the destination chunk such that it refers to the private copy when source == this.
+      YoBufferStorage sourceChunk = source.chunks[sourceIndex >>> CHUNK_SHIFT].values;
+      destinationChunk.copy(sourceChunk, sourceIndex & CHUNK_MASK, destinationIndex & CHUNK_MASK, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void updateBounds(int fromIndex, int toIndex, YoBufferBounds boundsToUpdate)
+   {
+      while (fromIndex < toIndex)
+      {
+         int segmentLength = Math.min(toIndex - fromIndex, CHUNK_SIZE - (fromIndex & CHUNK_MASK));
+         int localIndex = fromIndex & CHUNK_MASK;
+         chunks[fromIndex >>> CHUNK_SHIFT].values.updateBounds(localIndex, localIndex + segmentLength, boundsToUpdate);
+         fromIndex += segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void exportRange(int fromIndex, int length, ByteBuffer destination, int destinationIndex)
+   {
+      while (length > 0)
+      {
+         int segmentLength = Math.min(length, CHUNK_SIZE - (fromIndex & CHUNK_MASK));
+         chunks[fromIndex >>> CHUNK_SHIFT].values.exportRange(fromIndex & CHUNK_MASK, segmentLength, destination, destinationIndex);
+         fromIndex += segmentLength;
+         destinationIndex += segmentLength;
+         length -= segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void importRange(ByteBuffer source, int sourceIndex, int toIndex, int length)
+   {
+      while (length > 0)
+      {
+         int segmentLength = Math.min(length, CHUNK_SIZE - (toIndex & CHUNK_MASK));
+         writableChunk(toIndex >>> CHUNK_SHIFT).importRange(source, sourceIndex, toIndex & CHUNK_MASK, segmentLength);
+         sourceIndex += segmentLength;
+         toIndex += segmentLength;
+         length -= segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferChunkedStorage newStorage(int size)
+   {
+      return new YoBufferChunkedStorage(chunkFactory, size);
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * The chunks are shared with the duplicate until either storage modifies them.
+    * </p>
+    */
+   @Override
+   public YoBufferChunkedStorage duplicate()
+   {
+      return new YoBufferChunkedStorage(this);
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * The chunks shared with other storages are no longer copied when the other storages modify them.
+    * </p>
+    */
+   @Override
+   public void release()
+   {
+      cleanable.clean();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getBitsPerValue()
+   {
+      return chunks[0].values.getBitsPerValue();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean isDirect()
+   {
+      return chunks[0].values.isDirect();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getExportBitsPerValue()
+   {
+      return chunks[0].values.getExportBitsPerValue();
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * Chunks shared with other storages are accounted for in each of them.
+    * </p>
+    */
+   @Override
+   public long getMemoryUsage()
+   {
+      long memoryUsage = 0;
+      for (Chunk chunk : chunks)
+         memoryUsage += chunk.values.getMemoryUsage();
+      return memoryUsage;
+   }
+}
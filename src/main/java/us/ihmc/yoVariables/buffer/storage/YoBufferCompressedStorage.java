@@ -0,0 +1,942 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import us.ihmc.yoVariables.buffer.YoBufferBounds;
+import us.ihmc.yoVariables.variable.YoVariable;
+import us.ihmc.yoVariables.variable.YoVariableType;
+
+/**
+ * Storage compressing its values in blocks of {@value #BLOCK_SIZE} values.
+ * <p>
+ * The values of each block are encoded as a stream of bits starting with the first value of the
+ * block:
+ * <ul>
+ * <li>{@link YoVariableType#DOUBLE}: each value is XORed with the previous one, only the meaningful
+ * bits of the result are stored, as done for the values of the Gorilla time series database. A value
+ * that did not change costs a single bit.
+ * <li>other types: the difference between consecutive deltas is stored with a variable length
+ * prefix code, such that constant and linearly varying values, e.g. states and counters, cost a
+ * single bit per value.
+ * </ul>
+ * A block which encoding would be larger than its uncompressed values, e.g. noisy measurements, is
+ * stored uncompressed instead. The compression is lossless, values are converted the same way the
+ * uncompressed storage for the same variable would.
+ * </p>
+ * <p>
+ * The few most recently written blocks are kept decoded in a cache in which values are written. A
+ * block is encoded again when evicted from the cache, such that writing the values in sequence, as
+ * done when recording, costs a constant amortized time per value. Reads use the blocks of that cache
+ * and otherwise decode the encoded blocks in a separate cache, such that reading the values in
+ * sequence, as done when plotting, also costs a constant amortized time per value.
+ * </p>
+ * <p>
+ * This storage can be read from other threads than the one writing into it without ever blocking
+ * the writer: the encoded blocks are immutable once published and the writer's cache is read
+ * optimistically, the reads being retried when the writer modified the storage in the meantime. The
+ * reads from different threads wait for each other while decoding a block. The methods modifying
+ * this storage, including {@link #duplicate()}, should only be called from the writing thread.
+ * </p>
+ *
+ * @see YoBufferStorageFactory#compressed()
+ */
+public class YoBufferCompressedStorage extends YoBufferStorage
+{
+   private static final int BLOCK_SHIFT = 8;
+   /** The number of values per compressed block. */
+   public static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+   private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+   /** Number of blocks kept decoded. */
+   private static final int CACHE_SIZE = 4;
+   private static final VarHandle ENCODED_BLOCKS = MethodHandles.arrayElementVarHandle(long[][].class);
+
+   /** A decoded block held in the cache. */
+   private static final class CachedBlock
+   {
+      private final YoBufferStorage values;
+      private int block = -1;
+      /** The encoded block this block was decoded from, only used by the readers' cache. */
+      private long[] encodedBlock;
+      private boolean dirty = false;
+      private long lastUse = 0;
+
+      private CachedBlock(YoBufferStorage values)
+      {
+         this.values = values;
+      }
+   }
+
+   private final YoVariable variable;
+   private final boolean floatingPoint;
+   private final int exportBitsPerValue;
+   private final int size;
+   /**
+    * The encoded bits of each block, {@code null} for a block which values are all zero. The arrays
+    * are never modified once published with {@link #ENCODED_BLOCKS}.
+    */
+   private final long[][] encodedBlocks;
+
+   /** Odd while the writer is modifying this storage, see {@link #beginWrite()}. */
+   private volatile long writeSequence = 0;
+
+   /** Blocks written into, only modified by the writer. */
+   private final CachedBlock[] cache = new CachedBlock[CACHE_SIZE];
+   private long useCounter = 0;
+
+   /** Scratch buffer holding the values of a block in the export encoding. */
+   private final ByteBuffer blockBuffer;
+   /** Scratch array holding the values of a block as integers. */
+   private final long[] blockValues = new long[BLOCK_SIZE];
+   /** Scratch buffer used to move a single value. */
+   private final ByteBuffer valueBuffer = ByteBuffer.allocate(Long.BYTES);
+   /** Scratch buffer used to copy values one block at a time. */
+   private final ByteBuffer copyBuffer;
+   private final BitWriter bitWriter = new BitWriter();
+
+   /** Blocks decoded for reading, guarded by {@code readerCache} along with the fields below. */
+   private final CachedBlock[] readerCache = new CachedBlock[CACHE_SIZE];
+   private long readerUseCounter = 0;
+   private final ByteBuffer readerBlockBuffer;
+   private final long[] readerBlockValues = new long[BLOCK_SIZE];
+
+   /**
+    * Creates a new storage for the history of the given variable.
+    *
+    * @param variable the variable which history is to be stored.
+    * @param size     the number of values the new storage can hold.
+    */
+   public YoBufferCompressedStorage(YoVariable variable, int size)
+   {
+      this.variable = variable;
+      this.size = size;
+
+      for (int i = 0; i < CACHE_SIZE; i++)
+      {
+         cache[i] = new CachedBlock(YoBufferStorage.newStorage(variable, BLOCK_SIZE));
+         readerCache[i] = new CachedBlock(YoBufferStorage.newStorage(variable, BLOCK_SIZE));
+      }
+
+      floatingPoint = variable.getType() == YoVariableType.DOUBLE;
+      exportBitsPerValue = cache[0].values.getExportBitsPerValue();
+      encodedBlocks = new long[(size + BLOCK_SIZE - 1) >>> BLOCK_SHIFT][];
+      int blockExportSize = cache[0].values.getExportSize(BLOCK_SIZE);
+      blockBuffer = ByteBuffer.allocate(blockExportSize).order(ByteOrder.LITTLE_ENDIAN);
+      copyBuffer = ByteBuffer.allocate(blockExportSize).order(ByteOrder.LITTLE_ENDIAN);
+      readerBlockBuffer = ByteBuffer.allocate(blockExportSize).order(ByteOrder.LITTLE_ENDIAN);
+   }
+
+   private YoBufferCompressedStorage(YoBufferCompressedStorage other)
+   {
+      this(other.variable, other.size);
+
+      for (int i = 0; i < encodedBlocks.length; i++)
+         ENCODED_BLOCKS.setRelease(encodedBlocks, i, other.getEncodedBlock(i));
+   }
+
+   private int getBlockLength(int block)
+   {
+      return Math.min(BLOCK_SIZE, size - (block << BLOCK_SHIFT));
+   }
+
+   private long[] getEncodedBlock(int block)
+   {
+      return (long[]) ENCODED_BLOCKS.getAcquire(encodedBlocks, block);
+   }
+
+   /**
+    * Marks the beginning of a modification, the readers retry the reads that overlap with it.
+    */
+   private void beginWrite()
+   {
+      writeSequence++;
+      VarHandle.storeStoreFence();
+   }
+
+   private void endWrite()
+   {
+      writeSequence++;
+   }
+
+   /**
+    * Returns the decoded block, loading it in the writer's cache if needed. Only called by the
+    * writer between {@link #beginWrite()} and {@link #endWrite()}.
+    */
+   private CachedBlock getBlock(int block)
+   {
+      CachedBlock victim = cache[0];
+
+      for (CachedBlock cachedBlock : cache)
+      {
+         if (cachedBlock.block == block)
+         {
+            cachedBlock.lastUse = ++useCounter;
+            return cachedBlock;
+         }
+
+         if (cachedBlock.lastUse < victim.lastUse)
+            victim = cachedBlock;
+      }
+
+      if (victim.dirty)
+         encode(victim);
+
+      decode(block, victim);
+      victim.lastUse = ++useCounter;
+      return victim;
+   }
+
+   private CachedBlock getWritableBlock(int block)
+   {
+      CachedBlock cachedBlock = getBlock(block);
+      cachedBlock.dirty = true;
+      return cachedBlock;
+   }
+
+   /**
+    * Encodes all the modified blocks of the cache.
+    */
+   private void flush()
+   {
+      for (CachedBlock cachedBlock : cache)
+      {
+         if (cachedBlock.dirty)
+            encode(cachedBlock);
+      }
+   }
+
+   private void encode(CachedBlock cachedBlock)
+   {
+      int length = getBlockLength(cachedBlock.block);
+
+      blockBuffer.clear();
+      cachedBlock.values.exportRange(0, length, blockBuffer, 0);
+      boolean allZeros = true;
+
+      for (int i = 0; i < length; i++)
+      {
+         blockValues[i] = getExportedValue(i);
+         allZeros &= blockValues[i] == 0L;
+      }
+
+      if (allZeros)
+      {
+         ENCODED_BLOCKS.setRelease(encodedBlocks, cachedBlock.block, (long[]) null);
+      }
+      else
+      {
+         bitWriter.reset();
+         bitWriter.write(0L, 1);
+         if (floatingPoint)
+            encodeXOR(blockValues, length, bitWriter);
+         else
+            encodeDeltaOfDelta(blockValues, length, bitWriter);
+
+         if (bitWriter.getNumberOfBits() > 1L + (long) length * exportBitsPerValue)
+         { // The values are too noisy to be compressed, storing them as is.
+            bitWriter.reset();
+            bitWriter.write(1L, 1);
+            for (int i = 0; i < length; i++)
+               bitWriter.write(blockValues[i], exportBitsPerValue);
+         }
+
+         ENCODED_BLOCKS.setRelease(encodedBlocks, cachedBlock.block, bitWriter.toArray());
+      }
+
+      cachedBlock.dirty = false;
+   }
+
+   private void decode(int block, CachedBlock cachedBlock)
+   {
+      decode(getEncodedBlock(block), getBlockLength(block), cachedBlock.values, blockValues, blockBuffer);
+      cachedBlock.block = block;
+      cachedBlock.dirty = false;
+   }
+
+   private void decode(long[] encodedBlock, int length, YoBufferStorage values, long[] blockValues, ByteBuffer blockBuffer)
+   {
+      if (encodedBlock == null)
+      {
+         Arrays.fill(blockValues, 0, length, 0L);
+      }
+      else
+      {
+         BitReader reader = new BitReader(encodedBlock);
+
+         if (reader.read(1) != 0L)
+         {
+            for (int i = 0; i < length; i++)
+               blockValues[i] = reader.read(exportBitsPerValue);
+         }
+         else if (floatingPoint)
+         {
+            decodeXOR(reader, blockValues, length);
+         }
+         else
+         {
+            decodeDeltaOfDelta(reader, blockValues, length);
+         }
+      }
+
+      blockBuffer.clear();
+      if (exportBitsPerValue == 1)
+         Arrays.fill(blockBuffer.array(), (byte) 0);
+      for (int i = 0; i < length; i++)
+         putExportedValue(blockBuffer, i, blockValues[i]);
+
+      values.importRange(blockBuffer, 0, 0, length);
+   }
+
+   /**
+    * Returns the values of the given block in the writer's cache, or {@code null} if it is not
+    * cached. The result is only valid if the storage was not modified in the meantime.
+    */
+   private YoBufferStorage findWrittenBlock(int block)
+   {
+      for (CachedBlock cachedBlock : cache)
+      {
+         if (cachedBlock.block == block)
+            return cachedBlock.values;
+      }
+      return null;
+   }
+
+   /**
+    * Returns the decoded values of the given encoded block, loading them in the readers' cache if
+    * needed. The caller should hold the lock on {@link #readerCache} while reading the values.
+    */
+   private YoBufferStorage getReadBlock(int block)
+   {
+      long[] encodedBlock = getEncodedBlock(block);
+      CachedBlock victim = readerCache[0];
+
+      for (CachedBlock cachedBlock : readerCache)
+      {
+         if (cachedBlock.block == block && cachedBlock.encodedBlock == encodedBlock)
+         {
+            cachedBlock.lastUse = ++readerUseCounter;
+            return cachedBlock.values;
+         }
+
+         if (cachedBlock.lastUse < victim.lastUse)
+            victim = cachedBlock;
+      }
+
+      decode(encodedBlock, getBlockLength(block), victim.values, readerBlockValues, readerBlockBuffer);
+      victim.block = block;
+      victim.encodedBlock = encodedBlock;
+      victim.lastUse = ++readerUseCounter;
+      return victim.values;
+   }
+
+   /**
+    * Waits for the writer to be done with a modification and returns the sequence to validate the
+    * reads against with {@link #validateRead(long)}.
+    */
+   private long beginRead()
+   {
+      long sequence;
+      while (((sequence = writeSequence) & 1L) != 0L)
+         Thread.onSpinWait();
+      return sequence;
+   }
+
+   private boolean validateRead(long sequence)
+   {
+      VarHandle.loadLoadFence();
+      return writeSequence == sequence;
+   }
+
+   private long getExportedValue(int index)
+   {
+      switch (exportBitsPerValue)
+      {
+         case 1:
+            return getBit(blockBuffer, index) ? 1L : 0L;
+         case Byte.SIZE:
+            return blockBuffer.get(index);
+         case Short.SIZE:
+            return blockBuffer.getShort(index * Short.BYTES);
+         case Integer.SIZE:
+            return blockBuffer.getInt(index * Integer.BYTES);
+         default:
+            return blockBuffer.getLong(index * Long.BYTES);
+      }
+   }
+
+   private void putExportedValue(ByteBuffer blockBuffer, int index, long value)
+   {
+      switch (exportBitsPerValue)
+      {
+         case 1:
+            putBit(blockBuffer, index, value != 0L);
+            break;
+         case Byte.SIZE:
+            blockBuffer.put(index, (byte) value);
+            break;
+         case Short.SIZE:
+            blockBuffer.putShort(index * Short.BYTES, (short) value);
+            break;
+         case Integer.SIZE:
+            blockBuffer.putInt(index * Integer.BYTES, (int) value);
+            break;
+         default:
+            blockBuffer.putLong(index * Long.BYTES, value);
+            break;
+      }
+   }
+
+   static void encodeXOR(long[] values, int length, BitWriter writer)
+   {
+      long previous = values[0];
+      writer.write(previous, Long.SIZE);
+      int previousLeading = -1;
+      int previousTrailing = 0;
+
+      for (int i = 1; i < length; i++)
+      {
+         long xor = values[i] ^ previous;
+         previous = values[i];
+
+         if (xor == 0L)
+         {
+            writer.write(0L, 1);
+            continue;
+         }
+
+         int leading = Long.numberOfLeadingZeros(xor);
+         int trailing = Long.numberOfTrailingZeros(xor);
+
+         if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing)
+         {
+            // The meaningful bits fit in the previous window.
+            writer.write(0b01L, 2);
+            writer.write(xor >>> previousTrailing, Long.SIZE - previousLeading - previousTrailing);
+         }
+         else
+         {
+            int meaningfulBits = Long.SIZE - leading - trailing;
+            writer.write(0b11L, 2);
+            writer.write(leading, 6);
+            writer.write(meaningfulBits - 1, 6);
+            writer.write(xor >>> trailing, meaningfulBits);
+            previousLeading = leading;
+            previousTrailing = trailing;
+         }
+      }
+   }
+
+   static void decodeXOR(BitReader reader, long[] values, int length)
+   {
+      long previous = reader.read(Long.SIZE);
+      values[0] = previous;
+      int previousLeading = 0;
+      int previousTrailing = 0;
+
+      for (int i = 1; i < length; i++)
+      {
+         if (reader.read(1) != 0L)
+         {
+            if (reader.read(1) != 0L)
+            {
+               previousLeading = (int) reader.read(6);
+               previousTrailing = Long.SIZE - previousLeading - ((int) reader.read(6) + 1);
+            }
+
+            previous ^= reader.read(Long.SIZE - previousLeading - previousTrailing) << previousTrailing;
+         }
+
+         values[i] = previous;
+      }
+   }
+
+   static void encodeDeltaOfDelta(long[] values, int length, BitWriter writer)
+   {
+      long previous = values[0];
+      long previousDelta = 0L;
+      writer.write(previous, Long.SIZE);
+
+      for (int i = 1; i < length; i++)
+      {
+         long delta = values[i] - previous;
+         long deltaOfDelta = delta - previousDelta;
+         previous = values[i];
+         previousDelta = delta;
+
+         // Zig-zag encoding such that small negative numbers are small positive numbers.
+         long zigZag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 63);
+
+         if (zigZag == 0L)
+         {
+            writer.write(0b0L, 1);
+         }
+         else if (Long.compareUnsigned(zigZag, 1L << 7) < 0)
+         {
+            writer.write(0b01L, 2);
+            writer.write(zigZag, 7);
+         }
+         else if (Long.compareUnsigned(zigZag, 1L << 14) < 0)
+         {
+            writer.write(0b011L, 3);
+            writer.write(zigZag, 14);
+         }
+         else if (Long.compareUnsigned(zigZag, 1L << 28) < 0)
+         {
+            writer.write(0b0111L, 4);
+            writer.write(zigZag, 28);
+         }
+         else
+         {
+            writer.write(0b1111L, 4);
+            writer.write(zigZag, Long.SIZE);
+         }
+      }
+   }
+
+   static void decodeDeltaOfDelta(BitReader reader, long[] values, int length)
+   {
+      long previous = reader.read(Long.SIZE);
+      long previousDelta = 0L;
+      values[0] = previous;
+
+      for (int i = 1; i < length; i++)
+      {
+         long zigZag;
+
+         if (reader.read(1) == 0L)
+            zigZag = 0L;
+         else if (reader.read(1) == 0L)
+            zigZag = reader.read(7);
+         else if (reader.read(1) == 0L)
+            zigZag = reader.read(14);
+         else if (reader.read(1) == 0L)
+            zigZag = reader.read(28);
+         else
+            zigZag = reader.read(Long.SIZE);
+
+         long deltaOfDelta = (zigZag >>> 1) ^ -(zigZag & 1L);
+         previousDelta += deltaOfDelta;
+         previous += previousDelta;
+         values[i] = previous;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getSize()
+   {
+      return size;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public double read(int index)
+   {
+      int block = index >>> BLOCK_SHIFT;
+      int localIndex = index & BLOCK_MASK;
+
+      while (true)
+      {
+         long sequence = beginRead();
+         double value;
+         YoBufferStorage values = findWrittenBlock(block);
+
+         if (values != null)
+         {
+            value = values.read(localIndex);
+         }
+         else
+         {
+            synchronized (readerCache)
+            {
+               value = getReadBlock(block).read(localIndex);
+            }
+         }
+
+         if (validateRead(sequence))
+            return value;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void read(int startIndex, int length, double[] destination, int destinationOffset)
+   {
+      while (length > 0)
+      {
+         int segmentLength = Math.min(length, BLOCK_SIZE - (startIndex & BLOCK_MASK));
+         int block = startIndex >>> BLOCK_SHIFT;
+         int localIndex = startIndex & BLOCK_MASK;
+
+         while (true)
+         {
+            long sequence = beginRead();
+            YoBufferStorage values = findWrittenBlock(block);
+
+            if (values != null)
+            {
+               values.read(localIndex, segmentLength, destination, destinationOffset);
+            }
+            else
+            {
+               synchronized (readerCache)
+               {
+                  getReadBlock(block).read(localIndex, segmentLength, destination, destinationOffset);
+               }
+            }
+
+            if (validateRead(sequence))
+               break;
+         }
+
+         startIndex += segmentLength;
+         destinationOffset += segmentLength;
+         length -= segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean write(int index, double value)
+   {
+      beginWrite();
+      boolean changed = getWritableBlock(index >>> BLOCK_SHIFT).values.write(index & BLOCK_MASK, value);
+      endWrite();
+      return changed;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fill(int fromIndex, int toIndex, double value)
+   {
+      beginWrite();
+
+      while (fromIndex < toIndex)
+      {
+         int segmentLength = Math.min(toIndex - fromIndex, BLOCK_SIZE - (fromIndex & BLOCK_MASK));
+         int localIndex = fromIndex & BLOCK_MASK;
+         getWritableBlock(fromIndex >>> BLOCK_SHIFT).values.fill(localIndex, localIndex + segmentLength, value);
+         fromIndex += segmentLength;
+      }
+
+      endWrite();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fillWithValueAt(int valueIndex, int fromIndex, int toIndex)
+   {
+      beginWrite();
+
+      while (fromIndex < toIndex)
+      {
+         int segmentLength = Math.min(toIndex - fromIndex, BLOCK_SIZE - (fromIndex & BLOCK_MASK));
+         int localIndex = fromIndex & BLOCK_MASK;
+
+         if (valueIndex >>> BLOCK_SHIFT != fromIndex >>> BLOCK_SHIFT)
+         {
+            // Bring the value into the block first such that it is copied without conversion.
+            moveValue(valueIndex, fromIndex);
+            getWritableBlock(fromIndex >>> BLOCK_SHIFT).values.fillWithValueAt(localIndex, localIndex + 1, localIndex + segmentLength);
+         }
+         else
+         {
+            getWritableBlock(fromIndex >>> BLOCK_SHIFT).values.fillWithValueAt(valueIndex & BLOCK_MASK, localIndex, localIndex + segmentLength);
+         }
+
+         fromIndex += segmentLength;
+      }
+
+      endWrite();
+   }
+
+   /**
+    * Copies the value at {@code sourceIndex} to {@code destinationIndex} without conversion.
+    */
+   private void moveValue(int sourceIndex, int destinationIndex)
+   {
+      valueBuffer.clear();
+      getBlock(sourceIndex >>> BLOCK_SHIFT).values.exportRange(sourceIndex & BLOCK_MASK, 1, valueBuffer, 0);
+      getWritableBlock(destinationIndex >>> BLOCK_SHIFT).values.importRange(valueBuffer, 0, destinationIndex & BLOCK_MASK, 1);
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * The values are transferred using their export encoding one block at a time, any storage of a
+    * variable of the same type can be used as source.
+    * </p>
+    */
+   @Override
+   public void copy(YoBufferStorage source, int sourceIndex, int destinationIndex, int length)
+   {
+      // Backward when the regions overlap such that the values are read before being overwritten.
+      boolean backward = source == this && destinationIndex > sourceIndex;
+
+      for (int copied = 0; copied < length;)
+      {
+         int segmentLength = Math.min(BLOCK_SIZE, length - copied);
+         int offset = backward ? length - copied - segmentLength : copied;
+         copyBuffer.clear();
+         source.exportValues(sourceIndex + offset, segmentLength, copyBuffer);
+         copyBuffer.flip();
+         importValues(copyBuffer, 0, destinationIndex + offset, segmentLength);
+         copied += segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void decimate(int step, int length)
+   {
+      beginWrite();
+      for (int i = 1; i < length; i++)
+         moveValue(i * step, i);
+      endWrite();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void updateBounds(int fromIndex, int toIndex, YoBufferBounds boundsToUpdate)
+   {
+      while (fromIndex < toIndex)
+      {
+         int segmentLength = Math.min(toIndex - fromIndex, BLOCK_SIZE - (fromIndex & BLOCK_MASK));
+         int block = fromIndex >>> BLOCK_SHIFT;
+         int localIndex = fromIndex & BLOCK_MASK;
+         double lowerBound = boundsToUpdate.getLowerBound();
+         double upperBound = boundsToUpdate.getUpperBound();
+
+         while (true)
+         {
+            long sequence = beginRead();
+            YoBufferStorage values = findWrittenBlock(block);
+
+            if (values != null)
+            {
+               values.updateBounds(localIndex, localIndex + segmentLength, boundsToUpdate);
+            }
+            else
+            {
+               synchronized (readerCache)
+               {
+                  getReadBlock(block).updateBounds(localIndex, localIndex + segmentLength, boundsToUpdate);
+               }
+            }
+
+            if (validateRead(sequence))
+               break;
+            boundsToUpdate.setBounds(lowerBound, upperBound);
+         }
+
+         fromIndex += segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void exportRange(int fromIndex, int length, ByteBuffer destination, int destinationIndex)
+   {
+      while (length > 0)
+      {
+         int segmentLength = Math.min(length, BLOCK_SIZE - (fromIndex & BLOCK_MASK));
+         int block = fromIndex >>> BLOCK_SHIFT;
+         int localIndex = fromIndex & BLOCK_MASK;
+
+         while (true)
+         {
+            long sequence = beginRead();
+            YoBufferStorage values = findWrittenBlock(block);
+
+            if (values != null)
+            {
+               values.exportRange(localIndex, segmentLength, destination, destinationIndex);
+            }
+            else
+            {
+               synchronized (readerCache)
+               {
+                  getReadBlock(block).exportRange(localIndex, segmentLength, destination, destinationIndex);
+               }
+            }
+
+            if (validateRead(sequence))
+               break;
+         }
+
+         fromIndex += segmentLength;
+         destinationIndex += segmentLength;
+         length -= segmentLength;
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void importRange(ByteBuffer source, int sourceIndex, int toIndex, int length)
+   {
+      beginWrite();
+
+      while (length > 0)
+      {
+         int segmentLength = Math.min(length, BLOCK_SIZE - (toIndex & BLOCK_MASK));
+         getWritableBlock(toIndex >>> BLOCK_SHIFT).values.importRange(source, sourceIndex, toIndex & BLOCK_MASK, segmentLength);
+         sourceIndex += segmentLength;
+         toIndex += segmentLength;
+         length -= segmentLength;
+      }
+
+      endWrite();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferCompressedStorage newStorage(int size)
+   {
+      return new YoBufferCompressedStorage(variable, size);
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * The encoded blocks are immutable and shared with the duplicate.
+    * </p>
+    */
+   @Override
+   public YoBufferCompressedStorage duplicate()
+   {
+      beginWrite();
+      flush();
+      endWrite();
+      return new YoBufferCompressedStorage(this);
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * This is the number of bits used by an uncompressed value, see {@link #getMemoryUsage()} for the
+    * actual memory used.
+    * </p>
+    */
+   @Override
+   public int getBitsPerValue()
+   {
+      return cache[0].values.getBitsPerValue();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getExportBitsPerValue()
+   {
+      return exportBitsPerValue;
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * This includes the encoded blocks and the decoded blocks held in the caches. The blocks modified
+    * since they were last encoded are counted with their previous encoding.
+    * </p>
+    */
+   @Override
+   public long getMemoryUsage()
+   {
+      long memoryUsage = 0;
+      for (int i = 0; i < encodedBlocks.length; i++)
+      {
+         long[] encodedBlock = getEncodedBlock(i);
+         if (encodedBlock != null)
+            memoryUsage += (long) encodedBlock.length * Long.BYTES;
+      }
+      for (int i = 0; i < CACHE_SIZE; i++)
+         memoryUsage += cache[i].values.getMemoryUsage() + readerCache[i].values.getMemoryUsage();
+      return memoryUsage;
+   }
+
+   /** Stream of bits packed in {@code long}s starting with the least significant bit. */
+   static final class BitWriter
+   {
+      private long[] words = new long[16];
+      private long position = 0;
+
+      void reset()
+      {
+         Arrays.fill(words, 0, (int) ((position + 63) >>> 6), 0L);
+         position = 0;
+      }
+
+      /** Writes the {@code numberOfBits} least significant bits of {@code value}, in [1, 64]. */
+      void write(long value, int numberOfBits)
+      {
+         if (numberOfBits < Long.SIZE)
+            value &= (1L << numberOfBits) - 1L;
+
+         int word = (int) (position >>> 6);
+         int offset = (int) (position & 63);
+
+         if (word + 1 >= words.length)
+            words = Arrays.copyOf(words, 2 * words.length);
+
+         words[word] |= value << offset;
+         if (offset + numberOfBits > Long.SIZE)
+            words[word + 1] |= value >>> (Long.SIZE - offset);
+
+         position += numberOfBits;
+      }
+
+      long getNumberOfBits()
+      {
+         return position;
+      }
+
+      long[] toArray()
+      {
+         return Arrays.copyOf(words, (int) ((position + 63) >>> 6));
+      }
+   }
+
+   /** Reads a stream of bits written by a {@link BitWriter}. */
+   static final class BitReader
+   {
+      private final long[] words;
+      private long position = 0;
+
+      BitReader(long[] words)
+      {
+         this.words = words;
+      }
+
+      /** Reads the next {@code numberOfBits} bits, in [1, 64]. */
+      long read(int numberOfBits)
+      {
+         int word = (int) (position >>> 6);
+         int offset = (int) (position & 63);
+
+         long value = words[word] >>> offset;
+         if (offset + numberOfBits > Long.SIZE)
+            value |= words[word + 1] << (Long.SIZE - offset);
+         if (numberOfBits < Long.SIZE)
+            value &= (1L << numberOfBits) - 1L;
+
+         position += numberOfBits;
+         return value;
+      }
+   }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Storage backed by a {@code double[]}, used for {@code YoDouble}s and as the default storage.
+ * <p>
+ * The values are stored as is.
+ * </p>
+ */
+public class YoBufferDoubleStorage extends YoBufferStorage
+{
+   private final double[] data;
+   /** The number of values in use, at most {@code data.length}. */
+   private int size;
+
+   /**
+    * Creates a new storage.
+    *
+    * @param size the number of values the new storage can hold.
+    */
+   public YoBufferDoubleStorage(int size)
+   {
+      data = new double[size];
+      this.size = size;
+   }
+
+   private YoBufferDoubleStorage(double[] data)
+   {
+      this.data = data;
+      size = data.length;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getSize()
+   {
+      return size;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getCapacity()
+   {
+      return data.length;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean resize(int newSize)
+   {
+      if (newSize < 0 || newSize > data.length)
+         return false;
+      size = newSize;
+      return true;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public double read(int index)
+   {
+      checkIndex(index, size);
+      return data[index];
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void read(int startIndex, int length, double[] destination, int destinationOffset)
+   {
+      System.arraycopy(data, startIndex, destination, destinationOffset, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean write(int index, double value)
+   {
+      checkIndex(index, size);
+      double newValue = value;
+
+      if (data[index] == newValue)
+         return false;
+
+      data[index] = newValue;
+      return true;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fill(int fromIndex, int toIndex, double value)
+   {
+      double newValue = value;
+      Arrays.fill(data, fromIndex, toIndex, newValue);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void copy(YoBufferStorage source, int sourceIndex, int destinationIndex, int length)
+   {
+      System.arraycopy(((YoBufferDoubleStorage) source).data, sourceIndex, data, destinationIndex, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void decimate(int step, int length)
+   {
+      for (int i = 1; i < length; i++)
+         data[i] = data[i * step];
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void exportRange(int fromIndex, int length, ByteBuffer destination, int destinationIndex)
+   {
+      view(destination, destinationIndex * Double.BYTES).asDoubleBuffer().put(data, fromIndex, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void importRange(ByteBuffer source, int sourceIndex, int toIndex, int length)
+   {
+      view(source, sourceIndex * Double.BYTES).asDoubleBuffer().get(data, toIndex, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferDoubleStorage newStorage(int size)
+   {
+      return new YoBufferDoubleStorage(size);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferDoubleStorage duplicate()
+   {
+      return new YoBufferDoubleStorage(Arrays.copyOf(data, size));
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getBitsPerValue()
+   {
+      return Double.SIZE;
+   }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Storage backed by a {@code long[]}, used for {@code YoLong}s.
+ * <p>
+ * The values are rounded when written, as done in {@code YoLong.setValueFromDouble(double)}.
+ * </p>
+ */
+public class YoBufferLongStorage extends YoBufferStorage
+{
+   private final long[] data;
+   /** The number of values in use, at most {@code data.length}. */
+   private int size;
+
+   /**
+    * Creates a new storage.
+    *
+    * @param size the number of values the new storage can hold.
+    */
+   public YoBufferLongStorage(int size)
+   {
+      data = new long[size];
+      this.size = size;
+   }
+
+   private YoBufferLongStorage(long[] data)
+   {
+      this.data = data;
+      size = data.length;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getSize()
+   {
+      return size;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getCapacity()
+   {
+      return data.length;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean resize(int newSize)
+   {
+      if (newSize < 0 || newSize > data.length)
+         return false;
+      size = newSize;
+      return true;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public double read(int index)
+   {
+      checkIndex(index, size);
+      return data[index];
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void read(int startIndex, int length, double[] destination, int destinationOffset)
+   {
+      for (int i = 0; i < length; i++)
+         destination[destinationOffset + i] = data[startIndex + i];
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean write(int index, double value)
+   {
+      checkIndex(index, size);
+      long newValue = Math.round(value);
+
+      if (data[index] == newValue)
+         return false;
+
+      data[index] = newValue;
+      return true;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fill(int fromIndex, int toIndex, double value)
+   {
+      long newValue = Math.round(value);
+      Arrays.fill(data, fromIndex, toIndex, newValue);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fillWithValueAt(int valueIndex, int fromIndex, int toIndex)
+   {
+      Arrays.fill(data, fromIndex, toIndex, data[valueIndex]);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void copy(YoBufferStorage source, int sourceIndex, int destinationIndex, int length)
+   {
+      System.arraycopy(((YoBufferLongStorage) source).data, sourceIndex, data, destinationIndex, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void decimate(int step, int length)
+   {
+      for (int i = 1; i < length; i++)
+         data[i] = data[i * step];
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void exportRange(int fromIndex, int length, ByteBuffer destination, int destinationIndex)
+   {
+      view(destination, destinationIndex * Long.BYTES).asLongBuffer().put(data, fromIndex, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void importRange(ByteBuffer source, int sourceIndex, int toIndex, int length)
+   {
+      view(source, sourceIndex * Long.BYTES).asLongBuffer().get(data, toIndex, length);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferLongStorage newStorage(int size)
+   {
+      return new YoBufferLongStorage(size);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferLongStorage duplicate()
+   {
+      return new YoBufferLongStorage(Arrays.copyOf(data, size));
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getBitsPerValue()
+   {
+      return Long.SIZE;
+   }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Allocates the memory of native storages as slices of a single temporary file mapped into memory.
+ * <p>
+ * The file is created on the first allocation and deleted as soon as it is opened, its disk space is
+ * reclaimed by the operating system once this allocator and its storages are garbage collected. The
+ * file is mapped in segments of at least {@value #SEGMENT_BYTES} bytes, such that a large registry
+ * only costs one file descriptor and a few mappings. The slice of a storage is released when the
+ * storage is garbage collected and reused for the storages allocated afterwards, such that reshaping
+ * a buffer does not grow the file indefinitely. A reused slice is zeroed such that a new storage
+ * always starts filled with zeros, as the other storages do.
+ * </p>
+ */
+class YoBufferMappedFile implements IntFunction<ByteBuffer>
+{
+   /** Minimum number of bytes mapped at once. */
+   static final int SEGMENT_BYTES = 1 << 26;
+   /** Alignment of the slices such that the values do not straddle pages. */
+   private static final int ALIGNMENT = Long.BYTES;
+
+   private static final Cleaner CLEANER = Cleaner.create();
+
+   private final Path directory;
+   private final FileState state = new FileState();
+   /** The segment slices are currently cut from. */
+   private ByteBuffer segment = null;
+   /** The slices released by their storage, sorted by capacity. */
+   private final TreeMap<Integer, ArrayDeque<ByteBuffer>> releasedSlices = new TreeMap<>();
+
+   /**
+    * Creates a new allocator, the file is only created on the first allocation.
+    *
+    * @param directory the directory in which the temporary file is to be created.
+    */
+   YoBufferMappedFile(Path directory)
+   {
+      this.directory = directory;
+      // Closes the file once this allocator is no longer used, the mappings remain valid.
+      CLEANER.register(this, state);
+   }
+
+   /**
+    * Allocates a buffer of the given capacity.
+    *
+    * @param capacity the capacity in bytes of the new buffer.
+    * @return the new buffer.
+    */
+   @Override
+   public synchronized ByteBuffer apply(int capacity)
+   {
+      int alignedCapacity = Math.max(ALIGNMENT, (capacity + ALIGNMENT - 1) & -ALIGNMENT);
+      ByteBuffer slice = reuseSlice(alignedCapacity);
+
+      if (slice == null)
+         slice = newSlice(alignedCapacity);
+      else
+         zero(slice, capacity);
+
+      // The storage gets a view of the slice, the slice itself is released once the view is garbage collected.
+      ByteBuffer view = slice.duplicate();
+      view.limit(capacity);
+      ByteBuffer releasedSlice = slice;
+      CLEANER.register(view, () -> release(releasedSlice));
+      return view;
+   }
+
+   private ByteBuffer reuseSlice(int capacity)
+   {
+      Entry<Integer, ArrayDeque<ByteBuffer>> entry = releasedSlices.ceilingEntry(capacity);
+
+      // Limits the memory wasted by reusing a slice much larger than needed.
+      if (entry == null || entry.getKey() > 2 * capacity)
+         return null;
+
+      ByteBuffer slice = entry.getValue().poll();
+      if (entry.getValue().isEmpty())
+         releasedSlices.remove(entry.getKey());
+      return slice;
+   }
+
+   /**
+    * Zeroes the first {@code capacity} bytes of a slice released by another storage.
+    */
+   private static void zero(ByteBuffer slice, int capacity)
+   {
+      ByteBuffer zeroed = slice.duplicate();
+      zeroed.limit(capacity);
+
+      while (zeroed.remaining() >= Long.BYTES)
+         zeroed.putLong(0L);
+      while (zeroed.hasRemaining())
+         zeroed.put((byte) 0);
+   }
+
+   private ByteBuffer newSlice(int capacity)
+   {
+      if (segment == null || segment.remaining() < capacity)
+         segment = state.map(Math.max(SEGMENT_BYTES, capacity), directory);
+
+      ByteBuffer slice = segment.slice();
+      slice.limit(capacity);
+      segment.position(segment.position() + capacity);
+      return slice.slice();
+   }
+
+   private synchronized void release(ByteBuffer slice)
+   {
+      releasedSlices.computeIfAbsent(slice.capacity(), key -> new ArrayDeque<>()).add(slice);
+   }
+
+   /**
+    * Returns the number of slices released by their storage and not reused yet.
+    *
+    * @return the number of released slices.
+    */
+   synchronized int getNumberOfReleasedSlices()
+   {
+      int numberOfReleasedSlices = 0;
+      for (ArrayDeque<ByteBuffer> slices : releasedSlices.values())
+         numberOfReleasedSlices += slices.size();
+      return numberOfReleasedSlices;
+   }
+
+   /**
+    * The open file, held separately from the allocator such that it can be closed once the allocator
+    * is garbage collected.
+    */
+   private static class FileState implements Runnable
+   {
+      private FileChannel channel;
+      private long length = 0;
+
+      private synchronized MappedByteBuffer map(int capacity, Path directory)
+      {
+         try
+         {
+            if (channel == null)
+            {
+               Path file = Files.createTempFile(directory, "yoBuffer", ".bin");
+
+               try
+               {
+                  channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+               }
+               finally
+               {
+                  if (channel == null)
+                     Files.deleteIfExists(file);
+               }
+
+               try
+               { // Removes the file right away where the file system allows it, it is otherwise deleted when closed.
+                  Files.deleteIfExists(file);
+               }
+               catch (IOException e)
+               {
+                  // Deleted on close.
+               }
+            }
+
+            MappedByteBuffer mapped = channel.map(MapMode.READ_WRITE, length, capacity);
+            length += capacity;
+            return mapped;
+         }
+         catch (IOException e)
+         {
+            throw new UncheckedIOException("Could not map a buffer of " + capacity + " bytes in " + directory, e);
+         }
+      }
+
+      @Override
+      public synchronized void run()
+      {
+         if (channel == null)
+            return;
+
+         try
+         {
+            channel.close();
+         }
+         catch (IOException e)
+         {
+            // Nothing left to do, the mappings are released when garbage collected.
+         }
+         channel = null;
+      }
+   }
+}
@@ -0,0 +1,438 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntFunction;
+
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Storage backed by a {@link ByteBuffer}, typically allocated in direct memory or mapped from a
+ * file.
+ * <p>
+ * The values are encoded according to a {@link NativeType} and converted when written the same way
+ * as done by the corresponding heap storage. All the copies between two native storages are done
+ * buffer to buffer, such that reshaping a native storage does not go through the heap.
+ * </p>
+ *
+ * @see YoBufferStorageFactory#offHeap()
+ * @see YoBufferStorageFactory#memoryMapped(java.nio.file.Path)
+ */
+public class YoBufferNativeStorage extends YoBufferStorage
+{
+   /**
+    * The encoding of the values in a {@link YoBufferNativeStorage}.
+    */
+   public enum NativeType
+   {
+      /** One byte per value, {@code 1} if the value is greater or equal to {@code 0.5}. */
+      BOOLEAN(Byte.BYTES),
+      /** One byte per value, the value is rounded. */
+      BYTE(Byte.BYTES),
+      /** Two bytes per value, the value is rounded. */
+      SHORT(Short.BYTES),
+      /** Four bytes per value, the value is rounded. */
+      INT(Integer.BYTES),
+      /** Eight bytes per value, the value is rounded. */
+      LONG(Long.BYTES),
+      /** Eight bytes per value, the value is stored as is. */
+      DOUBLE(Double.BYTES);
+
+      private final int bytes;
+
+      NativeType(int bytes)
+      {
+         this.bytes = bytes;
+      }
+
+      /**
+       * Returns the number of bytes used to store one value.
+       *
+       * @return the number of bytes per value.
+       */
+      public int getBytes()
+      {
+         return bytes;
+      }
+
+      /**
+       * Returns the most compact type for storing the values of the given variable.
+       *
+       * @param variable the variable which history is to be stored.
+       * @return the native type to use.
+       */
+      public static NativeType forVariable(YoVariable variable)
+      {
+         switch (variable.getType())
+         {
+            case BOOLEAN:
+               return BOOLEAN;
+            case ENUM:
+               int enumSize = ((YoEnum<?>) variable).getEnumSize();
+               if (enumSize <= Byte.MAX_VALUE)
+                  return BYTE;
+               else if (enumSize <= Short.MAX_VALUE)
+                  return SHORT;
+               else
+                  return INT;
+            case INTEGER:
+               return INT;
+            case LONG:
+               return LONG;
+            default:
+               return DOUBLE;
+         }
+      }
+   }
+
+   private static final int SMALL_COPY_BYTES = 64;
+
+   private final NativeType type;
+   private final int size;
+   private final ByteBuffer buffer;
+   private final IntFunction<? extends ByteBuffer> allocator;
+
+   /**
+    * Creates a new storage.
+    *
+    * @param type      the encoding of the values.
+    * @param size      the number of values the new storage can hold.
+    * @param allocator the function used to allocate a {@code ByteBuffer} given its capacity in bytes.
+    *                  It is also used to allocate the storages created with {@link #newStorage(int)}
+    *                  and {@link #duplicate()}.
+    * @throws IllegalArgumentException if the storage would require more than
+    *                                  {@value Integer#MAX_VALUE} bytes.
+    */
+   public YoBufferNativeStorage(NativeType type, int size, IntFunction<? extends ByteBuffer> allocator)
+   {
+      long capacity = (long) size * type.getBytes();
+      if (capacity > Integer.MAX_VALUE)
+         throw new IllegalArgumentException("Cannot allocate a native storage of " + capacity + " bytes, maximum is " + Integer.MAX_VALUE + " bytes.");
+
+      this.type = type;
+      this.size = size;
+      this.allocator = allocator;
+      buffer = allocator.apply((int) capacity).order(ByteOrder.nativeOrder());
+   }
+
+   /**
+    * Returns the encoding of the values in this storage.
+    *
+    * @return the native type.
+    */
+   public NativeType getType()
+   {
+      return type;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getSize()
+   {
+      return size;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public double read(int index)
+   {
+      checkIndex(index);
+
+      switch (type)
+      {
+         case BOOLEAN:
+         case BYTE:
+            return buffer.get(index);
+         case SHORT:
+            return buffer.getShort(index << 1);
+         case INT:
+            return buffer.getInt(index << 2);
+         case LONG:
+            return buffer.getLong(index << 3);
+         default:
+            return buffer.getDouble(index << 3);
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean write(int index, double value)
+   {
+      checkIndex(index);
+
+      switch (type)
+      {
+         case BOOLEAN:
+            return putByte(index, (byte) (value >= 0.5 ? 1 : 0));
+         case BYTE:
+            return putByte(index, (byte) clamp(Math.round(value), Byte.MIN_VALUE, Byte.MAX_VALUE));
+         case SHORT:
+         {
+            short newValue = (short) clamp(Math.round(value), Short.MIN_VALUE, Short.MAX_VALUE);
+            if (buffer.getShort(index << 1) == newValue)
+               return false;
+            buffer.putShort(index << 1, newValue);
+            return true;
+         }
+         case INT:
+         {
+            int newValue = (int) Math.round(value);
+            if (buffer.getInt(index << 2) == newValue)
+               return false;
+            buffer.putInt(index << 2, newValue);
+            return true;
+         }
+         case LONG:
+         {
+            long newValue = Math.round(value);
+            if (buffer.getLong(index << 3) == newValue)
+               return false;
+            buffer.putLong(index << 3, newValue);
+            return true;
+         }
+         default:
+         {
+            if (buffer.getDouble(index << 3) == value)
+               return false;
+            buffer.putDouble(index << 3, value);
+            return true;
+         }
+      }
+   }
+
+   private boolean putByte(int index, byte newValue)
+   {
+      if (buffer.get(index) == newValue)
+         return false;
+      buffer.put(index, newValue);
+      return true;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public void fillWithValueAt(int valueIndex, int fromIndex, int toIndex)
+   {
+      if (type != NativeType.LONG)
+      {
+         super.fillWithValueAt(valueIndex, fromIndex, toIndex);
+         return;
+      }
+
+      checkIndex(valueIndex);
+      if (fromIndex < toIndex)
+      {
+         checkIndex(fromIndex);
+         checkIndex(toIndex - 1);
+      }
+
+      long value = buffer.getLong(valueIndex << 3);
+      for (int i = fromIndex; i < toIndex; i++)
+         buffer.putLong(i << 3, value);
+   }
+
+   private void checkIndex(int index)
+   {
+      // The ByteBuffer only checks the byte index against its capacity.
+      checkIndex(index, size);
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * The copy is done directly between the two underlying {@code ByteBuffer}s.
+    * </p>
+    */
+   @Override
+   public void copy(YoBufferStorage source, int sourceIndex, int destinationIndex, int length)
+   {
+      if (length <= 0)
+         return;
+
+      YoBufferNativeStorage other = (YoBufferNativeStorage) source;
+      if (other.type != type)
+         throw new IllegalArgumentException("Incompatible storage types: " + other.type + ", expected: " + type);
+      if (sourceIndex < 0 || sourceIndex + length > other.size || destinationIndex < 0 || destinationIndex + length > size)
+         throw new IndexOutOfBoundsException("Cannot copy " + length + " values from " + sourceIndex + " to " + destinationIndex);
+
+      int bytes = type.getBytes();
+
+      if (other == this && Math.abs(destinationIndex - sourceIndex) < length)
+      { // Overlapping regions, copy chunks that do not overlap in an order that preserves the source.
+         int chunkLength = Math.abs(destinationIndex - sourceIndex);
+         if (chunkLength == 0)
+            return;
+
+         if (destinationIndex < sourceIndex)
+         {
+            for (int offset = 0; offset < length; offset += chunkLength)
+               copyBytes(buffer, (sourceIndex + offset) * bytes, (destinationIndex + offset) * bytes, Math.min(chunkLength, length - offset) * bytes);
+         }
+         else
+         {
+            for (int end = length; end > 0; end -= chunkLength)
+            {
+               int start = Math.max(0, end - chunkLength);
+               copyBytes(buffer, (sourceIndex + start) * bytes, (destinationIndex + start) * bytes, (end - start) * bytes);
+            }
+         }
+      }
+      else
+      {
+         copyBytes(other.buffer, sourceIndex * bytes, destinationIndex * bytes, length * bytes);
+      }
+   }
+
+   private void copyBytes(ByteBuffer sourceBuffer, int sourceOffset, int destinationOffset, int length)
+   {
+      if (length <= SMALL_COPY_BYTES)
+      { // Avoids creating views for copying a few values, e.g. when thinning the data.
+         for (int i = 0; i < length; i++)
+            buffer.put(destinationOffset + i, sourceBuffer.get(sourceOffset + i));
+         return;
+      }
+
+      ByteBuffer sourceView = sourceBuffer.duplicate();
+      sourceView.limit(sourceOffset + length).position(sourceOffset);
+      ByteBuffer destinationView = buffer.duplicate();
+      destinationView.position(destinationOffset);
+      destinationView.put(sourceView);
+   }
+
+   /**
+    * {@inheritDoc}
+    * <p>
+    * Booleans are exported one per bit, consistently with {@link YoBufferBitStorage}.
+    * </p>
+    */
+   @Override
+   public int getExportBitsPerValue()
+   {
+      return type == NativeType.BOOLEAN ? 1 : getBitsPerValue();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void exportRange(int fromIndex, int length, ByteBuffer destination, int destinationIndex)
+   {
+      if (type == NativeType.BOOLEAN)
+      {
+         for (int i = 0; i < length; i++)
+            putBit(destination, destinationIndex + i, buffer.get(fromIndex + i) != 0);
+         return;
+      }
+
+      int bytes = type.getBytes();
+
+      if (bytes == 1 || destination.order() == buffer.order())
+      { // Same encoding, copy the bytes as is.
+         ByteBuffer sourceView = buffer.duplicate();
+         sourceView.limit((fromIndex + length) * bytes).position(fromIndex * bytes);
+         view(destination, destinationIndex * bytes).put(sourceView);
+         return;
+      }
+
+      ByteBuffer destinationView = view(destination, destinationIndex * bytes);
+
+      for (int i = fromIndex; i < fromIndex + length; i++)
+      {
+         switch (type)
+         {
+            case SHORT:
+               destinationView.putShort(buffer.getShort(i << 1));
+               break;
+            case INT:
+               destinationView.putInt(buffer.getInt(i << 2));
+               break;
+            default:
+               destinationView.putLong(buffer.getLong(i << 3));
+               break;
+         }
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   protected void importRange(ByteBuffer source, int sourceIndex, int toIndex, int length)
+   {
+      if (type == NativeType.BOOLEAN)
+      {
+         for (int i = 0; i < length; i++)
+            buffer.put(toIndex + i, (byte) (getBit(source, sourceIndex + i) ? 1 : 0));
+         return;
+      }
+
+      int bytes = type.getBytes();
+      ByteBuffer sourceView = view(source, sourceIndex * bytes);
+
+      if (bytes == 1 || source.order() == buffer.order())
+      { // Same encoding, copy the bytes as is.
+         sourceView.limit(sourceView.position() + length * bytes);
+         ByteBuffer destinationView = buffer.duplicate();
+         destinationView.position(toIndex * bytes);
+         destinationView.put(sourceView);
+         return;
+      }
+
+      for (int i = toIndex; i < toIndex + length; i++)
+      {
+         switch (type)
+         {
+            case SHORT:
+               buffer.putShort(i << 1, sourceView.getShort());
+               break;
+            case INT:
+               buffer.putInt(i << 2, sourceView.getInt());
+               break;
+            default:
+               buffer.putLong(i << 3, sourceView.getLong());
+               break;
+         }
+      }
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferNativeStorage newStorage(int size)
+   {
+      return new YoBufferNativeStorage(type, size, allocator);
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public YoBufferNativeStorage duplicate()
+   {
+      YoBufferNativeStorage duplicate = newStorage(size);
+      duplicate.copy(this, 0, 0, size);
+      return duplicate;
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public int getBitsPerValue()
+   {
+      return Byte.SIZE * type.getBytes();
+   }
+
+   /** {@inheritDoc} */
+   @Override
+   public boolean isDirect()
+   {
+      return buffer.isDirect();
+   }
+}
@@ -0,0 +1,553 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.nio.ByteBuffer;
+
+import us.ihmc.yoVariables.buffer.YoBufferBounds;
+import us.ihmc.yoVariables.buffer.YoBufferVariableEntry;
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoVariable;
+import us.ihmc.yoVariables.variable.YoVariableType;
+
+/**
+ * {@code YoBufferStorage} is the fixed-size column in which a {@link YoBufferVariableEntry} stores
+ * the history of its variable.
+ * <p>
+ * The values are exchanged as {@code double}s, consistently with
+ * {@link YoVariable#getValueAsDouble()}, but each implementation is free to store them using the
+ * smallest representation that can hold the values of a given {@link YoVariableType}. When a
+ * value is written, it is converted the same way the corresponding {@code YoVariable} would convert
+ * it in {@link YoVariable#setValueFromDouble(double)}.
+ * </p>
+ * <p>
+ * The values can also be transferred without conversion to and from a {@link ByteBuffer} with
+ * {@link #exportValues(int, int, ByteBuffer)} and {@link #importValues(ByteBuffer, int, int, int)}.
+ * The encoding only depends on the type of the variable and not on the storage implementation: one
+ * bit per value for booleans packed starting with the least significant bit, the two's complement
+ * integer or IEEE 754 representation otherwise, in the byte order of the {@code ByteBuffer}.
+ * </p>
+ */
+public abstract class YoBufferStorage
+{
+   /**
+    * Creates a new storage of the given size that is best suited for storing the history of the given
+    * variable.
+    * <ul>
+    * <li>{@link YoVariableType#BOOLEAN}: one bit per value, see {@link YoBufferBitStorage}.
+    * <li>{@link YoVariableType#ENUM}: one byte or two bytes per value depending on the number of enum
+    * constants, see {@link YoBufferByteStorage} and {@link YoBufferShortStorage}.
+    * <li>{@link YoVariableType#INTEGER}: see {@link YoBufferIntStorage}.
+    * <li>{@link YoVariableType#LONG}: see {@link YoBufferLongStorage}.
+    * <li>{@link YoVariableType#DOUBLE}: see {@link YoBufferDoubleStorage}.
+    * </ul>
+    *
+    * @param variable the variable which history is to be stored.
+    * @param size     the number of values the new storage can hold.
+    * @return the new storage.
+    */
+   public static YoBufferStorage newStorage(YoVariable variable, int size)
+   {
+      switch (variable.getType())
+      {
+         case BOOLEAN:
+            return new YoBufferBitStorage(size);
+         case ENUM:
+            int enumSize = ((YoEnum<?>) variable).getEnumSize();
+            if (enumSize <= Byte.MAX_VALUE)
+               return new YoBufferByteStorage(size);
+            else if (enumSize <= Short.MAX_VALUE)
+               return new YoBufferShortStorage(size);
+            else
+               return new YoBufferIntStorage(size);
+         case INTEGER:
+            return new YoBufferIntStorage(size);
+         case LONG:
+            return new YoBufferLongStorage(size);
+         default:
+            return new YoBufferDoubleStorage(size);
+      }
+   }
+
+   /**
+    * Returns the number of bits per value of the storage created with
+    * {@link #newStorage(YoVariable, int)} for the given variable, without creating it.
+    *
+    * @param variable the variable which history is to be stored.
+    * @return the number of bits per value, see {@link #getBitsPerValue()}.
+    */
+   public static int getBitsPerValue(YoVariable variable)
+   {
+      switch (variable.getType())
+      {
+         case BOOLEAN:
+            return 1;
+         case ENUM:
+            int enumSize = ((YoEnum<?>) variable).getEnumSize();
+            if (enumSize <= Byte.MAX_VALUE)
+               return Byte.SIZE;
+            else if (enumSize <= Short.MAX_VALUE)
+               return Short.SIZE;
+            else
+               return Integer.SIZE;
+         case INTEGER:
+            return Integer.SIZE;
+         case LONG:
+            return Long.SIZE;
+         default:
+            return Double.SIZE;
+      }
+   }
+
+   /**
+    * Returns the number of values this storage can hold.
+    *
+    * @return the size of this storage.
+    */
+   public abstract int getSize();
+
+   /**
+    * Reads the value stored at the given index.
+    *
+    * @param index the index to read at.
+    * @return the value stored at {@code index}.
+    * @throws IndexOutOfBoundsException if {@code index} is not in [0, {@link #getSize()}[.
+    */
+   public abstract double read(int index);
+
+   /**
+    * Converts and writes the given value at the given index.
+    *
+    * @param index the index to write at.
+    * @param value the value to store.
+    * @return {@code true} if the value stored at {@code index} changed, {@code false} otherwise.
+    * @throws IndexOutOfBoundsException if {@code index} is not in [0, {@link #getSize()}[.
+    */
+   public abstract boolean write(int index, double value);
+
+   /**
+    * Reads a series of consecutive values.
+    * <p>
+    * Storages that can be resized in place implement this method against their capacity rather than
+    * their size, such that a concurrent reader that checked the range beforehand does not fail if the
+    * storage is shrunk in the middle of the read, see {@link #resize(int)}.
+    * </p>
+    *
+    * @param startIndex        the index of the first value to read.
+    * @param length            the number of values to read.
+    * @param destination       the array in which the values are to be stored. Modified.
+    * @param destinationOffset the index in {@code destination} where the first value is stored.
+    */
+   public void read(int startIndex, int length, double[] destination, int destinationOffset)
+   {
+      for (int i = 0; i < length; i++)
+         destination[destinationOffset + i] = read(startIndex + i);
+   }
+
+   /**
+    * Writes the given value at each index in [{@code fromIndex}, {@code toIndex}[.
+    *
+    * @param fromIndex the first index (inclusive) to write at.
+    * @param toIndex   the last index (exclusive) to write at.
+    * @param value     the value to store.
+    */
+   public void fill(int fromIndex, int toIndex, double value)
+   {
+      for (int i = fromIndex; i < toIndex; i++)
+         write(i, value);
+   }
+
+   /**
+    * Copies the value stored at {@code valueIndex} at each index in [{@code fromIndex},
+    * {@code toIndex}[.
+    * <p>
+    * Unlike {@code fill(fromIndex, toIndex, read(valueIndex))}, this method does not lose precision
+    * on values that cannot be exactly represented as a {@code double}.
+    * </p>
+    *
+    * @param valueIndex the index of the value to copy. Should not be in [{@code fromIndex},
+    *                   {@code toIndex}[.
+    * @param fromIndex  the first index (inclusive) to write at.
+    * @param toIndex    the last index (exclusive) to write at.
+    */
+   public void fillWithValueAt(int valueIndex, int fromIndex, int toIndex)
+   {
+      fill(fromIndex, toIndex, read(valueIndex));
+   }
+
+   /**
+    * Copies a series of values from the given storage into this storage.
+    * <p>
+    * The source and destination regions may overlap when {@code source == this}.
+    * </p>
+    *
+    * @param source           the storage to copy the values from. Must have been created with
+    *                         {@link #newStorage(int)} or {@link #duplicate()} from a storage of the
+    *                         same implementation as {@code this}. Not modified if
+    *                         {@code source != this}.
+    * @param sourceIndex      the index of the first value to copy from {@code source}.
+    * @param destinationIndex the index in this storage where the first value is copied to.
+    * @param length           the number of values to copy.
+    */
+   public abstract void copy(YoBufferStorage source, int sourceIndex, int destinationIndex, int length);
+
+   /**
+    * Copies a series of values from any storage into this storage one value at a time, the values are
+    * converted as by {@link #write(int, double)}.
+    * <p>
+    * This is the fallback for {@link #copy(YoBufferStorage, int, int, int)} when the source is of a
+    * different implementation. The source and destination regions may overlap when
+    * {@code source == this}.
+    * </p>
+    *
+    * @param source           the storage to copy the values from. Not modified if
+    *                         {@code source != this}.
+    * @param sourceIndex      the index of the first value to copy from {@code source}.
+    * @param destinationIndex the index in this storage where the first value is copied to.
+    * @param length           the number of values to copy.
+    */
+   protected void copyValues(YoBufferStorage source, int sourceIndex, int destinationIndex, int length)
+   {
+      if (source == this && sourceIndex < destinationIndex)
+      {
+         for (int i = length - 1; i >= 0; i--)
+            write(destinationIndex + i, source.read(sourceIndex + i));
+      }
+      else
+      {
+         for (int i = 0; i < length; i++)
+            write(destinationIndex + i, source.read(sourceIndex + i));
+      }
+   }
+
+   /**
+    * Moves the values at the indices {@code 0, step, 2 * step, ...} to the indices
+    * {@code 0, 1, 2, ...}.
+    *
+    * @param step   the spacing between the values to keep.
+    * @param length the number of values to keep, {@code (length - 1) * step} should be less than the
+    *               size of this storage.
+    */
+   public void decimate(int step, int length)
+   {
+      for (int i = 1; i < length; i++)
+         copy(this, i * step, i, 1);
+   }
+
+   /**
+    * Rotates the values of this storage such that the value at {@code distance} ends up at
+    * {@code 0}.
+    * <p>
+    * The rotation is done in place with a temporary storage holding at most half of the values.
+    * </p>
+    *
+    * @param distance the index of the value to move to {@code 0}, should be in [{@code 0},
+    *                 {@code getSize()}[.
+    */
+   public void rotate(int distance)
+   {
+      int size = getSize();
+      if (distance <= 0 || distance >= size)
+         return;
+
+      int headLength = distance;
+      int tailLength = size - distance;
+
+      if (headLength <= tailLength)
+      {
+         YoBufferStorage head = newStorage(headLength);
+         head.copy(this, 0, 0, headLength);
+         copy(this, distance, 0, tailLength);
+         copy(head, 0, tailLength, headLength);
+      }
+      else
+      {
+         YoBufferStorage tail = newStorage(tailLength);
+         tail.copy(this, distance, 0, tailLength);
+         copy(this, 0, tailLength, headLength);
+         copy(tail, 0, 0, tailLength);
+      }
+   }
+
+   /**
+    * Returns the number of values this storage can hold without allocating memory, see
+    * {@link #resize(int)}.
+    *
+    * @return the capacity of this storage.
+    */
+   public int getCapacity()
+   {
+      return getSize();
+   }
+
+   /**
+    * Changes the size of this storage without allocating memory.
+    * <p>
+    * The values in [{@code 0}, {@code min(getSize(), newSize)}[ are preserved, the values past the
+    * previous size are undefined.
+    * </p>
+    *
+    * @param newSize the new size, it can be at most {@link #getCapacity()}.
+    * @return {@code true} if the storage was resized, {@code false} if it does not support the new
+    *         size in which case it is not modified.
+    */
+   public boolean resize(int newSize)
+   {
+      return newSize == getSize();
+   }
+
+   /**
+    * Updates the given bounds to contain each value stored in [{@code fromIndex}, {@code toIndex}[.
+    *
+    * @param fromIndex      the first index (inclusive) of the values to consider.
+    * @param toIndex        the last index (exclusive) of the values to consider.
+    * @param boundsToUpdate the bounds to update. Modified.
+    * @see YoBufferBounds#update(double)
+    */
+   public void updateBounds(int fromIndex, int toIndex, YoBufferBounds boundsToUpdate)
+   {
+      for (int i = fromIndex; i < toIndex; i++)
+         boundsToUpdate.update(read(i));
+   }
+
+   /**
+    * Creates a new empty storage of the same implementation as this storage.
+    *
+    * @param size the number of values the new storage can hold.
+    * @return the new storage.
+    */
+   public abstract YoBufferStorage newStorage(int size);
+
+   /**
+    * Creates a deep copy of this storage.
+    *
+    * @return the copy.
+    */
+   public abstract YoBufferStorage duplicate();
+
+   /**
+    * Returns the number of bits used to store one value.
+    *
+    * @return the number of bits per value.
+    */
+   public abstract int getBitsPerValue();
+
+   /**
+    * Indicates whether the values of this storage live outside the Java heap, for instance in direct
+    * memory or in a memory-mapped file.
+    * <p>
+    * Accessing such a storage may page memory in from the disk, such that it is not processed on
+    * shared thread pools, see {@link us.ihmc.yoVariables.buffer.YoBuffer#setReshapePool}.
+    * </p>
+    *
+    * @return {@code true} if the values are stored outside the Java heap.
+    */
+   public boolean isDirect()
+   {
+      return false;
+   }
+
+   /**
+    * Releases the resources held by this storage before it is garbage collected, for instance the
+    * chunks it shares with other storages. The storage should not be used afterwards.
+    * <p>
+    * Calling this method is optional, the storages release their resources when they are garbage
+    * collected.
+    * </p>
+    */
+   public void release()
+   {
+   }
+
+   /**
+    * Returns an estimate of the number of bytes used by the values of this storage.
+    *
+    * @return the memory used by this storage in bytes.
+    */
+   public long getMemoryUsage()
+   {
+      return ((long) getCapacity() * getBitsPerValue() + 7) >>> 3;
+   }
+
+   /**
+    * Returns the number of bits used to encode one value with
+    * {@link #exportValues(int, int, ByteBuffer)}.
+    *
+    * @return the number of bits per exported value.
+    */
+   public int getExportBitsPerValue()
+   {
+      return getBitsPerValue();
+   }
+
+   /**
+    * Returns the number of bytes used to encode the given number of values with
+    * {@link #exportValues(int, int, ByteBuffer)}.
+    *
+    * @param length the number of values.
+    * @return the number of bytes.
+    */
+   public int getExportSize(int length)
+   {
+      return (int) (((long) length * getExportBitsPerValue() + 7) >>> 3);
+   }
+
+   /**
+    * Encodes a series of consecutive values into the given buffer.
+    * <p>
+    * The series wraps around the end of this storage when {@code fromIndex + length} exceeds its
+    * size. The {@link #getExportSize(int)} bytes are written starting at the position of
+    * {@code destination} which is then advanced.
+    * </p>
+    *
+    * @param fromIndex   the index of the first value to export.
+    * @param length      the number of values to export.
+    * @param destination the buffer in which the values are encoded. Modified.
+    * @throws IndexOutOfBoundsException if {@code fromIndex} or {@code length} are outside this
+    *                                   storage.
+    */
+   public void exportValues(int fromIndex, int length, ByteBuffer destination)
+   {
+      checkSeries(fromIndex, length);
+      int firstLength = Math.min(length, getSize() - fromIndex);
+      exportRange(fromIndex, firstLength, destination, 0);
+      if (firstLength < length)
+         exportRange(0, length - firstLength, destination, firstLength);
+      destination.position(destination.position() + getExportSize(length));
+   }
+
+   /**
+    * Decodes a series of values previously encoded with {@link #exportValues(int, int, ByteBuffer)}.
+    * <p>
+    * The encoded series starts at the position of {@code source}, the values of the series in
+    * [{@code sourceIndex}, {@code sourceIndex + length}[ are stored in this storage starting at
+    * {@code toIndex}, wrapping around its end if needed. The position of {@code source} is not
+    * modified.
+    * </p>
+    *
+    * @param source      the buffer holding the encoded series. Not modified.
+    * @param sourceIndex the index in the encoded series of the first value to import.
+    * @param toIndex     the index in this storage where the first value is stored.
+    * @param length      the number of values to import.
+    * @throws IndexOutOfBoundsException if {@code toIndex} or {@code length} are outside this storage.
+    */
+   public void importValues(ByteBuffer source, int sourceIndex, int toIndex, int length)
+   {
+      checkSeries(toIndex, length);
+      int firstLength = Math.min(length, getSize() - toIndex);
+      importRange(source, sourceIndex, toIndex, firstLength);
+      if (firstLength < length)
+         importRange(source, sourceIndex + firstLength, 0, length - firstLength);
+   }
+
+   private void checkSeries(int startIndex, int length)
+   {
+      if (length == 0)
+         return;
+      if (startIndex < 0 || startIndex >= getSize())
+         throw new IndexOutOfBoundsException("Index " + startIndex + " out of bounds for length " + getSize());
+      if (length < 0 || length > getSize())
+         throw new IndexOutOfBoundsException("Length " + length + " out of bounds for length " + getSize());
+   }
+
+   /**
+    * Encodes the values in [{@code fromIndex}, {@code fromIndex + length}[ at the given index of the
+    * series starting at the position of {@code destination}.
+    *
+    * @param fromIndex        the index of the first value to export, the range does not wrap.
+    * @param length           the number of values to export.
+    * @param destination      the buffer in which the values are encoded, its position should not be
+    *                         modified. Modified.
+    * @param destinationIndex the index in the encoded series of the first value.
+    */
+   protected abstract void exportRange(int fromIndex, int length, ByteBuffer destination, int destinationIndex);
+
+   /**
+    * Decodes the values of the series starting at the position of {@code source} in
+    * [{@code sourceIndex}, {@code sourceIndex + length}[ and stores them starting at {@code toIndex}.
+    *
+    * @param source      the buffer holding the encoded series, its position should not be modified.
+    *                    Not modified.
+    * @param sourceIndex the index in the encoded series of the first value to import.
+    * @param toIndex     the index of the first value to store, the range does not wrap.
+    * @param length      the number of values to import.
+    */
+   protected abstract void importRange(ByteBuffer source, int sourceIndex, int toIndex, int length);
+
+   /**
+    * Creates a view of the given buffer starting at the given offset from its position, with the
+    * same byte order.
+    *
+    * @param buffer     the original buffer.
+    * @param byteOffset the offset in bytes with respect to the position of {@code buffer}.
+    * @return the view.
+    */
+   protected static ByteBuffer view(ByteBuffer buffer, int byteOffset)
+   {
+      ByteBuffer view = buffer.duplicate().order(buffer.order());
+      view.position(buffer.position() + byteOffset);
+      return view;
+   }
+
+   /**
+    * Reads a bit from the series of bits starting at the position of the given buffer.
+    *
+    * @param buffer   the buffer holding the series. Not modified.
+    * @param bitIndex the index of the bit in the series.
+    * @return the value of the bit.
+    */
+   protected static boolean getBit(ByteBuffer buffer, int bitIndex)
+   {
+      return (buffer.get(buffer.position() + (bitIndex >>> 3)) & (1 << (bitIndex & 7))) != 0;
+   }
+
+   /**
+    * Writes a bit into the series of bits starting at the position of the given buffer.
+    *
+    * @param buffer   the buffer holding the series. Modified.
+    * @param bitIndex the index of the bit in the series.
+    * @param value    the value of the bit.
+    */
+   protected static void putBit(ByteBuffer buffer, int bitIndex, boolean value)
+   {
+      int index = buffer.position() + (bitIndex >>> 3);
+      int mask = 1 << (bitIndex & 7);
+      int current = buffer.get(index);
+      buffer.put(index, (byte) (value ? current | mask : current & ~mask));
+   }
+
+   /**
+    * Checks that the given index is in [0, {@code size}[.
+    * <p>
+    * Storages resized in place keep their backing memory, which would otherwise let reads and writes
+    * past the logical end go through.
+    * </p>
+    *
+    * @param index the index to check.
+    * @param size  the size of the storage.
+    * @throws IndexOutOfBoundsException if {@code index} is out of bounds.
+    */
+   protected static void checkIndex(int index, int size)
+   {
+      if (index < 0 || index >= size)
+         throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+   }
+
+   static long clamp(long value, long min, long max)
+   {
+      return Math.max(min, Math.min(max, value));
+   }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.buffer.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import us.ihmc.yoVariables.buffer.YoBuffer;
+import us.ihmc.yoVariables.buffer.YoBufferVariableEntry;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+/**
+ * Factory used by {@link YoBufferVariableEntry} to create the storage for the history of its
+ * variable.
+ * <p>
+ * The factory determines where the buffer data lives:
+ * <ul>
+ * <li>{@link #heap()}: in Java arrays, this is the default.
+ * <li>{@link #offHeap()}: in direct memory, such that large buffers do not count towards the heap
+ * size and are not scanned by the garbage collector.
+ * <li>{@link #memoryMapped(Path)}: in a temporary file mapped into memory, such that the buffer
+ * capacity is bounded by the disk and page cache rather than the available memory.
+ * <li>{@link #copyOnWrite(YoBufferStorageFactory)}: in chunks created by another factory, which are
+ * shared between a buffer and its copies until modified.
+ * <li>{@link #compressed()}: in compressed blocks in Java arrays, such that long recordings of
+ * slowly varying variables fit in a fraction of the memory.
+ * </ul>
+ * </p>
+ *
+ * @see YoBuffer#YoBuffer(int, YoBufferStorageFactory)
+ */
+public interface YoBufferStorageFactory
+{
+   /**
+    * Creates a new storage that can hold the history of the given variable.
+    *
+    * @param variable the variable which history is to be stored.
+    * @param size     the number of values the new storage can hold.
+    * @return the new storage.
+    */
+   YoBufferStorage newStorage(YoVariable variable, int size);
+
+   /**
+    * Returns the number of bits used per value by the storages this factory creates for the given
+    * variable, see {@link YoBufferStorage#getBitsPerValue()}.
+    * <p>
+    * The default implementation creates an empty storage to find out, the factories for which that is
+    * not cheap should override this method.
+    * </p>
+    *
+    * @param variable the variable which history is to be stored.
+    * @return the number of bits per value.
+    */
+   default int getBitsPerValue(YoVariable variable)
+   {
+      return newStorage(variable, 0).getBitsPerValue();
+   }
+
+   /**
+    * Returns the factory storing the buffer data in Java arrays.
+    *
+    * @return the heap factory.
+    * @see YoBufferStorage#newStorage(YoVariable, int)
+    */
+   static YoBufferStorageFactory heap()
+   {
+      return new YoBufferStorageFactory()
+      {
+         @Override
+         public YoBufferStorage newStorage(YoVariable variable, int size)
+         {
+            return YoBufferStorage.newStorage(variable, size);
+         }
+
+         @Override
+         public int getBitsPerValue(YoVariable variable)
+         {
+            return YoBufferStorage.getBitsPerValue(variable);
+         }
+      };
+   }
+
+   /**
+    * Returns a factory storing the buffer data in direct memory allocated with
+    * {@link ByteBuffer#allocateDirect(int)}.
+    * <p>
+    * The memory of a storage is released when the storage is garbage collected.
+    * </p>
+    *
+    * @return the off-heap factory.
+    */
+   static YoBufferStorageFactory offHeap()
+   {
+      return new YoBufferStorageFactory()
+      {
+         @Override
+         public YoBufferStorage newStorage(YoVariable variable, int size)
+         {
+            return new YoBufferNativeStorage(YoBufferNativeStorage.NativeType.forVariable(variable), size, ByteBuffer::allocateDirect);
+         }
+
+         @Override
+         public int getBitsPerValue(YoVariable variable)
+         {
+            return Byte.SIZE * YoBufferNativeStorage.NativeType.forVariable(variable).getBytes();
+         }
+      };
+   }
+
+   /**
+    * Returns a factory storing the buffer data in a temporary file created in the given directory and
+    * mapped into memory.
+    * <p>
+    * All the storages created by the returned factory are slices of the same file, which is mapped in
+    * large segments such that a large registry only costs one file descriptor and a few mappings. The
+    * file is deleted as soon as it is opened, the operating system only reclaims the disk space once
+    * the factory and its storages are garbage collected. The slice of a storage is reused by the
+    * storages created after it is garbage collected. Each storage is limited to
+    * {@value Integer#MAX_VALUE} bytes.
+    * </p>
+    *
+    * @param directory the directory in which the temporary file is to be created.
+    * @return the memory-mapped factory.
+    */
+   static YoBufferStorageFactory memoryMapped(Path directory)
+   {
+      YoBufferMappedFile file = new YoBufferMappedFile(directory);
+      return new YoBufferStorageFactory()
+      {
+         @Override
+         public YoBufferStorage newStorage(YoVariable variable, int size)
+         {
+            return new YoBufferNativeStorage(YoBufferNativeStorage.NativeType.forVariable(variable), size, file);
+         }
+
+         @Override
+         public int getBitsPerValue(YoVariable variable)
+         {
+            return Byte.SIZE * YoBufferNativeStorage.NativeType.forVariable(variable).getBytes();
+         }
+      };
+   }
+
+   /**
+    * Returns a factory storing the buffer data in chunks created by the given factory, see
+    * {@link YoBufferChunkedStorage}.
+    * <p>
+    * Duplicating such a storage, for instance when copying a {@link YoBuffer} with
+    * {@link YoBuffer#YoBuffer(YoBuffer)}, only costs a reference per chunk. The chunks are shared
+    * until they are modified, such that a copy only pays for the chunks that diverge.
+    * </p>
+    *
+    * @param chunkFactory the factory used to create the chunks.
+    * @return the copy-on-write factory.
+    */
+   static YoBufferStorageFactory copyOnWrite(YoBufferStorageFactory chunkFactory)
+   {
+      return new YoBufferStorageFactory()
+      {
+         @Override
+         public YoBufferStorage newStorage(YoVariable variable, int size)
+         {
+            return new YoBufferChunkedStorage(chunkSize -> chunkFactory.newStorage(variable, chunkSize), size);
+         }
+
+         @Override
+         public int getBitsPerValue(YoVariable variable)
+         {
+            return chunkFactory.getBitsPerValue(variable);
+         }
+      };
+   }
+
+   /**
+    * Returns a factory storing the buffer data in compressed blocks, see
+    * {@link YoBufferCompressedStorage}.
+    * <p>
+    * Accessing values costs a block decode when the block is not cached, such that this factory is
+    * best suited for long recordings accessed mostly in sequence.
+    * </p>
+    *
+    * @return the compressed factory.
+    */
+   static YoBufferStorageFactory compressed()
+   {
+      return new YoBufferStorageFactory()
+      {
+         @Override
+         public YoBufferStorage newStorage(YoVariable variable, int size)
+         {
+            return new YoBufferCompressedStorage(variable, size);
+         }
+
+         @Override
+         public int getBitsPerValue(YoVariable variable)
+         {
+            // Accounted for as uncompressed, see YoBufferCompressedStorage.getBitsPerValue().
+            return YoBufferStorage.getBitsPerValue(variable);
+         }
+      };
+   }
+}
@@ -116,6 +116,7 @@ public class YoBoolean extends YoVariable implements BooleanProvider
       if (this.value != value)
       {
          this.value = value;
+         markChanged();
 
          if (notifyListeners)
             notifyListeners();
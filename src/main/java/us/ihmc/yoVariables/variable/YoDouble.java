@@ -190,6 +190,7 @@ public class YoDouble extends YoVariable implements DoubleProvider
       if (Double.doubleToLongBits(this.value) != Double.doubleToLongBits(value)) // Switch to long bits to handle NaNs
       {
          this.value = value;
+         markChanged();
          if (notifyListeners)
             notifyListeners();
          return true;
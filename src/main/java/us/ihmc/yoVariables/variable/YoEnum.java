@@ -373,6 +373,7 @@ public class YoEnum<E extends Enum<E>> extends YoVariable implements EnumProvide
       if (valueOrdinal != ordinal)
       {
          valueOrdinal = ordinal;
+         markChanged();
          if (notifyListeners)
          {
             notifyListeners();
@@ -152,6 +152,7 @@ public class YoInteger extends YoVariable implements IntegerProvider
       if (this.value != value)
       {
          this.value = value;
+         markChanged();
          if (notifyListeners)
             notifyListeners();
          return true;
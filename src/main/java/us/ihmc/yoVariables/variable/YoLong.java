@@ -152,6 +152,7 @@ public class YoLong extends YoVariable implements LongProvider
       if (this.value != value)
       {
          this.value = value;
+         markChanged();
          if (notifyListeners)
          {
             notifyListeners();
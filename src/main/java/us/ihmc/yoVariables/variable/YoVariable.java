@@ -23,6 +23,7 @@ import us.ihmc.yoVariables.registry.YoRegistry;
 import us.ihmc.yoVariables.tools.YoTools;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -44,6 +45,8 @@ import java.util.List;
  */
 public abstract class YoVariable
 {
+   private static final ChangeTrackerRegistration[] NO_CHANGE_TRACKERS = new ChangeTrackerRegistration[0];
+
    private final String name;
    private final String description;
    private final YoVariableType type;
@@ -53,6 +56,11 @@ public abstract class YoVariable
    private List<YoVariableChangedListener> changedListeners;
    private double lowerBound = 0.0;
    private double upperBound = 1.0;
+   /**
+    * The trackers to notify when this variable changes value, replaced as a whole when a tracker is
+    * added or removed such that it can be read from any thread.
+    */
+   private volatile ChangeTrackerRegistration[] changeTrackers = NO_CHANGE_TRACKERS;
 
    /**
     * Create a new YoVariable. This is called by extensions of YoVariable, and require a
@@ -306,6 +314,79 @@ public abstract class YoVariable
          return changedListeners.remove(listener);
    }
 
+   void addChangeTracker(YoVariableChangeTracker changeTracker, int changeTrackerIndex)
+   {
+      ChangeTrackerRegistration[] oldTrackers = changeTrackers;
+      ChangeTrackerRegistration[] newTrackers = Arrays.copyOf(oldTrackers, oldTrackers.length + 1);
+      newTrackers[oldTrackers.length] = new ChangeTrackerRegistration(changeTracker, changeTrackerIndex);
+      changeTrackers = newTrackers;
+   }
+
+   void removeChangeTracker(YoVariableChangeTracker changeTracker)
+   {
+      ChangeTrackerRegistration[] oldTrackers = changeTrackers;
+
+      for (int i = 0; i < oldTrackers.length; i++)
+      {
+         if (oldTrackers[i].tracker == changeTracker)
+         {
+            ChangeTrackerRegistration[] newTrackers = new ChangeTrackerRegistration[oldTrackers.length - 1];
+            System.arraycopy(oldTrackers, 0, newTrackers, 0, i);
+            System.arraycopy(oldTrackers, i + 1, newTrackers, i, newTrackers.length - i);
+            changeTrackers = newTrackers;
+            return;
+         }
+      }
+   }
+
+   int getChangeTrackerIndex(YoVariableChangeTracker changeTracker)
+   {
+      for (ChangeTrackerRegistration registration : changeTrackers)
+      {
+         if (registration.tracker == changeTracker)
+            return registration.index;
+      }
+      return -1;
+   }
+
+   /**
+    * Tests whether this variable reports its changes to the given tracker.
+    *
+    * @param changeTracker the tracker to test.
+    * @return {@code true} if this variable is tracked by {@code changeTracker}, {@code false}
+    *         otherwise.
+    * @see YoVariableChangeTracker
+    */
+   public boolean isTrackedBy(YoVariableChangeTracker changeTracker)
+   {
+      return getChangeTrackerIndex(changeTracker) >= 0;
+   }
+
+   /**
+    * Returns the number of trackers this variable reports its changes to.
+    *
+    * @return the number of change trackers.
+    * @see YoVariableChangeTracker
+    */
+   public int getNumberOfChangeTrackers()
+   {
+      return changeTrackers.length;
+   }
+
+   /**
+    * Informs the change trackers, if any, that this variable's value has changed.
+    * <p>
+    * This method is to be called by the setters of the implementations of {@code YoVariable} whenever
+    * the value is modified.
+    * </p>
+    */
+   protected final void markChanged()
+   {
+      ChangeTrackerRegistration[] trackers = changeTrackers;
+      for (int i = 0; i < trackers.length; i++)
+         trackers[i].tracker.markChanged(trackers[i].index);
+   }
+
    /**
     * Triggers a notification to all the listeners currently attached to this variable.
     */
@@ -537,4 +618,17 @@ public abstract class YoVariable
     */
    @Override
    public abstract String toString();
+
+   /** Association of a tracker with the index of this variable in the tracker. */
+   private static final class ChangeTrackerRegistration
+   {
+      private final YoVariableChangeTracker tracker;
+      private final int index;
+
+      private ChangeTrackerRegistration(YoVariableChangeTracker tracker, int index)
+      {
+         this.tracker = tracker;
+         this.index = index;
+      }
+   }
 }
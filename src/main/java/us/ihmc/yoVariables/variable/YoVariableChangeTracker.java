@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Florida Institute for Human and Machine Cognition (IHMC)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package us.ihmc.yoVariables.variable;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Keeps track of which variables, among a set of tracked variables, have changed value since the
+ * last time their changes were polled.
+ * <p>
+ * Each tracked variable is assigned an index in a bitset. Whenever a tracked variable changes value,
+ * its setter raises the corresponding bit. This allows to process only the variables that have
+ * changed, for instance when recording a large number of variables of which only a few are updated
+ * at each tick.
+ * </p>
+ * <p>
+ * The bits are raised and polled atomically, such that the tracked variables can be set from any
+ * thread without losing changes. Tracking and untracking variables should be done from the thread
+ * polling the changes. A variable can be tracked by several trackers at once.
+ * </p>
+ */
+public class YoVariableChangeTracker
+{
+   /** Number of variables per page of bits, a page is never reallocated once created. */
+   private static final int PAGE_SHIFT = 12;
+   private static final int WORDS_PER_PAGE = 1 << (PAGE_SHIFT - 6);
+   private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+   private final List<YoVariable> trackedVariables = new ArrayList<>();
+   /**
+    * The bits are stored in pages such that growing the bitset does not lose the bits raised
+    * concurrently in the previous pages.
+    */
+   private volatile long[][] pages = new long[0][];
+
+   /**
+    * Creates a new empty tracker.
+    */
+   public YoVariableChangeTracker()
+   {
+   }
+
+   /**
+    * Starts tracking the given variable.
+    * <p>
+    * The variable is initially marked as changed.
+    * </p>
+    *
+    * @param variable the variable to track.
+    * @return the index of the bit associated to the variable.
+    */
+   public int track(YoVariable variable)
+   {
+      int index = variable.getChangeTrackerIndex(this);
+      if (index >= 0)
+         return index;
+
+      index = trackedVariables.size();
+      trackedVariables.add(variable);
+      if ((index >>> PAGE_SHIFT) >= pages.length)
+      {
+         long[][] newPages = Arrays.copyOf(pages, pages.length + 1);
+         newPages[pages.length] = new long[WORDS_PER_PAGE];
+         pages = newPages;
+      }
+      variable.addChangeTracker(this, index);
+      markChanged(index);
+      return index;
+   }
+
+   /**
+    * Stops tracking all the variables and clears the bitset.
+    */
+   public void untrackAll()
+   {
+      for (int i = 0; i < trackedVariables.size(); i++)
+         trackedVariables.get(i).removeChangeTracker(this);
+      clear();
+      trackedVariables.clear();
+   }
+
+   /**
+    * Returns the number of variables currently tracked.
+    *
+    * @return the number of tracked variables.
+    */
+   public int getNumberOfTrackedVariables()
+   {
+      return trackedVariables.size();
+   }
+
+   /**
+    * Returns the variable associated to the given bit.
+    *
+    * @param index the index of the bit.
+    * @return the tracked variable.
+    */
+   public YoVariable getTrackedVariable(int index)
+   {
+      return trackedVariables.get(index);
+   }
+
+   void markChanged(int index)
+   {
+      WORDS.getAndBitwiseOr(pages[index >>> PAGE_SHIFT], (index >>> 6) & (WORDS_PER_PAGE - 1), 1L << index);
+   }
+
+   /**
+    * Marks all the tracked variables as changed.
+    */
+   public void markAllChanged()
+   {
+      for (int i = 0; i < trackedVariables.size(); i++)
+         markChanged(i);
+   }
+
+   /**
+    * Tests whether the variable associated to the given bit has changed since its changes were last
+    * polled.
+    *
+    * @param index the index of the bit.
+    * @return {@code true} if the variable has changed, {@code false} otherwise.
+    */
+   public boolean hasChanged(int index)
+   {
+      return (getWord(index >>> 6) & (1L << index)) != 0L;
+   }
+
+   /**
+    * Returns the index of the first variable that has changed starting at {@code fromIndex}.
+    * <p>
+    * Typical usage:
+    * 
+    * <pre>
+    * for (int i = tracker.nextChangedIndex(0); i >= 0; i = tracker.nextChangedIndex(i + 1))
+    * {
+    *    // Process the i-th variable.
+    * }
+    * </pre>
+    * </p>
+    * <p>
+    * The bits are not cleared, use {@link #pollChanges(int)} for processing the changes without
+    * missing the ones happening concurrently.
+    * </p>
+    *
+    * @param fromIndex the index (inclusive) to start the search at.
+    * @return the index of the next changed variable, or {@code -1} if there is none.
+    */
+   public int nextChangedIndex(int fromIndex)
+   {
+      int wordIndex = fromIndex >>> 6;
+      int numberOfWords = getNumberOfWords();
+      if (wordIndex >= numberOfWords)
+         return -1;
+
+      long word = getWord(wordIndex) & (-1L << fromIndex);
+
+      while (true)
+      {
+         if (word != 0L)
+            return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+         if (++wordIndex >= numberOfWords)
+            return -1;
+         word = getWord(wordIndex);
+      }
+   }
+
+   /**
+    * Returns the number of words of 64 bits needed to hold the bits of all the tracked variables.
+    *
+    * @return the number of words.
+    * @see #pollChanges(int)
+    */
+   public int getNumberOfWords()
+   {
+      return (trackedVariables.size() + Long.SIZE - 1) >>> 6;
+   }
+
+   /**
+    * Atomically returns and clears the bits of the variables in [{@code 64 * wordIndex},
+    * {@code 64 * wordIndex + 64}[.
+    * <p>
+    * A variable that changes concurrently is either reported by this call or remains marked as
+    * changed. The value set by the thread that raised a reported bit is visible to the caller.
+    * Typical usage:
+    * 
+    * <pre>
+    * for (int wordIndex = 0; wordIndex &lt; tracker.getNumberOfWords(); wordIndex++)
+    * {
+    *    for (long word = tracker.pollChanges(wordIndex); word != 0L; word &amp;= word - 1L)
+    *    {
+    *       int i = (wordIndex &lt;&lt; 6) + Long.numberOfTrailingZeros(word);
+    *       // Process the i-th variable.
+    *    }
+    * }
+    * </pre>
+    * </p>
+    *
+    * @param wordIndex the index of the word to poll.
+    * @return the bits that were raised, the i-th bit corresponding to the variable
+    *         {@code 64 * wordIndex + i}.
+    */
+   public long pollChanges(int wordIndex)
+   {
+      return (long) WORDS.getAndSet(pages[wordIndex >>> (PAGE_SHIFT - 6)], wordIndex & (WORDS_PER_PAGE - 1), 0L);
+   }
+
+   /**
+    * Resets the change flag of all the tracked variables.
+    */
+   public void clear()
+   {
+      for (int i = 0; i < getNumberOfWords(); i++)
+         pollChanges(i);
+   }
+
+   private long getWord(int wordIndex)
+   {
+      return (long) WORDS.getVolatile(pages[wordIndex >>> (PAGE_SHIFT - 6)], wordIndex & (WORDS_PER_PAGE - 1));
+   }
+}
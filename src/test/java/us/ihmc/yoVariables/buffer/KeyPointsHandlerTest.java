@@ -1,8 +1,16 @@
 package us.ihmc.yoVariables.buffer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -103,6 +111,107 @@ public class KeyPointsHandlerTest
       assertTrue(keyPoints.getKeyPoints().get(3) == 75);
    }
 
+   @Test
+   public void testAddKeyPoints()
+   {
+      Random random = new Random(6234);
+      TreeSet<Integer> expected = new TreeSet<>();
+
+      for (int iteration = 0; iteration < 20; iteration++)
+      {
+         BitSet bufferIndices = new BitSet();
+         for (int i = 0; i < 100; i++)
+            bufferIndices.set(random.nextInt(5000));
+         keyPoints.removeKeyPoint(random.nextInt(5000));
+         expected.retainAll(keyPoints.getKeyPoints());
+
+         int numberOfNewKeyPoints = (int) bufferIndices.stream().filter(index -> !expected.contains(index)).count();
+         bufferIndices.stream().forEach(expected::add);
+         assertEquals(numberOfNewKeyPoints, keyPoints.addKeyPoints(bufferIndices));
+         assertEquals(new ArrayList<>(expected), keyPoints.getKeyPoints());
+
+         int bufferIndex = random.nextInt(5000);
+         Integer next = expected.higher(bufferIndex);
+         Integer previous = expected.lower(bufferIndex);
+         assertEquals(next == null ? expected.first() : next, keyPoints.getNextKeyPoint(bufferIndex));
+         assertEquals(previous == null ? expected.last() : previous, keyPoints.getPreviousKeyPoint(bufferIndex));
+         assertEquals(expected.contains(bufferIndex), keyPoints.isKeyPoint(bufferIndex));
+      }
+   }
+
+   @Test
+   public void testRemoveWhileRecording()
+   {
+      Random random = new Random(8712);
+      TreeSet<Integer> expected = new TreeSet<>();
+      int bufferSize = 1000;
+
+      // Recording over previous data removes the key point at each written index.
+      for (int tick = 0; tick < 5 * bufferSize; tick++)
+      {
+         int currentIndex = tick % bufferSize;
+         assertEquals(expected.remove(currentIndex), keyPoints.removeKeyPoint(currentIndex));
+
+         if (random.nextInt(10) == 0)
+         {
+            int bufferIndex = random.nextInt(bufferSize);
+            assertEquals(expected.add(bufferIndex), keyPoints.addKeyPoint(bufferIndex));
+         }
+
+         assertEquals(expected.size(), keyPoints.getNumberOfKeyPoints());
+
+         if (random.nextInt(20) == 0)
+         {
+            assertEquals(new ArrayList<>(expected), keyPoints.getKeyPoints());
+            if (!expected.isEmpty())
+            {
+               Integer next = expected.higher(currentIndex);
+               Integer previous = expected.lower(currentIndex);
+               assertEquals(next == null ? expected.first() : next, keyPoints.getNextKeyPoint(currentIndex));
+               assertEquals(previous == null ? expected.last() : previous, keyPoints.getPreviousKeyPoint(currentIndex));
+            }
+         }
+      }
+
+      keyPoints.trimKeyPoints(200, 800);
+      expected.removeIf(bufferIndex -> bufferIndex < 200 || bufferIndex > 800);
+      assertEquals(new ArrayList<>(expected), keyPoints.getKeyPoints());
+   }
+
+   @Test
+   public void testKeyPointsView()
+   {
+      keyPoints.addKeyPoint(10);
+      keyPoints.addKeyPoint(30);
+      keyPoints.getKeyPoints().add(20);
+      keyPoints.getKeyPoints().add(0, 30);
+      assertEquals(List.of(10, 20, 30), keyPoints.getKeyPoints());
+      assertTrue(keyPoints.isKeyPoint(20));
+
+      keyPoints.removeKeyPoint(10);
+      assertEquals(30, keyPoints.getKeyPoints().remove(1));
+      assertEquals(List.of(20), keyPoints.getKeyPoints());
+      assertFalse(keyPoints.isKeyPoint(30));
+      assertThrows(UnsupportedOperationException.class, () -> keyPoints.getKeyPoints().set(0, 40));
+   }
+
+   @Test
+   public void testNegativeIndices()
+   {
+      assertFalse(keyPoints.isKeyPoint(-1));
+      assertFalse(keyPoints.removeKeyPoint(-1));
+      assertThrows(IllegalArgumentException.class, () -> keyPoints.addKeyPoint(-1));
+      assertThrows(IllegalArgumentException.class, () -> keyPoints.toggleKeyPoint(-1));
+      assertEquals(-5, keyPoints.getNextKeyPoint(-5));
+
+      keyPoints.addKeyPoint(3);
+      keyPoints.addKeyPoint(7);
+      assertEquals(3, keyPoints.getNextKeyPoint(-5));
+      assertEquals(7, keyPoints.getPreviousKeyPoint(-5));
+      assertEquals(7, keyPoints.getPreviousKeyPoint(0));
+      assertEquals(3, keyPoints.getPreviousKeyPoint(4));
+   }
+
    @Test // timeout = 30000
    public void testUseKeyPoints()
    {
@@ -0,0 +1,133 @@
+package us.ihmc.yoVariables.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoInteger;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+public class YoBufferConcurrentReaderTest
+{
+   private static final int BUFFER_SIZE = 1000;
+   private static final int NUMBER_OF_VARIABLES = 500;
+   private static final int SLOW_VARIABLE_PERIOD = 10;
+
+   @Test // timeout = 30000
+   public void testConsistentWindows() throws Throwable
+   {
+      for (boolean changeTracking : new boolean[] {false, true})
+      {
+         Recording recording = new Recording(changeTracking);
+         AtomicBoolean running = new AtomicBoolean(true);
+         AtomicReference<Throwable> readerError = new AtomicReference<>();
+         AtomicLong numberOfReads = new AtomicLong();
+         List<Thread> readers = new ArrayList<>();
+
+         for (int i = 0; i < 2; i++)
+         {
+            Thread reader = new Thread(() ->
+            {
+               try
+               {
+                  YoBufferConcurrentReader concurrentReader = new YoBufferConcurrentReader(recording.buffer);
+                  List<YoBufferVariableEntry> entries = Arrays.asList(recording.timeEntry, recording.slowEntry);
+                  double[][] destinations = new double[2][BUFFER_SIZE];
+
+                  while (running.get())
+                  {
+                     int length = concurrentReader.readInOutWindow(entries, destinations);
+                     if (length < 0)
+                        continue;
+
+                     assertWindow(concurrentReader, length, destinations[0], destinations[1]);
+                     numberOfReads.incrementAndGet();
+                  }
+               }
+               catch (Throwable e)
+               {
+                  readerError.compareAndSet(null, e);
+               }
+            });
+            readers.add(reader);
+            reader.start();
+         }
+
+         for (int tick = 0; tick < 100000 && readerError.get() == null; tick++)
+            recording.tick();
+
+         running.set(false);
+         for (Thread reader : readers)
+            reader.join();
+
+         if (readerError.get() != null)
+            throw readerError.get();
+         assertTrue(numberOfReads.get() > 0);
+      }
+   }
+
+   private static void assertWindow(YoBufferConcurrentReader reader, int length, double[] time, double[] slow)
+   {
+      if (reader.getNumberOfTicksWritten() == 0)
+         return;
+
+      assertEquals((double) reader.getNumberOfTicksWritten(), time[length - 1]);
+
+      for (int i = 0; i < length; i++)
+      {
+         if (i > 0)
+            assertEquals(time[i - 1] + 1.0, time[i]);
+         assertEquals(slowValue((long) time[i]), slow[i]);
+      }
+   }
+
+   private static double slowValue(long time)
+   {
+      return (time / SLOW_VARIABLE_PERIOD) * SLOW_VARIABLE_PERIOD;
+   }
+
+   private static class Recording
+   {
+      private final YoBuffer buffer = new YoBuffer(BUFFER_SIZE);
+      private final YoDouble time;
+      private final YoInteger slow;
+      private final List<YoDouble> others = new ArrayList<>();
+      private final YoBufferVariableEntry timeEntry;
+      private final YoBufferVariableEntry slowEntry;
+      private long tick = 0;
+
+      public Recording(boolean changeTracking)
+      {
+         YoRegistry registry = new YoRegistry("root");
+         time = new YoDouble("t", registry);
+         slow = new YoInteger("slow", registry);
+         for (int i = 0; i < NUMBER_OF_VARIABLES; i++)
+            others.add(new YoDouble("other" + i, registry));
+
+         List<YoVariable> variables = registry.collectSubtreeVariables();
+         buffer.addVariables(variables);
+         buffer.setChangeTrackingEnabled(changeTracking);
+         timeEntry = buffer.getEntry(time);
+         slowEntry = buffer.getEntry(slow);
+      }
+
+      public void tick()
+      {
+         tick++;
+         time.set(tick);
+         slow.set((int) slowValue(tick));
+         others.get((int) (tick % NUMBER_OF_VARIABLES)).add(1.0);
+         buffer.tickAndWriteIntoBuffer();
+      }
+   }
+}
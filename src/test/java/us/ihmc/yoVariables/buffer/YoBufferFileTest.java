@@ -0,0 +1,142 @@
+package us.ihmc.yoVariables.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoInteger;
+import us.ihmc.yoVariables.variable.YoLong;
+import us.ihmc.yoVariables.variable.YoVariable;
+import us.ihmc.yoVariables.variable.YoVariableType;
+
+public class YoBufferFileTest
+{
+   private static final int BUFFER_SIZE = 2 * YoBufferFile.BLOCK_LENGTH + 345;
+
+   @TempDir
+   public Path temporaryDirectory;
+
+   @Test
+   public void testExportAndLoad() throws IOException
+   {
+      YoBuffer buffer = createRecording(new Random(4576));
+      buffer.setInPoint(1800);
+      buffer.setOutPoint(1200);
+      buffer.setCurrentIndex(150);
+      Path file = temporaryDirectory.resolve("buffer.ybuf");
+      YoBufferFile.export(buffer, false, file);
+
+      try (YoBufferFile bufferFile = YoBufferFile.open(file))
+      {
+         assertEquals(BUFFER_SIZE, bufferFile.getLength());
+         assertEquals(1800, bufferFile.getInPoint());
+         assertEquals(1200, bufferFile.getOutPoint());
+         assertEquals(150, bufferFile.getCurrentIndex());
+         assertEquals(buffer.getEntries().size(), bufferFile.getColumnNames().size());
+         assertEquals(YoVariableType.ENUM, bufferFile.getColumnType(4));
+         assertArrayEquals(new String[] {"A", "B", "C"}, bufferFile.getColumnEnumConstants(4));
+         assertNull(bufferFile.getColumnEnumConstants(0));
+
+         List<YoVariable> variables = bufferFile.createVariables(new YoRegistry("loaded"), name -> true);
+         YoBuffer loadedBuffer = new YoBuffer(10);
+         loadedBuffer.addVariables(variables);
+         assertEquals(variables.size(), bufferFile.loadIntoBuffer(loadedBuffer));
+
+         assertEquals(BUFFER_SIZE, loadedBuffer.getBufferSize());
+         assertEquals(1800, loadedBuffer.getInPoint());
+         assertEquals(1200, loadedBuffer.getOutPoint());
+         assertEquals(150, loadedBuffer.getCurrentIndex());
+
+         for (YoBufferVariableEntry entry : buffer.getEntries())
+         {
+            YoBufferVariableEntry loadedEntry = loadedBuffer.findVariableEntry(entry.getVariable().getFullNameString());
+            assertEquals(entry.getVariable().getType(), loadedEntry.getVariable().getType());
+            assertArrayEquals(entry.getBuffer(), loadedEntry.getBuffer());
+         }
+      }
+   }
+
+   @Test
+   public void testExportInOutPointsAndLoadSubset() throws IOException
+   {
+      YoBuffer buffer = createRecording(new Random(7823));
+      buffer.setInPoint(2000);
+      buffer.setOutPoint(1500);
+      buffer.setCurrentIndex(100);
+      int length = buffer.getBufferInOutLength();
+      Path file = temporaryDirectory.resolve("buffer.ybuf");
+      YoBufferFile.export(buffer, true, file);
+
+      // The destination has the variables to load, the enum constants are in a different order.
+      YoRegistry registry = new YoRegistry("root");
+      YoRegistry subRegistry = new YoRegistry("sub");
+      registry.addChild(subRegistry);
+      YoInteger integer = new YoInteger("integer", subRegistry);
+      YoEnum<?> enumVariable = new YoEnum<>("enum", "", subRegistry, true, "C", "A", "D");
+      YoBuffer loadedBuffer = new YoBuffer(10);
+      loadedBuffer.addVariable(integer);
+      loadedBuffer.addVariable(enumVariable);
+
+      try (YoBufferFile bufferFile = YoBufferFile.open(file))
+      {
+         assertEquals(2, bufferFile.loadIntoBuffer(loadedBuffer));
+      }
+
+      assertEquals(length, loadedBuffer.getBufferSize());
+      assertEquals(0, loadedBuffer.getInPoint());
+      assertEquals(length - 1, loadedBuffer.getOutPoint());
+      assertEquals(100 + BUFFER_SIZE - 2000, loadedBuffer.getCurrentIndex());
+
+      double[] expectedIntegers = buffer.findVariableEntry("root.sub.integer").getBufferWindow(2000, length);
+      assertArrayEquals(expectedIntegers, loadedBuffer.getEntry(integer).getBuffer());
+
+      double[] expectedEnums = buffer.findVariableEntry("root.sub.enum").getBufferWindow(2000, length);
+      double[] loadedEnums = loadedBuffer.getEntry(enumVariable).getBuffer();
+      int[] ordinalMap = {1, YoEnum.NULL_VALUE, 0};
+
+      for (int i = 0; i < length; i++)
+      {
+         int ordinal = (int) expectedEnums[i];
+         assertEquals(ordinal == YoEnum.NULL_VALUE ? YoEnum.NULL_VALUE : ordinalMap[ordinal], loadedEnums[i]);
+      }
+   }
+
+   private static YoBuffer createRecording(Random random)
+   {
+      YoRegistry registry = new YoRegistry("root");
+      YoRegistry subRegistry = new YoRegistry("sub");
+      registry.addChild(subRegistry);
+      YoDouble doubleVariable = new YoDouble("double", registry);
+      YoBoolean booleanVariable = new YoBoolean("boolean", registry);
+      YoInteger integerVariable = new YoInteger("integer", subRegistry);
+      YoLong longVariable = new YoLong("long", subRegistry);
+      YoEnum<?> enumVariable = new YoEnum<>("enum", "", subRegistry, true, "A", "B", "C");
+
+      YoBuffer buffer = new YoBuffer(BUFFER_SIZE);
+      buffer.addVariables(registry.collectSubtreeVariables());
+
+      for (int i = 0; i < BUFFER_SIZE; i++)
+      {
+         doubleVariable.set(random.nextDouble());
+         booleanVariable.set(random.nextBoolean());
+         integerVariable.set(random.nextInt());
+         longVariable.set(random.nextLong());
+         enumVariable.set(random.nextInt(4) - 1);
+         buffer.tickAndWriteIntoBuffer();
+      }
+
+      return buffer;
+   }
+}
@@ -0,0 +1,119 @@
+package us.ihmc.yoVariables.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoDouble;
+
+public class YoBufferIndexChangedDispatcherTest
+{
+   @Test
+   public void testCoalescing() throws InterruptedException
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      YoDouble variable = new YoDouble("variable", registry);
+      YoBuffer buffer = new YoBuffer(100);
+      buffer.addVariable(variable);
+
+      CountDownLatch firstDelivery = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      List<Integer> deliveredIndices = Collections.synchronizedList(new ArrayList<>());
+
+      try (YoBufferIndexChangedDispatcher dispatcher = new YoBufferIndexChangedDispatcher(newIndex ->
+      {
+         deliveredIndices.add(newIndex);
+         firstDelivery.countDown();
+         awaitQuietly(release);
+      }))
+      {
+         buffer.addListener(dispatcher);
+
+         buffer.tickAndWriteIntoBuffer();
+         assertTrue(firstDelivery.await(10, TimeUnit.SECONDS));
+
+         // The listener is blocked, the ticks are not and the notifications pile up into one.
+         for (int i = 0; i < 50; i++)
+         {
+            variable.set(i);
+            buffer.tickAndWriteIntoBuffer();
+         }
+
+         assertEquals(51, dispatcher.getNumberOfNotifications());
+         assertEquals(49, dispatcher.getNumberOfCoalescedNotifications());
+         release.countDown();
+
+         long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+         while (dispatcher.getNumberOfDeliveredNotifications() < 2 && System.nanoTime() < deadline)
+            Thread.sleep(1);
+
+         assertEquals(2, dispatcher.getNumberOfDeliveredNotifications());
+         assertEquals(buffer.getCurrentIndex(), (int) deliveredIndices.get(deliveredIndices.size() - 1));
+         assertEquals(0, dispatcher.getNumberOfDroppedNotifications());
+
+         dispatcher.close();
+         buffer.tickAndWriteIntoBuffer();
+         assertEquals(1, dispatcher.getNumberOfDroppedNotifications());
+         assertEquals(2, deliveredIndices.size());
+      }
+   }
+
+   @Test
+   public void testConcurrentExecutor() throws InterruptedException
+   {
+      YoBuffer buffer = new YoBuffer(1000);
+      ExecutorService executor = Executors.newCachedThreadPool();
+      int[] concurrentCalls = {0, 0};
+      Object lock = new Object();
+
+      YoBufferIndexChangedDispatcher dispatcher = new YoBufferIndexChangedDispatcher(newIndex ->
+      {
+         synchronized (lock)
+         {
+            concurrentCalls[0]++;
+            concurrentCalls[1] = Math.max(concurrentCalls[1], concurrentCalls[0]);
+         }
+         Thread.yield();
+         synchronized (lock)
+         {
+            concurrentCalls[0]--;
+         }
+      }, executor);
+      buffer.addListener(dispatcher);
+
+      for (int i = 0; i < 10000; i++)
+         buffer.tickAndWriteIntoBuffer();
+
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (dispatcher.getNumberOfDeliveredNotifications() + dispatcher.getNumberOfCoalescedNotifications() < 10000 && System.nanoTime() < deadline)
+         Thread.sleep(1);
+
+      assertEquals(10000, dispatcher.getNumberOfDeliveredNotifications() + dispatcher.getNumberOfCoalescedNotifications());
+      // The listener is never called concurrently.
+      assertEquals(1, concurrentCalls[1]);
+      dispatcher.close();
+      executor.shutdown();
+   }
+
+   private static void awaitQuietly(CountDownLatch latch)
+   {
+      try
+      {
+         latch.await(10, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+   }
+}
@@ -0,0 +1,237 @@
+package us.ihmc.yoVariables.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorageFactory;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoInteger;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+public class YoBufferSpillRecorderTest
+{
+   private static final int BUFFER_SIZE = 100;
+
+   @TempDir
+   public Path temporaryDirectory;
+
+   @Test // timeout=300000
+   public void testRecordAndLoad() throws IOException
+   {
+      for (boolean changeTracking : new boolean[] {false, true})
+      {
+         Recording recording = new Recording(new Random(3467));
+         recording.buffer.setChangeTrackingEnabled(changeTracking);
+         Path file = temporaryDirectory.resolve("recording" + changeTracking + ".spill");
+         int numberOfTicks = 25 * BUFFER_SIZE + 17;
+
+         // Enough segment buffers for the entire recording such that none is dropped.
+         try (YoBufferSpillRecorder recorder = new YoBufferSpillRecorder(recording.buffer, file, 30, 128))
+         {
+            for (int i = 0; i < numberOfTicks; i++)
+               recording.tick();
+
+            recorder.flush();
+            assertEquals(numberOfTicks, recorder.getSpillFile().getNumberOfTicks());
+            // The data can be read while recording.
+            assertLoadedTicks(recorder.getSpillFile(), recording, 0, BUFFER_SIZE);
+
+            for (int i = 0; i < 3 * BUFFER_SIZE; i++)
+               recording.tick();
+         }
+
+         numberOfTicks += 3 * BUFFER_SIZE;
+
+         try (YoBufferSpillFile spillFile = YoBufferSpillFile.open(file))
+         {
+            assertEquals(numberOfTicks, spillFile.getNumberOfTicks());
+            assertEquals(recording.buffer.getEntries().size(), spillFile.getColumnNames().size());
+
+            Random random = new Random(843);
+            for (int iteration = 0; iteration < 50; iteration++)
+            {
+               long fromTick = random.nextInt(numberOfTicks + 1);
+               assertLoadedTicks(spillFile, recording, fromTick, (int) Math.min(BUFFER_SIZE, numberOfTicks - fromTick));
+            }
+         }
+      }
+   }
+
+   @Test // timeout=300000
+   public void testDiscontinuity() throws IOException
+   {
+      Recording recording = new Recording(new Random(2356));
+      Path file = temporaryDirectory.resolve("recording.spill");
+
+      try (YoBufferSpillRecorder recorder = new YoBufferSpillRecorder(recording.buffer, file, 20, 16))
+      {
+         for (int i = 0; i < 50; i++)
+            recording.tick();
+
+         // Playback does not record anything.
+         recording.buffer.setCurrentIndex(10);
+         recording.buffer.setCurrentIndex(recording.buffer.getOutPoint());
+         for (int i = 0; i < 10; i++)
+            recording.tick();
+         recorder.flush();
+         assertEquals(60, recorder.getSpillFile().getNumberOfTicks());
+
+         // Recording from a different index discards the pending ticks.
+         for (int i = 0; i < 5; i++)
+            recording.tick();
+         recording.buffer.setCurrentIndex(0);
+         recording.expected.subList(recording.expected.size() - 5, recording.expected.size()).clear();
+         for (int i = 0; i < 20; i++)
+            recording.tick();
+         recorder.flush();
+         assertEquals(80, recorder.getSpillFile().getNumberOfTicks());
+         assertLoadedTicks(recorder.getSpillFile(), recording, 0, 80);
+      }
+   }
+
+   @Test // timeout=300000
+   public void testDroppedSegments() throws IOException
+   {
+      Recording recording = new Recording(new Random(7843));
+      Path file = temporaryDirectory.resolve("recording.spill");
+      int segmentLength = 10;
+      int numberOfSegments = 20;
+
+      try (YoBufferSpillRecorder recorder = new YoBufferSpillRecorder(recording.buffer, file, segmentLength, 1))
+      {
+         // Stalls the writer thread, which registers each segment in the spill file once written.
+         synchronized (recorder.getSpillFile())
+         {
+            for (int i = 0; i < numberOfSegments * segmentLength; i++)
+               recording.tick();
+         }
+
+         recorder.flush();
+         // At most one segment is being written and one is waiting, the others are dropped instead of blocking.
+         long numberOfDroppedSegments = recorder.getNumberOfDroppedSegments();
+         assertTrue(numberOfDroppedSegments >= numberOfSegments - 2);
+         assertEquals((numberOfSegments - numberOfDroppedSegments) * segmentLength, recorder.getSpillFile().getNumberOfTicks());
+
+         // The recording resumes once the writer catches up.
+         for (int i = 0; i < segmentLength; i++)
+            recording.tick();
+         recorder.flush();
+         assertEquals(numberOfDroppedSegments, recorder.getNumberOfDroppedSegments());
+      }
+
+      assertThrows(IllegalArgumentException.class, () -> new YoBufferSpillRecorder(recording.buffer, file, segmentLength, 0));
+   }
+
+   @Test // timeout=300000
+   public void testOffHeapAndDefaultSegmentLength() throws IOException
+   {
+      YoBuffer buffer = new YoBuffer(BUFFER_SIZE, YoBufferStorageFactory.offHeap());
+      Recording recording = new Recording(new Random(6572), buffer);
+      Path file = temporaryDirectory.resolve("recording.spill");
+
+      try (YoBufferSpillRecorder recorder = new YoBufferSpillRecorder(recording.buffer, file))
+      {
+         assertEquals(BUFFER_SIZE, recorder.getSegmentLength());
+         for (int i = 0; i < 5 * BUFFER_SIZE / 2; i++)
+            recording.tick();
+      }
+
+      try (YoBufferSpillFile spillFile = YoBufferSpillFile.open(file))
+      {
+         assertEquals(5 * BUFFER_SIZE / 2, spillFile.getNumberOfTicks());
+         assertLoadedTicks(spillFile, recording, BUFFER_SIZE, BUFFER_SIZE);
+      }
+
+      assertThrows(IllegalArgumentException.class, () -> new YoBufferSpillRecorder(buffer, file, BUFFER_SIZE + 1));
+   }
+
+   private static void assertLoadedTicks(YoBufferSpillFile spillFile, Recording recording, long fromTick, int expectedLength) throws IOException
+   {
+      YoBuffer destination = new YoBuffer(Math.max(1, expectedLength));
+      YoRegistry registry = recording.newRegistry();
+      destination.addVariables(registry.collectSubtreeVariables());
+
+      assertEquals(expectedLength, spillFile.loadIntoBuffer(fromTick, destination));
+      if (expectedLength == 0)
+         return;
+      assertEquals(0, destination.getInPoint());
+      assertEquals(expectedLength - 1, destination.getOutPoint());
+
+      List<YoBufferVariableEntry> entries = destination.getEntries();
+
+      for (int i = 0; i < expectedLength; i++)
+      {
+         double[] expected = recording.expected.get((int) fromTick + i);
+         for (int j = 0; j < expected.length; j++)
+            assertEquals(expected[j], entries.get(j).readBufferAt(i), entries.get(j).getVariable().getName());
+      }
+   }
+
+   private static class Recording
+   {
+      private final Random random;
+      private final YoBuffer buffer;
+      private final List<YoVariable> variables;
+      private final List<double[]> expected = new ArrayList<>();
+
+      public Recording(Random random)
+      {
+         this(random, new YoBuffer(BUFFER_SIZE));
+      }
+
+      public Recording(Random random, YoBuffer buffer)
+      {
+         this.random = random;
+         this.buffer = buffer;
+         variables = newRegistry().collectSubtreeVariables();
+         buffer.addVariables(variables);
+      }
+
+      public YoRegistry newRegistry()
+      {
+         YoRegistry root = new YoRegistry("root");
+         YoRegistry child = new YoRegistry("child");
+         root.addChild(child);
+         new YoDouble("t", root);
+         new YoDouble("double", child);
+         new YoBoolean("boolean", child);
+         new YoInteger("integer", child);
+         new YoBoolean("rarelyChanging", root);
+         return root;
+      }
+
+      public void tick()
+      {
+         double[] values = new double[variables.size()];
+
+         for (int i = 0; i < values.length; i++)
+         {
+            YoVariable variable = variables.get(i);
+
+            if (variable.getName().equals("t"))
+               variable.setValueFromDouble(expected.size());
+            else if (variable.getName().equals("rarelyChanging"))
+               variable.setValueFromDouble(random.nextInt(50) == 0 ? 1 - variable.getValueAsDouble() : variable.getValueAsDouble());
+            else
+               variable.setValueFromDouble(random.nextInt(200) - 100 + random.nextDouble());
+
+            values[i] = variable.getValueAsDouble();
+         }
+
+         expected.add(values);
+         buffer.tickAndWriteIntoBuffer();
+      }
+   }
+}
@@ -1,12 +1,17 @@
 package us.ihmc.yoVariables.buffer;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -14,7 +19,10 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferColumnProcessor;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferColumnReducer;
 import us.ihmc.yoVariables.buffer.interfaces.YoBufferIndexChangedListener;
+import us.ihmc.yoVariables.buffer.interfaces.YoBufferParallelProcessor;
 import us.ihmc.yoVariables.buffer.interfaces.YoBufferProcessor;
 import us.ihmc.yoVariables.registry.YoRegistry;
 import us.ihmc.yoVariables.tools.YoSearchTools;
@@ -316,6 +324,46 @@ public class YoBufferTest
       assertEquals(bufferSize, dataBuffer.getBufferSize());
    }
 
+   @Test
+   public void testReshapePool()
+   {
+      Random random = new Random(6481);
+      YoRegistry registry = new YoRegistry("root");
+      List<YoVariable> variables = createMixedVariables(100, registry);
+      YoBuffer expectedBuffer = new YoBuffer(500);
+      expectedBuffer.addVariables(variables);
+      expectedBuffer.setReshapePool(null);
+      assertNull(expectedBuffer.getReshapePool());
+
+      for (int i = 0; i < 400; i++)
+      {
+         for (YoVariable variable : variables)
+            variable.setValueFromDouble(random.nextInt(10));
+         expectedBuffer.tickAndWriteIntoBuffer();
+      }
+
+      ForkJoinPool pool = new ForkJoinPool(2);
+
+      try
+      {
+         YoBuffer actualBuffer = new YoBuffer(expectedBuffer);
+         actualBuffer.setReshapePool(pool);
+         assertTrue(actualBuffer.getReshapePool() == pool);
+
+         expectedBuffer.setInOutPointFullBuffer();
+         actualBuffer.setInOutPointFullBuffer();
+         expectedBuffer.cutBuffer(50, 150);
+         actualBuffer.cutBuffer(50, 150);
+         expectedBuffer.resizeBuffer(300);
+         actualBuffer.resizeBuffer(300);
+         assertTrue(expectedBuffer.epsilonEquals(actualBuffer, 0.0));
+      }
+      finally
+      {
+         pool.shutdown();
+      }
+   }
+
    @Test // timeout = 300000
    public void testIsIndexBetweenInAndOutPoint()
    {
@@ -800,6 +848,57 @@ public class YoBufferTest
       }
    }
 
+   @Test
+   public void testThinDataKeepsEntriesAligned()
+   {
+      int bufferSize = 1000;
+      int keepEveryNthPoint = 10;
+      int spikeTick = 567;
+      YoRegistry registry = new YoRegistry("thinning");
+      YoDouble time = new YoDouble("t", registry);
+      YoDouble signal = new YoDouble("signal", registry);
+      YoDouble noise = new YoDouble("noise", registry);
+      Random random = new Random(246371);
+
+      for (YoBufferThinningMode mode : new YoBufferThinningMode[] {YoBufferThinningMode.MIN_MAX, YoBufferThinningMode.LTTB})
+      {
+         YoBuffer buffer = new YoBuffer(bufferSize);
+         buffer.addVariables(registry.collectSubtreeVariables());
+         double[] noiseHistory = new double[bufferSize];
+
+         for (int tick = 0; tick < bufferSize; tick++)
+         {
+            buffer.setCurrentIndex(tick);
+            time.set(tick);
+            signal.set(tick == spikeTick ? 1000.0 : Math.sin(0.01 * tick));
+            noise.set(noiseHistory[tick] = random.nextDouble());
+            buffer.writeIntoBuffer();
+         }
+
+         buffer.thinData(keepEveryNthPoint, mode, signal);
+
+         assertEquals(bufferSize / keepEveryNthPoint, buffer.getBufferSize());
+         double[] thinnedTime = buffer.getEntry(time).getBuffer();
+         double[] thinnedSignal = buffer.getEntry(signal).getBuffer();
+         double[] thinnedNoise = buffer.getEntry(noise).getBuffer();
+         boolean spikeKept = false;
+
+         for (int i = 0; i < buffer.getBufferSize(); i++)
+         {
+            int tick = (int) thinnedTime[i];
+            // All the entries hold the values of the same tick.
+            assertEquals(tick == spikeTick ? 1000.0 : Math.sin(0.01 * tick), thinnedSignal[i]);
+            assertEquals(noiseHistory[tick], thinnedNoise[i]);
+            spikeKept |= tick == spikeTick;
+            if (i > 0)
+               assertTrue(thinnedTime[i] > thinnedTime[i - 1]);
+         }
+
+         // The ticks are selected from the reference entry.
+         assertTrue(spikeKept);
+      }
+   }
+
    @Test // timeout = 30000
    public void testAttachIndexChangedListener()
    {
@@ -875,6 +974,253 @@ public class YoBufferTest
       assertTrue(c.getDoubleValue() == 0.0);
    }
 
+   @Test
+   public void testApplyColumnProcessor()
+   {
+      Random random = new Random(74524);
+      fillDataBufferWithRandomData(random);
+      dataBuffer.setInPoint(20);
+      dataBuffer.setOutPoint(10);
+      dataBuffer.setCurrentIndex(5);
+
+      double[] aBefore = aBuffer.getBuffer();
+      double[] bBefore = bBuffer.getBuffer();
+      double[] cBefore = cBuffer.getBuffer();
+      int[] numberOfNotifications = {0};
+      dataBuffer.addListener(index -> numberOfNotifications[0]++);
+
+      YoBufferColumnProcessor processor = new YoBufferColumnProcessor()
+      {
+         @Override
+         public List<YoVariable> getInputVariables()
+         {
+            return List.of(a, b);
+         }
+
+         @Override
+         public List<YoVariable> getOutputVariables()
+         {
+            return List.of(c);
+         }
+
+         @Override
+         public void process(double[][] inputColumns, double[][] outputColumns, int length)
+         {
+            assertEquals(91, length);
+
+            for (int i = 0; i < length; i++)
+               outputColumns[0][i] = inputColumns[0][i] + inputColumns[1][i];
+         }
+      };
+
+      dataBuffer.applyProcessor(processor);
+
+      assertEquals(1, numberOfNotifications[0]);
+      assertEquals(5, dataBuffer.getCurrentIndex());
+      assertArrayEquals(aBefore, aBuffer.getBuffer());
+      assertArrayEquals(bBefore, bBuffer.getBuffer());
+
+      for (int i = 0; i < testBufferSize; i++)
+      {
+         if (i > 10 && i < 20)
+            assertEquals(cBefore[i], cBuffer.readBufferAt(i));
+         else
+            assertEquals(aBefore[i] + bBefore[i], cBuffer.readBufferAt(i));
+      }
+
+      assertEquals(aBefore[5] + bBefore[5], c.getDoubleValue());
+   }
+
+   @Test
+   public void testApplyParallelProcessorAndReducer()
+   {
+      Random random = new Random(74525);
+      int bufferSize = 50000;
+      YoBuffer dataBuffer = new YoBuffer(bufferSize);
+      dataBuffer.addVariable(a);
+      dataBuffer.addVariable(b);
+
+      for (int i = 0; i < bufferSize; i++)
+      {
+         a.set(random.nextDouble());
+         dataBuffer.tickAndWriteIntoBuffer();
+      }
+
+      YoBufferParallelProcessor processor = new YoBufferParallelProcessor()
+      {
+         @Override
+         public List<YoVariable> getInputVariables()
+         {
+            return List.of(a);
+         }
+
+         @Override
+         public List<YoVariable> getOutputVariables()
+         {
+            return List.of(b);
+         }
+
+         @Override
+         public void process(double[][] inputColumns, double[][] outputColumns, int fromOffset, int toOffset)
+         {
+            for (int i = fromOffset; i < toOffset; i++)
+               outputColumns[0][i] = 2.0 * inputColumns[0][i];
+         }
+      };
+
+      dataBuffer.applyProcessor(processor);
+
+      YoBufferVariableEntry aEntry = dataBuffer.getEntry(a);
+      YoBufferVariableEntry bEntry = dataBuffer.getEntry(b);
+      double expectedSum = 0.0;
+
+      for (int i = 0; i < bufferSize; i++)
+      {
+         assertEquals(2.0 * aEntry.readBufferAt(i), bEntry.readBufferAt(i));
+         expectedSum += aEntry.readBufferAt((dataBuffer.getInPoint() + i) % bufferSize);
+      }
+
+      YoBufferColumnReducer<Double> reducer = new YoBufferColumnReducer<Double>()
+      {
+         @Override
+         public List<YoVariable> getInputVariables()
+         {
+            return List.of(a);
+         }
+
+         @Override
+         public Double reduce(double[][] inputColumns, int fromOffset, int toOffset)
+         {
+            double sum = 0.0;
+            for (int i = fromOffset; i < toOffset; i++)
+               sum += inputColumns[0][i];
+            return sum;
+         }
+
+         @Override
+         public Double combine(Double first, Double second)
+         {
+            return first + second;
+         }
+      };
+
+      assertEquals(expectedSum, dataBuffer.applyReducer(reducer), 1.0e-7);
+   }
+
+   @Test
+   public void testActiveVariables()
+   {
+      Random random = new Random(74526);
+      fillDataBufferWithRandomData(random);
+
+      assertNull(dataBuffer.getActiveVariables());
+      dataBuffer.setActiveVariables(List.of(a));
+      assertEquals(List.of(a), dataBuffer.getActiveVariables());
+
+      double bBefore = b.getDoubleValue();
+      double cBefore = c.getDoubleValue();
+      dataBuffer.setCurrentIndex(42);
+
+      assertTrue(dataBuffer.isReadPending());
+      assertEquals(aBuffer.readBufferAt(42), a.getDoubleValue());
+      assertEquals(bBefore, b.getDoubleValue());
+      assertEquals(cBefore, c.getDoubleValue());
+
+      assertTrue(dataBuffer.readFromBuffer(b));
+      assertEquals(bBuffer.readBufferAt(42), b.getDoubleValue());
+      assertEquals(cBefore, c.getDoubleValue());
+
+      dataBuffer.readPendingFromBuffer();
+      assertFalse(dataBuffer.isReadPending());
+      assertEquals(cBuffer.readBufferAt(42), c.getDoubleValue());
+
+      dataBuffer.tickAndReadFromBuffer(1);
+      assertTrue(dataBuffer.isReadPending());
+      dataBuffer.setActiveVariables(null);
+      assertFalse(dataBuffer.isReadPending());
+      assertEquals(cBuffer.readBufferAt(43), c.getDoubleValue());
+   }
+
+   @Test
+   public void testActiveVariablesWriteKeepsSetValues()
+   {
+      Random random = new Random(74528);
+      fillDataBufferWithRandomData(random);
+      dataBuffer.setActiveVariables(List.of(a));
+
+      // E.g. the controller running after a rewind, only some of the inactive variables are set.
+      dataBuffer.setCurrentIndex(42);
+      double bAt42 = bBuffer.readBufferAt(42);
+      c.set(12345.0);
+      dataBuffer.tickAndWriteIntoBuffer();
+
+      assertEquals(43, dataBuffer.getCurrentIndex());
+      assertEquals(12345.0, cBuffer.readBufferAt(43));
+      assertEquals(bAt42, bBuffer.readBufferAt(43));
+      assertEquals(12345.0, c.getDoubleValue());
+
+      // E.g. the user editing a variable while scrubbing.
+      dataBuffer.setCurrentIndex(10);
+      double cAt10 = cBuffer.readBufferAt(10);
+      b.set(-6789.0);
+      dataBuffer.writeIntoBuffer();
+
+      assertEquals(-6789.0, bBuffer.readBufferAt(10));
+      assertEquals(cAt10, cBuffer.readBufferAt(10));
+
+      // Removing a variable keeps the pending reads consistent.
+      dataBuffer.setCurrentIndex(20);
+      c.set(42.0);
+      dataBuffer.removeVariable(a);
+      dataBuffer.readPendingFromBuffer();
+      assertEquals(42.0, c.getDoubleValue());
+      assertEquals(bBuffer.readBufferAt(20), b.getDoubleValue());
+
+      dataBuffer.setActiveVariables(null);
+      assertEquals(0, b.getNumberOfChangeTrackers());
+   }
+
+   @Test
+   public void testQuery()
+   {
+      Random random = new Random(74527);
+      fillDataBufferWithRandomData(random);
+
+      YoBufferQuery query = YoBufferQuery.greaterThan(a, 0.5).and(YoBufferQuery.lessThanOrEqualTo(b, 0.3)).or(YoBufferQuery.between(c, 0.1, 0.2));
+
+      for (int iteration = 0; iteration < 10; iteration++)
+      {
+         dataBuffer.setInPoint(random.nextInt(testBufferSize));
+         dataBuffer.setOutPoint(random.nextInt(testBufferSize));
+
+         BitSet result = dataBuffer.query(query);
+         BitSet expected = new BitSet();
+         int inOutLength = (dataBuffer.getOutPoint() - dataBuffer.getInPoint() + testBufferSize) % testBufferSize + 1;
+
+         for (int offset = 0; offset < inOutLength; offset++)
+         {
+            int index = (dataBuffer.getInPoint() + offset) % testBufferSize;
+            double aValue = aBuffer.readBufferAt(index);
+            double bValue = bBuffer.readBufferAt(index);
+            double cValue = cBuffer.readBufferAt(index);
+            if (aValue > 0.5 && bValue <= 0.3 || cValue >= 0.1 && cValue <= 0.2)
+               expected.set(index);
+         }
+
+         assertEquals(expected, result);
+      }
+
+      BitSet matches = dataBuffer.query(YoBufferQuery.greaterThan(a, 0.5));
+      BitSet starts = YoBufferQuery.toRangeStarts(matches);
+      for (int index = 0; index < testBufferSize; index++)
+         assertEquals(matches.get(index) && (index == 0 || !matches.get(index - 1)), starts.get(index));
+
+      KeyPointsHandler keyPointsHandler = dataBuffer.getKeyPointsHandler();
+      keyPointsHandler.addKeyPoint(starts.nextSetBit(0));
+      assertEquals(starts.cardinality() - 1, keyPointsHandler.addKeyPoints(starts));
+      assertEquals(starts.stream().boxed().collect(Collectors.toList()), keyPointsHandler.getKeyPoints());
+   }
+
    @Test // timeout = 30000
    public void testToggleKeyPointMode()
    {
@@ -922,6 +1268,351 @@ public class YoBufferTest
       }
    }
 
+   @Test // timeout = 30000
+   public void testGetTimeBufferIntoArray()
+   {
+      YoDouble time = new YoDouble("t", registry);
+      dataBuffer.addVariable(time);
+      assertTrue(dataBuffer.getTimeEntry().getVariable() == time);
+
+      for (int i = 0; i < 2 * testBufferSize; i++)
+      {
+         time.add(0.001);
+         dataBuffer.tickAndWriteIntoBuffer();
+      }
+
+      double[] timeBuffer = new double[testBufferSize];
+      dataBuffer.getTimeBuffer(timeBuffer);
+      assertArrayEquals(dataBuffer.getTimeBuffer(), timeBuffer);
+
+      // The cached entry is invalidated when the variable is removed.
+      dataBuffer.removeVariable(time);
+      assertNull(dataBuffer.getTimeEntry());
+      YoDouble otherTime = new YoDouble("t", new YoRegistry("other"));
+      dataBuffer.addVariable(otherTime);
+      assertTrue(dataBuffer.getTimeEntry().getVariable() == otherTime);
+   }
+
+   @Test // timeout = 30000
+   public void testTimeLookupAgainstLinearScan()
+   {
+      Random random = new Random(4572);
+      YoDouble time = new YoDouble("t", registry);
+      YoDouble value = new YoDouble("value", registry);
+      YoInteger counter = new YoInteger("counter", registry);
+      dataBuffer.addVariable(time);
+      dataBuffer.addVariable(value);
+      dataBuffer.addVariable(counter);
+
+      for (int i = 0; i < 5 * testBufferSize / 2; i++)
+      {
+         // Some ticks share the same time.
+         time.add(random.nextInt(4) == 0 ? 0.0 : random.nextDouble());
+         value.set(random.nextDouble());
+         counter.increment();
+         dataBuffer.tickAndWriteIntoBuffer();
+      }
+
+      for (int iteration = 0; iteration < 100; iteration++)
+      {
+         if (iteration > 0)
+         { // Random window that may wrap around the end of the buffer.
+            dataBuffer.setInPoint(random.nextInt(testBufferSize));
+            dataBuffer.setOutPoint(random.nextInt(testBufferSize));
+         }
+
+         int length = YoBufferEnvelope.computeWindowLength(dataBuffer.getInPoint(), dataBuffer.getOutPoint(), testBufferSize);
+         double[] times = new double[length];
+         dataBuffer.getTimeEntry().getBufferWindow(dataBuffer.getInPoint(), length, times, 0);
+         // Only the in-out window needs to be sorted.
+         for (int i = 1; i < length; i++)
+            times[i] = Math.max(times[i], times[i - 1]);
+         for (int i = 0; i < length; i++)
+            dataBuffer.getTimeEntry().writeBufferAt(times[i], (dataBuffer.getInPoint() + i) % testBufferSize);
+
+         for (int query = 0; query < 20; query++)
+         {
+            double queryTime = query % 5 == 0 ? times[random.nextInt(length)] : times[0] - 1.0 + random.nextDouble() * (times[length - 1] - times[0] + 2.0);
+            double queryEndTime = queryTime + random.nextDouble() * 5.0;
+
+            int expectedLast = -1, expectedFirst = -1, expectedRangeLast = -1;
+            for (int i = 0; i < length; i++)
+            {
+               if (times[i] <= queryTime)
+                  expectedLast = i;
+               if (expectedFirst == -1 && times[i] >= queryTime && times[i] <= queryEndTime)
+                  expectedFirst = i;
+               if (times[i] >= queryTime && times[i] <= queryEndTime)
+                  expectedRangeLast = i;
+            }
+
+            assertEquals(toBufferIndex(expectedLast), dataBuffer.findIndexAtTime(queryTime));
+
+            int[] range = dataBuffer.findIndexRange(queryTime, queryEndTime);
+            if (expectedFirst == -1)
+            {
+               assertNull(range);
+            }
+            else
+            {
+               assertEquals(toBufferIndex(expectedFirst), range[0]);
+               assertEquals(toBufferIndex(expectedRangeLast), range[1]);
+            }
+
+            YoBufferVariableEntry valueEntry = dataBuffer.getEntry(value);
+            YoBufferVariableEntry counterEntry = dataBuffer.getEntry(counter);
+
+            if (expectedLast == -1 || expectedLast == length - 1 && times[expectedLast] != queryTime)
+            {
+               assertTrue(Double.isNaN(dataBuffer.readValueAtTime(valueEntry, queryTime)));
+            }
+            else if (times[expectedLast] == queryTime)
+            {
+               assertEquals(valueEntry.readBufferAt(toBufferIndex(expectedLast)), dataBuffer.readValueAtTime(valueEntry, queryTime));
+            }
+            else
+            {
+               double previous = valueEntry.readBufferAt(toBufferIndex(expectedLast));
+               double next = valueEntry.readBufferAt(toBufferIndex(expectedLast + 1));
+               double alpha = (queryTime - times[expectedLast]) / (times[expectedLast + 1] - times[expectedLast]);
+               assertEquals(previous + alpha * (next - previous), dataBuffer.readValueAtTime(valueEntry, queryTime), 1.0e-12);
+               assertEquals(counterEntry.readBufferAt(toBufferIndex(expectedLast)), dataBuffer.readValueAtTime(counterEntry, queryTime));
+            }
+         }
+      }
+   }
+
+   private int toBufferIndex(int inOutOffset)
+   {
+      return inOutOffset == -1 ? -1 : (dataBuffer.getInPoint() + inOutOffset) % testBufferSize;
+   }
+
+   @Test // timeout = 30000
+   public void testChangeTracking()
+   {
+      Random random = new Random(93457);
+      int numberOfVariables = 200;
+      int bufferSize = 50;
+
+      // Two identical sets of variables, one recorded with change tracking, the other without.
+      YoRegistry expectedRegistry = new YoRegistry("root");
+      YoRegistry actualRegistry = new YoRegistry("root");
+      List<YoVariable> expectedVariables = createMixedVariables(numberOfVariables, expectedRegistry);
+      List<YoVariable> actualVariables = createMixedVariables(numberOfVariables, actualRegistry);
+
+      YoBuffer expectedBuffer = new YoBuffer(bufferSize);
+      expectedBuffer.addVariables(expectedVariables);
+      YoBuffer actualBuffer = new YoBuffer(bufferSize);
+      actualBuffer.addVariables(actualVariables.subList(0, numberOfVariables / 2));
+      actualBuffer.setChangeTrackingEnabled(true);
+      actualBuffer.addVariables(actualVariables.subList(numberOfVariables / 2, numberOfVariables));
+      assertTrue(actualBuffer.isChangeTrackingEnabled());
+
+      for (int i = 0; i < 20 * bufferSize; i++)
+      {
+         for (int j = 0; j < numberOfVariables / 20; j++)
+         {
+            int variableIndex = random.nextInt(numberOfVariables);
+            double value = random.nextInt(10);
+            expectedVariables.get(variableIndex).setValueFromDouble(value);
+            actualVariables.get(variableIndex).setValueFromDouble(value);
+         }
+
+         expectedBuffer.tickAndWriteIntoBuffer();
+         actualBuffer.tickAndWriteIntoBuffer();
+
+         int operation = random.nextInt(100);
+
+         if (operation < 5)
+         {
+            int index = random.nextInt(bufferSize);
+            expectedBuffer.setCurrentIndex(index);
+            actualBuffer.setCurrentIndex(index);
+         }
+         else if (operation < 7)
+         {
+            expectedBuffer.resizeBuffer(bufferSize + 10);
+            actualBuffer.resizeBuffer(bufferSize + 10);
+            expectedBuffer.resizeBuffer(bufferSize);
+            actualBuffer.resizeBuffer(bufferSize);
+         }
+         else if (operation < 8)
+         {
+            YoVariable removed = actualBuffer.removeVariable(actualVariables.get(0)).getVariable();
+            actualBuffer.addVariable(removed);
+            expectedBuffer.removeVariable(expectedVariables.get(0));
+            expectedBuffer.addVariable(expectedVariables.get(0));
+         }
+
+         if (random.nextInt(10) == 0)
+            assertTrue(expectedBuffer.epsilonEquals(actualBuffer, 0.0));
+      }
+
+      assertTrue(expectedBuffer.epsilonEquals(actualBuffer, 0.0));
+
+      actualBuffer.setChangeTrackingEnabled(false);
+      assertFalse(actualBuffer.isChangeTrackingEnabled());
+      for (YoVariable variable : actualVariables)
+         assertEquals(0, variable.getNumberOfChangeTrackers());
+      assertTrue(expectedBuffer.epsilonEquals(actualBuffer, 0.0));
+   }
+
+   @Test // timeout = 30000
+   public void testChangeTrackingReadsDoNotModifyStorage()
+   {
+      Random random = new Random(2351);
+      int bufferSize = 40;
+      YoRegistry registry = new YoRegistry("root");
+      YoDouble expectedVariable = new YoDouble("expected", registry);
+      YoDouble actualVariable = new YoDouble("actual", registry);
+
+      YoBuffer expectedBuffer = new YoBuffer(bufferSize);
+      YoBufferVariableEntry expectedEntry = expectedBuffer.addVariable(expectedVariable);
+      YoBuffer actualBuffer = new YoBuffer(bufferSize);
+      actualBuffer.setChangeTrackingEnabled(true);
+      YoBufferVariableEntry actualEntry = actualBuffer.addVariable(actualVariable);
+      actualEntry.setPrefixSumsEnabled(true);
+      // Another buffer tracking the same variable.
+      YoBuffer otherBuffer = new YoBuffer(bufferSize);
+      otherBuffer.setChangeTrackingEnabled(true);
+      YoBufferVariableEntry otherEntry = otherBuffer.addVariable(actualVariable);
+
+      double[] storageBefore = new double[bufferSize];
+      YoBufferStatistics expectedStatistics = new YoBufferStatistics();
+      YoBufferStatistics actualStatistics = new YoBufferStatistics();
+
+      for (int i = 0; i < 5 * bufferSize; i++)
+      {
+         if (random.nextInt(10) == 0)
+         {
+            double value = random.nextInt(10);
+            expectedVariable.set(value);
+            actualVariable.set(value);
+         }
+
+         expectedBuffer.tickAndWriteIntoBuffer();
+         actualBuffer.tickAndWriteIntoBuffer();
+         otherBuffer.tickAndWriteIntoBuffer();
+
+         actualEntry.getBufferStorage().read(0, bufferSize, storageBefore, 0);
+
+         int start = random.nextInt(bufferSize);
+         int length = random.nextInt(bufferSize - 1) + 1;
+         for (int j = 0; j < bufferSize; j++)
+            assertEquals(expectedEntry.readBufferAt(j), actualEntry.readBufferAt(j));
+         assertArrayEquals(expectedEntry.getBufferWindow(start, length), actualEntry.getBufferWindow(start, length));
+         assertArrayEquals(expectedEntry.getBuffer(), otherEntry.getBuffer());
+
+         expectedEntry.computeStatistics(start, length, expectedStatistics);
+         actualEntry.computeStatistics(start, length, actualStatistics);
+         assertEquals(expectedStatistics.getMean(), actualStatistics.getMean(), 1.0e-12);
+         actualEntry.computeMeanAndVariance(start, length, actualStatistics);
+         assertEquals(expectedStatistics.getMean(), actualStatistics.getMean(), 1.0e-12);
+
+         int end = (start + length - 1) % bufferSize;
+         assertEquals(expectedEntry.getWindowBounds(start, end).getLowerBound(), actualEntry.getWindowBounds(start, end).getLowerBound());
+         assertEquals(expectedEntry.getWindowBounds(start, end).getUpperBound(), actualEntry.getWindowBounds(start, end).getUpperBound());
+
+         ByteBuffer expectedExport = ByteBuffer.allocate(bufferSize * Double.BYTES);
+         ByteBuffer actualExport = ByteBuffer.allocate(bufferSize * Double.BYTES);
+         expectedEntry.exportBufferWindow(start, length, expectedExport);
+         actualEntry.exportBufferWindow(start, length, actualExport);
+         assertEquals(expectedExport.flip(), actualExport.flip());
+
+         assertArrayEquals(expectedEntry.getBuffer(), new YoBufferVariableEntry(actualEntry).getBuffer());
+
+         double threshold = random.nextInt(10);
+         expectedBuffer.setInOutPointFullBuffer();
+         actualBuffer.setInOutPointFullBuffer();
+         assertEquals(expectedBuffer.query(YoBufferQuery.greaterThan(expectedVariable, threshold)),
+                      actualBuffer.query(YoBufferQuery.greaterThan(actualVariable, threshold)));
+
+         for (int j = 0; j < bufferSize; j++)
+            assertEquals(storageBefore[j], actualEntry.getBufferStorage().read(j));
+      }
+   }
+
+   private static List<YoVariable> createMixedVariables(int numberOfVariables, YoRegistry registry)
+   {
+      List<YoVariable> variables = new ArrayList<>();
+
+      for (int i = 0; i < numberOfVariables; i++)
+      {
+         switch (i % 4)
+         {
+            case 0:
+               variables.add(new YoDouble("double" + i, registry));
+               break;
+            case 1:
+               variables.add(new YoBoolean("boolean" + i, registry));
+               break;
+            case 2:
+               variables.add(new YoInteger("integer" + i, registry));
+               break;
+            default:
+               variables.add(new YoEnum<>("enum" + i, "", registry, false, "A", "B", "C", "D", "E", "F", "G", "H", "I", "J"));
+               break;
+         }
+      }
+
+      return variables;
+   }
+
+   @Test // timeout = 30000
+   public void testMemoryBudget()
+   {
+      int numberOfVariables = 40;
+      long memoryBudget = 64000;
+      List<YoVariable> variables = createMixedVariables(numberOfVariables, new YoRegistry("root"));
+
+      YoBuffer buffer = new YoBuffer(testBufferSize);
+      assertEquals(0, buffer.getMemoryBudget());
+      buffer.setMemoryBudget(memoryBudget);
+      assertEquals(memoryBudget, buffer.getMemoryBudget());
+      // No variables yet, the size cannot be computed.
+      assertEquals(testBufferSize, buffer.getBufferSize());
+
+      long bitsPerTick = 0;
+
+      for (int i = 0; i < numberOfVariables / 2; i++)
+      {
+         YoBufferVariableEntry entry = buffer.addVariable(variables.get(i));
+         bitsPerTick += entry.getBufferStorage().getBitsPerValue();
+         assertEquals(bitsPerTick / 8.0, buffer.getMemoryUsagePerTick());
+         assertEquals((memoryBudget * 8 - 64 * buffer.getEntries().size()) / bitsPerTick, buffer.getBufferSize());
+         assertTrue(buffer.getMemoryUsage() <= memoryBudget);
+      }
+
+      buffer.addVariables(variables);
+      bitsPerTick = 0;
+      for (YoBufferVariableEntry entry : buffer.getEntries())
+         bitsPerTick += entry.getBufferStorage().getBitsPerValue();
+      assertEquals(bitsPerTick / 8.0, buffer.getMemoryUsagePerTick());
+      assertEquals((memoryBudget * 8 - 64 * buffer.getEntries().size()) / bitsPerTick, buffer.getBufferSize());
+      assertTrue(buffer.getMemoryUsage() <= memoryBudget);
+
+      // Fill the buffer, removing variables then lets it grow back.
+      for (int i = 0; i < buffer.getBufferSize(); i++)
+         buffer.tickAndWriteIntoBuffer();
+      int previousBufferSize = buffer.getBufferSize();
+
+      for (int i = 0; i < numberOfVariables / 2; i++)
+      {
+         YoBufferVariableEntry entry = buffer.removeVariable(variables.get(i));
+         bitsPerTick -= entry.getBufferStorage().getBitsPerValue();
+         assertEquals(bitsPerTick / 8.0, buffer.getMemoryUsagePerTick());
+         assertEquals((memoryBudget * 8 - 64 * buffer.getEntries().size()) / bitsPerTick, buffer.getBufferSize());
+         assertTrue(buffer.getBufferSize() >= previousBufferSize);
+         assertTrue(buffer.getMemoryUsage() <= memoryBudget);
+         previousBufferSize = buffer.getBufferSize();
+      }
+
+      // Disabling the budget fixes the buffer size.
+      buffer.setMemoryBudget(0);
+      buffer.addVariables(variables);
+      assertEquals(previousBufferSize, buffer.getBufferSize());
+   }
+
    //testGetVars(String [], String[])
 
    //testGetVarsFromGroup(String varGroupName, VarGroupList varGroupList)
@@ -0,0 +1,169 @@
+package us.ihmc.yoVariables.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+public class YoBufferTimeAlignerTest
+{
+   private static final double EPSILON = 1.0e-12;
+
+   @Test
+   public void testJoin()
+   {
+      Random random = new Random(6734);
+      YoBuffer fastBuffer = createBuffer(random, "fast", 5000, 0.0, 0.001);
+      YoBuffer slowBuffer = createBuffer(random, "slow", 500, 0.0005, 0.01);
+
+      for (YoBufferResamplingMode mode : YoBufferResamplingMode.values())
+      {
+         YoBufferTimeAligner aligner = YoBufferTimeAligner.join(mode, fastBuffer, slowBuffer);
+         assertEquals(fastBuffer.getBufferInOutLength(), aligner.getLength());
+         assertEquals(6, aligner.getVariables().size());
+
+         for (YoVariable variable : aligner.getVariables())
+         {
+            YoBuffer source = variable.getName().startsWith("fast") ? fastBuffer : slowBuffer;
+            double[] values = new double[aligner.getLength()];
+            aligner.read(variable, 0, values.length, values, 0);
+
+            for (int tick = 0; tick < values.length; tick++)
+               assertEquals(expectedValue(source, source.getEntry(variable), mode, aligner.getTime(tick)), values[tick], EPSILON);
+
+            // Unaligned reads across chunks
+            int fromTick = random.nextInt(values.length);
+            int length = random.nextInt(values.length - fromTick + 1);
+            double[] window = new double[length];
+            aligner.read(variable, fromTick, length, window, 0);
+            for (int i = 0; i < length; i++)
+               assertEquals(values[fromTick + i], window[i]);
+         }
+      }
+   }
+
+   @Test
+   public void testJoinSparseReference()
+   {
+      // Each chunk of the timeline spans 50 times more ticks of the dense buffer.
+      Random random = new Random(4512);
+      YoBuffer sparseBuffer = createBuffer(random, "sparse", 2000, 0.0005, 0.05);
+      YoBuffer denseBuffer = createBuffer(random, "dense", 100000, 0.0, 0.001);
+
+      for (YoBufferResamplingMode mode : YoBufferResamplingMode.values())
+      {
+         YoBufferTimeAligner aligner = YoBufferTimeAligner.join(mode, sparseBuffer, denseBuffer);
+
+         for (YoVariable variable : aligner.getVariables())
+         {
+            YoBuffer source = variable.getName().startsWith("sparse") ? sparseBuffer : denseBuffer;
+            double[] values = new double[aligner.getLength()];
+            aligner.read(variable, 0, values.length, values, 0);
+
+            for (int tick = 0; tick < values.length; tick++)
+               assertEquals(expectedValue(source, source.getEntry(variable), mode, aligner.getTime(tick)), values[tick], EPSILON);
+         }
+      }
+   }
+
+   @Test
+   public void testEmptyTimeline()
+   {
+      YoBufferTimeAligner aligner = YoBufferTimeAligner.merge(YoBufferResamplingMode.LINEAR);
+      assertEquals(0, aligner.getLength());
+      assertThrows(IllegalStateException.class, () -> aligner.toBuffer());
+   }
+
+   @Test
+   public void testMergeToBuffer()
+   {
+      Random random = new Random(2398);
+      YoBuffer fastBuffer = createBuffer(random, "fast", 3000, 0.0, 0.001);
+      YoBuffer slowBuffer = createBuffer(random, "slow", 400, 0.0005, 0.01);
+      YoBufferTimeAligner aligner = YoBufferTimeAligner.merge(YoBufferResamplingMode.LINEAR, fastBuffer, slowBuffer);
+
+      // The timeline holds each tick of both buffers in order.
+      double[] timeline = aligner.getTimeBuffer();
+      assertEquals(3000 + 400, timeline.length);
+      for (int i = 1; i < timeline.length; i++)
+         assertTrue(timeline[i - 1] < timeline[i]);
+
+      YoBuffer merged = aligner.toBuffer();
+      assertEquals(timeline.length, merged.getBufferSize());
+      assertEquals(0, merged.getInPoint());
+      assertEquals(timeline.length - 1, merged.getOutPoint());
+      assertArrayEquals(timeline, merged.getTimeBuffer());
+
+      for (YoVariable variable : aligner.getVariables())
+      {
+         if (variable == fastBuffer.getTimeEntry().getVariable())
+            continue;
+
+         double[] expected = new double[timeline.length];
+         aligner.read(variable, 0, expected.length, expected, 0);
+         double[] actual = merged.getEntry(variable).getBuffer();
+
+         for (int i = 0; i < expected.length; i++)
+         { // Only doubles can store the NaNs outside the time range of a buffer.
+            if (!Double.isNaN(expected[i]) || variable instanceof YoDouble)
+               assertEquals(expected[i], actual[i]);
+         }
+      }
+   }
+
+   private static double expectedValue(YoBuffer source, YoBufferVariableEntry entry, YoBufferResamplingMode mode, double time)
+   {
+      if (mode == YoBufferResamplingMode.LINEAR)
+         return source.readValueAtTime(entry, time);
+
+      // Zero-order hold
+      int index = source.findIndexAtTime(time);
+      if (index < 0 || time > source.getTimeEntry().readBufferAt(source.getOutPoint()))
+         return Double.NaN;
+      else
+         return entry.readBufferAt(index);
+   }
+
+   /**
+    * Creates a buffer which ticks in [inPoint, outPoint] wrap around the end of the buffer.
+    */
+   private static YoBuffer createBuffer(Random random, String prefix, int length, double startTime, double period)
+   {
+      YoRegistry registry = new YoRegistry(prefix + "Registry");
+      YoDouble time = new YoDouble(prefix + "Time", registry);
+      YoDouble position = new YoDouble(prefix + "Position", registry);
+      YoBoolean contact = new YoBoolean(prefix + "Contact", registry);
+
+      YoBuffer buffer = new YoBuffer(length);
+      buffer.addVariables(registry.collectSubtreeVariables());
+      buffer.setTimeVariableName(time.getFullNameString());
+
+      double[] times = new double[length];
+      double[] positions = new double[length];
+      double[] contacts = new double[length];
+
+      for (int i = 0; i < length; i++)
+      {
+         times[i] = startTime + i * period;
+         positions[i] = random.nextDouble();
+         contacts[i] = random.nextInt(2);
+      }
+
+      int inPoint = random.nextInt(length);
+      buffer.getEntry(time).setBufferWindow(inPoint, length, times, 0);
+      buffer.getEntry(position).setBufferWindow(inPoint, length, positions, 0);
+      buffer.getEntry(contact).setBufferWindow(inPoint, length, contacts, 0);
+      buffer.setInPoint(inPoint);
+      buffer.setOutPoint((inPoint + length - 1) % length);
+      return buffer;
+   }
+}
@@ -0,0 +1,146 @@
+package us.ihmc.yoVariables.buffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+
+public class YoBufferTriggerRecorderTest
+{
+   private static final int BUFFER_SIZE = 100;
+
+   @Test
+   public void testCapture()
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      YoDouble value = new YoDouble("value", registry);
+      YoBoolean fault = new YoBoolean("fault", registry);
+      YoBuffer buffer = new YoBuffer(BUFFER_SIZE);
+      buffer.addVariables(registry.collectSubtreeVariables());
+
+      List<double[]> capturedValues = new ArrayList<>();
+      List<Integer> triggerOffsets = new ArrayList<>();
+      int preTriggerLength = 10;
+      int postTriggerLength = 5;
+
+      YoBufferTriggerRecorder recorder = new YoBufferTriggerRecorder(buffer, fault::getValue, preTriggerLength, postTriggerLength, capture ->
+      {
+         capturedValues.add(capture.getValues(value));
+         triggerOffsets.add(capture.getTriggerOffset());
+      });
+
+      // The faults at ticks 3 and 250 are captured, the one at 253 happens while capturing and is ignored.
+      int[] faultTicks = {3, 250, 253};
+
+      for (int tick = 1; tick <= 5 * BUFFER_SIZE; tick++)
+      {
+         value.set(tick);
+         fault.set(false);
+         for (int faultTick : faultTicks)
+         {
+            if (tick == faultTick)
+               fault.set(true);
+         }
+         buffer.tickAndWriteIntoBuffer();
+      }
+
+      recorder.close();
+
+      assertEquals(2, capturedValues.size());
+      assertEquals(0L, recorder.getNumberOfDroppedCaptures());
+      // Only two ticks were written before the first fault.
+      assertEquals(2, (int) triggerOffsets.get(0));
+      assertArrayEquals(range(1, 3 + postTriggerLength), capturedValues.get(0));
+      assertEquals(preTriggerLength, (int) triggerOffsets.get(1));
+      assertArrayEquals(range(250 - preTriggerLength, 250 + postTriggerLength), capturedValues.get(1));
+   }
+
+   @Test
+   public void testCaptureWithChangeTracking()
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      YoDouble value = new YoDouble("value", registry);
+      YoBoolean fault = new YoBoolean("fault", registry);
+      YoBuffer buffer = new YoBuffer(BUFFER_SIZE);
+      buffer.addVariables(registry.collectSubtreeVariables());
+      buffer.setChangeTrackingEnabled(true);
+
+      List<double[]> capturedValues = new ArrayList<>();
+      int preTriggerLength = 40;
+      int postTriggerLength = 3;
+
+      YoBufferTriggerRecorder recorder = new YoBufferTriggerRecorder(buffer, fault::getValue, preTriggerLength, postTriggerLength, capture ->
+      {
+         capturedValues.add(capture.getValues(value));
+      });
+
+      double[] expected = new double[3 * BUFFER_SIZE + 1];
+
+      for (int tick = 1; tick <= 3 * BUFFER_SIZE; tick++)
+      {
+         // The value only changes every 7 ticks such that most of the captured values are carried forward.
+         if (tick % 7 == 0)
+            value.set(tick);
+         expected[tick] = value.getValue();
+         fault.set(tick == 150);
+         buffer.tickAndWriteIntoBuffer();
+      }
+
+      recorder.close();
+
+      assertEquals(1, capturedValues.size());
+      double[] expectedCapture = new double[preTriggerLength + 1 + postTriggerLength];
+      System.arraycopy(expected, 150 - preTriggerLength, expectedCapture, 0, expectedCapture.length);
+      assertArrayEquals(expectedCapture, capturedValues.get(0));
+   }
+
+   @Test
+   public void testSingleShot()
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      YoBoolean fault = new YoBoolean("fault", registry);
+      YoBuffer buffer = new YoBuffer(BUFFER_SIZE);
+      buffer.addVariables(registry.collectSubtreeVariables());
+
+      assertThrows(IllegalArgumentException.class, () -> new YoBufferTriggerRecorder(buffer, fault::getValue, BUFFER_SIZE, 0, capture ->
+      {
+      }));
+
+      int[] numberOfCaptures = {0};
+      YoBufferTriggerRecorder recorder = new YoBufferTriggerRecorder(buffer, fault::getValue, 0, 0, capture -> numberOfCaptures[0]++);
+      recorder.setAutoRearm(false);
+
+      for (int tick = 0; tick < 20; tick++)
+      {
+         fault.set(tick % 2 == 0);
+         buffer.tickAndWriteIntoBuffer();
+      }
+
+      assertFalse(recorder.isArmed());
+      recorder.arm();
+      fault.set(false);
+      buffer.tickAndWriteIntoBuffer();
+      fault.set(true);
+      buffer.tickAndWriteIntoBuffer();
+      recorder.close();
+
+      assertEquals(2, numberOfCaptures[0]);
+   }
+
+   private static double[] range(int first, int last)
+   {
+      double[] range = new double[last - first + 1];
+      for (int i = 0; i < range.length; i++)
+         range[i] = first + i;
+      return range;
+   }
+}
@@ -1,7 +1,9 @@
 package us.ihmc.yoVariables.buffer;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Random;
@@ -10,6 +12,8 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import us.ihmc.yoVariables.buffer.storage.YoBufferDoubleStorage;
+import us.ihmc.yoVariables.buffer.storage.YoBufferStorageFactory;
 import us.ihmc.yoVariables.variable.YoDouble;
 
 public class YoBufferVariableEntryTest
@@ -78,6 +82,146 @@ public class YoBufferVariableEntryTest
       assertEquals(average, computedAverage, 1e-7);
    }
 
+   @Test
+   public void testComputeStatistics()
+   {
+      Random random = new Random(768440);
+      double[] data = new double[nPoints];
+
+      for (int i = 0; i < nPoints; i++)
+      {
+         data[i] = random.nextInt(20) == 0 ? Double.NaN : 1.0e3 + 10.0 * random.nextDouble();
+         yoDouble.set(data[i]);
+         dataBufferEntry.writeIntoBufferAt(i);
+      }
+
+      YoBufferStatistics statistics = new YoBufferStatistics();
+      YoBufferStatistics prefixStatistics = new YoBufferStatistics();
+
+      for (int iteration = 0; iteration < 100; iteration++)
+      {
+         // Half of the windows wrap around the end of the buffer.
+         int start = random.nextInt(nPoints);
+         int length = random.nextInt(nPoints) + 1;
+
+         double sum = 0.0;
+         int count = 0;
+         double min = Double.POSITIVE_INFINITY;
+         int minIndex = -1;
+
+         for (int i = 0; i < length; i++)
+         {
+            int index = (start + i) % nPoints;
+            if (Double.isNaN(data[index]))
+               continue;
+            sum += data[index];
+            count++;
+            if (data[index] < min)
+            {
+               min = data[index];
+               minIndex = index;
+            }
+         }
+
+         double mean = sum / count;
+         double variance = 0.0;
+         for (int i = 0; i < length; i++)
+         {
+            int index = (start + i) % nPoints;
+            if (!Double.isNaN(data[index]))
+               variance += (data[index] - mean) * (data[index] - mean) / count;
+         }
+
+         dataBufferEntry.setPrefixSumsEnabled(false);
+         dataBufferEntry.computeStatistics(start, length, statistics);
+         assertEquals(count, statistics.getCount());
+         assertEquals(length - count, statistics.getNaNCount());
+         assertEquals(mean, statistics.getMean(), 1.0e-9);
+         assertEquals(variance, statistics.getVariance(), 1.0e-7);
+         assertEquals(min, statistics.getMinimum());
+         assertEquals(minIndex, statistics.getMinimumIndex());
+
+         dataBufferEntry.setPrefixSumsEnabled(true);
+         dataBufferEntry.computeMeanAndVariance(start, length, prefixStatistics);
+         assertEquals(count, prefixStatistics.getCount());
+         assertEquals(mean, prefixStatistics.getMean(), 1.0e-9);
+         assertEquals(variance, prefixStatistics.getVariance(), 1.0e-7);
+         assertEquals(mean, dataBufferEntry.computeAverage(start, length), 1.0e-9);
+
+         // Overwrite a value to check that the prefix sums are updated.
+         int index = random.nextInt(nPoints);
+         data[index] = 1.0e3 + 10.0 * random.nextDouble();
+         yoDouble.set(data[index]);
+         dataBufferEntry.writeIntoBufferAt(index);
+      }
+
+      double[] percentiles = new double[2];
+      dataBufferEntry.computePercentiles(0, nPoints, new double[] {0.0, 100.0}, percentiles);
+      dataBufferEntry.computeStatistics(0, nPoints, statistics);
+      assertEquals(statistics.getMinimum(), percentiles[0]);
+      assertEquals(statistics.getMaximum(), percentiles[1]);
+   }
+
+   @Test // timeout=300000
+   public void testPrefixSumsWrappedSteadyState()
+   {
+      Random random = new Random(90321);
+      int windowLength = 1000;
+      long[] numberOfReads = new long[1];
+      YoBufferStorageFactory countingFactory = (variable, size) -> new YoBufferDoubleStorage(size)
+      {
+         @Override
+         public double read(int index)
+         {
+            numberOfReads[0]++;
+            return super.read(index);
+         }
+
+         @Override
+         public void read(int startIndex, int length, double[] destination, int destinationOffset)
+         {
+            numberOfReads[0] += length;
+            super.read(startIndex, length, destination, destinationOffset);
+         }
+      };
+      YoBufferVariableEntry entry = new YoBufferVariableEntry(yoDouble, nPoints, countingFactory);
+      entry.setPrefixSumsEnabled(true);
+      double[] data = new double[nPoints];
+      YoBufferStatistics statistics = new YoBufferStatistics();
+
+      // Recording keeps overwriting the oldest value once the buffer has wrapped around.
+      for (int tick = 0; tick < 3 * nPoints; tick++)
+      {
+         int index = tick % nPoints;
+         data[index] = 100.0 + random.nextDouble();
+         yoDouble.set(data[index]);
+         entry.writeIntoBufferAt(index);
+
+         if (tick < windowLength)
+            continue;
+
+         int start = Math.floorMod(index - windowLength + 1, nPoints);
+         numberOfReads[0] = 0;
+         entry.computeMeanAndVariance(start, windowLength, statistics);
+         // The prefix sums are built by the first query, then only the values around the window ends are read.
+         if (tick > windowLength)
+            assertTrue(numberOfReads[0] <= 4 * YoBufferPrefixSums.BLOCK_SIZE, "Too many values read: " + numberOfReads[0]);
+
+         if (tick % 97 == 0)
+         {
+            double mean = 0.0;
+            for (int i = 0; i < windowLength; i++)
+               mean += data[(start + i) % nPoints] / windowLength;
+            double variance = 0.0;
+            for (int i = 0; i < windowLength; i++)
+               variance += (data[(start + i) % nPoints] - mean) * (data[(start + i) % nPoints] - mean) / windowLength;
+
+            assertEquals(mean, statistics.getMean(), 1.0e-9);
+            assertEquals(variance, statistics.getVariance(), 1.0e-9);
+         }
+      }
+   }
+
    @Test // timeout=300000
    public void testUpdateValue()
    {
@@ -492,6 +636,62 @@ public class YoBufferVariableEntryTest
       }
    }
 
+   @Test // timeout=300000
+   public void testGetBufferWindowIntoArray()
+   {
+      Random random = new Random(34590);
+      double[] data = new double[nPoints];
+
+      for (int i = 0; i < nPoints; i++)
+      {
+         data[i] = random.nextDouble();
+         dataBufferEntry.writeBufferAt(data[i], i);
+      }
+
+      double[] buffer = new double[nPoints];
+      dataBufferEntry.getBuffer(buffer);
+      assertArrayEquals(data, buffer);
+
+      YoBufferWindowView view = new YoBufferWindowView();
+
+      for (int iteration = 0; iteration < 100; iteration++)
+      {
+         int startIndex = random.nextInt(nPoints);
+         int length = random.nextInt(nPoints + 1);
+         int offset = random.nextInt(10);
+         double[] window = new double[offset + length];
+         dataBufferEntry.getBufferWindow(startIndex, length, window, offset);
+         view.set(dataBufferEntry, startIndex, length);
+         assertEquals(length, view.getLength());
+
+         for (int i = 0; i < length; i++)
+         {
+            double expected = data[(startIndex + i) % nPoints];
+            assertEquals(expected, window[offset + i]);
+            assertEquals(expected, view.get(i));
+         }
+
+         if (length > 0)
+         {
+            int viewOffset = random.nextInt(length);
+            int viewLength = random.nextInt(length - viewOffset + 1);
+            double[] fromView = new double[viewLength];
+            view.get(viewOffset, viewLength, fromView, 0);
+            for (int i = 0; i < viewLength; i++)
+               assertEquals(window[offset + viewOffset + i], fromView[i]);
+         }
+      }
+
+      // The view does not copy the data.
+      view.set(dataBufferEntry, nPoints - 1, 2);
+      dataBufferEntry.writeBufferAt(-1.0, 0);
+      assertEquals(-1.0, view.get(1));
+
+      assertThrows(IndexOutOfBoundsException.class, () -> view.get(2));
+      assertThrows(IndexOutOfBoundsException.class, () -> dataBufferEntry.getBufferWindow(0, 10, new double[9], 0));
+      assertThrows(IndexOutOfBoundsException.class, () -> view.set(dataBufferEntry, nPoints, 1));
+   }
+
    @Test // timeout=300000
    public void testEnableAutoScale()
    {
@@ -522,6 +722,121 @@ public class YoBufferVariableEntryTest
       assertEquals(oldMax, dataBufferEntry.getWindowUpperBound(350, 450), 0);
    }
 
+   @Test // timeout=300000
+   public void testGetWindowBoundsAgainstLinearScan()
+   {
+      Random random = new Random(29835);
+      double[] data = new double[nPoints];
+
+      for (int i = 0; i < nPoints; i++)
+      {
+         data[i] = random.nextDouble() - 0.5;
+         dataBufferEntry.writeBufferAt(data[i], i);
+      }
+
+      for (int iteration = 0; iteration < 1000; iteration++)
+      {
+         // Overwrite a few values as the recording would, possibly removing a previous extremum.
+         int numberOfWrites = random.nextInt(300);
+         int writeIndex = random.nextInt(nPoints);
+
+         for (int i = 0; i < numberOfWrites; i++)
+         {
+            double value = random.nextInt(50) == 0 ? Double.NaN : random.nextDouble() - 0.5;
+            yoDouble.set(value);
+            dataBufferEntry.writeIntoBufferAt(writeIndex);
+            data[writeIndex] = value;
+            writeIndex = (writeIndex + 1) % nPoints;
+         }
+
+         int startIndex, endIndex;
+
+         if (random.nextBoolean())
+         { // Small window, possibly within a single block
+            startIndex = random.nextInt(nPoints);
+            endIndex = (startIndex + random.nextInt(2 * YoBufferBoundsIndex.BLOCK_SIZE)) % nPoints;
+         }
+         else
+         {
+            startIndex = random.nextInt(nPoints);
+            endIndex = random.nextInt(nPoints);
+         }
+
+         YoBufferBounds expected = new YoBufferBounds();
+         expected.setInterval(startIndex, endIndex);
+         expected.compute(data);
+
+         YoBufferBounds actual = dataBufferEntry.getWindowBounds(startIndex, endIndex);
+         assertEquals(expected.getLowerBound(), actual.getLowerBound());
+         assertEquals(expected.getUpperBound(), actual.getUpperBound());
+      }
+
+      YoBufferBounds expected = new YoBufferBounds();
+      expected.setInterval(0, nPoints - 1);
+      expected.compute(data);
+      dataBufferEntry.shiftBuffer(1); // Marks the bounds as dirty.
+      dataBufferEntry.shiftBuffer(nPoints - 1);
+      assertEquals(expected.getLowerBound(), dataBufferEntry.getBounds().getLowerBound());
+      assertEquals(expected.getUpperBound(), dataBufferEntry.getBounds().getUpperBound());
+   }
+
+   @Test // timeout=300000
+   public void testComputeEnvelope()
+   {
+      Random random = new Random(66032);
+      double[] data = new double[nPoints];
+      YoBufferEnvelope envelope = new YoBufferEnvelope();
+
+      for (int i = 0; i < nPoints; i++)
+      {
+         data[i] = random.nextDouble() - 0.5;
+         dataBufferEntry.writeBufferAt(data[i], i);
+      }
+
+      for (int iteration = 0; iteration < 300; iteration++)
+      {
+         int writeIndex = random.nextInt(nPoints);
+
+         for (int i = 0; i < random.nextInt(500); i++)
+         {
+            data[writeIndex] = random.nextInt(50) == 0 ? Double.NaN : random.nextDouble() - 0.5;
+            yoDouble.set(data[writeIndex]);
+            dataBufferEntry.writeIntoBufferAt(writeIndex);
+            writeIndex = (writeIndex + 1) % nPoints;
+         }
+
+         int startIndex = random.nextInt(nPoints);
+         int endIndex = random.nextInt(nPoints);
+         int windowLength = YoBufferEnvelope.computeWindowLength(startIndex, endIndex, nPoints);
+         int numberOfPixels = random.nextInt(2000) + 1;
+
+         dataBufferEntry.computeEnvelope(startIndex, endIndex, numberOfPixels, envelope);
+         assertEquals(Math.min(numberOfPixels, windowLength), envelope.getNumberOfPixels());
+         assertEquals(windowLength, envelope.getPixelStartOffset(envelope.getNumberOfPixels()));
+
+         for (int pixel = 0; pixel < envelope.getNumberOfPixels(); pixel++)
+         {
+            int fromOffset = envelope.getPixelStartOffset(pixel);
+            int toOffset = envelope.getPixelStartOffset(pixel + 1);
+            assertTrue(toOffset > fromOffset);
+
+            double lowerBound = Double.POSITIVE_INFINITY;
+            double upperBound = Double.NEGATIVE_INFINITY;
+            for (int offset = fromOffset; offset < toOffset; offset++)
+            {
+               double value = data[(startIndex + offset) % nPoints];
+               lowerBound = value < lowerBound ? value : lowerBound;
+               upperBound = value > upperBound ? value : upperBound;
+            }
+
+            assertEquals(lowerBound, envelope.getLowerBound(pixel));
+            assertEquals(upperBound, envelope.getUpperBound(pixel));
+            assertEquals(data[(startIndex + fromOffset) % nPoints], envelope.getFirstValue(pixel));
+            assertEquals(data[(startIndex + toOffset - 1) % nPoints], envelope.getLastValue(pixel));
+         }
+      }
+   }
+
    @Test // timeout=300000
    public void testGetMinWithParameters()
    {
@@ -562,6 +877,55 @@ public class YoBufferVariableEntryTest
       assertTrue(dataBufferEntry.getBufferSize() == nPoints / keepEveryNthPoint);
    }
 
+   @Test
+   public void testThinDataModes()
+   {
+      Random random = new Random(53291);
+      int keepEveryNthPoint = 10;
+      int spikeIndex = 4567;
+      double[] data = new double[nPoints];
+
+      for (int i = 0; i < nPoints; i++)
+         data[i] = i == spikeIndex ? 1000.0 : random.nextDouble();
+
+      for (YoBufferThinningMode mode : YoBufferThinningMode.values())
+      {
+         YoBufferVariableEntry entry = new YoBufferVariableEntry(yoDouble, nPoints);
+         for (int i = 0; i < nPoints; i++)
+            entry.writeBufferAt(data[i], i);
+
+         int newSize = entry.thinData(keepEveryNthPoint, mode);
+         assertEquals(nPoints / keepEveryNthPoint, newSize);
+         assertEquals(newSize, entry.getBufferSize());
+
+         switch (mode)
+         {
+            case EVERY_NTH:
+               for (int i = 0; i < newSize; i++)
+                  assertEquals(data[i * keepEveryNthPoint], entry.readBufferAt(i));
+               break;
+            case MEAN:
+               for (int i = 0; i < newSize; i++)
+               {
+                  double expected = 0.0;
+                  for (int j = 0; j < keepEveryNthPoint; j++)
+                     expected += data[i * keepEveryNthPoint + j];
+                  assertEquals(expected / keepEveryNthPoint, entry.readBufferAt(i), 1.0e-12);
+               }
+               break;
+            case LTTB:
+               assertEquals(data[0], entry.readBufferAt(0));
+               assertEquals(data[nPoints - 1], entry.readBufferAt(newSize - 1));
+               assertEquals(1000.0, entry.getUpperBound());
+               break;
+            default:
+               // The spike is preserved.
+               assertEquals(1000.0, entry.getUpperBound());
+               break;
+         }
+      }
+   }
+
    @Test // timeout = 30000
    public void testGetSetInverted()
    {
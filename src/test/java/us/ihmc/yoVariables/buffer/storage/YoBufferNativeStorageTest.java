@@ -0,0 +1,289 @@
+package us.ihmc.yoVariables.buffer.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import us.ihmc.yoVariables.buffer.YoBuffer;
+import us.ihmc.yoVariables.buffer.YoBufferVariableEntry;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoInteger;
+import us.ihmc.yoVariables.variable.YoLong;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+public class YoBufferNativeStorageTest
+{
+   private static final int ITERATIONS = 100;
+
+   private enum SmallEnum
+   {
+      A, B, C
+   }
+
+   @TempDir
+   public Path temporaryDirectory;
+
+   @Test // timeout=300000
+   public void testAgainstHeapStorage()
+   {
+      Random random = new Random(3457);
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry), new YoEnum<>("enum", registry, SmallEnum.class, true),
+            new YoInteger("integer", registry), new YoLong("long", registry)};
+      YoBufferStorageFactory[] factories = {YoBufferStorageFactory.offHeap(), YoBufferStorageFactory.memoryMapped(temporaryDirectory)};
+
+      for (YoBufferStorageFactory factory : factories)
+      {
+         for (YoVariable variable : variables)
+         {
+            for (int iteration = 0; iteration < ITERATIONS; iteration++)
+            {
+               int size = random.nextInt(200) + 1;
+               YoBufferStorage expected = YoBufferStorage.newStorage(variable, size);
+               YoBufferStorage actual = factory.newStorage(variable, size);
+               assertTrue(actual instanceof YoBufferNativeStorage);
+
+               for (int i = 0; i < size; i++)
+               {
+                  double value = random.nextInt(5) - 1.0 + random.nextDouble();
+                  assertEquals(expected.write(i, value), actual.write(i, value));
+               }
+               assertStorageEquals(expected, actual);
+
+               int sourceIndex = random.nextInt(size);
+               int length = random.nextInt(size - sourceIndex + 1);
+               int destinationIndex = random.nextInt(size - length + 1);
+               expected.copy(expected, sourceIndex, destinationIndex, length);
+               actual.copy(actual, sourceIndex, destinationIndex, length);
+               assertStorageEquals(expected, actual);
+
+               YoBufferStorage expectedOther = expected.newStorage(size);
+               YoBufferStorage actualOther = actual.newStorage(size);
+               expectedOther.copy(expected, sourceIndex, destinationIndex, length);
+               actualOther.copy(actual, sourceIndex, destinationIndex, length);
+               assertStorageEquals(expectedOther, actualOther);
+
+               int fromIndex = random.nextInt(size + 1);
+               int toIndex = fromIndex + random.nextInt(size - fromIndex + 1);
+               double fillValue = random.nextInt(2);
+               expected.fill(fromIndex, toIndex, fillValue);
+               actual.fill(fromIndex, toIndex, fillValue);
+               assertStorageEquals(expected, actual);
+               assertStorageEquals(expected, actual.duplicate());
+            }
+         }
+      }
+   }
+
+   @Test // timeout=300000
+   public void testExportImportAgainstHeapStorage()
+   {
+      Random random = new Random(7812);
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry), new YoEnum<>("enum", registry, SmallEnum.class, true),
+            new YoInteger("integer", registry), new YoLong("long", registry)};
+
+      for (YoVariable variable : variables)
+      {
+         for (int iteration = 0; iteration < ITERATIONS; iteration++)
+         {
+            int size = random.nextInt(200) + 1;
+            YoBufferStorage heap = YoBufferStorage.newStorage(variable, size);
+            YoBufferStorage offHeap = YoBufferStorageFactory.offHeap().newStorage(variable, size);
+            assertEquals(heap.getExportBitsPerValue(), offHeap.getExportBitsPerValue());
+
+            for (int i = 0; i < size; i++)
+            {
+               double value = random.nextInt(5) - 1.0 + random.nextDouble();
+               heap.write(i, value);
+               offHeap.write(i, value);
+            }
+
+            int fromIndex = random.nextInt(size);
+            int length = random.nextInt(size + 1);
+            ByteOrder order = random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            ByteBuffer heapExport = ByteBuffer.allocate(heap.getExportSize(length)).order(order);
+            ByteBuffer offHeapExport = ByteBuffer.allocate(offHeap.getExportSize(length)).order(order);
+            heap.exportValues(fromIndex, length, heapExport);
+            offHeap.exportValues(fromIndex, length, offHeapExport);
+            assertEquals(heapExport.flip(), offHeapExport.flip());
+
+            // Import into the other kind of storage.
+            YoBufferStorage heapImport = heap.newStorage(size);
+            YoBufferStorage offHeapImport = offHeap.newStorage(size);
+            int toIndex = random.nextInt(size);
+            heapImport.importValues(offHeapExport, 0, toIndex, length);
+            offHeapImport.importValues(heapExport, 0, toIndex, length);
+            assertStorageEquals(heapImport, offHeapImport);
+            for (int i = 0; i < length; i++)
+               assertEquals(heap.read((fromIndex + i) % size), offHeapImport.read((toIndex + i) % size));
+         }
+      }
+   }
+
+   @Test // timeout=300000
+   public void testBufferOperations()
+   {
+      Random random = new Random(8923);
+      int bufferSize = 500;
+      YoRegistry registry = new YoRegistry("registry");
+      YoDouble time = new YoDouble("t", registry);
+      YoDouble yoDouble = new YoDouble("double", registry);
+      YoBoolean yoBoolean = new YoBoolean("boolean", registry);
+      YoInteger yoInteger = new YoInteger("integer", registry);
+
+      YoBuffer expected = new YoBuffer(bufferSize);
+      YoBuffer actual = new YoBuffer(bufferSize, YoBufferStorageFactory.memoryMapped(temporaryDirectory));
+      expected.addVariables(registry.collectSubtreeVariables());
+      actual.addVariables(registry.collectSubtreeVariables());
+
+      for (int i = 0; i < 3 * bufferSize / 2; i++)
+      {
+         time.add(0.001);
+         yoDouble.set(random.nextDouble());
+         yoBoolean.set(random.nextBoolean());
+         yoInteger.set(random.nextInt(100));
+         expected.tickAndWriteIntoBuffer();
+         actual.tickAndWriteIntoBuffer();
+      }
+      assertTrue(expected.epsilonEquals(actual, 0.0));
+
+      expected.resizeBuffer(2 * bufferSize);
+      actual.resizeBuffer(2 * bufferSize);
+      assertTrue(expected.epsilonEquals(actual, 0.0));
+
+      expected.thinData(3);
+      actual.thinData(3);
+      assertTrue(expected.epsilonEquals(actual, 0.0));
+
+      expected.cutBuffer(10, 40);
+      actual.cutBuffer(10, 40);
+      assertTrue(expected.epsilonEquals(actual, 0.0));
+
+      expected.cropBuffer(50, 20);
+      actual.cropBuffer(50, 20);
+      assertTrue(expected.epsilonEquals(actual, 0.0));
+
+      YoBuffer clone = new YoBuffer(actual);
+      assertTrue(expected.epsilonEquals(clone, 0.0));
+      for (YoBufferVariableEntry entry : clone.getEntries())
+         assertTrue(entry.getStorageFactory() == actual.getStorageFactory());
+   }
+
+   @Test // timeout=300000
+   public void testMemoryMappedStoragesShareOneFile() throws IOException
+   {
+      Random random = new Random(8924);
+      YoRegistry registry = new YoRegistry("registry");
+      YoBufferStorageFactory factory = YoBufferStorageFactory.memoryMapped(temporaryDirectory);
+      List<YoBufferStorage> expectedStorages = new ArrayList<>();
+      List<YoBufferStorage> actualStorages = new ArrayList<>();
+
+      for (int i = 0; i < 2000; i++)
+      {
+         YoVariable variable = i % 2 == 0 ? new YoDouble("double" + i, registry) : new YoBoolean("boolean" + i, registry);
+         int size = random.nextInt(500) + 1;
+         expectedStorages.add(YoBufferStorage.newStorage(variable, size));
+         actualStorages.add(factory.newStorage(variable, size));
+      }
+
+      for (int i = 0; i < expectedStorages.size(); i++)
+      {
+         for (int j = 0; j < expectedStorages.get(i).getSize(); j++)
+         {
+            double value = random.nextInt(2);
+            expectedStorages.get(i).write(j, value);
+            actualStorages.get(i).write(j, value);
+         }
+      }
+
+      // The slices do not overlap.
+      for (int i = 0; i < expectedStorages.size(); i++)
+         assertStorageEquals(expectedStorages.get(i), actualStorages.get(i));
+
+      try (Stream<Path> files = Files.list(temporaryDirectory))
+      {
+         assertTrue(files.count() <= 1);
+      }
+   }
+
+   @Test // timeout=300000
+   public void testMemoryMappedSliceReuseStartsWithZeros() throws InterruptedException
+   {
+      YoBufferMappedFile file = new YoBufferMappedFile(temporaryDirectory);
+      int size = 1001;
+      YoBufferStorage storage = new YoBufferNativeStorage(YoBufferNativeStorage.NativeType.LONG, size, file);
+      for (int i = 0; i < size; i++)
+         storage.write(i, i + 1);
+      storage = null;
+
+      for (int attempt = 0; attempt < 200 && file.getNumberOfReleasedSlices() == 0; attempt++)
+      {
+         System.gc();
+         Thread.sleep(10);
+      }
+      assertEquals(1, file.getNumberOfReleasedSlices());
+
+      YoBufferStorage reused = new YoBufferNativeStorage(YoBufferNativeStorage.NativeType.LONG, size, file);
+      assertEquals(0, file.getNumberOfReleasedSlices());
+      for (int i = 0; i < size; i++)
+         assertEquals(0.0, reused.read(i));
+   }
+
+   @Test // timeout=300000
+   public void testFactoryBitsPerValue()
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      List<YoVariable> variables = List.of(new YoDouble("double", registry), new YoBoolean("boolean", registry),
+                                           new YoEnum<>("enum", registry, SmallEnum.class, true), new YoInteger("integer", registry),
+                                           new YoLong("long", registry));
+      YoBufferStorageFactory[] factories = {YoBufferStorageFactory.heap(), YoBufferStorageFactory.offHeap(),
+            YoBufferStorageFactory.memoryMapped(temporaryDirectory), YoBufferStorageFactory.copyOnWrite(YoBufferStorageFactory.offHeap()),
+            YoBufferStorageFactory.compressed(), (variable, size) -> YoBufferStorage.newStorage(variable, size)};
+
+      for (YoBufferStorageFactory factory : factories)
+      {
+         for (YoVariable variable : variables)
+            assertEquals(factory.newStorage(variable, 10).getBitsPerValue(), factory.getBitsPerValue(variable), variable.getName());
+      }
+
+      // The memory budget accounts for the booleans stored with a byte per value.
+      long memoryBudget = 10000;
+      YoBuffer buffer = new YoBuffer(10, YoBufferStorageFactory.offHeap());
+      buffer.setMemoryBudget(memoryBudget);
+      buffer.addVariables(variables);
+      long bitsPerTick = 64 + 8 + 8 + 32 + 64;
+      assertEquals(bitsPerTick / 8.0, buffer.getMemoryUsagePerTick());
+      assertEquals((memoryBudget * 8 - 64 * variables.size()) / bitsPerTick, buffer.getBufferSize());
+   }
+
+   @Test // timeout=300000
+   public void testTooLarge()
+   {
+      assertThrows(IllegalArgumentException.class,
+                   () -> new YoBufferNativeStorage(YoBufferNativeStorage.NativeType.DOUBLE, Integer.MAX_VALUE / 4, ByteBuffer::allocateDirect));
+   }
+
+   private static void assertStorageEquals(YoBufferStorage expected, YoBufferStorage actual)
+   {
+      assertEquals(expected.getSize(), actual.getSize());
+      for (int i = 0; i < expected.getSize(); i++)
+         assertEquals(expected.read(i), actual.read(i));
+   }
+}
@@ -0,0 +1,505 @@
+package us.ihmc.yoVariables.buffer.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.yoVariables.buffer.YoBufferBounds;
+import us.ihmc.yoVariables.registry.YoRegistry;
+import us.ihmc.yoVariables.variable.YoBoolean;
+import us.ihmc.yoVariables.variable.YoDouble;
+import us.ihmc.yoVariables.variable.YoEnum;
+import us.ihmc.yoVariables.variable.YoInteger;
+import us.ihmc.yoVariables.variable.YoLong;
+import us.ihmc.yoVariables.variable.YoVariable;
+
+public class YoBufferStorageTest
+{
+   private static final int ITERATIONS = 100;
+
+   private enum SmallEnum
+   {
+      A, B, C
+   }
+
+   @Test // timeout=300000
+   public void testNewStorageType()
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      assertTrue(YoBufferStorage.newStorage(new YoDouble("double", registry), 10) instanceof YoBufferDoubleStorage);
+      assertTrue(YoBufferStorage.newStorage(new YoBoolean("boolean", registry), 10) instanceof YoBufferBitStorage);
+      assertTrue(YoBufferStorage.newStorage(new YoEnum<>("smallEnum", registry, SmallEnum.class), 10) instanceof YoBufferByteStorage);
+      assertTrue(YoBufferStorage.newStorage(new YoEnum<>("largeEnum", "", registry, false, largeEnumConstants(200)), 10) instanceof YoBufferShortStorage);
+      assertTrue(YoBufferStorage.newStorage(new YoInteger("integer", registry), 10) instanceof YoBufferIntStorage);
+      assertTrue(YoBufferStorage.newStorage(new YoLong("long", registry), 10) instanceof YoBufferLongStorage);
+   }
+
+   @Test // timeout=300000
+   public void testWriteReadMatchesVariable()
+   {
+      Random random = new Random(4536);
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry),
+            new YoEnum<>("smallEnum", registry, SmallEnum.class, true), new YoInteger("integer", registry), new YoLong("long", registry)};
+
+      for (YoVariable variable : variables)
+      {
+         int size = 200;
+         YoBufferStorage storage = YoBufferStorage.newStorage(variable, size);
+
+         for (int i = 0; i < ITERATIONS * size; i++)
+         {
+            int index = random.nextInt(size);
+            double value = variable instanceof YoEnum ? random.nextInt(4) - 1 : 1.0e3 * (random.nextDouble() - 0.5);
+            variable.setValueFromDouble(value);
+            double previous = storage.read(index);
+            boolean changed = storage.write(index, variable.getValueAsDouble());
+            assertEquals(variable.getValueAsDouble(), storage.read(index), variable.getName());
+            assertEquals(previous != storage.read(index), changed, variable.getName());
+         }
+      }
+   }
+
+   @Test // timeout=300000
+   public void testCopyFillAndDuplicate()
+   {
+      Random random = new Random(3466);
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry), new YoInteger("integer", registry)};
+
+      for (YoVariable variable : variables)
+      {
+         for (int iteration = 0; iteration < ITERATIONS; iteration++)
+         {
+            int size = random.nextInt(300) + 1;
+            YoBufferStorage storage = YoBufferStorage.newStorage(variable, size);
+            double[] expected = new double[size];
+
+            for (int i = 0; i < size; i++)
+            {
+               storage.write(i, random.nextInt(2));
+               expected[i] = storage.read(i);
+            }
+
+            // Copy to another storage
+            int sourceIndex = random.nextInt(size);
+            int length = random.nextInt(size - sourceIndex + 1);
+            int destinationIndex = random.nextInt(size - length + 1);
+            YoBufferStorage other = storage.newStorage(size);
+            other.copy(storage, sourceIndex, destinationIndex, length);
+            for (int i = 0; i < length; i++)
+               assertEquals(expected[sourceIndex + i], other.read(destinationIndex + i));
+
+            // Overlapping copy within the same storage
+            YoBufferStorage duplicate = storage.duplicate();
+            duplicate.copy(duplicate, sourceIndex, destinationIndex, length);
+            double[] expectedAfterCopy = expected.clone();
+            System.arraycopy(expected, sourceIndex, expectedAfterCopy, destinationIndex, length);
+            for (int i = 0; i < size; i++)
+            {
+               assertEquals(expectedAfterCopy[i], duplicate.read(i));
+               assertEquals(expected[i], storage.read(i));
+            }
+
+            // Fill
+            int fromIndex = random.nextInt(size + 1);
+            int toIndex = fromIndex + random.nextInt(size - fromIndex + 1);
+            double fillValue = random.nextInt(2);
+            storage.fill(fromIndex, toIndex, fillValue);
+            for (int i = 0; i < size; i++)
+               assertEquals(i >= fromIndex && i < toIndex ? fillValue : expected[i], storage.read(i));
+
+            // Bulk read
+            double[] bulk = new double[size + 1];
+            storage.read(0, size, bulk, 1);
+            for (int i = 0; i < size; i++)
+               assertEquals(storage.read(i), bulk[i + 1]);
+         }
+      }
+   }
+
+   @Test
+   public void testRotateDecimateAndResize()
+   {
+      Random random = new Random(3467);
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry), new YoLong("long", registry)};
+
+      for (YoVariable variable : variables)
+      {
+         for (int iteration = 0; iteration < ITERATIONS; iteration++)
+         {
+            int size = random.nextInt(300) + 1;
+            YoBufferStorage storage = YoBufferStorage.newStorage(variable, size);
+            double[] expected = new double[size];
+
+            for (int i = 0; i < size; i++)
+            {
+               storage.write(i, random.nextInt(2));
+               expected[i] = storage.read(i);
+            }
+
+            // Rotate
+            int distance = random.nextInt(size);
+            storage.rotate(distance);
+            for (int i = 0; i < size; i++)
+               assertEquals(expected[(i + distance) % size], storage.read(i));
+            storage.rotate(size - distance);
+            for (int i = 0; i < size; i++)
+               assertEquals(expected[i], storage.read(i));
+
+            // Decimate
+            int step = random.nextInt(5) + 1;
+            int length = (size - 1) / step + 1;
+            storage.decimate(step, length);
+            for (int i = 0; i < length; i++)
+               assertEquals(expected[i * step], storage.read(i));
+
+            // Shrink and grow back without reallocating
+            assertEquals(size, storage.getSize());
+            assertTrue(storage.getCapacity() >= size);
+            assertTrue(storage.resize(length));
+            assertEquals(length, storage.getSize());
+            assertEquals(length, storage.duplicate().getSize());
+            for (int i = 0; i < length; i++)
+               assertEquals(expected[i * step], storage.read(i));
+            assertTrue(storage.resize(size));
+            assertFalse(storage.resize(storage.getCapacity() + 1));
+            assertEquals(size, storage.getSize());
+         }
+      }
+   }
+
+   @Test
+   public void testReadWritePastSizeAfterShrink()
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry),
+            new YoEnum<>("smallEnum", registry, SmallEnum.class), new YoEnum<>("largeEnum", "", registry, false, largeEnumConstants(200)),
+            new YoInteger("integer", registry), new YoLong("long", registry)};
+
+      YoBufferStorageFactory[] factories = {YoBufferStorageFactory.heap(), YoBufferStorageFactory.copyOnWrite(YoBufferStorageFactory.heap())};
+
+      for (YoBufferStorageFactory factory : factories)
+      {
+         for (YoVariable variable : variables)
+         {
+            YoBufferStorage storage = factory.newStorage(variable, 100);
+            assertTrue(storage.resize(50));
+            storage.read(49);
+            storage.write(49, 1.0);
+            assertThrows(IndexOutOfBoundsException.class, () -> storage.read(50), variable.getName());
+            assertThrows(IndexOutOfBoundsException.class, () -> storage.write(50, 1.0), variable.getName());
+            assertThrows(IndexOutOfBoundsException.class, () -> storage.read(-1), variable.getName());
+         }
+      }
+   }
+
+   @Test
+   public void testChunkedStorageCopyOnWrite()
+   {
+      Random random = new Random(3468);
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry), new YoLong("long", registry)};
+
+      for (YoVariable variable : variables)
+      {
+         YoBufferStorageFactory factory = YoBufferStorageFactory.copyOnWrite(YoBufferStorageFactory.heap());
+
+         for (int iteration = 0; iteration < 10; iteration++)
+         {
+            int size = random.nextInt(4 * YoBufferChunkedStorage.CHUNK_SIZE) + 1;
+            YoBufferChunkedStorage storage = (YoBufferChunkedStorage) factory.newStorage(variable, size);
+            double[] expected = new double[size];
+
+            for (int i = 0; i < size; i++)
+            {
+               storage.write(i, random.nextInt(2));
+               expected[i] = storage.read(i);
+            }
+
+            YoBufferChunkedStorage duplicate = storage.duplicate();
+            int numberOfChunks = (size + YoBufferChunkedStorage.CHUNK_SIZE - 1) / YoBufferChunkedStorage.CHUNK_SIZE;
+            assertEquals(numberOfChunks, storage.getNumberOfSharedChunks());
+
+            // Only the chunk holding the modified value is copied.
+            int index = random.nextInt(size);
+            duplicate.write(index, 1.0 - expected[index]);
+            assertEquals(numberOfChunks - 1, storage.getNumberOfSharedChunks());
+            assertEquals(numberOfChunks - 1, duplicate.getNumberOfSharedChunks());
+            assertEquals(expected[index], storage.read(index));
+            assertEquals(1.0 - expected[index], duplicate.read(index));
+
+            // Overlapping copy across chunks
+            int sourceIndex = random.nextInt(size);
+            int length = random.nextInt(size - sourceIndex + 1);
+            int destinationIndex = random.nextInt(size - length + 1);
+            duplicate = storage.duplicate();
+            duplicate.copy(duplicate, sourceIndex, destinationIndex, length);
+            double[] expectedAfterCopy = expected.clone();
+            System.arraycopy(expected, sourceIndex, expectedAfterCopy, destinationIndex, length);
+
+            double[] bulk = new double[size];
+            duplicate.read(0, size, bulk, 0);
+            assertArrayEquals(expectedAfterCopy, bulk);
+            storage.read(0, size, bulk, 0);
+            assertArrayEquals(expected, bulk);
+         }
+      }
+   }
+
+   @Test
+   public void testChunkedStorageReleaseAndForeignCopy()
+   {
+      YoDouble variable = new YoDouble("double", new YoRegistry("registry"));
+      int size = 3 * YoBufferChunkedStorage.CHUNK_SIZE;
+      YoBufferChunkedStorage storage = (YoBufferChunkedStorage) YoBufferStorageFactory.copyOnWrite(YoBufferStorageFactory.heap())
+                                                                                     .newStorage(variable, size);
+
+      // Copying from a storage of another implementation falls back to copying the values one by one.
+      YoBufferStorage source = YoBufferStorageFactory.offHeap().newStorage(variable, size);
+      for (int i = 0; i < size; i++)
+         source.write(i, i);
+      storage.copy(source, 10, 20, size - 20);
+      for (int i = 20; i < size; i++)
+         assertEquals(i - 10, storage.read(i));
+
+      YoBufferChunkedStorage duplicate = storage.duplicate();
+      assertEquals(3, storage.getNumberOfSharedChunks());
+      duplicate.release();
+      assertEquals(0, storage.getNumberOfSharedChunks());
+      // Releasing is idempotent.
+      duplicate.release();
+      assertEquals(0, storage.getNumberOfSharedChunks());
+   }
+
+   @Test
+   public void testCompressedStorage()
+   {
+      Random random = new Random(8723);
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry), new YoLong("long", registry),
+            new YoInteger("integer", registry)};
+
+      for (YoVariable variable : variables)
+      {
+         for (int iteration = 0; iteration < 10; iteration++)
+         {
+            int size = random.nextInt(4 * YoBufferCompressedStorage.BLOCK_SIZE) + 1;
+            YoBufferStorage expected = YoBufferStorage.newStorage(variable, size);
+            YoBufferCompressedStorage storage = (YoBufferCompressedStorage) YoBufferStorageFactory.compressed().newStorage(variable, size);
+            double value = 0.0;
+
+            for (int i = 0; i < size; i++)
+            {
+               // Mix of repeated, small and extreme values to go through each code of the encodings.
+               int type = random.nextInt(4);
+               if (type == 1)
+                  value += random.nextInt(20) - 10;
+               else if (type == 2)
+                  value = random.nextDouble() * 1000.0;
+               else if (type == 3 && random.nextInt(20) == 0)
+                  value = random.nextBoolean() ? Long.MAX_VALUE : Long.MIN_VALUE;
+               expected.write(i, value);
+               storage.write(i, value);
+            }
+
+            for (int i = 0; i < 2 * size; i++)
+            {
+               int index = random.nextInt(size);
+               assertEquals(expected.read(index), storage.read(index));
+            }
+
+            YoBufferCompressedStorage duplicate = storage.duplicate();
+
+            // Overlapping copy across blocks
+            int sourceIndex = random.nextInt(size);
+            int length = random.nextInt(size - sourceIndex + 1);
+            int destinationIndex = random.nextInt(size - length + 1);
+            double[] expectedValues = new double[size];
+            expected.read(0, size, expectedValues, 0);
+            storage.copy(storage, sourceIndex, destinationIndex, length);
+            expected.copy(expected, sourceIndex, destinationIndex, length);
+
+            int fromIndex = random.nextInt(size);
+            int toIndex = fromIndex + random.nextInt(size - fromIndex + 1);
+            int valueIndex = random.nextInt(size);
+            if (valueIndex < fromIndex || valueIndex >= toIndex)
+            {
+               storage.fillWithValueAt(valueIndex, fromIndex, toIndex);
+               expected.fillWithValueAt(valueIndex, fromIndex, toIndex);
+            }
+
+            double[] expectedBulk = new double[size];
+            double[] bulk = new double[size];
+            expected.read(0, size, expectedBulk, 0);
+            storage.read(0, size, bulk, 0);
+            assertArrayEquals(expectedBulk, bulk);
+
+            // The duplicate is not affected by the modifications.
+            duplicate.read(0, size, bulk, 0);
+            assertArrayEquals(expectedValues, bulk);
+
+            ByteBuffer exported = ByteBuffer.allocate(storage.getExportSize(size));
+            ByteBuffer expectedExported = ByteBuffer.allocate(expected.getExportSize(size));
+            storage.exportValues(0, size, exported);
+            expected.exportValues(0, size, expectedExported);
+            assertArrayEquals(expectedExported.array(), exported.array());
+         }
+
+         if (variable instanceof YoBoolean)
+            continue; // Already stored with one bit per value.
+
+         // Long recording of a slowly varying signal
+         int size = 100 * YoBufferCompressedStorage.BLOCK_SIZE;
+         YoBufferStorage heapStorage = YoBufferStorage.newStorage(variable, size);
+         YoBufferCompressedStorage storage = new YoBufferCompressedStorage(variable, size);
+
+         for (int i = 0; i < size; i++)
+         {
+            double value = i / 50;
+            heapStorage.write(i, value);
+            storage.write(i, value);
+         }
+
+         for (int i = 0; i < size; i++)
+            assertEquals(heapStorage.read(i), storage.read(i));
+         assertTrue(storage.getMemoryUsage() < heapStorage.getMemoryUsage() / 4, variable.getName());
+      }
+   }
+
+   @Test
+   public void testCompressedStorageConcurrentReads() throws InterruptedException
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      int size = 8 * YoBufferCompressedStorage.BLOCK_SIZE;
+      YoBufferCompressedStorage storage = new YoBufferCompressedStorage(new YoLong("long", registry), size);
+      AtomicBoolean running = new AtomicBoolean(true);
+      AtomicReference<String> failure = new AtomicReference<>();
+
+      Thread reader = new Thread(() ->
+      {
+         double[] values = new double[size];
+
+         while (running.get() && failure.get() == null)
+         {
+            storage.read(0, size, values, 0);
+
+            // Each value was written either at the previous pass or at the current one.
+            for (int i = 0; i < size; i++)
+            {
+               if (values[i] != 0.0 && (long) values[i] % size != i)
+                  failure.set("Unexpected value " + values[i] + " at " + i);
+            }
+         }
+      });
+      reader.start();
+
+      for (int pass = 0; pass < 200; pass++)
+      {
+         for (int i = 0; i < size; i++)
+            storage.write(i, (long) pass * size + i);
+      }
+
+      running.set(false);
+      reader.join();
+      assertEquals(null, failure.get());
+
+      for (int i = 0; i < size; i++)
+         assertEquals(199L * size + i, storage.read(i));
+   }
+
+   @Test // timeout=300000
+   public void testComputeBounds()
+   {
+      Random random = new Random(2356);
+      YoBufferStorage storage = new YoBufferIntStorage(100);
+      double[] data = new double[100];
+
+      for (int i = 0; i < data.length; i++)
+      {
+         storage.write(i, random.nextInt(1000) - 500);
+         data[i] = storage.read(i);
+      }
+
+      for (int iteration = 0; iteration < ITERATIONS; iteration++)
+      {
+         int startIndex = random.nextInt(data.length);
+         int endIndex = random.nextInt(data.length);
+
+         YoBufferBounds expected = new YoBufferBounds();
+         expected.setInterval(startIndex, endIndex);
+         expected.compute(data);
+         YoBufferBounds actual = new YoBufferBounds();
+         actual.setInterval(startIndex, endIndex);
+         assertTrue(actual.compute(storage));
+         assertFalse(actual.compute(storage));
+
+         assertEquals(expected.getLowerBound(), actual.getLowerBound());
+         assertEquals(expected.getUpperBound(), actual.getUpperBound());
+      }
+   }
+
+   @Test // timeout=300000
+   public void testExportImport()
+   {
+      Random random = new Random(9342);
+      YoRegistry registry = new YoRegistry("registry");
+      YoVariable[] variables = {new YoDouble("double", registry), new YoBoolean("boolean", registry),
+            new YoEnum<>("smallEnum", registry, SmallEnum.class, true), new YoEnum<>("largeEnum", "", registry, true, largeEnumConstants(200)),
+            new YoInteger("integer", registry), new YoLong("long", registry)};
+
+      for (YoVariable variable : variables)
+      {
+         for (int iteration = 0; iteration < ITERATIONS; iteration++)
+         {
+            int size = random.nextInt(200) + 1;
+            YoBufferStorage source = YoBufferStorage.newStorage(variable, size);
+            for (int i = 0; i < size; i++)
+            {
+               variable.setValueFromDouble(variable instanceof YoEnum ? random.nextInt(4) - 1 : 1.0e3 * (random.nextDouble() - 0.5));
+               source.write(i, variable.getValueAsDouble());
+            }
+
+            // The exported window wraps around the end of the storage half of the time.
+            int fromIndex = random.nextInt(size);
+            int length = random.nextInt(size + 1);
+            int offset = random.nextInt(3);
+            ByteBuffer buffer = ByteBuffer.allocate(offset + source.getExportSize(length) + 1);
+            buffer.order(random.nextBoolean() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            buffer.position(offset);
+            source.exportValues(fromIndex, length, buffer);
+            assertEquals(offset + source.getExportSize(length), buffer.position());
+            buffer.position(offset);
+
+            YoBufferStorage destination = source.newStorage(size);
+            int sourceIndex = length == 0 ? 0 : random.nextInt(length);
+            int importLength = random.nextInt(length - sourceIndex + 1);
+            int toIndex = random.nextInt(size);
+            destination.importValues(buffer, sourceIndex, toIndex, importLength);
+            assertEquals(offset, buffer.position());
+
+            for (int i = 0; i < importLength; i++)
+               assertEquals(source.read((fromIndex + sourceIndex + i) % size), destination.read((toIndex + i) % size), variable.getName());
+         }
+      }
+   }
+
+   private static String[] largeEnumConstants(int size)
+   {
+      String[] constants = new String[size];
+      for (int i = 0; i < size; i++)
+         constants[i] = "constant" + i;
+      return constants;
+   }
+}
@@ -0,0 +1,100 @@
+package us.ihmc.yoVariables.variable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import us.ihmc.yoVariables.registry.YoRegistry;
+
+public class YoVariableChangeTrackerTest
+{
+   @Test // timeout = 30000
+   public void testTrackChanges()
+   {
+      Random random = new Random(3467);
+      YoRegistry registry = new YoRegistry("registry");
+      List<YoDouble> variables = new ArrayList<>();
+      YoVariableChangeTracker tracker = new YoVariableChangeTracker();
+
+      for (int i = 0; i < 300; i++)
+      {
+         YoDouble variable = new YoDouble("variable" + i, registry);
+         variables.add(variable);
+         assertEquals(i, tracker.track(variable));
+         assertTrue(tracker.hasChanged(i));
+         assertTrue(variable.isTrackedBy(tracker));
+      }
+
+      assertEquals(variables.size(), tracker.getNumberOfTrackedVariables());
+      assertEquals(0, tracker.track(variables.get(0)));
+
+      for (int iteration = 0; iteration < 100; iteration++)
+      {
+         tracker.clear();
+         assertEquals(-1, tracker.nextChangedIndex(0));
+
+         boolean[] expected = new boolean[variables.size()];
+         for (int i = 0; i < 20; i++)
+         {
+            int index = random.nextInt(variables.size());
+            // Setting the same value is not a change.
+            expected[index] |= variables.get(index).set(random.nextInt(2));
+         }
+
+         int previous = -1;
+         for (int i = tracker.nextChangedIndex(0); i >= 0; i = tracker.nextChangedIndex(i + 1))
+         {
+            assertTrue(expected[i]);
+            for (int j = previous + 1; j < i; j++)
+               assertFalse(expected[j]);
+            previous = i;
+         }
+         for (int j = previous + 1; j < variables.size(); j++)
+            assertFalse(expected[j]);
+      }
+
+      tracker.untrackAll();
+      assertEquals(0, tracker.getNumberOfTrackedVariables());
+      for (YoDouble variable : variables)
+         assertEquals(0, variable.getNumberOfChangeTrackers());
+   }
+
+   @Test // timeout = 30000
+   public void testSeveralTrackers()
+   {
+      YoRegistry registry = new YoRegistry("registry");
+      YoDouble first = new YoDouble("first", registry);
+      YoDouble second = new YoDouble("second", registry);
+      YoVariableChangeTracker trackerA = new YoVariableChangeTracker();
+      YoVariableChangeTracker trackerB = new YoVariableChangeTracker();
+
+      assertEquals(0, trackerA.track(first));
+      assertEquals(1, trackerA.track(second));
+      assertEquals(0, trackerB.track(second));
+      assertEquals(2, second.getNumberOfChangeTrackers());
+      trackerA.clear();
+      trackerB.clear();
+
+      second.set(1.0);
+      assertTrue(trackerA.hasChanged(1));
+      assertTrue(trackerB.hasChanged(0));
+      assertFalse(trackerA.hasChanged(0));
+
+      // Polling clears the changes of one tracker only.
+      assertEquals(0b10L, trackerA.pollChanges(0));
+      assertEquals(0L, trackerA.pollChanges(0));
+      assertTrue(trackerB.hasChanged(0));
+
+      trackerA.untrackAll();
+      assertFalse(second.isTrackedBy(trackerA));
+      assertTrue(second.isTrackedBy(trackerB));
+      second.set(2.0);
+      assertEquals(0b1L, trackerB.pollChanges(0));
+   }
+}